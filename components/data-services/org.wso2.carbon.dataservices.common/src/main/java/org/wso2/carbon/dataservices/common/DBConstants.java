@@ -34,6 +34,9 @@ public final class DBConstants {
 
     public static final String WSO2_DS_NAMESPACE = "http://ws.wso2.org/dataservice";
     public static final String DATA_SERVICE_OBJECT = "org.wso2.ws.dataservice.dataservice.obj";
+    public static final String RESOURCE_PATH_TRIE = "org.wso2.ws.dataservice.resource.path.trie";
+    public static final String RESOURCE_PATH_VARIABLES = "org.wso2.ws.dataservice.resource.path.variables";
+    public static final String RESOURCE_TRANSPORT_OPERATION = "org.wso2.ws.dataservice.resource.transport.operation";
     public static final String DB_SERVICE_DEPLOYER = "org.wso2.ws.dataservice.dataservice.deployer";
     public static final String DB_SERVICE_TYPE = "data_service";
     public static final String DB_SERVICE_REPO = "local_org.wso2.ws.dataservice.db_service_repo";
@@ -87,6 +90,30 @@ public final class DBConstants {
     public static final String SECURITY_MODULE_NAME = "rampart";
     public static final String TENANT_IN_ONLY_MESSAGE = "TENANT_IN_ONLY_MESSAGE";
     public static final String NO_SCHEMA = "no_schema";
+    /* system properties of the slow query log, the threshold is in milliseconds, the log is disabled by default */
+    public static final String DSS_SLOW_QUERY_THRESHOLD = "dss.slow.query.threshold";
+    public static final String DSS_SLOW_QUERY_LOG_SIZE = "dss.slow.query.log.size";
+    public static final int DEFAULT_SLOW_QUERY_LOG_SIZE = 100;
+    /* export output formats of the results, selected with the Accept header or the export format request parameter */
+    public static final String EXPORT_FORMAT_PARAM = "_format";
+    public static final String EXPORT_FORMAT_CSV = "csv";
+    public static final String EXPORT_FORMAT_NDJSON = "ndjson";
+    public static final String CSV_CONTENT_TYPE = "text/csv";
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+    /* response compression, negotiated with the Accept-Encoding header, a negative minimum size disables it */
+    public static final String DSS_RESPONSE_COMPRESSION_MIN_SIZE = "dss.response.compression.min.size";
+    public static final String DSS_RESPONSE_COMPRESSION_LEVEL = "dss.response.compression.level";
+    public static final String DSS_RESPONSE_COMPRESSION_FLUSH_ROWS = "dss.response.compression.flush.rows";
+    public static final int DEFAULT_RESPONSE_COMPRESSION_MIN_SIZE = 1024;
+    public static final int DEFAULT_RESPONSE_COMPRESSION_FLUSH_ROWS = 100;
+    public static final String RESPONSE_CONTENT_ENCODING = "dss.response.content.encoding";
+    public static final String CONTENT_ENCODING_GZIP = "gzip";
+    public static final String CONTENT_ENCODING_DEFLATE = "deflate";
+    /* deployment of the data services: lazy initialization of the configs on first use, their warm-up
+     * after the deployment, and the number of threads which activate the configs in parallel */
+    public static final String DSS_LAZY_CONFIG_INIT = "dss.lazy.config.init";
+    public static final String DSS_CONFIG_WARMUP = "dss.config.warmup";
+    public static final String DSS_DEPLOYMENT_THREADS = "dss.deployment.threads";
         
     /**
      * Codes to be used as fault codes.
@@ -405,7 +432,18 @@ public final class DBConstants {
         public static final String DYNAMIC_USER_AUTH_CLASS = "dynamicUserAuthClass";
         public static final String DYNAMIC_USER_AUTH_MAPPING = "dynamicUserAuthMapping";
         public static final String DYNAMIC_ODATA_TABLE_MAPPING = "dynamicOdataConfig";
+        public static final String ADAPTIVE_POOL_SIZING = "adaptivePoolSizing";
+        public static final String ADAPTIVE_POOL_MIN_ACTIVE = "adaptivePoolMinActive";
+        public static final String ADAPTIVE_POOL_MAX_ACTIVE = "adaptivePoolMaxActive";
+        public static final String ADAPTIVE_POOL_TARGET_WAIT = "adaptivePoolTargetWait";
+        public static final String ADAPTIVE_POOL_INTERVAL = "adaptivePoolInterval";
         public static final String ODATA_MAX_LIMIT = "maxLimit";
+        public static final String ODATA_COUNT_MODE = "countMode";
+        public static final String ODATA_COUNT_CACHE_TTL = "countCacheTTL";
+        public static final String ODATA_METADATA_CACHE = "metadataCache";
+        public static final String ODATA_METADATA_REFRESH_INTERVAL = "metadataRefreshInterval";
+        public static final String ODATA_PAGE_SIZE = "pageSize";
+        public static final String ODATA_TRANSACTION_ISOLATION = "transactionIsolation";
         public static final String USERNAME_WILDCARD = "*";
         public static final String DSS_TIMERZONE = "dss.timezone";
         public static final String DSS_LEGACY_TIMEZONE_MODE = "dss.legacy.timezone.mode";
@@ -628,6 +666,9 @@ public final class DBConstants {
         public static final String DATA_CENTER = "dataCenter";
         /* boolean */
         public static final String ALLOW_REMOTE_DCS_FOR_LOCAL_CONSISTENCY_LEVEL = "allowRemoteDCsForLocalConsistencyLevel";
+        /* string (multiple values with comma separated), e.g. "employees.department,employees.salary"; the OData
+         * $filter queries on these tables are answered from an in-memory snapshot indexed on these columns */
+        public static final String ODATA_INDEXED_COLUMNS = "odataIndexedColumns";
 
     }
 
@@ -714,6 +755,8 @@ public final class DBConstants {
         }
 
         public static final String DATASOURCE = "rdf_datasource";
+        /* time in milliseconds between the checks for modifications of a local RDF file */
+        public static final String MODIFICATION_CHECK_INTERVAL = "rdf_modification_check_interval";
 
     }
 
@@ -727,6 +770,14 @@ public final class DBConstants {
         }
 
         public static final String DATASOURCE = "sparql_datasource";
+        /* maximum number of pooled HTTP connections to the SPARQL endpoint */
+        public static final String MAX_CONNECTIONS = "sparql_max_connections";
+        /* time in milliseconds to wait for a pooled HTTP connection to the SPARQL endpoint */
+        public static final String CONNECTION_MANAGER_TIMEOUT = "sparql_connection_manager_timeout";
+        public static final String RESULTS_XML_CONTENT_TYPE = "application/sparql-results+xml";
+        /* query params which limit the results of SPARQL queries, pushed down into the queries */
+        public static final String LIMIT_PARAM = "_limit";
+        public static final String OFFSET_PARAM = "_offset";
     }
 
     /**
@@ -752,6 +803,8 @@ public final class DBConstants {
 
         public static final String WEB_CONFIG = "web_harvest_config";
         public static final String QUERY_VARIABLE = "scraperVariable";
+        /* time in milliseconds the scraped variables are reused, they are scraped for each request by default */
+        public static final String CACHE_TTL = "web_harvest_cache_ttl";
     }
     
     /**
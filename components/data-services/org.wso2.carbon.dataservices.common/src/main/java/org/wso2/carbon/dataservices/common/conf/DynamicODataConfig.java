@@ -11,6 +11,12 @@ public class DynamicODataConfig {
 
 		private List<ODataTableSchemaConfig> tables = new ArrayList<>();
 		private String maxLimit = "100"; 
+		private String countMode;
+		private String countCacheTTL;
+		private String metadataCache;
+		private String metadataRefreshInterval;
+		private String pageSize;
+		private String transactionIsolation;
 		
 		public List<ODataTableSchemaConfig> getTables() {
 			return tables;
@@ -28,4 +34,58 @@ public class DynamicODataConfig {
 		public void setMaxLimit(String limit) {
 			this.maxLimit = limit;
 		}
+		
+		@XmlAttribute(name = "countMode")
+		public String getCountMode() {
+			return countMode;
+		}
+		
+		public void setCountMode(String countMode) {
+			this.countMode = countMode;
+		}
+		
+		@XmlAttribute(name = "countCacheTTL")
+		public String getCountCacheTTL() {
+			return countCacheTTL;
+		}
+		
+		public void setCountCacheTTL(String countCacheTTL) {
+			this.countCacheTTL = countCacheTTL;
+		}
+		
+		@XmlAttribute(name = "metadataCache")
+		public String getMetadataCache() {
+			return metadataCache;
+		}
+		
+		public void setMetadataCache(String metadataCache) {
+			this.metadataCache = metadataCache;
+		}
+		
+		@XmlAttribute(name = "metadataRefreshInterval")
+		public String getMetadataRefreshInterval() {
+			return metadataRefreshInterval;
+		}
+		
+		public void setMetadataRefreshInterval(String metadataRefreshInterval) {
+			this.metadataRefreshInterval = metadataRefreshInterval;
+		}
+		
+		@XmlAttribute(name = "pageSize")
+		public String getPageSize() {
+			return pageSize;
+		}
+		
+		public void setPageSize(String pageSize) {
+			this.pageSize = pageSize;
+		}
+		
+		@XmlAttribute(name = "transactionIsolation")
+		public String getTransactionIsolation() {
+			return transactionIsolation;
+		}
+		
+		public void setTransactionIsolation(String transactionIsolation) {
+			this.transactionIsolation = transactionIsolation;
+		}
 }
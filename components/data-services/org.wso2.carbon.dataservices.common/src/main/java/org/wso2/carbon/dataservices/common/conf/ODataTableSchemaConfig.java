@@ -10,6 +10,7 @@ public class ODataTableSchemaConfig {
 
 		private String tblName; 
 		private String schemaName; 
+		private String pageSize;
 		private List<ODataColumnsConfig> columnsList;
 		
 		@XmlAttribute(name = "name", required = true)
@@ -30,6 +31,15 @@ public class ODataTableSchemaConfig {
 			this.schemaName = schemaName;
 		}
 		
+		@XmlAttribute(name = "pageSize")
+		public String getPageSize() {
+			return pageSize;
+		}
+		
+		public void setPageSize(String pageSize) {
+			this.pageSize = pageSize;
+		}
+		
 		public List<ODataColumnsConfig> getColumns(){
 			return columnsList;
 		}
@@ -0,0 +1,128 @@
+/*
+ *  Copyright (c) 2005-2012, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.wso2.carbon.dataservices.core.jmx.ConnectionPoolStatistics;
+import org.wso2.carbon.dataservices.core.jmx.RequestStatistics;
+
+/**
+ * Periodically resizes a Tomcat JDBC pool within configured bounds. At the end of each window, the pool
+ * grows when the borrows waited longer than the target wait time or timed out, unless the database itself
+ * is slower than usual, since more connections would then only add load to it; and it shrinks by one
+ * connection when no borrow waited and less than half of the connections were in use.
+ * The database response time is estimated by the average time the connections are held.
+ */
+public class AdaptivePoolSizer implements Runnable {
+
+	private static final Log log = LogFactory.getLog(AdaptivePoolSizer.class);
+
+	/* the database is considered slower than usual over this factor of its baseline response time */
+	private static final double DEGRADED_FACTOR = 2.0;
+
+	/* weight of the last window in the baseline response time */
+	private static final double BASELINE_WEIGHT = 0.2;
+
+	private final String configId;
+
+	private final DataSource dataSource;
+
+	private final ConnectionPoolStatistics statistics;
+
+	private final int minActive;
+
+	private final int maxActive;
+
+	private final double targetWaitMillis;
+
+	private double baselineHoldMillis = -1;
+
+	public AdaptivePoolSizer(String configId, DataSource dataSource, ConnectionPoolStatistics statistics,
+			int minActive, int maxActive, long targetWaitMillis) {
+		this.configId = configId;
+		this.dataSource = dataSource;
+		this.statistics = statistics;
+		this.minActive = minActive;
+		this.maxActive = maxActive;
+		this.targetWaitMillis = targetWaitMillis;
+	}
+
+	@Override
+	public void run() {
+		try {
+			this.resize();
+		} catch (Throwable e) {
+			/* an exception would cancel the next executions */
+			log.error("Error in resizing the connection pool of config: " + this.configId, e);
+		}
+	}
+
+	private void resize() {
+		RequestStatistics waits = this.statistics.takeWindowBorrowWaits();
+		RequestStatistics holds = this.statistics.takeWindowHoldTimes();
+		int peakActive = this.statistics.takeWindowPeakActive();
+		int current = this.dataSource.getMaxActive();
+		int target = this.computeTarget(current, waits, holds, peakActive);
+		if (target != current) {
+			if (target < current && this.dataSource.getMaxIdle() > target) {
+				this.dataSource.setMaxIdle(target);
+			}
+			this.dataSource.setMaxActive(target);
+			if (log.isDebugEnabled()) {
+				log.debug("Resized the connection pool of config: " + this.configId + " from " + current +
+						" to " + target + " connections, p95 borrow wait: " + waits.getLatencyPercentileMillis(95) +
+						" ms, peak active: " + peakActive);
+			}
+		}
+	}
+
+	/**
+	 * Computes the size of the pool for the next window, updating the baseline response time of the database.
+	 * @param current The current maximum size of the pool
+	 * @param waits The borrow waits of the last window, the timed out borrows being counted as errors
+	 * @param holds The times the connections were held in the last window
+	 * @param peakActive The highest number of connections in use in the last window
+	 * @return The new maximum size of the pool, within the bounds
+	 */
+	public int computeTarget(int current, RequestStatistics waits, RequestStatistics holds, int peakActive) {
+		double waitMillis = waits.getLatencyPercentileMillis(95);
+		boolean degraded = false;
+		if (holds.getCount() > 0) {
+			double holdMillis = holds.getAverageLatencyMillis();
+			if (this.baselineHoldMillis < 0) {
+				this.baselineHoldMillis = holdMillis;
+			}
+			degraded = holdMillis > this.baselineHoldMillis * DEGRADED_FACTOR;
+			if (!degraded) {
+				this.baselineHoldMillis = (1 - BASELINE_WEIGHT) * this.baselineHoldMillis +
+						BASELINE_WEIGHT * holdMillis;
+			}
+		}
+		if ((waitMillis > this.targetWaitMillis || waits.getErrorCount() > 0) && !degraded) {
+			return Math.min(this.maxActive, current + Math.max(1, current / 4));
+		} else if (waits.getErrorCount() == 0 && waitMillis <= this.targetWaitMillis &&
+				peakActive < current / 2) {
+			return Math.max(this.minActive, current - 1);
+		}
+		return current;
+	}
+
+}
@@ -0,0 +1,237 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.transport.http.HTTPConstants;
+import org.wso2.carbon.dataservices.common.DBConstants;
+
+/**
+ * Compresses a data service response with gzip or deflate while it is being written, so the compression
+ * overlaps with the fetching of the rows. The response is buffered until it reaches the minimum size, and
+ * it is not compressed if it is smaller; once compressing, the stream is flushed every given number of
+ * rows of the top level query, so the client receives the result progressively. The compression is used
+ * by the data service message formatters when the request accepted one, see
+ * {@link DBUtils#getAcceptedContentEncoding(MessageContext)}, and it is configured with the system
+ * properties {@value DBConstants#DSS_RESPONSE_COMPRESSION_MIN_SIZE},
+ * {@value DBConstants#DSS_RESPONSE_COMPRESSION_LEVEL} and
+ * {@value DBConstants#DSS_RESPONSE_COMPRESSION_FLUSH_ROWS}.
+ */
+public class CompressingOutputStream extends OutputStream {
+
+	private static final int MIN_SIZE = Integer.getInteger(
+			DBConstants.DSS_RESPONSE_COMPRESSION_MIN_SIZE, DBConstants.DEFAULT_RESPONSE_COMPRESSION_MIN_SIZE);
+
+	private static final int LEVEL = Integer.getInteger(
+			DBConstants.DSS_RESPONSE_COMPRESSION_LEVEL, Deflater.DEFAULT_COMPRESSION);
+
+	private static final int FLUSH_ROWS = Integer.getInteger(
+			DBConstants.DSS_RESPONSE_COMPRESSION_FLUSH_ROWS,
+			DBConstants.DEFAULT_RESPONSE_COMPRESSION_FLUSH_ROWS);
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/* the compressed response being written on the current thread */
+	private static ThreadLocal<CompressingOutputStream> current = new ThreadLocal<CompressingOutputStream>();
+
+	private final OutputStream out;
+
+	private final String contentEncoding;
+
+	private final HttpServletResponse response;
+
+	/* the start of the response, until it is known whether it is compressed */
+	private ByteArrayOutputStream buffer;
+
+	private DeflaterOutputStream compressedOut;
+
+	private Deflater deflater;
+
+	private long rowCount;
+
+	private CompressingOutputStream(OutputStream out, String contentEncoding,
+			HttpServletResponse response) {
+		this.out = out;
+		this.contentEncoding = contentEncoding;
+		this.response = response;
+		this.buffer = new ByteArrayOutputStream(Math.min(MIN_SIZE, BUFFER_SIZE) + 1);
+	}
+
+	/**
+	 * Returns the stream to write the response of the given message context to, which compresses it
+	 * if a compression was negotiated for it. The stream must be finished with {@link #finish(OutputStream)}
+	 * and released with {@link #release(OutputStream)}.
+	 * @param msgContext The message context of the response
+	 * @param out The output stream of the response
+	 * @return The compressing stream, or the given stream if the response is not compressed
+	 */
+	public static OutputStream create(MessageContext msgContext, OutputStream out) {
+		if (MIN_SIZE < 0) {
+			return out;
+		}
+		String contentEncoding = (String) msgContext.getProperty(DBConstants.RESPONSE_CONTENT_ENCODING);
+		HttpServletResponse response = (HttpServletResponse) msgContext.getProperty(
+				HTTPConstants.MC_HTTP_SERVLETRESPONSE);
+		if (contentEncoding == null || response == null) {
+			return out;
+		}
+		CompressingOutputStream compressingOut = new CompressingOutputStream(out, contentEncoding, response);
+		current.set(compressingOut);
+		return compressingOut;
+	}
+
+	/**
+	 * Completes the response written to the given stream, if it is compressing.
+	 */
+	public static void finish(OutputStream out) throws IOException {
+		if (out instanceof CompressingOutputStream) {
+			((CompressingOutputStream) out).finish();
+		}
+	}
+
+	/**
+	 * Releases the resources of the given stream, if it is compressing; it must be called even if
+	 * the response could not be written.
+	 */
+	public static void release(OutputStream out) {
+		if (out instanceof CompressingOutputStream) {
+			((CompressingOutputStream) out).release();
+		}
+	}
+
+	/**
+	 * Called when a row of the top level query has been written, it flushes the compressed response
+	 * of the current thread every {@value DBConstants#DEFAULT_RESPONSE_COMPRESSION_FLUSH_ROWS} rows
+	 * by default.
+	 * @param xmlWriter The writer of the rows, which holds the pending output
+	 */
+	public static void rowWritten(XMLStreamWriter xmlWriter) throws XMLStreamException {
+		CompressingOutputStream compressingOut = current.get();
+		if (compressingOut == null || xmlWriter == null || FLUSH_ROWS <= 0) {
+			return;
+		}
+		if (++compressingOut.rowCount % FLUSH_ROWS == 0 && compressingOut.compressedOut != null) {
+			xmlWriter.flush();
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (this.compressedOut != null) {
+			this.compressedOut.write(b);
+		} else {
+			this.buffer.write(b);
+			this.checkMinSize();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (this.compressedOut != null) {
+			this.compressedOut.write(b, off, len);
+		} else {
+			this.buffer.write(b, off, len);
+			this.checkMinSize();
+		}
+	}
+
+	/**
+	 * Flushes the data compressed so far; before the minimum size is reached, the data is kept,
+	 * since it is not known yet whether the response is compressed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (this.compressedOut != null) {
+			this.compressedOut.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.finish();
+	}
+
+	private void checkMinSize() throws IOException {
+		if (this.buffer.size() < MIN_SIZE) {
+			return;
+		}
+		/* the headers are set before any of the response is written */
+		this.response.setHeader(HTTPConstants.HEADER_CONTENT_ENCODING, this.contentEncoding);
+		this.response.addHeader("Vary", HTTPConstants.HEADER_ACCEPT_ENCODING);
+		if (DBConstants.CONTENT_ENCODING_DEFLATE.equals(this.contentEncoding)) {
+			this.deflater = new Deflater(LEVEL);
+			this.compressedOut = new DeflaterOutputStream(this.out, this.deflater, BUFFER_SIZE, true);
+		} else {
+			GZIPStream gzipOut = new GZIPStream(this.out);
+			this.deflater = gzipOut.getDeflater();
+			this.compressedOut = gzipOut;
+		}
+		this.buffer.writeTo(this.compressedOut);
+		this.buffer = null;
+	}
+
+	private void finish() throws IOException {
+		if (this.compressedOut != null) {
+			this.compressedOut.finish();
+		} else if (this.buffer != null) {
+			/* a small response, written as it is */
+			this.buffer.writeTo(this.out);
+			this.buffer = null;
+		}
+		this.out.flush();
+	}
+
+	private void release() {
+		if (current.get() == this) {
+			current.remove();
+		}
+		if (this.deflater != null) {
+			this.deflater.end();
+			this.deflater = null;
+		}
+	}
+
+	/**
+	 * A gzip stream which flushes its pending data, with the configured compression level.
+	 */
+	private static class GZIPStream extends GZIPOutputStream {
+
+		public GZIPStream(OutputStream out) throws IOException {
+			super(out, BUFFER_SIZE, true);
+			this.def.setLevel(LEVEL);
+		}
+
+		public Deflater getDeflater() {
+			return this.def;
+		}
+
+	}
+
+}
@@ -50,7 +50,6 @@ import org.apache.axis2.engine.AxisConfiguration;
 import org.apache.axis2.i18n.Messages;
 import org.apache.axis2.transport.http.HTTPConstants;
 import org.apache.axis2.wsdl.WSDLConstants;
-import org.apache.axis2.wsdl.WSDLUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.neethi.Policy;
@@ -106,7 +105,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represents the custom Axis2 deployer used in deploying data-services .dbs files.
@@ -148,11 +153,18 @@ public class DBDeployer extends AbstractDeployer {
 	 * used for REST processing
 	 */
 	private Map<String, AxisOperation> httpLocationTable;
-    private Map<Pattern, AxisOperation> httpLocationTableForResource;
+	private ResourcePathTrie<AxisOperation> resourcePathTrie;
 
     /** cached transaction manager instance */
     private static TransactionManager cachedTransactionManager = null;
 
+	/** executor which activates the configs of the deployed data services in parallel */
+	private static ThreadPoolExecutor configWarmUpExecutor = null;
+
+	/** pending activations of the configs of the deployed data services, cancelled at their undeployment */
+	private final Map<DataService, List<Future<?>>> configWarmUps =
+			new ConcurrentHashMap<DataService, List<Future<?>>>();
+
 	public ConfigurationContext getConfigContext() {
 		return configCtx;
 	}
@@ -162,6 +174,7 @@ public class DBDeployer extends AbstractDeployer {
 	 */
 	public void deploy(DeploymentFileData deploymentFileData)
 			throws DeploymentException {
+		long startTime = System.nanoTime();
         PrivilegedCarbonContext.getThreadLocalCarbonContext().setApplicationName(deploymentFileData.getName());
         /* If there's already a faulty service corresponding to this particular service,
            remove it */
@@ -237,6 +250,12 @@ public class DBDeployer extends AbstractDeployer {
             super.deploy(deploymentFileData);
 			/* finished deploying successfully */
 			successfullyDeployed = true;
+			log.info("Deployed the data service '" + service.getName() + "' in " +
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+			if (serviceActive && Boolean.getBoolean(DBConstants.DSS_CONFIG_WARMUP)) {
+				this.warmUpConfigs((DataService) service.getParameter(
+						DBConstants.DATA_SERVICE_OBJECT).getValue());
+			}
 
 		} catch (DataServiceFault e) {
 			errorMessage = DBUtils.getStacktraceFromException(e);
@@ -327,6 +346,8 @@ public class DBDeployer extends AbstractDeployer {
 		configCtx.setProperty(DBConstants.DB_SERVICE_REPO, this.repoDir);
 		configCtx.setProperty(DBConstants.DB_SERVICE_EXTENSION, this.extension);
 		configCtx.setProperty(DBConstants.DB_SERVICE_DEPLOYER, this);
+		/* the REST requests are dispatched with the resource path tries of the data services */
+		DBResourceDispatcher.addToDispatchPhase(this.axisConfig);
 		
 		/* retrieve tenant id */
 		int tid;
@@ -414,6 +435,84 @@ public class DBDeployer extends AbstractDeployer {
 	    return extension;
 	}
 
+	/**
+	 * Activates the configs of the given data service in the background, so the data sources of the
+	 * lazily initialized configs are ready before the first requests, without delaying the deployment
+	 * of the next data services. The configs are activated in parallel by a bounded number of threads.
+	 */
+	private void warmUpConfigs(final DataService dataService) {
+		ThreadPoolExecutor executor = getConfigWarmUpExecutor();
+		List<Future<?>> warmUps = new ArrayList<Future<?>>();
+		for (final Config config : dataService.getConfigs().values()) {
+			warmUps.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					long startTime = System.nanoTime();
+					try {
+						config.activate();
+						if (log.isDebugEnabled()) {
+							log.debug("Activated the config '" + config.getConfigId() + "' of the data service '" +
+									dataService.getName() + "' in " +
+									TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+						}
+					} catch (Throwable e) {
+						if (config.isClosed()) {
+							/* the data service has been undeployed meanwhile */
+							return;
+						}
+						/* the activation is retried on the first use of the config */
+						log.warn("Error in activating the config '" + config.getConfigId() +
+								"' of the data service '" + dataService.getName() + "': " + e.getMessage(), e);
+					}
+				}
+			}));
+		}
+		this.configWarmUps.put(dataService, warmUps);
+	}
+
+	/**
+	 * Cancels the activations of the configs of the given data service which have not completed yet,
+	 * before the configs are closed at its undeployment.
+	 */
+	private void cancelConfigWarmUp(DataService dataService) {
+		List<Future<?>> warmUps = this.configWarmUps.remove(dataService);
+		if (warmUps != null) {
+			for (Future<?> warmUp : warmUps) {
+				warmUp.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Stops the threads activating the configs of the deployed data services, when the data services
+	 * bundle is deactivated.
+	 */
+	public static synchronized void shutdownConfigWarmUpExecutor() {
+		if (configWarmUpExecutor != null) {
+			configWarmUpExecutor.shutdownNow();
+			configWarmUpExecutor = null;
+		}
+	}
+
+	private static synchronized ThreadPoolExecutor getConfigWarmUpExecutor() {
+		if (configWarmUpExecutor == null) {
+			int threads = Math.max(1, Integer.getInteger(DBConstants.DSS_DEPLOYMENT_THREADS,
+					Runtime.getRuntime().availableProcessors()));
+			configWarmUpExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "dss-config-warmup-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			configWarmUpExecutor.allowCoreThreadTimeOut(true);
+		}
+		return configWarmUpExecutor;
+	}
+
 	private DataService getDataServiceByServicePath(String servicePath) throws Exception {
 		Parameter tmpParam;
 		DataService tmpDS;
@@ -457,6 +556,7 @@ public class DBDeployer extends AbstractDeployer {
             *  Hence assigning the service group as the service group name */
 			AxisServiceGroup serviceGroup = this.axisConfig.getServiceGroup(serviceName);
 			CarbonContext cCtx = CarbonContext.getThreadLocalCarbonContext();
+			this.cancelConfigWarmUp(dataService);
 			if (serviceGroup == null) { /* must be a faulty service */
 				this.axisConfig.removeFaultyService(servicePath);
 				for (String configID : dataService.getConfigs().keySet()) {
@@ -637,8 +737,9 @@ public class DBDeployer extends AbstractDeployer {
             httpLocation = httpLocation.substring(1);
         }
 
-        Pattern httpLocationPattern = WSDLUtil.getConstantFromHTTPLocationForResource(httpLocation, method);
-        this.httpLocationTableForResource.put(httpLocationPattern, axisOperation);
+		/* the resources are resolved with the trie by the DBResourceDispatcher, there is no table of
+		 * their HTTP location patterns for the HTTPLocationBasedDispatcher to scan */
+		this.resourcePathTrie.add(method, httpLocation, axisOperation);
 
 		// Create the in and out axis messages for this operation
 		AxisMessage inMessage = axisOperation.getMessage(WSDLConstants.MESSAGE_LABEL_IN_VALUE);
@@ -857,12 +958,8 @@ public class DBDeployer extends AbstractDeployer {
 							return (-1 * o1.compareTo(o2));
 						}
 					});
-            this.httpLocationTableForResource = new TreeMap<Pattern, AxisOperation>(
-                    new Comparator<Pattern>() {
-                        public int compare(Pattern o1, Pattern o2) {
-                            return (-1 * o1.pattern().compareTo(o2.pattern()));
-                        }
-                    });
+			this.resourcePathTrie = new ResourcePathTrie<AxisOperation>();
+			axisService.addParameter(DBConstants.RESOURCE_PATH_TRIE, this.resourcePathTrie);
 
 			AxisBinding soap11Binding = createDefaultSOAP11Binding(
 					serviceName, interfaceName);
@@ -1032,7 +1129,6 @@ public class DBDeployer extends AbstractDeployer {
 		soap11Binding.setProperty(WSDL2Constants.ATTR_WSOAP_VERSION, SOAP11Constants.SOAP_ENVELOPE_NAMESPACE_URI);
 		soap11Binding.setProperty(WSDL2Constants.INTERFACE_LOCAL_NAME, interfaceName);
 		soap11Binding.setProperty(WSDL2Constants.HTTP_LOCATION_TABLE, httpLocationTable);
-        soap11Binding.setProperty(WSDL2Constants.HTTP_LOCATION_TABLE_FOR_RESOURCE, httpLocationTableForResource);
 		return soap11Binding;
 	}
 
@@ -1045,7 +1141,6 @@ public class DBDeployer extends AbstractDeployer {
 		httpBinding.setType(WSDL2Constants.URI_WSDL2_HTTP);
 		httpBinding.setProperty(WSDL2Constants.INTERFACE_LOCAL_NAME, interfaceName);
 		httpBinding.setProperty(WSDL2Constants.HTTP_LOCATION_TABLE, httpLocationTable);
-        httpBinding.setProperty(WSDL2Constants.HTTP_LOCATION_TABLE_FOR_RESOURCE, httpLocationTableForResource);
 		return httpBinding;
 	}
 
@@ -1060,11 +1155,9 @@ public class DBDeployer extends AbstractDeployer {
 		soap12Binding.setProperty(WSDL2Constants.ATTR_WSOAP_VERSION, SOAP12Constants.SOAP_ENVELOPE_NAMESPACE_URI);
 		soap12Binding.setProperty(WSDL2Constants.INTERFACE_LOCAL_NAME, interfaceName);
 		soap12Binding.setProperty(WSDL2Constants.HTTP_LOCATION_TABLE, httpLocationTable);
-        soap12Binding.setProperty(WSDL2Constants.HTTP_LOCATION_TABLE_FOR_RESOURCE, httpLocationTableForResource);
 		return soap12Binding;
 	}
 
-
 	/**
 	 * Creates a set of default endpoints for this service
 	 */
@@ -1101,7 +1194,6 @@ public class DBDeployer extends AbstractDeployer {
 			soap11Endpoint.setParent(axisService);
 			soap11Endpoint.setTransportInDescription(transportInName);
 			soap11Endpoint.setProperty(WSDL2Constants.HTTP_LOCATION_TABLE, httpLocationTable);
-            soap11Endpoint.setProperty(WSDL2Constants.HTTP_LOCATION_TABLE_FOR_RESOURCE, httpLocationTableForResource);
 			axisService.addEndpoint(soap11EndpointName, soap11Endpoint);
 
             /* setting soap11 endpoint as the default endpoint */
@@ -1116,7 +1208,6 @@ public class DBDeployer extends AbstractDeployer {
 			soap12Endpoint.setParent(axisService);
 			soap12Endpoint.setTransportInDescription(transportInName);
 			soap12Endpoint.setProperty(WSDL2Constants.HTTP_LOCATION_TABLE, httpLocationTable);
-            soap12Endpoint.setProperty(WSDL2Constants.HTTP_LOCATION_TABLE_FOR_RESOURCE, httpLocationTableForResource);
 			axisService.addEndpoint(soap12EndpointName, soap12Endpoint);
 
 			/* Creates a HTTP endpoint if its http or https transport is used */
@@ -1129,7 +1220,6 @@ public class DBDeployer extends AbstractDeployer {
 				httpEndpoint.setParent(axisService);
 				httpEndpoint.setTransportInDescription(transportInName);
 				httpEndpoint.setProperty(WSDL2Constants.HTTP_LOCATION_TABLE, httpLocationTable);
-                httpEndpoint.setProperty(WSDL2Constants.HTTP_LOCATION_TABLE_FOR_RESOURCE, httpLocationTableForResource);
 				axisService.addEndpoint(httpEndpointName, httpEndpoint);
 			}
 		}
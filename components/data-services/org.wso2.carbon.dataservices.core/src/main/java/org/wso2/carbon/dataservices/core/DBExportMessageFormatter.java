@@ -0,0 +1,140 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.URL;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.axiom.om.OMDataSource;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMOutputFormat;
+import org.apache.axiom.om.impl.llom.OMSourcedElementImpl;
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.Constants;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.transport.MessageFormatter;
+import org.wso2.carbon.dataservices.common.DBConstants;
+import org.wso2.carbon.dataservices.core.engine.DSOMDataSource;
+import org.wso2.carbon.dataservices.core.engine.ExportResultWriter;
+
+/**
+ * Message formatter of the export output formats of data services, CSV and newline delimited JSON.
+ * The results are written straight from the rows of the query, one record per row, so the memory used
+ * does not depend on the size of the result. Other messages, e.g. faults, are written as a single record.
+ * It is enabled by registering it in axis2.xml for the export content types, e.g.
+ * &lt;messageFormatter contentType="text/csv"
+ * class="org.wso2.carbon.dataservices.core.DBExportMessageFormatter"/&gt; and
+ * &lt;messageFormatter contentType="application/x-ndjson"
+ * class="org.wso2.carbon.dataservices.core.DBExportMessageFormatter"/&gt;
+ */
+public class DBExportMessageFormatter implements MessageFormatter {
+
+	private static final String DEFAULT_CHARSET_ENCODING = "UTF-8";
+
+	public byte[] getBytes(MessageContext msgContext, OMOutputFormat format) throws AxisFault {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		this.write(msgContext, format, out, true);
+		return out.toByteArray();
+	}
+
+	public void writeTo(MessageContext msgContext, OMOutputFormat format, OutputStream out,
+			boolean preserve) throws AxisFault {
+		/* the response is compressed while it is streamed, if the client accepts it */
+		OutputStream responseOut = CompressingOutputStream.create(msgContext, out);
+		try {
+			this.write(msgContext, format, responseOut, preserve);
+			CompressingOutputStream.finish(responseOut);
+		} catch (IOException e) {
+			throw DBUtils.createAxisFault(e);
+		} finally {
+			CompressingOutputStream.release(responseOut);
+		}
+	}
+
+	private void write(MessageContext msgContext, OMOutputFormat format, OutputStream out,
+			boolean preserve) throws AxisFault {
+		String contentType = getExportContentType(msgContext);
+		String charSetEncoding = getCharSetEncoding(format);
+		OMElement element = msgContext.getEnvelope().getBody().getFirstElement();
+		if (element == null) {
+			return;
+		}
+		try {
+			if (element instanceof OMSourcedElementImpl) {
+				OMDataSource ds = ((OMSourcedElementImpl) element).getDataSource();
+				if (ds instanceof DSOMDataSource) {
+					((DSOMDataSource) ds).serializeExport(out, contentType, charSetEncoding);
+					return;
+				}
+			}
+			ExportResultWriter exportWriter = ExportResultWriter.create(contentType, new BufferedWriter(
+					new OutputStreamWriter(out, charSetEncoding)));
+			exportWriter.startRow();
+			if (preserve) {
+				element.serialize(exportWriter);
+			} else {
+				element.serializeAndConsume(exportWriter);
+			}
+			exportWriter.endRow();
+			exportWriter.flush();
+		} catch (XMLStreamException e) {
+			throw DBUtils.createAxisFault(e);
+		} catch (IOException e) {
+			throw DBUtils.createAxisFault(e);
+		}
+	}
+
+	public String getContentType(MessageContext msgContext, OMOutputFormat format,
+			String soapAction) {
+		return getExportContentType(msgContext) + "; charset=" + getCharSetEncoding(format);
+	}
+
+	public URL getTargetAddress(MessageContext msgContext, OMOutputFormat format,
+			URL targetURL) throws AxisFault {
+		return targetURL;
+	}
+
+	public String formatSOAPAction(MessageContext msgContext, OMOutputFormat format,
+			String soapAction) {
+		return null;
+	}
+
+	/**
+	 * Returns the export format of the message, CSV unless newline delimited JSON is selected.
+	 */
+	private static String getExportContentType(MessageContext msgContext) {
+		Object messageType = msgContext.getProperty(Constants.Configuration.MESSAGE_TYPE);
+		if (messageType != null && messageType.toString().startsWith(DBConstants.NDJSON_CONTENT_TYPE)) {
+			return DBConstants.NDJSON_CONTENT_TYPE;
+		}
+		return DBConstants.CSV_CONTENT_TYPE;
+	}
+
+	private static String getCharSetEncoding(OMOutputFormat format) {
+		String charSetEncoding = format != null ? format.getCharSetEncoding() : null;
+		return charSetEncoding != null ? charSetEncoding : DEFAULT_CHARSET_ENCODING;
+	}
+
+}
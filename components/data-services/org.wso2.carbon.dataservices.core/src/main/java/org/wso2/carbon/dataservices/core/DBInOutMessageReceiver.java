@@ -25,6 +25,7 @@ import org.apache.axis2.AxisFault;
 import org.apache.axis2.Constants;
 import org.apache.axis2.context.MessageContext;
 import org.apache.axis2.receivers.RawXMLINOutMessageReceiver;
+import org.apache.axis2.transport.http.HTTPConstants;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.dataservices.common.DBConstants;
@@ -59,6 +60,20 @@ public class DBInOutMessageReceiver extends RawXMLINOutMessageReceiver {
 			SOAPEnvelope envelope = fac.getDefaultEnvelope();
 			if (result != null) {
 				envelope.getBody().addChild(result);
+				/* export formats are selected here, since they can be requested with a parameter,
+				 * and they are streamed with chunked transfer encoding */
+				String exportContentType = DBUtils.getRequestedExportContentType(msgContext);
+				if (exportContentType != null) {
+					newMsgContext.setProperty(Constants.Configuration.MESSAGE_TYPE, exportContentType);
+					newMsgContext.setProperty(HTTPConstants.CHUNKED, Boolean.TRUE);
+				}
+				/* the compression of the response is applied by the message formatters */
+				String contentEncoding = DBUtils.getAcceptedContentEncoding(msgContext);
+				if (contentEncoding != null) {
+					newMsgContext.setProperty(DBConstants.RESPONSE_CONTENT_ENCODING, contentEncoding);
+					newMsgContext.setProperty(HTTPConstants.MC_HTTP_SERVLETRESPONSE,
+							msgContext.getProperty(HTTPConstants.MC_HTTP_SERVLETRESPONSE));
+				}
 			}
 			newMsgContext.setEnvelope(envelope);
 		} catch (Exception e) {
@@ -0,0 +1,190 @@
+/*
+ *  Copyright (c) 2005-2012, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core;
+
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.Constants;
+import org.apache.axis2.addressing.EndpointReference;
+import org.apache.axis2.builder.XFormURLEncodedBuilder;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.description.AxisEndpoint;
+import org.apache.axis2.description.AxisOperation;
+import org.apache.axis2.description.AxisService;
+import org.apache.axis2.description.HandlerDescription;
+import org.apache.axis2.description.Parameter;
+import org.apache.axis2.description.WSDL2Constants;
+import org.apache.axis2.engine.AbstractDispatcher;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.axis2.engine.Handler;
+import org.apache.axis2.engine.Phase;
+import org.apache.axis2.phaseresolver.PhaseMetadata;
+import org.apache.axis2.transport.http.HTTPConstants;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.dataservices.common.DBConstants;
+
+/**
+ * Dispatches the REST requests of data services to their operations with the resource path trie
+ * built at the deployment of each data service, instead of matching the request path with the regex
+ * of each resource in turn. The values of the path variables are set in the message context with
+ * the {@link DBConstants#RESOURCE_PATH_VARIABLES} property, which the data service requests take
+ * their path parameters from. The requests it does not resolve, e.g. of other services, are left to
+ * the next dispatchers.
+ * The data services deployer registers no table of HTTP location patterns for the
+ * HTTPLocationBasedDispatcher of the HTTP transport, so this dispatcher is the one resolving the
+ * resources; it is added first in the Dispatch phase by the deployer, see
+ * {@link #addToDispatchPhase(AxisConfiguration)}. Since the transport builds the input message before
+ * the handlers run, for the operation it resolved if any, the input message of a request with its
+ * parameters in the URL is built again for the operation resolved here.
+ */
+public class DBResourceDispatcher extends AbstractDispatcher {
+
+	public static final String NAME = "DBResourceDispatcher";
+
+	private static final Log log = LogFactory.getLog(DBResourceDispatcher.class);
+
+	/**
+	 * Adds a resource dispatcher first in the Dispatch phase of the in flow of the given configuration,
+	 * if it has none yet.
+	 * @param axisConfig The configuration of the data services
+	 */
+	public static void addToDispatchPhase(AxisConfiguration axisConfig) {
+		for (Phase phase : axisConfig.getInFlowPhases()) {
+			if (!PhaseMetadata.PHASE_DISPATCH.equals(phase.getPhaseName())) {
+				continue;
+			}
+			for (Handler handler : phase.getHandlers()) {
+				if (handler instanceof DBResourceDispatcher) {
+					return;
+				}
+			}
+			DBResourceDispatcher dispatcher = new DBResourceDispatcher();
+			dispatcher.initDispatcher();
+			phase.addHandler(dispatcher, 0);
+			return;
+		}
+		log.warn("No Dispatch phase found, the REST requests of data services are dispatched " +
+				"with the HTTP location of their resources");
+	}
+
+	@Override
+	public void initDispatcher() {
+		init(new HandlerDescription(NAME));
+	}
+
+	/**
+	 * Resolves the operation of a REST request of a data service with its resource path trie, replacing
+	 * the operation resolved by the HTTP transport, if any, which is kept in the message context with the
+	 * {@link DBConstants#RESOURCE_TRANSPORT_OPERATION} property.
+	 */
+	@Override
+	public InvocationResponse invoke(MessageContext msgContext) throws AxisFault {
+		AxisService service = msgContext.getAxisService();
+		if (service != null) {
+			AxisOperation transportOperation = msgContext.getAxisOperation();
+			AxisOperation operation = this.findOperation(service, msgContext);
+			if (operation != null) {
+				if (transportOperation != null) {
+					msgContext.setProperty(DBConstants.RESOURCE_TRANSPORT_OPERATION, transportOperation);
+				}
+				msgContext.setAxisOperation(operation);
+				AxisEndpoint endpoint = (AxisEndpoint) msgContext.getProperty(
+						WSDL2Constants.ENDPOINT_LOCAL_NAME);
+				if (endpoint != null) {
+					msgContext.setProperty(Constants.AXIS_BINDING_OPERATION,
+							endpoint.getBinding().getChild(operation.getName()));
+				}
+				if (operation != transportOperation && isURLRequest(msgContext)) {
+					msgContext.setEnvelope((SOAPEnvelope) new XFormURLEncodedBuilder().processDocument(
+							null, null, msgContext));
+				}
+			}
+		}
+		/* the services are found by the other dispatchers */
+		return InvocationResponse.CONTINUE;
+	}
+
+	/**
+	 * Checks if the parameters of the given request are all in its URL, i.e. it has no body which the
+	 * transport has already read.
+	 */
+	private static boolean isURLRequest(MessageContext msgContext) {
+		String method = (String) msgContext.getProperty(HTTPConstants.HTTP_METHOD);
+		return Constants.Configuration.HTTP_METHOD_GET.equals(method) ||
+				Constants.Configuration.HTTP_METHOD_DELETE.equals(method);
+	}
+
+	@Override
+	public AxisService findService(MessageContext messageContext) throws AxisFault {
+		/* the service is found by the other dispatchers */
+		return null;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public AxisOperation findOperation(AxisService service, MessageContext messageContext)
+			throws AxisFault {
+		if (!messageContext.isDoingREST()) {
+			return null;
+		}
+		Parameter trieParam = service.getParameter(DBConstants.RESOURCE_PATH_TRIE);
+		String method = (String) messageContext.getProperty(HTTPConstants.HTTP_METHOD);
+		EndpointReference to = messageContext.getTo();
+		if (trieParam == null || method == null || to == null || to.getAddress() == null) {
+			return null;
+		}
+		String path = getResourcePath(to.getAddress(), service.getName());
+		if (path == null) {
+			return null;
+		}
+		ResourcePathTrie.Match<AxisOperation> match =
+				((ResourcePathTrie<AxisOperation>) trieParam.getValue()).match(method, path);
+		if (match == null) {
+			return null;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Dispatched " + method + " " + path + " to the operation: " +
+					match.getValue().getName().getLocalPart());
+		}
+		messageContext.setProperty(DBConstants.RESOURCE_PATH_VARIABLES, match.getVariables());
+		return match.getValue();
+	}
+
+	/**
+	 * Returns the path of the request after the service name, and the endpoint name if any,
+	 * e.g. "/employees/1" for "/services/EmployeeService.HTTPEndpoint/employees/1".
+	 */
+	private static String getResourcePath(String address, String serviceName) {
+		int index = address.indexOf("/" + serviceName);
+		if (index < 0) {
+			return null;
+		}
+		String path = address.substring(index + serviceName.length() + 1);
+		if (path.startsWith(".")) {
+			index = path.indexOf('/');
+			path = index < 0 ? "" : path.substring(index);
+		} else if (path.length() > 0 && path.charAt(0) != '/' && path.charAt(0) != '?') {
+			/* another service with a longer name */
+			return null;
+		}
+		return path;
+	}
+
+}
@@ -0,0 +1,53 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.axiom.om.OMOutputFormat;
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.transport.http.SOAPMessageFormatter;
+
+/**
+ * Message formatter for the SOAP responses of data services, which compresses them while they are
+ * streamed when the client accepts it, see {@link CompressingOutputStream}.
+ * It is enabled by registering it in axis2.xml in place of the Axis2 formatter for
+ * text/xml and application/soap+xml, e.g.
+ * &lt;messageFormatter contentType="text/xml"
+ * class="org.wso2.carbon.dataservices.core.DBSOAPMessageFormatter"/&gt;
+ */
+public class DBSOAPMessageFormatter extends SOAPMessageFormatter {
+
+	@Override
+	public void writeTo(MessageContext msgContext, OMOutputFormat format, OutputStream out,
+			boolean preserve) throws AxisFault {
+		OutputStream responseOut = CompressingOutputStream.create(msgContext, out);
+		try {
+			super.writeTo(msgContext, format, responseOut, preserve);
+			CompressingOutputStream.finish(responseOut);
+		} catch (IOException e) {
+			throw DBUtils.createAxisFault(e);
+		} finally {
+			CompressingOutputStream.release(responseOut);
+		}
+	}
+
+}
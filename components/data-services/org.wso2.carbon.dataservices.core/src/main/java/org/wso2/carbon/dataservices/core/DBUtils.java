@@ -32,6 +32,7 @@ import org.apache.axis2.description.AxisServiceGroup;
 import org.apache.axis2.description.Parameter;
 import org.apache.axis2.description.java2wsdl.TypeTable;
 import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.axis2.transport.http.HTTPConstants;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
@@ -68,6 +69,7 @@ import org.wso2.securevault.SecretResolver;
 import org.wso2.securevault.SecretResolverFactory;
 
 import javax.naming.InitialContext;
+import javax.servlet.http.HttpServletRequest;
 import javax.transaction.TransactionManager;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLInputFactory;
@@ -101,6 +103,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Queue;
@@ -310,6 +313,129 @@ public class DBUtils {
         }
     }
 
+    /**
+     * Returns the export output format requested by the caller of the given message, with the export
+     * format request parameter, e.g. "?_format=csv", or else with the Accept header. The export formats
+     * must be listed in the Accept header with their exact media type and a non zero quality value; when
+     * both are, the one with the higher quality value is chosen, CSV on a tie.
+     *
+     * @param msgContext The message context of the request
+     * @return The content type of the export format, or null if none is requested
+     */
+    public static String getRequestedExportContentType(MessageContext msgContext) {
+        HttpServletRequest request = (HttpServletRequest) msgContext.getProperty(
+                HTTPConstants.MC_HTTP_SERVLETREQUEST);
+        if (request == null) {
+            return null;
+        }
+        String format = request.getParameter(DBConstants.EXPORT_FORMAT_PARAM);
+        if (format != null) {
+            if (DBConstants.EXPORT_FORMAT_CSV.equalsIgnoreCase(format)) {
+                return DBConstants.CSV_CONTENT_TYPE;
+            } else if (DBConstants.EXPORT_FORMAT_NDJSON.equalsIgnoreCase(format)) {
+                return DBConstants.NDJSON_CONTENT_TYPE;
+            }
+            return null;
+        }
+        String accept = request.getHeader(HTTPConstants.HEADER_ACCEPT);
+        if (accept == null) {
+            return null;
+        }
+        double csv = getAcceptedQuality(accept, DBConstants.CSV_CONTENT_TYPE);
+        double ndjson = getAcceptedQuality(accept, DBConstants.NDJSON_CONTENT_TYPE);
+        if (csv > 0 && csv >= ndjson) {
+            return DBConstants.CSV_CONTENT_TYPE;
+        } else if (ndjson > 0) {
+            return DBConstants.NDJSON_CONTENT_TYPE;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the quality value given to a media type in an Accept header. Only the media ranges naming
+     * the media type itself are considered, not the wildcards.
+     *
+     * @param accept    The value of the Accept header
+     * @param mediaType The media type, in lower case
+     * @return The quality value, 0 if the media type is not acceptable
+     */
+    private static double getAcceptedQuality(String accept, String mediaType) {
+        double quality = 0;
+        for (String mediaRange : accept.split(",")) {
+            String[] parts = mediaRange.split(";");
+            if (!mediaType.equals(parts[0].trim().toLowerCase(Locale.ENGLISH))) {
+                continue;
+            }
+            quality = Math.max(quality, getQualityValue(parts));
+        }
+        return quality;
+    }
+
+    /**
+     * Returns the quality value of an element of an Accept or Accept-Encoding header.
+     *
+     * @param parts The element split at the semicolons, the parameters following the value
+     * @return The "q" parameter, 1 if it is absent and 0 if it is invalid, i.e. not acceptable
+     */
+    private static double getQualityValue(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String[] param = parts[i].split("=", 2);
+            if (param.length == 2 && "q".equals(param[0].trim().toLowerCase(Locale.ENGLISH))) {
+                try {
+                    double quality = Double.parseDouble(param[1].trim());
+                    return quality >= 0 && quality <= 1 ? quality : 0;
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Returns the compression of the response accepted by the client in the Accept-Encoding header:
+     * the coding with the higher quality value, gzip on a tie, a wildcard standing for the codings
+     * which are not listed. The identity coding is always used when neither is acceptable.
+     * @param msgContext The message context of the request
+     * @return The content encoding, or null if the response cannot be compressed
+     */
+    public static String getAcceptedContentEncoding(MessageContext msgContext) {
+        HttpServletRequest request = (HttpServletRequest) msgContext.getProperty(
+                HTTPConstants.MC_HTTP_SERVLETREQUEST);
+        if (request == null) {
+            return null;
+        }
+        String acceptEncoding = request.getHeader(HTTPConstants.HEADER_ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return null;
+        }
+        /* the codings which are not listed, -1, are accepted with the quality of the wildcard */
+        double gzip = -1, deflate = -1, any = -1;
+        for (String value : acceptEncoding.split(",")) {
+            String[] parts = value.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ENGLISH);
+            if (DBConstants.CONTENT_ENCODING_GZIP.equals(coding) || "x-gzip".equals(coding)) {
+                gzip = Math.max(gzip, getQualityValue(parts));
+            } else if (DBConstants.CONTENT_ENCODING_DEFLATE.equals(coding)) {
+                deflate = Math.max(deflate, getQualityValue(parts));
+            } else if ("*".equals(coding)) {
+                any = Math.max(any, getQualityValue(parts));
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return DBConstants.CONTENT_ENCODING_GZIP;
+        } else if (deflate > 0) {
+            return DBConstants.CONTENT_ENCODING_DEFLATE;
+        }
+        return null;
+    }
+
     /**
      * Retrieves the current user's roles given the username.
      *
@@ -19,16 +19,23 @@
 package org.wso2.carbon.dataservices.core;
 
 import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMDataSource;
 import org.apache.axiom.om.OMDocument;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.impl.llom.OMSourcedElementImpl;
 import org.apache.axis2.context.MessageContext;
 import org.wso2.carbon.dataservices.common.DBConstants;
 import org.wso2.carbon.dataservices.core.dispatch.DataServiceRequest;
 import org.wso2.carbon.dataservices.core.dispatch.DispatchStatus;
+import org.wso2.carbon.dataservices.core.dispatch.SingleDataServiceRequest;
+import org.wso2.carbon.dataservices.core.engine.DSOMDataSource;
 import org.wso2.carbon.dataservices.core.engine.DataService;
+import org.wso2.carbon.dataservices.core.engine.ParamValue;
 
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import java.util.Map;
 
 /**
  * Processes and dispatches data service requests.
@@ -49,6 +56,31 @@ public class DataServiceProcessor {
 		}
 		return result;
 	}
+
+	/**
+	 * Dispatches a request to a data service of this server directly, without a message context,
+	 * e.g. for scheduled tasks. The result of the request, if any, is written out and discarded.
+	 * @param dataService The data service
+	 * @param requestName The name of the operation or the resource request
+	 * @param params The parameters of the request
+	 * @throws DataServiceFault If an error occurs in the request
+	 */
+	public static void dispatch(DataService dataService, String requestName,
+			Map<String, ParamValue> params) throws DataServiceFault {
+		DispatchStatus.clearRequestStatus();
+		OMElement result = new SingleDataServiceRequest(dataService, requestName, params).dispatch();
+		if (result instanceof OMSourcedElementImpl) {
+			/* a streamed result is only executed when it is written */
+			OMDataSource ds = ((OMSourcedElementImpl) result).getDataSource();
+			if (ds instanceof DSOMDataSource) {
+				try {
+					((DSOMDataSource) ds).executeInOnly();
+				} catch (XMLStreamException e) {
+					throw new DataServiceFault(e, "Error in writing the result of request: " + requestName);
+				}
+			}
+		}
+	}
 	
 	private static OMElement generateRequestSuccessElement() {
 		OMFactory fac = OMAbstractFactory.getOMFactory();
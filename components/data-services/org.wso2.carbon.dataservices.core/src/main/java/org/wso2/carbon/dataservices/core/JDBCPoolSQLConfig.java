@@ -24,6 +24,7 @@ import org.wso2.carbon.dataservices.common.DBConstants.RDBMS;
 import org.wso2.carbon.dataservices.common.RDBMSUtils;
 import org.wso2.carbon.dataservices.core.description.config.SQLConfig;
 import org.wso2.carbon.dataservices.core.engine.DataService;
+import org.wso2.carbon.dataservices.core.jmx.ConnectionPoolStatistics;
 import org.wso2.carbon.dataservices.core.odata.ODataDataHandler;
 import org.wso2.carbon.dataservices.core.odata.ODataServiceFault;
 import org.wso2.carbon.ndatasource.common.DataSourceException;
@@ -34,19 +35,51 @@ import org.wso2.carbon.ndatasource.rdbms.RDBMSDataSourceConstants;
 import org.wso2.carbon.ndatasource.rdbms.utils.RDBMSDataSourceUtils;
 
 import javax.xml.stream.XMLStreamException;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class represents a Tomcat JDBC Pool based SQL data source configuration.
  */
 public class JDBCPoolSQLConfig extends SQLConfig {
 
+	private static final int DEFAULT_ADAPTIVE_POOL_MIN_ACTIVE = 5;
+
+	private static final int DEFAULT_ADAPTIVE_POOL_MAX_ACTIVE = 100;
+
+	private static final int DEFAULT_ADAPTIVE_POOL_TARGET_WAIT = 10;
+
+	private static final int DEFAULT_ADAPTIVE_POOL_INTERVAL = 30000;
+
+	/**
+	 * Runs the adaptive sizing of all the pools, on a daemon thread of its own so that the resizing is neither
+	 * delayed by nor delays the other scheduled tasks of the data services.
+	 */
+	private static final ScheduledExecutorService poolSizingExecutor =
+			Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "jdbc-pool-adaptive-sizing");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
 	private DataSource dataSource;
 
+	private final ConnectionPoolStatistics poolStatistics = new ConnectionPoolStatistics();
+
+	private ScheduledFuture<?> adaptiveSizing;
+
 	public JDBCPoolSQLConfig(DataService dataService, String configId, String type, Map<String, String> properties,
 	                         boolean odataEnable, boolean isPublicOData, String creator) throws DataServiceFault {
 		super(dataService, configId, type, RDBMSUtils.convertConfigPropsFromV2toV3(properties), odataEnable, isPublicOData, creator);
@@ -61,7 +94,9 @@ public class JDBCPoolSQLConfig extends SQLConfig {
 			        try {
 				        RDBMSDataSource rdbmsDS = new RDBMSDataSource(
 						        this.createConfigFromProps(this.getProperties()));
-				        this.dataSource = rdbmsDS.getDataSource();
+				        DataSource ds = rdbmsDS.getDataSource();
+				        this.startAdaptiveSizing(ds);
+				        this.dataSource = ds;
 			        } catch (Exception e) {
 				        throw new DataServiceFault(e,
 						        "Error creating JDBC Pool SQL Config: "	+ e.getMessage());
@@ -88,11 +123,66 @@ public class JDBCPoolSQLConfig extends SQLConfig {
 	}
 
 	@Override
-	public void close() {
+	public ConnectionPoolStatistics getPoolStatistics() {
+		return poolStatistics;
+	}
+
+	@Override
+	protected void connectionBorrowed(long nanos, SQLException error) {
+		/* the pool reports an exhausted pool, i.e. a borrow timeout, with a "Pool empty" message */
+		boolean timeout = error != null && error.getMessage() != null && error.getMessage().contains("Pool empty");
+		DataSource ds = this.dataSource;
+		this.poolStatistics.recordBorrow(nanos, timeout, ds != null ? ds.getActive() : 0);
+	}
+
+	@Override
+	public synchronized void close() {
+		/* synchronized with the activation, which would otherwise create the closed pool again */
+		this.setClosed();
+		if (this.adaptiveSizing != null) {
+			this.adaptiveSizing.cancel(false);
+		}
 		if (this.dataSource != null) {
 			this.dataSource.close();
 		}		
 	}
+
+	/**
+	 * Starts resizing the pool periodically if the adaptive sizing is enabled. The pool is created with the
+	 * upper bound as its maximum size, so that its internal queues can hold all the connections, and then
+	 * it starts with the configured maximum size, kept within the bounds.
+	 */
+	private void startAdaptiveSizing(DataSource ds) throws DataServiceFault {
+		if (!Boolean.parseBoolean(this.getProperty(RDBMS.ADAPTIVE_POOL_SIZING))) {
+			return;
+		}
+		int minActive = this.getIntProperty(RDBMS.ADAPTIVE_POOL_MIN_ACTIVE, DEFAULT_ADAPTIVE_POOL_MIN_ACTIVE);
+		int maxActive = this.getIntProperty(RDBMS.ADAPTIVE_POOL_MAX_ACTIVE, DEFAULT_ADAPTIVE_POOL_MAX_ACTIVE);
+		int targetWait = this.getIntProperty(RDBMS.ADAPTIVE_POOL_TARGET_WAIT, DEFAULT_ADAPTIVE_POOL_TARGET_WAIT);
+		int interval = this.getIntProperty(RDBMS.ADAPTIVE_POOL_INTERVAL, DEFAULT_ADAPTIVE_POOL_INTERVAL);
+		if (minActive < 1 || maxActive < minActive || interval < 1) {
+			throw new DataServiceFault("Invalid adaptive pool sizing bounds in config: " + this.getConfigId() +
+					", " + RDBMS.ADAPTIVE_POOL_MIN_ACTIVE + ": " + minActive + ", " +
+					RDBMS.ADAPTIVE_POOL_MAX_ACTIVE + ": " + maxActive);
+		}
+		int initialActive = this.getIntProperty(RDBMS.MAX_ACTIVE, minActive);
+		ds.setMaxActive(Math.max(minActive, Math.min(maxActive, initialActive)));
+		this.adaptiveSizing = poolSizingExecutor.scheduleAtFixedRate(new AdaptivePoolSizer(this.getConfigId(), ds,
+				this.poolStatistics, minActive, maxActive, targetWait), interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	private int getIntProperty(String name, int defaultValue) throws DataServiceFault {
+		String value = this.getProperty(name);
+		if (DBUtils.isEmptyString(value)) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new DataServiceFault(e, "Invalid value for property '" + name + "' in config: " +
+					this.getConfigId() + ": " + value);
+		}
+	}
 	
 	private RDBMSConfiguration createConfigFromProps(Map<String, String> props) 
 			throws DataSourceException, XMLStreamException {
@@ -101,6 +191,11 @@ public class JDBCPoolSQLConfig extends SQLConfig {
 		RDBMSConfiguration config = new RDBMSConfiguration();
 		this.handleExternalDataSource(config, props);
 		this.filterJDBCPoolProps(props);
+		if (Boolean.parseBoolean(this.getProperty(RDBMS.ADAPTIVE_POOL_SIZING))) {
+			String maxActive = this.getProperty(RDBMS.ADAPTIVE_POOL_MAX_ACTIVE);
+			props.put(RDBMS.MAX_ACTIVE, DBUtils.isEmptyString(maxActive) ?
+					String.valueOf(DEFAULT_ADAPTIVE_POOL_MAX_ACTIVE) : maxActive.trim());
+		}
 		RDBMSDataSourceUtils.assignBeanProps(config,
 				new HashMap<String, Object>(props));
 		this.handlePostConfigInit(config);
@@ -140,6 +235,11 @@ public class JDBCPoolSQLConfig extends SQLConfig {
 		props.remove(RDBMS.DYNAMIC_USER_AUTH_CLASS);
 		props.remove(RDBMS.DYNAMIC_USER_AUTH_MAPPING);
                 props.remove(RDBMS.DYNAMIC_ODATA_TABLE_MAPPING);
+		props.remove(RDBMS.ADAPTIVE_POOL_SIZING);
+		props.remove(RDBMS.ADAPTIVE_POOL_MIN_ACTIVE);
+		props.remove(RDBMS.ADAPTIVE_POOL_MAX_ACTIVE);
+		props.remove(RDBMS.ADAPTIVE_POOL_TARGET_WAIT);
+		props.remove(RDBMS.ADAPTIVE_POOL_INTERVAL);
 	}
 	
 	private void handlePostConfigInit(RDBMSConfiguration config) {
@@ -0,0 +1,276 @@
+/*
+ *  Copyright (c) 2005-2012, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves the HTTP method and the path of a request to the resource it is mapped to, with a trie of
+ * the segments of the resource path templates, e.g. "employees/{id}/orders". The lookup walks the
+ * segments of the request path once, preferring literal segments over the ones with variables, and
+ * collects the values of the variables on the way, so its cost depends on the depth of the path
+ * instead of the number of resources. The trie is populated at the deployment of the data service,
+ * before it is used for lookups.
+ */
+public class ResourcePathTrie<T> {
+
+	private final Map<String, Node<T>> roots = new HashMap<String, Node<T>>();
+
+	/**
+	 * Adds a resource to the trie.
+	 * @param method The HTTP method of the resource
+	 * @param pathTemplate The path of the resource, with the variables in braces
+	 * @param value The value the resource is resolved to
+	 */
+	public synchronized void add(String method, String pathTemplate, T value) {
+		String key = method.toUpperCase(Locale.ENGLISH);
+		Node<T> node = this.roots.get(key);
+		if (node == null) {
+			node = new Node<T>();
+			this.roots.put(key, node);
+		}
+		List<String> variableNames = new ArrayList<String>();
+		for (String segment : split(pathTemplate)) {
+			node = node.addChild(segment, variableNames);
+		}
+		node.resource = new Resource<T>(value, variableNames.toArray(new String[variableNames.size()]));
+	}
+
+	/**
+	 * Finds the resource of a request.
+	 * @param method The HTTP method of the request
+	 * @param path The path of the request, relative to the service, a query string is ignored
+	 * @return The matching resource with the values of its variables, or null if there is none
+	 */
+	public Match<T> match(String method, String path) {
+		Node<T> root = this.roots.get(method.toUpperCase(Locale.ENGLISH));
+		if (root == null) {
+			return null;
+		}
+		return root.match(split(path), 0, new ArrayList<String>());
+	}
+
+	private static String[] split(String path) {
+		int end = path.length();
+		int index = path.indexOf('?');
+		if (index >= 0) {
+			end = index;
+		}
+		index = path.indexOf('#');
+		if (index >= 0 && index < end) {
+			end = index;
+		}
+		int start = 0;
+		while (start < end && path.charAt(start) == '/') {
+			start++;
+		}
+		while (end > start && path.charAt(end - 1) == '/') {
+			end--;
+		}
+		if (start == end) {
+			return new String[0];
+		}
+		return path.substring(start, end).split("/", -1);
+	}
+
+	/**
+	 * A resource found for a request.
+	 */
+	public static class Match<T> {
+
+		private final T value;
+
+		private final Map<String, String> variables;
+
+		private Match(T value, Map<String, String> variables) {
+			this.value = value;
+			this.variables = variables;
+		}
+
+		public T getValue() {
+			return value;
+		}
+
+		/**
+		 * Returns the values of the variables of the resource path, in their order in the path.
+		 */
+		public Map<String, String> getVariables() {
+			return variables;
+		}
+
+	}
+
+	private static class Resource<T> {
+
+		private final T value;
+
+		private final String[] variableNames;
+
+		private Resource(T value, String[] variableNames) {
+			this.value = value;
+			this.variableNames = variableNames;
+		}
+
+		private Match<T> match(List<String> values) {
+			if (this.variableNames.length == 0) {
+				return new Match<T>(this.value, Collections.<String, String>emptyMap());
+			}
+			Map<String, String> variables = new LinkedHashMap<String, String>();
+			for (int i = 0; i < this.variableNames.length; i++) {
+				variables.put(this.variableNames[i], values.get(i));
+			}
+			return new Match<T>(this.value, variables);
+		}
+
+	}
+
+	private static class Node<T> {
+
+		/* children of the literal segments */
+		private Map<String, Node<T>> literals;
+
+		/* children of the segments mixing literal text and variables, e.g. "{name}.{ext}", by their regex */
+		private Map<String, PatternChild<T>> patterns;
+
+		/* child of the segments made of a single variable */
+		private Node<T> variable;
+
+		private Resource<T> resource;
+
+		private Node<T> addChild(String segment, List<String> variableNames) {
+			int open = segment.indexOf('{');
+			if (open < 0) {
+				if (this.literals == null) {
+					this.literals = new HashMap<String, Node<T>>();
+				}
+				Node<T> child = this.literals.get(segment);
+				if (child == null) {
+					child = new Node<T>();
+					this.literals.put(segment, child);
+				}
+				return child;
+			}
+			if (open == 0 && segment.indexOf('}') == segment.length() - 1 &&
+					segment.indexOf('{', 1) < 0) {
+				variableNames.add(segment.substring(1, segment.length() - 1));
+				if (this.variable == null) {
+					this.variable = new Node<T>();
+				}
+				return this.variable;
+			}
+			StringBuilder regex = new StringBuilder();
+			int index = 0;
+			while (open >= 0) {
+				int close = segment.indexOf('}', open);
+				if (close < 0) {
+					break;
+				}
+				if (open > index) {
+					regex.append(Pattern.quote(segment.substring(index, open)));
+				}
+				regex.append("(.+?)");
+				variableNames.add(segment.substring(open + 1, close));
+				index = close + 1;
+				open = segment.indexOf('{', index);
+			}
+			if (index < segment.length()) {
+				regex.append(Pattern.quote(segment.substring(index)));
+			}
+			if (this.patterns == null) {
+				this.patterns = new LinkedHashMap<String, PatternChild<T>>();
+			}
+			PatternChild<T> child = this.patterns.get(regex.toString());
+			if (child == null) {
+				child = new PatternChild<T>(Pattern.compile(regex.toString()));
+				this.patterns.put(regex.toString(), child);
+			}
+			return child.node;
+		}
+
+		private Match<T> match(String[] segments, int index, List<String> values) {
+			if (index == segments.length) {
+				return this.resource != null ? this.resource.match(values) : null;
+			}
+			String segment = segments[index];
+			Match<T> result;
+			if (this.literals != null) {
+				Node<T> child = this.literals.get(segment);
+				if (child != null) {
+					result = child.match(segments, index + 1, values);
+					if (result != null) {
+						return result;
+					}
+				}
+			}
+			int size = values.size();
+			if (this.patterns != null) {
+				for (PatternChild<T> child : this.patterns.values()) {
+					Matcher matcher = child.pattern.matcher(segment);
+					if (matcher.matches()) {
+						for (int i = 1; i <= matcher.groupCount(); i++) {
+							values.add(matcher.group(i));
+						}
+						result = child.node.match(segments, index + 1, values);
+						if (result != null) {
+							return result;
+						}
+						truncate(values, size);
+					}
+				}
+			}
+			if (this.variable != null && segment.length() > 0) {
+				values.add(segment);
+				result = this.variable.match(segments, index + 1, values);
+				if (result != null) {
+					return result;
+				}
+				truncate(values, size);
+			}
+			return null;
+		}
+
+		private static void truncate(List<String> values, int size) {
+			while (values.size() > size) {
+				values.remove(values.size() - 1);
+			}
+		}
+
+	}
+
+	private static class PatternChild<T> {
+
+		private final Pattern pattern;
+
+		private final Node<T> node = new Node<T>();
+
+		private PatternChild(Pattern pattern) {
+			this.pattern = pattern;
+		}
+
+	}
+
+}
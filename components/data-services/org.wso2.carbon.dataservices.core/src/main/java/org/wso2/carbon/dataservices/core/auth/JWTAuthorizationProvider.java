@@ -41,7 +41,9 @@ import java.security.SignatureException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
@@ -62,13 +64,51 @@ public class JWTAuthorizationProvider implements AuthorizationProvider {
     private static final String CLAIM_VALUE_SEPARATOR = "\":\"";
     private static final String ESCAPED_DOUBLE_QUOTATION = "\"";
     private static final String USERNAME = "username";
+    private static final String ROLE_CACHE_TIMEOUT_PROPERTY_KEY = "roleCacheTimeout";
+
+    //Time in milliseconds the roles of a verified token are used before they are looked up again, by default.
+    private static final long DEFAULT_ROLE_CACHE_TIMEOUT = 60000;
+
+    //Maximum number of verified tokens kept in memory.
+    private static final int MAX_VERIFIED_TOKENS = 1000;
+    private static final Pattern CERT_THUMB_PATTERN = Pattern.compile("^[^:]*:[^:]*:[^:]*:\"(.+)\"}$");
+    private static final Pattern EXPIRY_PATTERN = Pattern.compile("\"exp\"\\s*:\\s*(\\d+)");
 
     private static ConcurrentHashMap<KeyStore, Certificate> publicCerts = new ConcurrentHashMap<KeyStore, Certificate>();
     private static ConcurrentHashMap<Integer, KeyStore> keyStores = new ConcurrentHashMap<Integer, KeyStore>();
 
+    /**
+     * Tokens whose signature has been verified, until their expiry, keyed by tenant id and hash of the token.
+     */
+    private final Map<String, VerifiedToken> verifiedTokens = Collections.synchronizedMap(
+            new LinkedHashMap<String, VerifiedToken>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, VerifiedToken> eldest) {
+                    return size() > MAX_VERIFIED_TOKENS;
+                }
+            });
+
+    private long roleCacheTimeout = DEFAULT_ROLE_CACHE_TIMEOUT;
+
+    /**
+     * The roles of a verified token are kept for the role cache timeout, which is usually much shorter than
+     * the validity of the token, so that the changes of the roles of a user are applied to the cached tokens.
+     */
     @Override
     public String[] getUserRoles(MessageContext msgContext) throws DataServiceFault {
-        return DBUtils.getUserRoles(getUsername(msgContext)); //need to retrieve from msgcontext
+        VerifiedToken token = getVerifiedToken(msgContext);
+        if (token == null) {
+            return getRolesOfUser(null);
+        }
+        CachedRoles roles = token.roles;
+        long now = currentTimeMillis();
+        if (roles == null || roles.expiry <= now) {
+            roles = new CachedRoles(getRolesOfUser(token.username), now + roleCacheTimeout);
+            token.roles = roles;
+        }
+        return roles.roles.clone();
     }
 
     @Override
@@ -79,6 +119,11 @@ public class JWTAuthorizationProvider implements AuthorizationProvider {
 
     @Override
     public String getUsername(MessageContext msgContext) throws DataServiceFault {
+        VerifiedToken token = getVerifiedToken(msgContext);
+        return token == null ? null : token.username;
+    }
+
+    private VerifiedToken getVerifiedToken(MessageContext msgContext) throws DataServiceFault {
         try {
             return extractUsernameFromJWT(msgContext);
         } catch (UnsupportedEncodingException e) {
@@ -94,6 +139,39 @@ public class JWTAuthorizationProvider implements AuthorizationProvider {
     @Override
     public void init(Map<String, String> authorizationProps) throws DataServiceFault {
         endUserClaim = authorizationProps.get(ENDUSER_CLAIM_PROPERTY_KEY);
+        String timeout = authorizationProps.get(ROLE_CACHE_TIMEOUT_PROPERTY_KEY);
+        if (!DBUtils.isEmptyString(timeout)) {
+            try {
+                roleCacheTimeout = Long.parseLong(timeout.trim());
+            } catch (NumberFormatException e) {
+                throw new DataServiceFault(e, "Invalid JWT role cache timeout: " + timeout);
+            }
+        }
+    }
+
+    /**
+     * Returns the id of the tenant of the request.
+     * @return tenant id
+     */
+    protected int getTenantId() {
+        return CarbonContext.getThreadLocalCarbonContext().getTenantId();
+    }
+
+    /**
+     * Returns the roles of the user.
+     * @param username user name, null if the request has no token
+     * @return roles of the user
+     */
+    protected String[] getRolesOfUser(String username) throws DataServiceFault {
+        return DBUtils.getUserRoles(username);
+    }
+
+    /**
+     * Returns the current time, which the expiry of the tokens and their roles is checked against.
+     * @return time in milliseconds
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
     }
 
     /**
@@ -101,9 +179,11 @@ public class JWTAuthorizationProvider implements AuthorizationProvider {
      * sets it to the message context.
      * Example Usage - is to enable user name token security in DSS and use the JWT token sent from APIM to
      * get the roles of the user in order to utilize the content filtering feature of DSS.
+     * A token whose signature has been verified is kept until its exp claim, so that the following requests
+     * using the same token skip the verification.
      * @param msgContext
      */
-    private String extractUsernameFromJWT(MessageContext msgContext) throws UnsupportedEncodingException, AxisFault {
+    private VerifiedToken extractUsernameFromJWT(MessageContext msgContext) throws UnsupportedEncodingException, AxisFault {
         if (endUserClaim == null || endUserClaim.isEmpty()) {
             endUserClaim = ENDUSER_CLAIM;
         }
@@ -114,34 +194,74 @@ public class JWTAuthorizationProvider implements AuthorizationProvider {
             //Get the JWT token from the header.
             String jwt = obj.getHeader(JWT_TOKEN_HEADER_NAME);
 
-            if (jwt != null && validateSignature(jwt)) {
-
-                String jwtToken = null;
+            if (jwt != null) {
+                String cacheKey = getTenantId() + ":" + hash(jwt);
+                VerifiedToken token = verifiedTokens.get(cacheKey);
+                if (token != null && token.expiry > currentTimeMillis()) {
+                    return token;
+                }
+                validateSignature(jwt);
 
                 //Decode the JWT token.
-                jwtToken = new String(org.apache.axiom.om.util.Base64.decode(jwt), UTF_8_ENCODING);
-
-                if (jwtToken != null) {
-                    //Extract the end user claim.
-                    String[] tempStr4 = jwtToken.split(endUserClaim + CLAIM_VALUE_SEPARATOR);
-                    String[] decoded = tempStr4[1].split(ESCAPED_DOUBLE_QUOTATION);
-                    System.out.println("tempStr4= " + tempStr4.toString());
-                    System.out.println("decoded=" + decoded.toString());
-                    //Set username to message context.
-                    return decoded[0];
+                String jwtToken = new String(org.apache.axiom.om.util.Base64.decode(jwt), UTF_8_ENCODING);
+
+                //Extract the end user claim.
+                String[] tempStr4 = jwtToken.split(endUserClaim + CLAIM_VALUE_SEPARATOR);
+                String[] decoded = tempStr4[1].split(ESCAPED_DOUBLE_QUOTATION);
+                token = new VerifiedToken(decoded[0], getExpiry(jwt));
+                if (token.expiry > currentTimeMillis()) {
+                    verifiedTokens.put(cacheKey, token);
                 }
+                return token;
             }
         }
         return null;
     }
 
+    /**
+     * Returns the expiry time of the token, from the exp claim of its body.
+     * @param signedJWTToken
+     * @return expiry in milliseconds, 0 if the token has no exp claim
+     */
+    private long getExpiry(String signedJWTToken) {
+        String[] parts = signedJWTToken.split("\\.");
+        if (parts.length < 2) {
+            return 0;
+        }
+        Matcher matcher = EXPIRY_PATTERN.matcher(new String(Base64Utils.decode(parts[1])));
+        if (!matcher.find()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(matcher.group(1)) * 1000;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the SHA-256 hash of the token, so that the tokens are not kept in memory.
+     * @param signedJWTToken
+     * @return hex string of the hash
+     */
+    private String hash(String signedJWTToken) throws AxisFault {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            return hexify(sha.digest(signedJWTToken.getBytes(UTF_8_ENCODING)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AxisFault("SHA-256 cannot be found");
+        } catch (UnsupportedEncodingException e) {
+            throw new AxisFault("UTF-8 encoding is not supported");
+        }
+    }
+
     /***
      * Validates the signature of the JWT token.
      * @param signedJWTToken
      * @return
      * @throws org.apache.axis2.AxisFault
      */
-    private Boolean validateSignature(String signedJWTToken) throws AxisFault{
+    protected Boolean validateSignature(String signedJWTToken) throws AxisFault{
 
         //verify signature
         boolean isVerified = false;
@@ -152,8 +272,7 @@ public class JWTAuthorizationProvider implements AuthorizationProvider {
 
         String decodedHeader = new String(Base64Utils.decode(base64EncodedHeader));
         byte[] decodedSignature = Base64Utils.decode(base64EncodedSignature);
-        Pattern pattern = Pattern.compile("^[^:]*:[^:]*:[^:]*:\"(.+)\"}$");
-        Matcher matcher = pattern.matcher(decodedHeader);
+        Matcher matcher = CERT_THUMB_PATTERN.matcher(decodedHeader);
         String base64EncodedCertThumb = null;
         if(matcher.find()){
             base64EncodedCertThumb = matcher.group(1);
@@ -210,7 +329,7 @@ public class JWTAuthorizationProvider implements AuthorizationProvider {
         //get tenant domain
         String tenantDomain = CarbonContext.getThreadLocalCarbonContext().getTenantDomain();
         //get tenantId
-        int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+        int tenantId = getTenantId();
         KeyStore keyStore = keyStores.get(tenantId);
 
         if(keyStore == null){
@@ -300,4 +419,31 @@ public class JWTAuthorizationProvider implements AuthorizationProvider {
 
         return buf.toString();
     }
+
+    /**
+     * User name and roles of a token whose signature has been verified.
+     */
+    private static class VerifiedToken {
+        private final String username;
+        private final long expiry;
+        private volatile CachedRoles roles;
+
+        private VerifiedToken(String username, long expiry) {
+            this.username = username;
+            this.expiry = expiry;
+        }
+    }
+
+    /**
+     * Roles of a user, until their expiry.
+     */
+    private static class CachedRoles {
+        private final String[] roles;
+        private final long expiry;
+
+        private CachedRoles(String[] roles, long expiry) {
+            this.roles = roles;
+            this.expiry = expiry;
+        }
+    }
 }
@@ -56,20 +56,24 @@ public class CassandraConfig extends Config {
     
     private Cluster cluster;
     
-    private Session session;
+    private volatile Session session;
     
     private boolean nativeBatchRequestsSupported;
 
     public CassandraConfig(DataService dataService, String configId, Map<String, String> properties,
                            boolean odataEnable) throws DataServiceFault {
         super(dataService, configId, DataSourceTypes.CASSANDRA, properties, odataEnable);
-        initializeClusterSession(properties);
+        if (!isLazyInit() || odataEnable) {
+            initializeClusterSession(properties);
+        }
     }
     
     public CassandraConfig(DataService dataService, String configId, Map<String, String> properties,
             boolean odataEnable, boolean isPublicOData, String creator) throws DataServiceFault {
         super(dataService, configId, DataSourceTypes.CASSANDRA, properties, odataEnable, isPublicOData, creator);
-        initializeClusterSession(properties);
+        if (!isLazyInit() || odataEnable) {
+            initializeClusterSession(properties);
+        }
     }
     
     private void initializeClusterSession(Map<String, String> properties) throws DataServiceFault {
@@ -78,22 +82,42 @@ public class CassandraConfig extends Config {
         String keyspace = properties.get(DBConstants.Cassandra.KEYSPACE);
         this.cluster = builder.build();
         try {
+            Session session;
             if (keyspace != null && keyspace.trim().length() > 0) {
-                this.session = this.cluster.connect(keyspace);
+                session = this.cluster.connect(keyspace);
             } else {
-                this.session = this.cluster.connect();
+                session = this.cluster.connect();
             }
-            this.nativeBatchRequestsSupported = this.session.getCluster().
+            this.nativeBatchRequestsSupported = session.getCluster().
                     getConfiguration().getProtocolOptions().getProtocolVersion().toInt() > 1;
+            this.session = session;
         } catch (NoHostAvailableException e) {
+            this.cluster.close();
             throw new DataServiceFault(e, DBConstants.FaultCodes.CONNECTION_UNAVAILABLE_ERROR, e.getMessage());
         }
     }
 
-    public boolean isNativeBatchRequestsSupported() {
+    public boolean isNativeBatchRequestsSupported() throws DataServiceFault {
+        this.activate();
         return nativeBatchRequestsSupported;
     }
 
+    /**
+     * Connects to the cluster, if it is not connected yet, i.e. with the lazy initialization.
+     * A closed config is not connected again, since its cluster would not be closed.
+     */
+    @Override
+    public void activate() throws DataServiceFault {
+        if (this.session == null) {
+            synchronized (this) {
+                if (this.session == null) {
+                    this.checkNotClosed();
+                    initializeClusterSession(this.getProperties());
+                }
+            }
+        }
+    }
+
     private Builder populateLoadBalancingProp(Map<String, String> properties, Builder builder) throws DataServiceFault {
         String loadBalancingProp = properties.get(DBConstants.Cassandra.LOAD_BALANCING_POLICY);
         if (loadBalancingProp != null) {
@@ -355,7 +379,8 @@ public class CassandraConfig extends Config {
         return builder;
     }
     
-    public Session getSession() {
+    public Session getSession() throws DataServiceFault {
+        this.activate();
         return session;
     }
     
@@ -366,19 +391,23 @@ public class CassandraConfig extends Config {
 
     @Override
     public synchronized void close() {
-        this.session.close();
-        this.cluster.close();
+        this.setClosed();
+        if (this.session != null) {
+            this.session.close();
+            this.cluster.close();
+        }
     }
 
     @Override
-    public ODataDataHandler createODataHandler() throws ODataServiceFault {
+    public ODataDataHandler createODataHandler() throws DataServiceFault {
         /*
         In OData Cassandra Data handler we need the Keyspace to determine the Meta data of column families (tables),
         Therefore Keyspace is essential for creating OData Cassandra services.
         */
         String keySpace = getProperty(DBConstants.Cassandra.KEYSPACE);
         if (keySpace != null) {
-            return new CassandraDataHandler(getConfigId(), getSession(), keySpace);
+            return new CassandraDataHandler(getConfigId(), getSession(), keySpace,
+                                            getProperty(DBConstants.Cassandra.ODATA_INDEXED_COLUMNS));
         } else {
             throw new ODataServiceFault("Please specify the Cassandra keyspace.");
         }
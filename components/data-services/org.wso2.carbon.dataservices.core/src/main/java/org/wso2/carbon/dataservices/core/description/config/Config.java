@@ -18,6 +18,7 @@
  */
 package org.wso2.carbon.dataservices.core.description.config;
 
+import org.wso2.carbon.dataservices.common.DBConstants;
 import org.wso2.carbon.dataservices.core.DataServiceFault;
 import org.wso2.carbon.dataservices.core.engine.DataService;
 import org.wso2.carbon.dataservices.core.odata.ODataDataHandler;
@@ -43,6 +44,9 @@ public abstract class Config {
 	
 	private String creator;
 
+	/* set when the config is closed, after which it is not activated again */
+	private volatile boolean closed;
+
 	public Config(DataService dataService, String configId, String type, Map<String, String> properties, boolean oDataEnabled, boolean oDataIsPublic, String creator) {
 		this.dataService = dataService;
 		this.configId = configId;
@@ -87,6 +91,47 @@ public abstract class Config {
 	}
 	
 	public abstract boolean isActive();
+
+	/**
+	 * Initializes the resources of this config which are not initialized at the deployment of its
+	 * data service with the lazy initialization, e.g. the check of the data source connectivity.
+	 * It does nothing if they are already initialized, and fails if the config is closed.
+	 * @throws DataServiceFault
+	 */
+	public void activate() throws DataServiceFault {
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Marks this config as closed, so that it is not activated again, e.g. by a warm-up still running
+	 * when its data service is undeployed.
+	 */
+	protected void setClosed() {
+		this.closed = true;
+	}
+
+	/**
+	 * Fails if this config is closed, before its resources are initialized by the activation.
+	 * @throws DataServiceFault
+	 */
+	protected void checkNotClosed() throws DataServiceFault {
+		if (this.closed) {
+			throw new DataServiceFault("The config '" + this.getConfigId() + "' of the data service '" +
+					this.getDataService().getName() + "' is closed");
+		}
+	}
+
+	/**
+	 * Returns true if the configs are initialized on their first use, instead of at the deployment
+	 * of their data service.
+	 * @see DBConstants#DSS_LAZY_CONFIG_INIT
+	 */
+	public static boolean isLazyInit() {
+		return Boolean.getBoolean(DBConstants.DSS_LAZY_CONFIG_INIT);
+	}
 	
 	public abstract void close();
 
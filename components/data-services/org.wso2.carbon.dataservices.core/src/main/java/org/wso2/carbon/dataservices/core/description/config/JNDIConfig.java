@@ -47,11 +47,13 @@ public class JNDIConfig extends SQLConfig {
 		if (!dataService.isServiceInactive()) {
 			this.validateJNDIConfig();
 		    this.dataSource = this.createDataSource();
-		    try {
-			    this.initSQLDataSource();
-		    } catch (SQLException e) {
-			    throw new DataServiceFault(e, DBConstants.FaultCodes.CONNECTION_UNAVAILABLE_ERROR,
-			    		e.getMessage());
+		    if (this.isInitOnCreate()) {
+			    try {
+				    this.initSQLDataSource();
+			    } catch (SQLException e) {
+				    throw new DataServiceFault(e, DBConstants.FaultCodes.CONNECTION_UNAVAILABLE_ERROR,
+				    		e.getMessage());
+			    }
 		    }
 		}
 	}
@@ -125,7 +127,8 @@ public class JNDIConfig extends SQLConfig {
 	}
 
 	@Override
-	public void close() {
+	public synchronized void close() {
+		this.setClosed();
 	}
 
 	@Override
@@ -38,7 +38,7 @@ public class RDBMSConfig extends JDBCPoolSQLConfig {
 	public RDBMSConfig(DataService dataService, String configId, Map<String, String> properties, boolean odataEnable, boolean isPublicOData, String creator)
 			throws DataServiceFault {
 		super(dataService, configId, DataSourceTypes.RDBMS, properties, odataEnable, isPublicOData, creator);
-		if (!dataService.isServiceInactive()) {
+		if (this.isInitOnCreate()) {
 			try {
 				this.initSQLDataSource();
 			} catch (SQLException e) {
@@ -50,7 +50,7 @@ public class RDBMSConfig extends JDBCPoolSQLConfig {
 	public RDBMSConfig(DataService dataService, String configId, Map<String, String> properties)
 			throws DataServiceFault {
 		super(dataService, configId, DataSourceTypes.RDBMS, properties, false, false, "");
-		if (!dataService.isServiceInactive()) {
+		if (this.isInitOnCreate()) {
 			try {
 				this.initSQLDataSource();
 			} catch (SQLException e) {
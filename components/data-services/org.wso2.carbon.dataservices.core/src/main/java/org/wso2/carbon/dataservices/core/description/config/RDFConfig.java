@@ -30,30 +30,155 @@ import org.wso2.carbon.dataservices.core.engine.DataService;
 import org.wso2.carbon.dataservices.core.odata.ODataDataHandler;
 import org.wso2.carbon.dataservices.core.odata.ODataServiceFault;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class represents a RDF based data source configuration.
  */
 public class RDFConfig extends Config {
 
-	private static final Log log = LogFactory.getLog(ExcelConfig.class);
+	private static final Log log = LogFactory.getLog(RDFConfig.class);
 	
+	/* time in milliseconds between the checks for modifications of the RDF file, by default */
+	private static final long DEFAULT_MODIFICATION_CHECK_INTERVAL = 5000;
+
 	private String rdfDataSourcePath;
 
-	public RDFConfig(DataService dataService, String configId, Map<String, String> properties, boolean odataEnable, boolean isPublicOData, String creator) {
+	private long modificationCheckInterval = DEFAULT_MODIFICATION_CHECK_INTERVAL;
+
+	/* the model shared by the queries, it is only read */
+	private volatile LoadedModel loadedModel;
+
+	/* the time of the next check for modifications of the RDF file */
+	private volatile long nextModificationCheck;
+
+	/* set while the RDF file is checked and reloaded, by a single request */
+	private final AtomicBoolean reloading = new AtomicBoolean();
+
+	/* held while the model is loaded the first time and while it is replaced */
+	private final Object loadLock = new Object();
+
+	public RDFConfig(DataService dataService, String configId, Map<String, String> properties, boolean odataEnable, boolean isPublicOData, String creator) throws DataServiceFault {
 		super(dataService, configId, DataSourceTypes.RDF, properties, odataEnable, isPublicOData, creator);
 		this.rdfDataSourcePath = this.getProperty(DBConstants.RDF.DATASOURCE).trim();
+		String intervalProp = this.getProperty(DBConstants.RDF.MODIFICATION_CHECK_INTERVAL);
+		if (!DBUtils.isEmptyString(intervalProp)) {
+			try {
+				this.modificationCheckInterval = Long.parseLong(intervalProp.trim());
+			} catch (NumberFormatException e) {
+				throw new DataServiceFault(e, "Invalid RDF modification check interval: " + intervalProp);
+			}
+		}
 	}
 
 	public Model createRDFModel() throws IOException, DataServiceFault {
 		InputStream in = DBUtils.getInputStreamFromPath(this.getRDFDataSourcePath());
 		Model model = ModelFactory.createMemModelMaker().createDefaultModel();
-		model.read(in,null);		
+		try {
+			model.read(in, null);
+		} finally {
+			in.close();
+		}
 		return model;
 	}
+
+	/**
+	 * Returns the model of the RDF data source shared by the queries of this config, which is loaded
+	 * on its first use, and loaded again when the RDF file is modified. The model must not be modified.
+	 * Only the local files are checked for modifications, at most once per check interval, not the
+	 * registry resources or the URLs. While a modified file is loaded, the other queries keep on using
+	 * the current model, which is only replaced if the file is loaded successfully.
+	 */
+	public Model getRDFModel() throws IOException, DataServiceFault {
+		LoadedModel loaded = this.loadedModel;
+		if (loaded == null) {
+			synchronized (this.loadLock) {
+				loaded = this.loadedModel;
+				if (loaded == null) {
+					loaded = this.loadModel();
+					this.nextModificationCheck = System.currentTimeMillis() + this.modificationCheckInterval;
+					this.loadedModel = loaded;
+				}
+			}
+			return loaded.model;
+		}
+		if (System.currentTimeMillis() >= this.nextModificationCheck) {
+			this.checkModification(loaded);
+			LoadedModel current = this.loadedModel;
+			if (current != null) {
+				return current.model;
+			}
+		}
+		return loaded.model;
+	}
+
+	/**
+	 * Loads the model again if the RDF file has been modified since the given model was loaded; only
+	 * one request checks the file at a time.
+	 */
+	private void checkModification(LoadedModel loaded) {
+		if (!this.reloading.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			this.nextModificationCheck = System.currentTimeMillis() + this.modificationCheckInterval;
+			File file = this.getRDFFile();
+			if (file == null || file.lastModified() == loaded.lastModified) {
+				return;
+			}
+			LoadedModel reloaded = this.loadModel();
+			synchronized (this.loadLock) {
+				/* the model is not replaced if the config has been closed meanwhile,
+				 * the previous model is not closed, since running queries may still read it */
+				if (this.loadedModel == loaded) {
+					this.loadedModel = reloaded;
+				}
+			}
+		} catch (Exception e) {
+			log.error("Error in reloading the RDF data source of config '" + this.getConfigId() +
+					"', the previously loaded model is used", e);
+		} finally {
+			this.reloading.set(false);
+		}
+	}
+
+	private LoadedModel loadModel() throws IOException, DataServiceFault {
+		long startTime = System.currentTimeMillis();
+		/* the modification time is read first, a modification while the file is read is loaded later */
+		File file = this.getRDFFile();
+		long lastModified = file != null ? file.lastModified() : 0;
+		Model model = this.createRDFModel();
+		if (log.isDebugEnabled()) {
+			log.debug("Loaded the RDF data source of config '" + this.getConfigId() + "' with " +
+					model.size() + " statements in " + (System.currentTimeMillis() - startTime) + " ms");
+		}
+		return new LoadedModel(model, lastModified);
+	}
+
+	private File getRDFFile() {
+		String path = this.getRDFDataSourcePath();
+		if (path.startsWith("http://") || path.startsWith("https://") || DBUtils.isRegistryPath(path)) {
+			return null;
+		}
+		return new File(path);
+	}
+
+	/**
+	 * Loads the model of the RDF data source, e.g. at the warm-up of the configs after the deployment.
+	 */
+	@Override
+	public void activate() throws DataServiceFault {
+		this.checkNotClosed();
+		try {
+			this.getRDFModel();
+		} catch (IOException e) {
+			throw new DataServiceFault(e, "Error in loading the RDF data source: " + this.getRDFDataSourcePath());
+		}
+	}
 	
 	public String getRDFDataSourcePath() {
 		return rdfDataSourcePath;
@@ -62,7 +187,7 @@ public class RDFConfig extends Config {
 	@Override
 	public boolean isActive() {
 		try {
-			Model model = this. createRDFModel();
+			Model model = this.getRDFModel();
 			return model != null;
 		} catch (Exception e) {
 			log.error("Error in checking RDF config availability", e);
@@ -71,7 +196,11 @@ public class RDFConfig extends Config {
 	}
 	
 	public void close() {
-		/* nothing to close */
+		synchronized (this.loadLock) {
+			/* the model is released, not closed, since running queries may still read it */
+			this.setClosed();
+			this.loadedModel = null;
+		}
 	}
 
 	@Override
@@ -84,4 +213,20 @@ public class RDFConfig extends Config {
 	public boolean isResultSetFieldsCaseSensitive() {
 		return false;
 	}
+
+	/**
+	 * A loaded model, with the modification time of the RDF file when it was loaded.
+	 */
+	private static class LoadedModel {
+
+		private final Model model;
+
+		private final long lastModified;
+
+		private LoadedModel(Model model, long lastModified) {
+			this.model = model;
+			this.lastModified = lastModified;
+		}
+
+	}
 }
\ No newline at end of file
@@ -59,7 +59,7 @@ public class SQLCarbonDataSourceConfig extends SQLConfig {
 		super(dataService, configId, DataSourceTypes.CARBON, properties, odataEnable, isPublicOData, creator);
 		this.dataSourceName = properties.get(DBConstants.CarbonDatasource.NAME);
         this.dataSource = initDataSource();
-        if (!dataService.isServiceInactive()) {
+        if (this.isInitOnCreate()) {
             try {
                 this.initSQLDataSource();
             } catch (SQLException e) {
@@ -74,7 +74,7 @@ public class SQLCarbonDataSourceConfig extends SQLConfig {
 		super(dataService, configId, DataSourceTypes.CARBON, properties, false);
         this.dataSourceName = properties.get(DBConstants.CarbonDatasource.NAME);
         this.dataSource = initDataSource();
-        if (!dataService.isServiceInactive()) {
+        if (this.isInitOnCreate()) {
             try {
                 this.initSQLDataSource();
             } catch (SQLException e) {
@@ -210,8 +210,9 @@ public class SQLCarbonDataSourceConfig extends SQLConfig {
 		return false;
 	}
 
-	public void close() {
-		/* nothing to close */
+	public synchronized void close() {
+		/* nothing to close, the data source is owned by the Carbon data sources */
+		this.setClosed();
 	}
 
 	@Override
@@ -24,12 +24,14 @@ import org.apache.axiom.om.util.AXIOMUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.dataservices.common.DBConstants.AutoCommit;
+import org.wso2.carbon.dataservices.common.DBConstants.FaultCodes;
 import org.wso2.carbon.dataservices.common.DBConstants.RDBMS;
 import org.wso2.carbon.dataservices.core.DBUtils;
 import org.wso2.carbon.dataservices.core.DataServiceFault;
 import org.wso2.carbon.dataservices.core.auth.ConfigurationBasedAuthenticator;
 import org.wso2.carbon.dataservices.core.auth.DynamicUserAuthenticator;
 import org.wso2.carbon.dataservices.core.engine.DataService;
+import org.wso2.carbon.dataservices.core.jmx.ConnectionPoolStatistics;
 
 import javax.sql.DataSource;
 import javax.sql.XAConnection;
@@ -53,6 +55,8 @@ public abstract class SQLConfig extends Config {
 	private String validationQuery;
 	
 	private boolean jdbcBatchUpdateSupport;
+
+	private volatile boolean initialized;
 	
 	private AutoCommit autoCommit;
 	
@@ -148,7 +152,10 @@ public abstract class SQLConfig extends Config {
 		return secondaryDynAuth;
 	}
 
-	public boolean hasJDBCBatchUpdateSupport() {
+	public boolean hasJDBCBatchUpdateSupport() throws DataServiceFault {
+		if (!this.initialized) {
+			this.activate();
+		}
 		return jdbcBatchUpdateSupport;
 	}
 	
@@ -164,6 +171,29 @@ public abstract class SQLConfig extends Config {
 		} finally {
 		    conn.close();
 		}
+		this.initialized = true;
+	}
+
+	/**
+	 * Returns true if the data source is initialized when the config is created, i.e. the service is
+	 * active, and the configs are not initialized lazily or this config is OData enabled, since its
+	 * OData handler is created at the deployment.
+	 */
+	protected boolean isInitOnCreate() {
+		return !this.getDataService().isServiceInactive() && (!isLazyInit() || this.isODataEnabled());
+	}
+
+	@Override
+	public synchronized void activate() throws DataServiceFault {
+		if (this.initialized || this.getDataService().isServiceInactive()) {
+			return;
+		}
+		this.checkNotClosed();
+		try {
+			this.initSQLDataSource();
+		} catch (SQLException e) {
+			throw new DataServiceFault(e, FaultCodes.CONNECTION_UNAVAILABLE_ERROR, e.getMessage());
+		}
 	}
 		
 	public abstract DataSource getDataSource() throws DataServiceFault;
@@ -174,6 +204,22 @@ public abstract class SQLConfig extends Config {
 	
 	public abstract int getIdleConnectionCount() throws DataServiceFault;
 		
+	/**
+	 * Returns the connection pool statistics of this configuration.
+	 * @return The statistics, or null if the data source does not provide them
+	 */
+	public ConnectionPoolStatistics getPoolStatistics() {
+		return null;
+	}
+	
+	/**
+	 * Called after each attempt to get a connection from the data source.
+	 * @param nanos The time spent getting the connection
+	 * @param error The error if no connection could be got, null otherwise
+	 */
+	protected void connectionBorrowed(long nanos, SQLException error) {
+	}
+		
 	public String getValidationQuery() {
 		return validationQuery;
 	}
@@ -190,11 +236,18 @@ public abstract class SQLConfig extends Config {
         Boolean xaConn = false;
         if (ds != null) {
             Connection conn;
-            if (user != null) {
-                conn = ds.getConnection(user, pass);
-            } else {
-                conn = ds.getConnection();
+            long borrowStart = System.nanoTime();
+            try {
+                if (user != null) {
+                    conn = ds.getConnection(user, pass);
+                } else {
+                    conn = ds.getConnection();
+                }
+            } catch (SQLException e) {
+                this.connectionBorrowed(System.nanoTime() - borrowStart, e);
+                throw e;
             }
+            this.connectionBorrowed(System.nanoTime() - borrowStart, null);
             Object tds = this.extractSourceDS(ds);
             boolean[] xaResult = this.isXADataSource(tds);
             xaConn = xaResult[0] | xaResult[1];
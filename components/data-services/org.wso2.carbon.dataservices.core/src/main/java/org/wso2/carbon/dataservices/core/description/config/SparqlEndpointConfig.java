@@ -18,13 +18,24 @@
  */
 package org.wso2.carbon.dataservices.core.description.config;
 
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.wso2.carbon.dataservices.common.DBConstants;
 import org.wso2.carbon.dataservices.common.DBConstants.DataSourceTypes;
+import org.wso2.carbon.dataservices.core.DBUtils;
 import org.wso2.carbon.dataservices.core.DataServiceFault;
 import org.wso2.carbon.dataservices.core.engine.DataService;
 import org.wso2.carbon.dataservices.core.odata.ODataDataHandler;
 import org.wso2.carbon.dataservices.core.odata.ODataServiceFault;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URLEncoder;
 import java.util.Map;
 
 /**
@@ -32,12 +43,82 @@ import java.util.Map;
  */
 public class SparqlEndpointConfig extends Config {
 	
+	private static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+	/* time in milliseconds to wait for a pooled connection, by default */
+	private static final long DEFAULT_CONNECTION_MANAGER_TIMEOUT = 30000;
+
 	private String sparqlEndpointUrl;
 
+	private MultiThreadedHttpConnectionManager connectionManager;
+
+	private HttpClient httpClient;
+
 	public SparqlEndpointConfig(DataService dataService, String configId, Map<String, String> properties,
-	                            boolean odataEnable, boolean isPublicOData, String creator) {
+	                            boolean odataEnable, boolean isPublicOData, String creator) throws DataServiceFault {
 		super(dataService, configId, DataSourceTypes.SPARQL, properties, odataEnable, isPublicOData, creator);
 		this.sparqlEndpointUrl = this.getProperty(DBConstants.SPARQL.DATASOURCE).trim();
+		int maxConnections = DEFAULT_MAX_CONNECTIONS;
+		String maxConnectionsProp = this.getProperty(DBConstants.SPARQL.MAX_CONNECTIONS);
+		if (!DBUtils.isEmptyString(maxConnectionsProp)) {
+			try {
+				maxConnections = Integer.parseInt(maxConnectionsProp.trim());
+			} catch (NumberFormatException e) {
+				throw new DataServiceFault(e, "Invalid maximum number of SPARQL endpoint connections: " +
+						maxConnectionsProp);
+			}
+		}
+		long connectionManagerTimeout = DEFAULT_CONNECTION_MANAGER_TIMEOUT;
+		String timeoutProp = this.getProperty(DBConstants.SPARQL.CONNECTION_MANAGER_TIMEOUT);
+		if (!DBUtils.isEmptyString(timeoutProp)) {
+			try {
+				connectionManagerTimeout = Long.parseLong(timeoutProp.trim());
+			} catch (NumberFormatException e) {
+				throw new DataServiceFault(e, "Invalid SPARQL endpoint connection manager timeout: " +
+						timeoutProp);
+			}
+		}
+		this.connectionManager = new MultiThreadedHttpConnectionManager();
+		HttpConnectionManagerParams params = this.connectionManager.getParams();
+		params.setDefaultMaxConnectionsPerHost(maxConnections);
+		params.setMaxTotalConnections(maxConnections);
+		this.httpClient = new HttpClient(this.connectionManager);
+		/* the queries fail instead of waiting indefinitely when all the connections are in use */
+		this.httpClient.getParams().setConnectionManagerTimeout(connectionManagerTimeout);
+	}
+
+	/**
+	 * Executes a SELECT query at the SPARQL endpoint with a pooled HTTP connection. The results are
+	 * requested in the SPARQL XML results format, and parsed from the response while they are read.
+	 * @param query The SPARQL query
+	 * @return The results, which must be closed to release the connection
+	 * @throws DataServiceFault
+	 */
+	public QueryResults executeSelect(String query) throws DataServiceFault {
+		GetMethod method = new GetMethod(this.sparqlEndpointUrl);
+		boolean success = false;
+		try {
+			String queryParam = "query=" + URLEncoder.encode(query, DBConstants.DEFAULT_CHAR_SET_TYPE);
+			String queryString = method.getQueryString();
+			method.setQueryString(queryString != null && queryString.length() > 0 ?
+					queryString + "&" + queryParam : queryParam);
+			method.setRequestHeader("Accept", DBConstants.SPARQL.RESULTS_XML_CONTENT_TYPE);
+			int status = this.httpClient.executeMethod(method);
+			if (status != HttpStatus.SC_OK) {
+				throw new DataServiceFault("Error in executing the query at the SPARQL endpoint '" +
+						this.sparqlEndpointUrl + "', HTTP status: " + status + " " + method.getStatusText());
+			}
+			QueryResults results = new QueryResults(ResultSetFactory.fromXML(
+					method.getResponseBodyAsStream()), method);
+			success = true;
+			return results;
+		} catch (IOException e) {
+			throw new DataServiceFault(e, "Error in connecting to the SPARQL endpoint: " + this.sparqlEndpointUrl);
+		} finally {
+			if (!success) {
+				method.releaseConnection();
+			}
+		}
 	}
 	
 	public String getSparqlEndpoint() {
@@ -50,7 +131,7 @@ public class SparqlEndpointConfig extends Config {
 	}
 	
 	public void close() {
-		/* nothing to close */
+		this.connectionManager.shutdown();
 	}
 
 	@Override
@@ -63,4 +144,47 @@ public class SparqlEndpointConfig extends Config {
 	public boolean isResultSetFieldsCaseSensitive() {
 		return false;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * The results of a query at the SPARQL endpoint, read from the HTTP response.
+	 */
+	public static class QueryResults implements Closeable {
+
+		private final ResultSet resultSet;
+
+		private final GetMethod method;
+
+		private boolean closed;
+
+		private QueryResults(ResultSet resultSet, GetMethod method) {
+			this.resultSet = resultSet;
+			this.method = method;
+		}
+
+		public ResultSet getResultSet() {
+			return resultSet;
+		}
+
+		/**
+		 * Releases the HTTP connection of the results to the pool, once.
+		 */
+		public void close() {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			try {
+				/* a response which is not read to its end is not kept for the next requests */
+				if (this.resultSet.hasNext()) {
+					this.method.abort();
+				}
+			} catch (RuntimeException e) {
+				this.method.abort();
+			} finally {
+				this.method.releaseConnection();
+			}
+		}
+
+	}
+
+}
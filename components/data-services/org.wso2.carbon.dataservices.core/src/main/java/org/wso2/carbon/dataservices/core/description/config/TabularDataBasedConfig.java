@@ -89,6 +89,11 @@ public class TabularDataBasedConfig extends SQLConfig {
 		return dataSource;
 	}
 
+	@Override
+	public void activate() throws DataServiceFault {
+		/* the tabular data sources are not checked, and have no JDBC batch update support */
+	}
+
 	@Override
 	public boolean isStatsAvailable() throws DataServiceFault {
 		return false;
@@ -33,10 +33,13 @@ import org.wso2.carbon.dataservices.core.odata.ODataServiceFault;
 import org.xml.sax.InputSource;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /*
@@ -49,43 +52,128 @@ public class WebConfig extends Config {
     /*path of the web harvest configuration exists*/
     private String webHarvestConfigPath;
 
-    public WebConfig(DataService dataService, String configId, Map<String, String> properties, boolean odataEnable, boolean isPublicOData, String creator) {
+    /* time in milliseconds the scraped variables are reused, not reused if not positive */
+    private long cacheTTL;
+
+    /* the parsed web harvest configuration, shared by the scrapers */
+    private volatile ParsedConfiguration parsedConfiguration;
+
+    /* the last scraped value of each variable, with the configuration it was scraped with and its expiry time */
+    private final ConcurrentMap<String, ScrapedVariable> scrapedVariables =
+            new ConcurrentHashMap<String, ScrapedVariable>();
+
+    /* the locks of the scrapes of each variable, so that a variable is scraped once when it expires */
+    private final ConcurrentMap<String, Object> scrapeLocks = new ConcurrentHashMap<String, Object>();
+
+    public WebConfig(DataService dataService, String configId, Map<String, String> properties, boolean odataEnable,
+                     boolean isPublicOData, String creator) throws DataServiceFault {
         super(dataService, configId, DBConstants.DataSourceTypes.WEB, properties, odataEnable, isPublicOData, creator);
         this.webHarvestConfigPath = this.getProperty("web_harvest_config");
+        String cacheTTLProp = this.getProperty(DBConstants.WebDatasource.CACHE_TTL);
+        if (!DBUtils.isEmptyString(cacheTTLProp)) {
+            try {
+                this.cacheTTL = Long.parseLong(cacheTTLProp.trim());
+            } catch (NumberFormatException e) {
+                throw new DataServiceFault(e, "Invalid web harvest cache TTL: " + cacheTTLProp);
+            }
+        }
     }
 
     public Scraper getScraperConfig() throws DataServiceFault, IOException {
-        Scraper scraper;
-        ScraperConfiguration scraperConfiguration;
+        return new Scraper(this.getScraperConfiguration(), "");
+    }
+
+    /**
+     * Returns the parsed web harvest configuration, which is parsed again when its file is modified.
+     */
+    private ScraperConfiguration getScraperConfiguration() throws DataServiceFault, IOException {
+        File configFile = this.getConfigFile();
+        long lastModified = configFile != null ? configFile.lastModified() : 0;
+        ParsedConfiguration parsed = this.parsedConfiguration;
+        if (parsed != null && parsed.lastModified == lastModified) {
+            return parsed.configuration;
+        }
+        synchronized (this) {
+            parsed = this.parsedConfiguration;
+            if (parsed == null || parsed.lastModified != lastModified) {
+                parsed = new ParsedConfiguration(this.parseScraperConfiguration(), lastModified);
+                this.parsedConfiguration = parsed;
+            }
+            return parsed.configuration;
+        }
+    }
+
+    private ScraperConfiguration parseScraperConfiguration() throws DataServiceFault, IOException {
         InputStream in;
         try {
             /* For the given file path of the web harvest configuration */
             if (!webHarvestConfigPath.trim().startsWith("<config>")) {
                 in = DBUtils.getInputStreamFromPath(this.webHarvestConfigPath);
-                //scraperConfiguration = new ScraperConfiguration(webHarvestConfigPath);
             } else {
                 /* If the Web harvest configuration has provided */
                 in = new ByteArrayInputStream(webHarvestConfigPath.getBytes());
             }
-            InputSource inputSource = new InputSource(in);
-            scraperConfiguration = new ScraperConfiguration(inputSource);
-            scraper = new Scraper(scraperConfiguration, "");  
-            return scraper;
         } catch (FileNotFoundException e) {
             throw new DataServiceFault(e, "Error in reading web harvest configuration");
         }
+        try {
+            return new ScraperConfiguration(new InputSource(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the local file of the web harvest configuration, or null if it is given inline,
+     * or with a registry path or a URL, which are not checked for modifications.
+     */
+    private File getConfigFile() {
+        String path = this.webHarvestConfigPath.trim();
+        if (path.startsWith("<config>") || path.startsWith("http://") || path.startsWith("https://") ||
+                DBUtils.isRegistryPath(path)) {
+            return null;
+        }
+        return new File(path);
     }
 
     /*executing the web scraper*/
     public Variable getScrapedResult(String queryVariable) throws DataServiceFault {
         try {
-            Scraper scraper = getScraperConfig();
-            scraper.execute();
-            return (Variable) scraper.getContext().get(queryVariable);
+            if (this.cacheTTL <= 0) {
+                return this.scrape(this.getScraperConfig(), queryVariable);
+            }
+            ScraperConfiguration configuration = this.getScraperConfiguration();
+            ScrapedVariable scraped = this.scrapedVariables.get(queryVariable);
+            if (scraped != null && scraped.isValid(configuration)) {
+                return scraped.value;
+            }
+            /* only the requests of an expired variable wait for it to be scraped again */
+            Object lock = this.scrapeLocks.get(queryVariable);
+            if (lock == null) {
+                Object newLock = new Object();
+                lock = this.scrapeLocks.putIfAbsent(queryVariable, newLock);
+                if (lock == null) {
+                    lock = newLock;
+                }
+            }
+            synchronized (lock) {
+                scraped = this.scrapedVariables.get(queryVariable);
+                /* the variables scraped with a previous configuration are outdated */
+                if (scraped == null || !scraped.isValid(configuration)) {
+                    scraped = new ScrapedVariable(this.scrape(new Scraper(configuration, ""), queryVariable),
+                            configuration, System.currentTimeMillis() + this.cacheTTL);
+                    this.scrapedVariables.put(queryVariable, scraped);
+                }
+                return scraped.value;
+            }
         } catch (Exception e) {
             throw new DataServiceFault(e, "Error in Scraper Execution");
         }
+    }
 
+    private Variable scrape(Scraper scraper, String queryVariable) {
+        scraper.execute();
+        return (Variable) scraper.getContext().get(queryVariable);
     }
 
     @Override
@@ -113,4 +201,43 @@ public class WebConfig extends Config {
     public boolean isResultSetFieldsCaseSensitive() {
         return false;
     }
+
+    /**
+     * A parsed web harvest configuration, with the modification time of its file when it was parsed.
+     */
+    private static class ParsedConfiguration {
+
+        private final ScraperConfiguration configuration;
+
+        private final long lastModified;
+
+        private ParsedConfiguration(ScraperConfiguration configuration, long lastModified) {
+            this.configuration = configuration;
+            this.lastModified = lastModified;
+        }
+
+    }
+
+    /**
+     * The value of a scraped variable, which is reused until it expires or the configuration changes.
+     */
+    private static class ScrapedVariable {
+
+        private final Variable value;
+
+        private final ScraperConfiguration configuration;
+
+        private final long expiryTime;
+
+        private ScrapedVariable(Variable value, ScraperConfiguration configuration, long expiryTime) {
+            this.value = value;
+            this.configuration = configuration;
+            this.expiryTime = expiryTime;
+        }
+
+        private boolean isValid(ScraperConfiguration currentConfiguration) {
+            return this.configuration == currentConfiguration && System.currentTimeMillis() < this.expiryTime;
+        }
+
+    }
 }
@@ -21,10 +21,13 @@ package org.wso2.carbon.dataservices.core.description.query;
 import org.apache.axiom.om.OMDocument;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.dataservices.common.DBConstants.DBSFields;
 import org.wso2.carbon.dataservices.common.DBConstants.FaultCodes;
 import org.wso2.carbon.dataservices.common.DBConstants.QueryParamTypes;
 import org.wso2.carbon.dataservices.common.DBConstants.QueryTypes;
+import org.wso2.carbon.dataservices.core.CompressingOutputStream;
 import org.wso2.carbon.dataservices.core.DBUtils;
 import org.wso2.carbon.dataservices.core.DataServiceFault;
 import org.wso2.carbon.dataservices.core.TLConnectionStore;
@@ -33,6 +36,7 @@ import org.wso2.carbon.dataservices.core.description.event.EventTrigger;
 import org.wso2.carbon.dataservices.core.dispatch.DispatchStatus;
 import org.wso2.carbon.dataservices.core.engine.DataEntry;
 import org.wso2.carbon.dataservices.core.engine.DataService;
+import org.wso2.carbon.dataservices.core.engine.ExportResultWriter;
 import org.wso2.carbon.dataservices.core.engine.ExternalParamCollection;
 import org.wso2.carbon.dataservices.core.engine.InternalParam;
 import org.wso2.carbon.dataservices.core.engine.InternalParamCollection;
@@ -40,6 +44,9 @@ import org.wso2.carbon.dataservices.core.engine.ParamValue;
 import org.wso2.carbon.dataservices.core.engine.QueryParam;
 import org.wso2.carbon.dataservices.core.engine.Result;
 import org.wso2.carbon.dataservices.core.engine.XMLWriterHelper;
+import org.wso2.carbon.dataservices.core.jmx.DataServiceStatistics;
+import org.wso2.carbon.dataservices.core.jmx.ExecutionTrace;
+import org.wso2.carbon.dataservices.core.jmx.SlowQueryLog;
 import org.wso2.carbon.dataservices.core.validation.ValidationContext;
 import org.wso2.carbon.dataservices.core.validation.ValidationException;
 import org.wso2.carbon.dataservices.core.validation.Validator;
@@ -47,6 +54,8 @@ import org.wso2.carbon.dataservices.core.validation.Validator;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -56,6 +65,8 @@ import java.util.Map;
  */
 public abstract class Query extends XMLWriterHelper {
 
+	private static final Log log = LogFactory.getLog(Query.class);
+
 	private String queryId;
 	
 	private List<QueryParam> queryParams;
@@ -283,9 +294,13 @@ public abstract class Query extends XMLWriterHelper {
 		InternalParamCollection internalParams = this.extractParams(params);
 		boolean error = true;
         Object result;
+        boolean initial = Query.isQueryPreprocessInitial();
+        boolean secondary = Query.isQueryPreprocessSecondary();
+        ExecutionTrace trace = DataServiceStatistics.begin(this);
+        SlowQueryLog slowQueryLog = this.getDataService().getSlowQueryLog();
+        boolean timed = slowQueryLog.isEnabled();
+        long phaseStart;
         try {
-            boolean initial = Query.isQueryPreprocessInitial();
-            boolean secondary = Query.isQueryPreprocessSecondary();
             /* write the content */
             if (initial) {
                 /* validate params */
@@ -294,7 +309,11 @@ public abstract class Query extends XMLWriterHelper {
                 this.processContentFiltering();
                 /* process input events */
                 this.processInputEvents(internalParams);
+                phaseStart = timed ? System.nanoTime() : 0;
                 result = this.runPreQuery(internalParams, queryLevel);
+                if (timed) {
+                    trace.addPhaseNanos(ExecutionTrace.PRE_QUERY, System.nanoTime() - phaseStart);
+                }
                 Query.addQueryPreprocessedObject(result);
             }
             if (secondary) {
@@ -303,7 +322,11 @@ public abstract class Query extends XMLWriterHelper {
                 Query.resetCurrentInternalParams();
                 Query.setQueryPreprocessingInitial(true);
                 result = Query.getAndRemoveQueryPreprocessObject();
+                phaseStart = timed ? System.nanoTime() : 0;
                 this.runPostQuery(result, xmlWriter, internalParams, queryLevel);
+                if (timed) {
+                    trace.addPhaseNanos(ExecutionTrace.POST_QUERY, System.nanoTime() - phaseStart);
+                }
             }
             error = false;
         } finally {
@@ -313,6 +336,16 @@ public abstract class Query extends XMLWriterHelper {
                  * and we are not in the data pre-fetching state */
                 this.finalizeTx(error);
             }
+            /* the execution ends when the result is written, or at once if there is no result */
+            if (error || secondary || !this.hasResult()) {
+                long nanos = System.nanoTime() - trace.getStartNanos();
+                this.getDataService().getStatistics().getQueryStatistics(this.getQueryId()).record(
+                        nanos, trace.getRowCount(), error);
+                if (timed) {
+                    slowQueryLog.record(this.getQueryId(), trace, nanos, params, error);
+                }
+                DataServiceStatistics.end(this);
+            }
         }
 	}
 
@@ -328,6 +361,8 @@ public abstract class Query extends XMLWriterHelper {
     }
 	
 	private void finalizeTx(boolean error) {
+	    /* the result of the first phase may not be written, e.g. after an error or without a result */
+	    Query.releaseQueryPreprocessObject();
 	    if (DispatchStatus.isInBatchBoxcarring()) {
 	        return;
 	    }
@@ -414,8 +449,16 @@ public abstract class Query extends XMLWriterHelper {
 	 */
 	public void writeResultEntry(XMLStreamWriter xmlWriter, DataEntry dataEntry, 
 			InternalParamCollection ipc, int queryLevel) throws DataServiceFault {
+		/* the rows of the top level query are the records of the export formats */
+		boolean exportRow = queryLevel == 0 && xmlWriter instanceof ExportResultWriter;
 		/* increment query level */
 		queryLevel++;
+		ExecutionTrace trace = DataServiceStatistics.getTrace(this);
+		boolean timed = trace != null && this.getDataService().getSlowQueryLog().isEnabled();
+		long serializeStart = timed ? System.nanoTime() : 0;
+		if (trace != null) {
+			trace.addRow();
+		}
 		
 		/* populate params, here an ExternalParamCollection is created from the
 		 * passed data and the internal parameters. This is done because, again,
@@ -424,6 +467,9 @@ public abstract class Query extends XMLWriterHelper {
 		 * object itself, where call-queries are used for nested queries. */
 		ExternalParamCollection params = this.createExternalParamCollection(dataEntry, ipc);
 		
+		if (exportRow) {
+			((ExportResultWriter) xmlWriter).startRow(this.getResult());
+		}
 		/* write result wrapper */
 		if (this.isWriteRow()) {
 			try {
@@ -445,6 +491,36 @@ public abstract class Query extends XMLWriterHelper {
 				throw new DataServiceFault(e, "Error in end write row at Query.writeResultEntry");
 			}
 		}
+		if (exportRow) {
+			try {
+				((ExportResultWriter) xmlWriter).endRow();
+			} catch (XMLStreamException e) {
+				throw new DataServiceFault(e, "Error in write export row at Query.writeResultEntry");
+			}
+		}
+		if (queryLevel == 1) {
+			/* a compressed response is flushed every few top level rows */
+			try {
+				CompressingOutputStream.rowWritten(xmlWriter);
+			} catch (XMLStreamException e) {
+				throw new DataServiceFault(e, "Error in flush rows at Query.writeResultEntry");
+			}
+		}
+		if (timed) {
+			trace.addPhaseNanos(ExecutionTrace.SERIALIZE, System.nanoTime() - serializeStart);
+		}
+	}
+
+	/**
+	 * Returns the trace of the execution in progress of this query on the current thread,
+	 * to record the timings of its phases.
+	 * @return The trace, or null if the slow query log is disabled
+	 */
+	protected ExecutionTrace getTimedExecutionTrace() {
+		if (!this.getDataService().getSlowQueryLog().isEnabled()) {
+			return null;
+		}
+		return DataServiceStatistics.getTrace(this);
 	}
 
 	private ExternalParamCollection createExternalParamCollection(DataEntry dataEntry,
@@ -500,9 +576,28 @@ public abstract class Query extends XMLWriterHelper {
 	    queryPreprocessObjects.set(value);
 	}
 
+	/**
+	 * Releases the resources held by the result of the first phase of the last query of the current
+	 * thread, e.g. a pooled connection, when the second phase does not write it. The results which
+	 * hold resources are {@link Closeable}, and they can be closed more than once.
+	 */
+	public static void releaseQueryPreprocessObject() {
+	    Object value = queryPreprocessObjects.get();
+	    queryPreprocessObjects.set(new Object());
+	    if (value instanceof Closeable) {
+	        try {
+	            ((Closeable) value).close();
+	        } catch (IOException e) {
+	            log.warn("Error in releasing the result of a query: " + e.getMessage(), e);
+	        }
+	    }
+	}
+
 	public static void resetQueryPreprocessing() {
             currentInternalParams.set(null);
-	    queryPreprocessObjects.set(new Object());
+	    DataServiceStatistics.resetInFlight();
+	    /* the result left by a previous request which was not written, e.g. after an error */
+	    releaseQueryPreprocessObject();
 	    setQueryPreprocessingInitial(false);
 	    setQueryPreprocessingSecondary(false);
 	}
@@ -987,6 +987,7 @@ public class QueryFactory {
 	    /* create the XML mapping from the JSON mapping */
 		resultEl = getJSONResultFromText(resultEl.getText());
 		result.setResultType(ResultTypes.XML);
+		result.setJSONMapping(true);
 		/* process the XML mapping */
 		populateXMLResult(result, dataService, resultEl, namespace, isCaseSensitive);
 	}
@@ -61,8 +61,9 @@ public class RdfFileQuery extends SparqlQueryBase {
 	}
 
 	@Override
-	public QueryExecution getQueryExecution() throws IOException, DataServiceFault {
-		return QueryExecutionFactory.create(this.getQuery(), this.config.createRDFModel());
+	public QueryExecution getQueryExecution(com.hp.hpl.jena.query.Query query)
+			throws IOException, DataServiceFault {
+		return QueryExecutionFactory.create(query, this.config.getRDFModel());
 	}
 
     public Object processPreQuery(InternalParamCollection params, int queryLevel) throws DataServiceFault {
@@ -72,10 +73,13 @@ public class RdfFileQuery extends SparqlQueryBase {
             Model model = this.getModelForValidation();
             /* process the query params */
             for (InternalParam param : params.getParams()) {
+                if (isPagingParam(param)) {
+                    continue;
+                }
                 /* set parameters to the query map */
                 queryMap.add(param.getName(), convertTypeLiteral(model, param));
             }
-            QueryExecution qe = this.getQueryExecution();
+            QueryExecution qe = this.getQueryExecution(this.createQuery(params));
             qe.setInitialBinding(queryMap) ;
 
             /* execute query as a select query */
@@ -89,11 +93,6 @@ public class RdfFileQuery extends SparqlQueryBase {
     @Override
     public void processPostQuery(Object result, XMLStreamWriter xmlWriter,
                              InternalParamCollection params, int queryLevel) throws DataServiceFault {
-        ResultSet results = (ResultSet) result;
-        DataEntry dataEntry;
-        while (results != null && results.hasNext()) {
-            dataEntry = this.getDataEntryFromRS(results);
-            this.writeResultEntry(xmlWriter, dataEntry, params, queryLevel);
-        }
+        this.writeResults((ResultSet) result, xmlWriter, params, queryLevel);
     }
 }
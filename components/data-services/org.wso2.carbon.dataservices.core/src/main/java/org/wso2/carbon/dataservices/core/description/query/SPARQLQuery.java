@@ -22,7 +22,6 @@ import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
 import com.hp.hpl.jena.query.*;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.RDFNode;
-import org.apache.axis2.databinding.utils.ConverterUtil;
 import org.wso2.carbon.dataservices.common.DBConstants;
 import org.wso2.carbon.dataservices.core.DataServiceFault;
 import org.wso2.carbon.dataservices.core.description.config.RDFConfig;
@@ -128,71 +127,11 @@ public class SPARQLQuery extends Query {
 
 	}
  
-	private String convertRSToString (QuerySolution soln, String colName) {
-		if (soln.getLiteral(colName).getDatatype() == null) {
-			return soln.getLiteral(colName).getString();
-		} else {
-			String colType = soln.getLiteral(colName).getDatatype().getURI();
-			if (colType.equals(XSDDatatype.XSDdecimal.getURI())) {
-				return ConverterUtil.convertToString(ConverterUtil.convertToDecimal(soln
-								.getLiteral(colName).getString()));
-			} else if (colType.equals(XSDDatatype.XSDdouble.getURI())) {
-				return ConverterUtil.convertToString(ConverterUtil
-						.convertToDouble(soln.getLiteral(colName).getString()));
-			} else if (colType.equals(XSDDatatype.XSDfloat.getURI())) {
-				return ConverterUtil.convertToString(ConverterUtil
-						.convertToFloat(soln.getLiteral(colName).getString()));
-			} else if (colType.equals(XSDDatatype.XSDstring.getURI())) {
-				return soln.getLiteral(colName).getString();
-			} else if (colType.equals(XSDDatatype.XSDboolean.getURI())) {
-				return ConverterUtil
-						.convertToString(ConverterUtil.convertToBoolean(soln
-								.getLiteral(colName).getString()));
-			} else if (colType.equals(XSDDatatype.XSDlong.getURI())) {
-				return ConverterUtil.convertToString(ConverterUtil
-						.convertToLong(soln.getLiteral(colName).getString()));
-			} else if (colType.equals(XSDDatatype.XSDdate.getURI())) {
-				return ConverterUtil.convertToString(ConverterUtil
-						.convertToDate(soln.getLiteral(colName).getString()));
-			} else if (colType.equals(XSDDatatype.XSDdateTime.getURI())) {
-				return ConverterUtil
-						.convertToString(ConverterUtil.convertToDateTime(soln
-								.getLiteral(colName).getString()));
-			} else if (colType.equals(XSDDatatype.XSDtime.getURI())) {
-				return ConverterUtil.convertToString(ConverterUtil
-						.convertToTime(soln.getLiteral(colName).getString()));
-			} else {
-				return soln.getLiteral(colName).getString();
-			}
-		}	
-	}
-	
-	private DataEntry getDataEntryFromRS(ResultSet rs) {
-		DataEntry dataEntry = new DataEntry();
-		QuerySolution soln = rs.nextSolution();
-		String colName, value;
-		boolean useColumnNumbers = this.isUsingColumnNumbers();
-		/* for each column get the colName and colValue and add to the data entry */
-		for (int i = 0; i < rs.getResultVars().size(); i++) {
-			colName = rs.getResultVars().get(i);
-			RDFNode node = soln.get(colName) ;  			
-			if (node.isLiteral()) {
-				value = convertRSToString(soln, colName);
-			} else {
-				value = soln.getResource(colName).getURI();
-			}			
-			dataEntry.addValue(useColumnNumbers ? Integer.toString(i + 1) : 
-				colName, new ParamValue(value));
-		}
-		return dataEntry;
-	}
-	
-	
 	private Object processPreQuery(InternalParamCollection params, int queryLevel) throws DataServiceFault {
 		try {
 		    ResultSet results;
             QuerySolutionMap queryMap = new QuerySolutionMap();
-            Model model = this.getConfig().createRDFModel();
+            Model model = this.getConfig().getRDFModel();
             /* process the query params */
             for (InternalParam param : params.getParams()) {
                 /* set parameters to the querry map */
@@ -212,10 +151,13 @@ public class SPARQLQuery extends Query {
                                    InternalParamCollection params, int queryLevel) throws DataServiceFault {
         try {
             ResultSet results = (ResultSet) result;
-            DataEntry dataEntry;
-            while (results != null && results.hasNext()) {
-                dataEntry = this.getDataEntryFromRS(results);
-                this.writeResultEntry(xmlWriter, dataEntry, params, queryLevel);
+            if (results != null) {
+                SparqlResultColumns columns = new SparqlResultColumns(results.getResultVars(),
+                        this.isUsingColumnNumbers());
+                while (results.hasNext()) {
+                    this.writeResultEntry(xmlWriter, columns.toDataEntry(results.nextSolution()), params,
+                            queryLevel);
+                }
             }
         } catch (Exception e) {
             throw new DataServiceFault(e, "Error in 'SPARQLQuery.processQuery'");
@@ -20,6 +20,7 @@ package org.wso2.carbon.dataservices.core.description.query;
 
 import org.wso2.carbon.dataservices.core.DataServiceConnection;
 import org.wso2.carbon.dataservices.core.DataServiceFault;
+import org.wso2.carbon.dataservices.core.jmx.ConnectionPoolStatistics;
 
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -31,12 +32,29 @@ public class SQLDataServicesConnection implements DataServiceConnection {
 
     private Connection jdbcConn;
     private boolean isXA;
+    private ConnectionPoolStatistics poolStatistics;
+    private String queryId;
+    private long borrowTime;
 
     public SQLDataServicesConnection(Connection jdbcConn, boolean isXA) {
         this.jdbcConn = jdbcConn;
         this.isXA = isXA;
     }
 
+    /**
+     * Creates a connection whose hold time is recorded in the given pool statistics when it is closed.
+     *
+     * @param poolStatistics The statistics of the pool of the connection
+     * @param queryId        The id of the query which borrowed the connection
+     */
+    public SQLDataServicesConnection(Connection jdbcConn, boolean isXA, ConnectionPoolStatistics poolStatistics,
+                                     String queryId) {
+        this(jdbcConn, isXA);
+        this.poolStatistics = poolStatistics;
+        this.queryId = queryId;
+        this.borrowTime = System.nanoTime();
+    }
+
     @Override
     public void commit() throws DataServiceFault {
         try {
@@ -62,9 +80,15 @@ public class SQLDataServicesConnection implements DataServiceConnection {
     @Override
     public void close() throws DataServiceFault {
         try {
-            if (!this.jdbcConn.isClosed()) {
+            /* a connection closed before we release it has been abandoned, i.e. reclaimed by the pool */
+            boolean abandoned = this.jdbcConn.isClosed();
+            if (!abandoned) {
                 this.jdbcConn.close();
             }
+            if (this.poolStatistics != null) {
+                this.poolStatistics.recordHold(this.queryId, System.nanoTime() - this.borrowTime, abandoned);
+                this.poolStatistics = null;
+            }
         } catch (SQLException e) {
             throw new DataServiceFault(e);
         }
@@ -32,6 +32,7 @@ import org.wso2.carbon.dataservices.core.DBUtils;
 import org.wso2.carbon.dataservices.core.DataServiceConnection;
 import org.wso2.carbon.dataservices.core.DataServiceFault;
 import org.wso2.carbon.dataservices.core.TLConnectionStore;
+import org.wso2.carbon.dataservices.core.description.config.Config;
 import org.wso2.carbon.dataservices.core.description.config.SQLConfig;
 import org.wso2.carbon.dataservices.core.description.event.EventTrigger;
 import org.wso2.carbon.dataservices.core.dispatch.BatchDataServiceRequest;
@@ -45,6 +46,7 @@ import org.wso2.carbon.dataservices.core.engine.ParamValue;
 import org.wso2.carbon.dataservices.core.engine.QueryParam;
 import org.wso2.carbon.dataservices.core.engine.Result;
 import org.wso2.carbon.dataservices.core.engine.ResultSetWrapper;
+import org.wso2.carbon.dataservices.core.jmx.ExecutionTrace;
 
 import javax.xml.stream.XMLStreamWriter;
 import java.io.BufferedReader;
@@ -134,7 +136,8 @@ public class SQLQuery extends ExpressionQuery implements BatchRequestParticipant
 
     private String[] keyColumns;
 
-    private boolean hasBatchQuerySupport;
+    /* null until the batch update support is determined, on the first use with the lazy initialization */
+    private volatile Boolean hasBatchQuerySupport;
 
     private AutoCommit autoCommit;
 
@@ -228,14 +231,20 @@ public class SQLQuery extends ExpressionQuery implements BatchRequestParticipant
         } else {
             this.fetchSizeProperty = new FetchSizeProperty(false, 0);
         }
-        /* set batch update support for this query */
+        /* set batch update support for this query, it needs a connection to the database */
+        if (!Config.isLazyInit()) {
+            this.hasBatchQuerySupport = this.determineBatchQuerySupport();
+        }
+    }
+
+    private boolean determineBatchQuerySupport() {
         try {
-            this.hasBatchQuerySupport = this.getDataService().isBatchRequestsEnabled()
+            return this.getDataService().isBatchRequestsEnabled()
                     && (this.isForceJDBCBatchReqs() || this.calculateBatchQuerySupport());
         } catch (DataServiceFault e) {
-            this.hasBatchQuerySupport = false;
             log.warn("Unable to determine batch query support for query '" + this.getQueryId()
                     + "' : " + e.getMessage() + " - batch query support is disabled.");
+            return false;
         }
     }
 
@@ -376,6 +385,9 @@ public class SQLQuery extends ExpressionQuery implements BatchRequestParticipant
     }
 
     public boolean hasBatchQuerySupport() {
+        if (hasBatchQuerySupport == null) {
+            hasBatchQuerySupport = this.determineBatchQuerySupport();
+        }
         return hasBatchQuerySupport;
     }
 
@@ -661,7 +673,8 @@ public class SQLQuery extends ExpressionQuery implements BatchRequestParticipant
                 Object[] connInfo = this.getConfig().createConnection(creds[0], creds[1]);
                 connection = (Connection) connInfo[0];
                 boolean isXA = (Boolean) connInfo[1];
-                dsCon = new SQLDataServicesConnection(connection, isXA);
+                dsCon = new SQLDataServicesConnection(connection, isXA, this.getConfig().getPoolStatistics(),
+                        this.getQueryId());
                 TLConnectionStore.addConnection(this.getConfigId(), creds[0], queryLevel, dsCon);
             } else {
                 connection = ((SQLDataServicesConnection) dsCon).getJDBCConnection();
@@ -765,8 +778,18 @@ public class SQLQuery extends ExpressionQuery implements BatchRequestParticipant
         ResultSet rs = null;
         boolean isError = false;
         try {
+            ExecutionTrace trace = this.getTimedExecutionTrace();
+            long phaseStart = trace != null ? System.nanoTime() : 0;
             Connection conn = this.createConnection(queryLevel);
+            if (trace != null) {
+                long now = System.nanoTime();
+                trace.addPhaseNanos(ExecutionTrace.CONNECTION, now - phaseStart);
+                phaseStart = now;
+            }
             stmt = this.createProcessedPreparedStatement(SQLQuery.DS_QUERY_TYPE_NORMAL, params, conn);
+            if (trace != null) {
+                trace.addPhaseNanos(ExecutionTrace.PREPARE, System.nanoTime() - phaseStart);
+            }
             /* check if this is a batch request */
             if (this.isJDBCFirstBatchRequest()) {
                 this.setBatchPreparedStatement(stmt);
@@ -913,9 +936,19 @@ public class SQLQuery extends ExpressionQuery implements BatchRequestParticipant
         CallableStatement stmt = null;
         ResultSet rs = null;
         try {
+            ExecutionTrace trace = this.getTimedExecutionTrace();
+            long phaseStart = trace != null ? System.nanoTime() : 0;
             Connection conn = this.createConnection(queryLevel);
+            if (trace != null) {
+                long now = System.nanoTime();
+                trace.addPhaseNanos(ExecutionTrace.CONNECTION, now - phaseStart);
+                phaseStart = now;
+            }
             stmt = (CallableStatement) this.createProcessedPreparedStatement(
                     SQLQuery.DS_QUERY_TYPE_STORED_PROC, params, conn);
+            if (trace != null) {
+                trace.addPhaseNanos(ExecutionTrace.PREPARE, System.nanoTime() - phaseStart);
+            }
             /* check if this is a batch request */
             if (this.isJDBCFirstBatchRequest()) {
                 this.setBatchPreparedStatement(stmt);
@@ -20,9 +20,9 @@ package org.wso2.carbon.dataservices.core.description.query;
 
 import com.hp.hpl.jena.query.QueryExecution;
 import com.hp.hpl.jena.query.QueryExecutionFactory;
-import com.hp.hpl.jena.query.ResultSet;
 import org.wso2.carbon.dataservices.core.DataServiceFault;
 import org.wso2.carbon.dataservices.core.description.config.SparqlEndpointConfig;
+import org.wso2.carbon.dataservices.core.description.config.SparqlEndpointConfig.QueryResults;
 import org.wso2.carbon.dataservices.core.description.event.EventTrigger;
 import org.wso2.carbon.dataservices.core.engine.*;
 
@@ -62,18 +62,18 @@ public class SparqlEndpointQuery extends SparqlQueryBase {
 	}
 
 	@Override
-	public QueryExecution getQueryExecution() throws IOException, DataServiceFault {
-		return QueryExecutionFactory.sparqlService(this.getConfig().getSparqlEndpoint(), this.getQuery());
+	public QueryExecution getQueryExecution(com.hp.hpl.jena.query.Query query)
+			throws IOException, DataServiceFault {
+		return QueryExecutionFactory.sparqlService(this.getConfig().getSparqlEndpoint(), query);
 	}
 
 	@Override
     public Object processPreQuery(InternalParamCollection params, int queryLevel) throws DataServiceFault {
 		try {
-		    ResultSet results = null;
-    		    QueryExecution qe = this.getQueryExecution();
-    		    /* execute query as a select query */
-    		    results = qe.execSelect();
-    		    return results;
+		    /* execute query as a select query, with a pooled connection to the endpoint */
+		    return this.getConfig().executeSelect(this.createQuery(params).serialize());
+		} catch (DataServiceFault e) {
+			throw e;
 		} catch (Exception e) {
 			throw new DataServiceFault(e, "Error in 'SparqlQueryBase.processQuery'");
 		}
@@ -82,11 +82,11 @@ public class SparqlEndpointQuery extends SparqlQueryBase {
     @Override
     public void processPostQuery(Object result, XMLStreamWriter xmlWriter,
                                  InternalParamCollection params, int queryLevel) throws DataServiceFault {
-        ResultSet results = (ResultSet) result;
-        DataEntry dataEntry;
-        while (results != null && results.hasNext()) {
-            dataEntry = this.getDataEntryFromRS(results);
-            this.writeResultEntry(xmlWriter, dataEntry, params, queryLevel);
+        QueryResults results = (QueryResults) result;
+        try {
+            this.writeResults(results.getResultSet(), xmlWriter, params, queryLevel);
+        } finally {
+            results.close();
         }
     }
 }
@@ -20,13 +20,11 @@ package org.wso2.carbon.dataservices.core.description.query;
 
 import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
 import com.hp.hpl.jena.query.QueryExecution;
-import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 
-import org.apache.axis2.databinding.utils.ConverterUtil;
 import org.wso2.carbon.dataservices.common.DBConstants;
 import org.wso2.carbon.dataservices.core.DataServiceFault;
 import org.wso2.carbon.dataservices.core.description.event.EventTrigger;
@@ -124,65 +122,83 @@ public abstract class SparqlQueryBase extends Query {
 
 	}
  
-	private String convertRSToString (QuerySolution soln, String colName) {
-		if (soln.getLiteral(colName).getDatatype() == null) {
-			return soln.getLiteral(colName).getString();
-		} else {
-			String colType = soln.getLiteral(colName).getDatatype().getURI();
-			if (colType.equals(XSDDatatype.XSDdecimal.getURI())) {
-				return ConverterUtil.convertToString(ConverterUtil.convertToDecimal(soln
-								.getLiteral(colName).getString()));
-			} else if (colType.equals(XSDDatatype.XSDdouble.getURI())) {
-				return ConverterUtil.convertToString(ConverterUtil
-						.convertToDouble(soln.getLiteral(colName).getString()));
-			} else if (colType.equals(XSDDatatype.XSDfloat.getURI())) {
-				return ConverterUtil.convertToString(ConverterUtil
-						.convertToFloat(soln.getLiteral(colName).getString()));
-			} else if (colType.equals(XSDDatatype.XSDstring.getURI())) {
-				return soln.getLiteral(colName).getString();
-			} else if (colType.equals(XSDDatatype.XSDboolean.getURI())) {
-				return ConverterUtil
-						.convertToString(ConverterUtil.convertToBoolean(soln
-								.getLiteral(colName).getString()));
-			} else if (colType.equals(XSDDatatype.XSDlong.getURI())) {
-				return ConverterUtil.convertToString(ConverterUtil
-						.convertToLong(soln.getLiteral(colName).getString()));
-			} else if (colType.equals(XSDDatatype.XSDdate.getURI())) {
-				return ConverterUtil.convertToString(ConverterUtil
-						.convertToDate(soln.getLiteral(colName).getString()));
-			} else if (colType.equals(XSDDatatype.XSDdateTime.getURI())) {
-				return ConverterUtil
-						.convertToString(ConverterUtil.convertToDateTime(soln
-								.getLiteral(colName).getString()));
-			} else if (colType.equals(XSDDatatype.XSDtime.getURI())) {
-				return ConverterUtil.convertToString(ConverterUtil
-						.convertToTime(soln.getLiteral(colName).getString()));
-			} else {
-				return soln.getLiteral(colName).getString();
+	public DataEntry getDataEntryFromRS(ResultSet rs) {
+		return new SparqlResultColumns(rs.getResultVars(), this.isUsingColumnNumbers()).toDataEntry(
+				rs.nextSolution());
+	}
+
+	/**
+	 * Writes the solutions of a result set while they are read, with the result variables of its
+	 * columns resolved once.
+	 */
+	protected void writeResults(ResultSet results, XMLStreamWriter xmlWriter,
+			InternalParamCollection params, int queryLevel) throws DataServiceFault {
+		if (results == null) {
+			return;
+		}
+		SparqlResultColumns columns = new SparqlResultColumns(results.getResultVars(),
+				this.isUsingColumnNumbers());
+		while (results.hasNext()) {
+			this.writeResultEntry(xmlWriter, columns.toDataEntry(results.nextSolution()), params, queryLevel);
+		}
+	}
+
+	/**
+	 * Checks if a query param is the limit or the offset of the results, which are not bound to
+	 * query variables.
+	 */
+	protected static boolean isPagingParam(InternalParam param) {
+		return DBConstants.SPARQL.LIMIT_PARAM.equals(param.getName()) ||
+				DBConstants.SPARQL.OFFSET_PARAM.equals(param.getName());
+	}
+
+	/**
+	 * Creates the query to execute, with the limit and the offset of the results given with the
+	 * query params pushed down into it, so only the requested results are evaluated or transferred.
+	 * They narrow the LIMIT and the OFFSET of the query itself, if any.
+	 */
+	public com.hp.hpl.jena.query.Query createQuery(InternalParamCollection params) throws DataServiceFault {
+		com.hp.hpl.jena.query.Query query = com.hp.hpl.jena.query.QueryFactory.create(this.getQuery());
+		long limit = -1, offset = 0;
+		if (params != null) {
+			for (InternalParam param : params.getParams()) {
+				if (DBConstants.SPARQL.LIMIT_PARAM.equals(param.getName())) {
+					limit = this.getPagingParamValue(param);
+				} else if (DBConstants.SPARQL.OFFSET_PARAM.equals(param.getName())) {
+					offset = this.getPagingParamValue(param);
+				}
+			}
+		}
+		if (offset > 0) {
+			if (query.hasLimit()) {
+				long remaining = Math.max(0, query.getLimit() - offset);
+				limit = limit >= 0 ? Math.min(limit, remaining) : remaining;
 			}
-		}	
+			query.setOffset((query.hasOffset() ? query.getOffset() : 0) + offset);
+		}
+		if (limit >= 0 && (!query.hasLimit() || limit < query.getLimit())) {
+			query.setLimit(limit);
+		}
+		return query;
 	}
-	
-	public DataEntry getDataEntryFromRS(ResultSet rs) {
-		DataEntry dataEntry = new DataEntry();
-		QuerySolution soln = rs.nextSolution();
-		String colName, value;
-		boolean useColumnNumbers = this.isUsingColumnNumbers();
-		/* for each column get the colName and colValue and add to the data entry */
-		for (int i = 0; i < rs.getResultVars().size(); i++) {
-			colName = rs.getResultVars().get(i);
-			RDFNode node = soln.get(colName) ;  			
-			if (node.isLiteral()) {
-				value = convertRSToString(soln, colName);
-			} else {
-				value = soln.getResource(colName).getURI();
-			}			
-			dataEntry.addValue(useColumnNumbers ? Integer.toString(i + 1) : 
-				colName, new ParamValue(value));
+
+	private long getPagingParamValue(InternalParam param) throws DataServiceFault {
+		String value = param.getValue() != null ? param.getValue().getScalarValue() : null;
+		if (value == null || value.trim().length() == 0) {
+			return param.getName().equals(DBConstants.SPARQL.LIMIT_PARAM) ? -1 : 0;
+		}
+		try {
+			long result = Long.parseLong(value.trim());
+			if (result < 0) {
+				throw new NumberFormatException(value);
+			}
+			return result;
+		} catch (NumberFormatException e) {
+			throw new DataServiceFault(e, "[" + this.getDataService().getName() + "]  Invalid value of the '" +
+					param.getName() + "' parameter: " + value);
 		}
-		return dataEntry;
 	}
-	
+
 	public abstract Object processPreQuery(InternalParamCollection params, int queryLevel) throws DataServiceFault ;
 
     public abstract void processPostQuery(Object result, XMLStreamWriter xmlWriter,
@@ -201,7 +217,17 @@ public abstract class SparqlQueryBase extends Query {
 	 * @throws DataServiceFault 
 	 * @throws IOException 
 	 */
-	public abstract QueryExecution getQueryExecution() throws IOException, DataServiceFault;
+	public QueryExecution getQueryExecution() throws IOException, DataServiceFault {
+		return this.getQueryExecution(com.hp.hpl.jena.query.QueryFactory.create(this.getQuery()));
+	}
+
+	/**
+	 * Gets a Query Execution for the given query, e.g. with the limit and the offset of the results
+	 * @return QueryExecution
+	 * @throws DataServiceFault 
+	 * @throws IOException 
+	 */
+	public abstract QueryExecution getQueryExecution(com.hp.hpl.jena.query.Query query) throws IOException, DataServiceFault;
 	
 	/**
 	 * Gets the model used to validate input parameters
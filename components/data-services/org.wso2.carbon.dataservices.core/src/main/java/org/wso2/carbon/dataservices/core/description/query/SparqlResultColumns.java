@@ -0,0 +1,98 @@
+/*
+ *  Copyright (c) 2005-2012, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core.description.query;
+
+import com.hp.hpl.jena.datatypes.RDFDatatype;
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import org.apache.axis2.databinding.utils.ConverterUtil;
+import org.wso2.carbon.dataservices.core.engine.DataEntry;
+import org.wso2.carbon.dataservices.core.engine.ParamValue;
+
+import java.util.List;
+
+/**
+ * The columns of a SPARQL result set, with their result variables and column names resolved once
+ * for the result set, which convert its solutions to data entries while they are read.
+ */
+class SparqlResultColumns {
+
+	private final String[] variables;
+
+	private final String[] columnNames;
+
+	SparqlResultColumns(List<String> resultVars, boolean useColumnNumbers) {
+		this.variables = resultVars.toArray(new String[resultVars.size()]);
+		this.columnNames = new String[this.variables.length];
+		for (int i = 0; i < this.variables.length; i++) {
+			this.columnNames[i] = useColumnNumbers ? Integer.toString(i + 1) : this.variables[i];
+		}
+	}
+
+	DataEntry toDataEntry(QuerySolution soln) {
+		DataEntry dataEntry = new DataEntry();
+		for (int i = 0; i < this.variables.length; i++) {
+			/* the variables which are not bound in the solution, e.g. optional ones, are null */
+			dataEntry.addValue(this.columnNames[i], new ParamValue(toString(soln.get(this.variables[i]))));
+		}
+		return dataEntry;
+	}
+
+	static String toString(RDFNode node) {
+		if (node == null) {
+			return null;
+		} else if (node.isLiteral()) {
+			return literalToString((Literal) node);
+		} else {
+			return ((Resource) node).getURI();
+		}
+	}
+
+	private static String literalToString(Literal literal) {
+		RDFDatatype datatype = literal.getDatatype();
+		String value = literal.getString();
+		if (datatype == null) {
+			return value;
+		}
+		String colType = datatype.getURI();
+		if (colType.equals(XSDDatatype.XSDdecimal.getURI())) {
+			return ConverterUtil.convertToString(ConverterUtil.convertToDecimal(value));
+		} else if (colType.equals(XSDDatatype.XSDdouble.getURI())) {
+			return ConverterUtil.convertToString(ConverterUtil.convertToDouble(value));
+		} else if (colType.equals(XSDDatatype.XSDfloat.getURI())) {
+			return ConverterUtil.convertToString(ConverterUtil.convertToFloat(value));
+		} else if (colType.equals(XSDDatatype.XSDboolean.getURI())) {
+			return ConverterUtil.convertToString(ConverterUtil.convertToBoolean(value));
+		} else if (colType.equals(XSDDatatype.XSDlong.getURI())) {
+			return ConverterUtil.convertToString(ConverterUtil.convertToLong(value));
+		} else if (colType.equals(XSDDatatype.XSDdate.getURI())) {
+			return ConverterUtil.convertToString(ConverterUtil.convertToDate(value));
+		} else if (colType.equals(XSDDatatype.XSDdateTime.getURI())) {
+			return ConverterUtil.convertToString(ConverterUtil.convertToDateTime(value));
+		} else if (colType.equals(XSDDatatype.XSDtime.getURI())) {
+			return ConverterUtil.convertToString(ConverterUtil.convertToTime(value));
+		} else {
+			return value;
+		}
+	}
+
+}
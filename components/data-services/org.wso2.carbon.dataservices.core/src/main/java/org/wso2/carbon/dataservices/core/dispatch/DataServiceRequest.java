@@ -118,6 +118,7 @@ public abstract class DataServiceRequest {
         
 	}
 	
+	@SuppressWarnings("unchecked")
 	public static DataServiceRequest createDataServiceRequest(
 			MessageContext msgContext) throws DataServiceFault {
 		AxisService axisService = msgContext.getAxisService();
@@ -125,7 +126,15 @@ public abstract class DataServiceRequest {
 		OMElement inputMessage = msgContext.getEnvelope().getBody().getFirstElement();
 		/* get operation/request name */
 		String requestName = axisOp.getName().getLocalPart();
-		if (inputMessage != null && !requestName.equals(inputMessage.getLocalName())) {
+		/* the path parameters of a REST request whose resource is resolved by the DBResourceDispatcher */
+		Map<String, String> pathVariables = (Map<String, String>) msgContext.getProperty(
+				DBConstants.RESOURCE_PATH_VARIABLES);
+		/* the input message of such a request, built by the transport for the same operation as the
+		 * one resolved by the dispatcher, is accepted as it is */
+		boolean builtForResource = pathVariables != null && axisOp.equals(
+				msgContext.getProperty(DBConstants.RESOURCE_TRANSPORT_OPERATION));
+		if (inputMessage != null && !builtForResource &&
+				!requestName.equals(inputMessage.getLocalName())) {
 			throw new DataServiceFault("Input Message and " + requestName + " Axis Operation didn't match.");
 		}
 		messageContext = msgContext;
@@ -144,8 +153,13 @@ public abstract class DataServiceRequest {
 			dsRequest = new BatchDataServiceRequest(
 					dataService, requestName, getBatchInputValuesFromOM(inputMessage));
 		} else {
-			dsRequest = new SingleDataServiceRequest(
-					dataService, requestName, getSingleInputValuesFromOM(inputMessage)); 
+			Map<String, ParamValue> params = getSingleInputValuesFromOM(inputMessage);
+			if (pathVariables != null) {
+				for (Map.Entry<String, String> variable : pathVariables.entrySet()) {
+					params.put(variable.getKey(), new ParamValue(variable.getValue()));
+				}
+			}
+			dsRequest = new SingleDataServiceRequest(dataService, requestName, params);
 		}
 		
 		/* set user information */
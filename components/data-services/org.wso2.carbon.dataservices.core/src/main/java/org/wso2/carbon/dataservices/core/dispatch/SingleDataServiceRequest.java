@@ -95,6 +95,8 @@ public class SingleDataServiceRequest extends DataServiceRequest {
             }
 			return result;
 		} catch (DataServiceFault e) {
+			/* the result of the first pass is not written */
+			Query.releaseQueryPreprocessObject();
 			throw e;
 		}
 	}
@@ -0,0 +1,179 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the result rows as CSV (RFC 4180). The header is made of the attributes and elements of the
+ * result definition, or of the value names of the first row when the definition does not fix them, i.e.
+ * when it has nested queries or no definition is given. The values of the rows are written in the columns
+ * with the same names, a missing or nil value is written as an empty cell, and a value with no column in
+ * the header fails the writing of the result rather than being dropped.
+ * A repeated value, e.g. an array, is written in a single cell separated by semicolons.
+ */
+public class CSVResultWriter extends ExportResultWriter {
+
+	private static final String LINE_SEPARATOR = "\r\n";
+
+	private static final char MULTI_VALUE_SEPARATOR = ';';
+
+	private Map<String, Integer> columns;
+
+	private String[] cells;
+
+	private boolean headerFromResult;
+
+	public CSVResultWriter(Writer writer) {
+		super(writer);
+	}
+
+	@Override
+	protected void writeRow(List<Field> fields, int fieldCount) throws IOException {
+		if (this.columns == null) {
+			this.writeHeader(fields, fieldCount);
+		}
+		Arrays.fill(this.cells, null);
+		Field field;
+		Integer column;
+		for (int i = 0; i < fieldCount; i++) {
+			field = fields.get(i);
+			column = this.columns.get(field.getName());
+			if (column == null) {
+				throw new IOException("The value " + field.getName() + " has no column in the CSV header " +
+						this.columns.keySet() + ", the header is built from " + (this.headerFromResult ? "the result definition" :
+						"the first row"));
+			}
+			if (field.getValue() == null) {
+				continue;
+			}
+			if (this.cells[column] == null) {
+				this.cells[column] = field.getValue();
+			} else {
+				this.cells[column] = this.cells[column] + MULTI_VALUE_SEPARATOR + field.getValue();
+			}
+		}
+		Writer out = this.getWriter();
+		for (int i = 0; i < this.cells.length; i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			if (this.cells[i] != null) {
+				writeCell(out, this.cells[i]);
+			}
+		}
+		out.write(LINE_SEPARATOR);
+	}
+
+	private void writeHeader(List<Field> fields, int fieldCount) throws IOException {
+		Set<String> names = this.getResult() == null ? null : getColumnNames(this.getResult());
+		this.headerFromResult = names != null;
+		if (names == null) {
+			names = new LinkedHashSet<String>();
+			for (int i = 0; i < fieldCount; i++) {
+				names.add(fields.get(i).getName());
+			}
+		}
+		this.columns = new HashMap<String, Integer>();
+		Writer out = this.getWriter();
+		for (String name : names) {
+			if (!this.columns.isEmpty()) {
+				out.write(',');
+			}
+			this.columns.put(name, this.columns.size());
+			writeCell(out, name);
+		}
+		out.write(LINE_SEPARATOR);
+		this.cells = new String[this.columns.size()];
+	}
+
+	/**
+	 * Returns the names of the values of the rows of a result, in the order they are written: the attributes
+	 * and the elements visible to the current user, prefixed with the names of their element groups.
+	 * @return The names, or null if they are not fixed by the definition, i.e. if it has nested queries
+	 */
+	public static Set<String> getColumnNames(Result result) {
+		if (result.isXsAny() || result.getDefaultElementGroup() == null) {
+			return null;
+		}
+		Set<String> names = new LinkedHashSet<String>();
+		return addColumnNames(result.getDefaultElementGroup(), null, names) ? names : null;
+	}
+
+	private static boolean addColumnNames(OutputElementGroup group, String prefix, Set<String> names) {
+		List<StaticOutputElement> attributes = group.getAttributeEntriesForCurrentRole();
+		for (StaticOutputElement attribute : attributes != null ? attributes : group.getAttributeEntries()) {
+			names.add(prefix == null ? attribute.getName() : prefix + '.' + attribute.getName());
+		}
+		List<OutputElement> elements = group.getAllElementsForCurrentRole();
+		for (OutputElement element : elements != null ? elements : new ArrayList<OutputElement>(
+				group.getAllElements())) {
+			String name = element.getName() == null ? prefix :
+					(prefix == null ? element.getName() : prefix + '.' + element.getName());
+			if (element instanceof StaticOutputElement) {
+				names.add(name);
+			} else if (element instanceof OutputElementGroup) {
+				if (!addColumnNames((OutputElementGroup) element, name, names)) {
+					return false;
+				}
+			} else {
+				/* the values of a nested query depend on its rows */
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes a cell, quoted if it contains a separator, a quote, a line break or surrounding spaces.
+	 */
+	private static void writeCell(Writer out, String value) throws IOException {
+		boolean quote = value.length() > 0 && (value.charAt(0) == ' ' ||
+				value.charAt(value.length() - 1) == ' ');
+		char c;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+		}
+		if (!quote) {
+			out.write(value);
+			return;
+		}
+		out.write('"');
+		int last = 0;
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) == '"') {
+				out.write(value, last, i + 1 - last);
+				out.write('"');
+				last = i + 1;
+			}
+		}
+		out.write(value, last, value.length() - last);
+		out.write('"');
+	}
+
+}
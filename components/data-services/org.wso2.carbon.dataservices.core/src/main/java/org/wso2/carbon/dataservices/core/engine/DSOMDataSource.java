@@ -18,9 +18,12 @@
  */
 package org.wso2.carbon.dataservices.core.engine;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.util.Map;
 
@@ -30,6 +33,7 @@ import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.axiom.om.OMDataSource;
 import org.apache.axiom.om.OMOutputFormat;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.io.output.NullOutputStream;
 import org.wso2.carbon.dataservices.core.DBUtils;
 import org.wso2.carbon.dataservices.core.DataServiceFault;
@@ -81,8 +85,60 @@ public class DSOMDataSource implements OMDataSource {
 	}
 
 	public void serialize(OutputStream output, OMOutputFormat format) throws XMLStreamException {
-		XMLStreamWriter xmlWriter = DBUtils.getXMLOutputFactory().createXMLStreamWriter(output);
-		this.serialize(xmlWriter);
+		/* count the bytes of the result for the request statistics */
+		CountingOutputStream countingOutput = new CountingOutputStream(output);
+		XMLStreamWriter xmlWriter = DBUtils.getXMLOutputFactory().createXMLStreamWriter(countingOutput);
+		try {
+			this.serialize(xmlWriter);
+		} finally {
+			this.getDataService().getRequestStatistics(this.getOpName()).addBytesWritten(
+					countingOutput.getByteCount());
+		}
+	}
+	
+	/**
+	 * Checks if the result of this request was declared with a JSON mapping,
+	 * so it can be written directly as JSON with {@link #serializeJSON(OutputStream, String)}.
+	 */
+	public boolean isJSONMapping() {
+		return this.getDataService().isJSONMappingForRequest(this.getOpName());
+	}
+
+	/**
+	 * Writes the result as JSON, straight from the rows, without an intermediate XML infoset.
+	 */
+	public void serializeJSON(OutputStream output, String charSetEncoding) throws XMLStreamException {
+		this.serialize(output, charSetEncoding, null);
+	}
+
+	/**
+	 * Writes the result in the given export format, one record per row, see {@link ExportResultWriter}.
+	 */
+	public void serializeExport(OutputStream output, String contentType,
+			String charSetEncoding) throws XMLStreamException {
+		this.serialize(output, charSetEncoding, contentType);
+	}
+
+	private void serialize(OutputStream output, String charSetEncoding,
+			String exportContentType) throws XMLStreamException {
+		CountingOutputStream countingOutput = new CountingOutputStream(output);
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(countingOutput, charSetEncoding));
+			if (exportContentType == null) {
+				this.serialize(new JSONResultWriter(writer));
+			} else {
+				ExportResultWriter exportWriter = ExportResultWriter.create(exportContentType, writer);
+				if (exportWriter == null) {
+					throw new XMLStreamException("Unsupported export format: " + exportContentType);
+				}
+				this.serialize(exportWriter);
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new XMLStreamException("Unsupported result encoding: " + charSetEncoding, e);
+		} finally {
+			this.getDataService().getRequestStatistics(this.getOpName()).addBytesWritten(
+					countingOutput.getByteCount());
+		}
 	}
 	
 	public void serialize(Writer writer, OMOutputFormat format) throws XMLStreamException {
@@ -38,6 +38,10 @@ import org.wso2.carbon.dataservices.core.description.resource.Resource.ResourceI
 import org.wso2.carbon.dataservices.core.description.resource.ResourceFactory;
 import org.wso2.carbon.dataservices.core.description.xa.DSSXATransactionManager;
 import org.wso2.carbon.dataservices.core.internal.DataServicesDSComponent;
+import org.wso2.carbon.dataservices.core.jmx.DataServiceStatistics;
+import org.wso2.carbon.dataservices.core.jmx.ExecutionTrace;
+import org.wso2.carbon.dataservices.core.jmx.RequestStatistics;
+import org.wso2.carbon.dataservices.core.jmx.SlowQueryLog;
 import org.wso2.carbon.event.core.EventBroker;
 import org.wso2.carbon.event.core.exception.EventBrokerException;
 import org.wso2.carbon.event.core.subscription.Subscription;
@@ -189,6 +193,18 @@ public class DataService {
      */
     private List<String> transports;
 
+    /**
+     * Execution statistics of the operations, resources and queries
+     */
+    private final DataServiceStatistics statistics = new DataServiceStatistics();
+
+    /**
+     * Query executions slower than the configured threshold
+     */
+    private final SlowQueryLog slowQueryLog = new SlowQueryLog(
+            Long.getLong(DBConstants.DSS_SLOW_QUERY_THRESHOLD, -1),
+            Integer.getInteger(DBConstants.DSS_SLOW_QUERY_LOG_SIZE, DBConstants.DEFAULT_SLOW_QUERY_LOG_SIZE));
+
 	public DataService(String name, String description,
                        String defaultNamespace, String dsLocation, String serviceStatus,
                        boolean batchRequestsEnabled, boolean boxcarringEnabled,
@@ -599,9 +615,12 @@ public class DataService {
     public void invoke(XMLStreamWriter xmlWriter,
                                    String requestName, Map<String, ParamValue> params)
             throws DataServiceFault {
+        CallableRequest request = this.getCallableRequest(requestName);
+        ExecutionTrace trace = DataServiceStatistics.begin(request);
+        boolean error = true;
         try {
-            this.getCallableRequest(requestName).execute(xmlWriter, 
-            		this.extractParams(params));
+            request.execute(xmlWriter, this.extractParams(params));
+            error = false;
         } catch (DataServiceFault e) {
             this.fillInDataServiceFault(e, requestName, params);
             throw e;
@@ -609,7 +628,35 @@ public class DataService {
             DataServiceFault dsf = new DataServiceFault(e);
             this.fillInDataServiceFault(dsf, requestName, params);
             throw dsf;
+        } finally {
+            /* a null writer is the data pre-fetching pass of a request with a result,
+             * the execution ends when the result is written */
+            if (error || xmlWriter != null) {
+                this.getRequestStatistics(requestName).record(System.nanoTime() - trace.getStartNanos(), 0, error);
+                DataServiceStatistics.end(request);
+            }
+        }
+    }
+
+    public DataServiceStatistics getStatistics() {
+        return statistics;
+    }
+
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /**
+     * Returns the execution statistics of the operation or the resource with the given request name.
+     */
+    public RequestStatistics getRequestStatistics(String requestName) {
+        CallableRequest request = this.getCallableRequest(requestName);
+        if (request instanceof Resource) {
+            ResourceID resourceId = ((Resource) request).getResourceId();
+            return this.getStatistics().getResourceStatistics(resourceId.getMethod() + " " +
+                    resourceId.getPath());
         }
+        return this.getStatistics().getOperationStatistics(requestName);
     }
 
     private void fillInDataServiceFault(DataServiceFault dsf, String requestName,
@@ -665,6 +712,15 @@ public class DataService {
         return this.getCallableRequest(requestName).getCallQuery().isHasResult();
     }
 
+    /**
+     * Checks if the result of the given request was declared with a JSON mapping, and is not
+     * transformed afterwards, so it can be written directly as JSON.
+     */
+    public boolean isJSONMappingForRequest(String requestName) {
+        Result result = this.getCallableRequest(requestName).getCallQuery().getQuery().getResult();
+        return result != null && result.isJSONMapping() && result.getXsltTransformer() == null;
+    }
+
     public boolean isReturningRequestStatus(String requestName) {
         return this.getCallableRequest(requestName).isReturnRequestStatus();
     }
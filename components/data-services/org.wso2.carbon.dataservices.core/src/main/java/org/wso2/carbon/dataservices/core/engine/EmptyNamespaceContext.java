@@ -0,0 +1,52 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core.engine;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+import javax.xml.namespace.NamespaceContext;
+
+/**
+ * The namespace context of the result writers which do not write namespaces.
+ */
+class EmptyNamespaceContext implements NamespaceContext {
+
+	static final EmptyNamespaceContext INSTANCE = new EmptyNamespaceContext();
+
+	private EmptyNamespaceContext() {
+	}
+
+	@Override
+	public String getNamespaceURI(String prefix) {
+		return null;
+	}
+
+	@Override
+	public String getPrefix(String namespaceURI) {
+		return null;
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Iterator getPrefixes(String namespaceURI) {
+		return Collections.emptyList().iterator();
+	}
+
+}
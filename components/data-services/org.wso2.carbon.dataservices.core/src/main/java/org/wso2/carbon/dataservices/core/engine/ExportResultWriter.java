@@ -0,0 +1,426 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+
+import org.wso2.carbon.dataservices.common.DBConstants;
+
+/**
+ * Base class of the export output formats, which write each row of the result as one flat record.
+ * The values of a row are collected between {@link #startRow()} and {@link #endRow()}, which are called
+ * for the rows of the top level query, and are named after their element, prefixed with the names of
+ * the enclosing elements within the row, e.g. "address.city". Anything outside of the rows, such as the
+ * result wrapper, is not written. Only the current row is kept in memory.
+ */
+public abstract class ExportResultWriter implements ResultStreamWriter {
+
+	private static final char PATH_SEPARATOR = '.';
+
+	private final Writer writer;
+
+	/* the names of the open elements within the row, null for the ones which are not part of the names */
+	private final List<String> path = new ArrayList<String>();
+
+	/* the text of the innermost open element, until it is known whether it has child elements */
+	private StringBuilder text;
+
+	private boolean nil;
+
+	private boolean inRow;
+
+	/* the definition of the rows, if known */
+	private Result result;
+
+	/* the values of the current row, the instances are reused */
+	private final List<Field> fields = new ArrayList<Field>();
+
+	private int fieldCount;
+
+	protected ExportResultWriter(Writer writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Creates the writer of the given export format.
+	 * @param contentType The content type of the format
+	 * @return The writer, or null if the content type is not an export format
+	 */
+	public static ExportResultWriter create(String contentType, Writer writer) {
+		if (DBConstants.CSV_CONTENT_TYPE.equals(contentType)) {
+			return new CSVResultWriter(writer);
+		} else if (DBConstants.NDJSON_CONTENT_TYPE.equals(contentType)) {
+			return new NDJSONResultWriter(writer);
+		}
+		return null;
+	}
+
+	protected Writer getWriter() {
+		return writer;
+	}
+
+	/**
+	 * Returns the definition of the rows given to {@link #startRow(Result)}, null if it is not known.
+	 */
+	protected Result getResult() {
+		return result;
+	}
+
+	/**
+	 * Writes a row with the given values, in the order they were written.
+	 */
+	protected abstract void writeRow(List<Field> fields, int fieldCount) throws IOException;
+
+	/**
+	 * Starts a row of the given result, the values written until {@link #endRow()} belong to it.
+	 * @param result The definition of the row
+	 */
+	public void startRow(Result result) {
+		this.result = result;
+		this.startRow();
+	}
+
+	/**
+	 * Starts a row of the result, the values written until {@link #endRow()} belong to it.
+	 */
+	public void startRow() {
+		this.inRow = true;
+		this.fieldCount = 0;
+		this.path.clear();
+		this.text = null;
+		this.nil = false;
+	}
+
+	/**
+	 * Ends the current row and writes it.
+	 */
+	public void endRow() throws XMLStreamException {
+		this.inRow = false;
+		try {
+			this.writeRow(this.fields, this.fieldCount);
+		} catch (IOException e) {
+			throw new XMLStreamException("Error in writing result row", e);
+		}
+		this.fieldCount = 0;
+	}
+
+	/**
+	 * Starts the row element of a query, which is not part of the value names when it is the row
+	 * being exported.
+	 */
+	@Override
+	public void writeStartRow(String name) throws XMLStreamException {
+		this.startElement(this.path.isEmpty() ? null : name);
+	}
+
+	@Override
+	public void writeField(String name, ParamValue value, QName xsdType,
+			boolean repeated) throws XMLStreamException {
+		if (!this.inRow) {
+			return;
+		}
+		this.text = null;
+		String fieldName = this.getFieldName(name);
+		String type = xsdType == null ? null : xsdType.getLocalPart();
+		this.addValue(fieldName, value, type);
+	}
+
+	private void addValue(String name, ParamValue value, String xsdType) {
+		if (value != null && value.getValueType() == ParamValue.PARAM_VALUE_ARRAY &&
+				value.getArrayValue() != null) {
+			/* the items of an array are repeated values */
+			for (ParamValue item : value.getArrayValue()) {
+				this.addValue(name, item, xsdType);
+			}
+		} else {
+			this.addField(name, value == null ? null : value.toString(), xsdType);
+		}
+	}
+
+	private void addField(String name, String value, String xsdType) {
+		if (this.fieldCount == this.fields.size()) {
+			this.fields.add(new Field());
+		}
+		Field field = this.fields.get(this.fieldCount++);
+		field.name = name;
+		field.value = value;
+		field.xsdType = xsdType;
+	}
+
+	private String getFieldName(String name) {
+		StringBuilder fieldName = null;
+		for (String parent : this.path) {
+			if (parent == null) {
+				continue;
+			}
+			if (fieldName == null) {
+				fieldName = new StringBuilder(parent);
+			} else {
+				fieldName.append(PATH_SEPARATOR).append(parent);
+			}
+		}
+		if (fieldName == null) {
+			return name;
+		}
+		return fieldName.append(PATH_SEPARATOR).append(name).toString();
+	}
+
+	private void startElement(String name) {
+		if (!this.inRow) {
+			return;
+		}
+		/* the parent element has child elements, its text is not a value */
+		this.text = null;
+		this.nil = false;
+		this.path.add(name);
+	}
+
+	@Override
+	public void writeStartElement(String localName) {
+		this.startElement(localName);
+	}
+
+	@Override
+	public void writeStartElement(String namespaceURI, String localName) {
+		this.startElement(localName);
+	}
+
+	@Override
+	public void writeStartElement(String prefix, String localName, String namespaceURI) {
+		this.startElement(localName);
+	}
+
+	@Override
+	public void writeEmptyElement(String namespaceURI, String localName) {
+		this.startElement(localName);
+		this.writeEndElement();
+	}
+
+	@Override
+	public void writeEmptyElement(String prefix, String localName, String namespaceURI) {
+		this.startElement(localName);
+		this.writeEndElement();
+	}
+
+	@Override
+	public void writeEmptyElement(String localName) {
+		this.startElement(localName);
+		this.writeEndElement();
+	}
+
+	@Override
+	public void writeEndElement() {
+		if (!this.inRow || this.path.isEmpty()) {
+			return;
+		}
+		String name = this.path.remove(this.path.size() - 1);
+		if (name != null && (this.text != null || this.nil)) {
+			/* an element with a value and no child elements */
+			this.addField(this.getFieldName(name), this.nil ? null : this.text.toString(), null);
+		}
+		this.text = null;
+		this.nil = false;
+	}
+
+	@Override
+	public void writeEndDocument() {
+		/* the rows are written when they end */
+	}
+
+	@Override
+	public void close() throws XMLStreamException {
+		this.flush();
+	}
+
+	@Override
+	public void flush() throws XMLStreamException {
+		try {
+			this.writer.flush();
+		} catch (IOException e) {
+			throw new XMLStreamException("Error in flushing the result", e);
+		}
+	}
+
+	@Override
+	public void writeAttribute(String localName, String value) {
+		this.writeAttributeField(null, localName, value);
+	}
+
+	@Override
+	public void writeAttribute(String prefix, String namespaceURI, String localName, String value) {
+		this.writeAttributeField(namespaceURI, localName, value);
+	}
+
+	@Override
+	public void writeAttribute(String namespaceURI, String localName, String value) {
+		this.writeAttributeField(namespaceURI, localName, value);
+	}
+
+	private void writeAttributeField(String namespaceURI, String localName, String value) {
+		if (!this.inRow) {
+			return;
+		}
+		if (DBConstants.XSI_NAMESPACE.equals(namespaceURI) && "nil".equals(localName)) {
+			this.nil = "true".equals(value);
+			return;
+		}
+		this.addField(this.getFieldName(localName), value, null);
+	}
+
+	@Override
+	public void writeCharacters(String text) {
+		if (!this.inRow || this.path.isEmpty() || text == null) {
+			return;
+		}
+		if (this.text == null) {
+			this.text = new StringBuilder(text);
+		} else {
+			this.text.append(text);
+		}
+	}
+
+	@Override
+	public void writeCharacters(char[] text, int start, int len) {
+		this.writeCharacters(new String(text, start, len));
+	}
+
+	@Override
+	public void writeCData(String data) {
+		this.writeCharacters(data);
+	}
+
+	@Override
+	public void writeNamespace(String prefix, String namespaceURI) {
+		/* namespaces are not written in the export formats */
+	}
+
+	@Override
+	public void writeDefaultNamespace(String namespaceURI) {
+		/* namespaces are not written in the export formats */
+	}
+
+	@Override
+	public void writeComment(String data) {
+		/* comments are not written in the export formats */
+	}
+
+	@Override
+	public void writeProcessingInstruction(String target) {
+		/* processing instructions are not written in the export formats */
+	}
+
+	@Override
+	public void writeProcessingInstruction(String target, String data) {
+		/* processing instructions are not written in the export formats */
+	}
+
+	@Override
+	public void writeDTD(String dtd) {
+		/* DTDs are not written in the export formats */
+	}
+
+	@Override
+	public void writeEntityRef(String name) {
+		/* entity references are not written in the export formats */
+	}
+
+	@Override
+	public void writeStartDocument() {
+		/* there is no document header in the export formats */
+	}
+
+	@Override
+	public void writeStartDocument(String version) {
+		/* there is no document header in the export formats */
+	}
+
+	@Override
+	public void writeStartDocument(String encoding, String version) {
+		/* there is no document header in the export formats */
+	}
+
+	@Override
+	public String getPrefix(String uri) {
+		return null;
+	}
+
+	@Override
+	public void setPrefix(String prefix, String uri) {
+		/* namespaces are not written in the export formats */
+	}
+
+	@Override
+	public void setDefaultNamespace(String uri) {
+		/* namespaces are not written in the export formats */
+	}
+
+	@Override
+	public void setNamespaceContext(NamespaceContext context) {
+		/* namespaces are not written in the export formats */
+	}
+
+	@Override
+	public NamespaceContext getNamespaceContext() {
+		return EmptyNamespaceContext.INSTANCE;
+	}
+
+	@Override
+	public Object getProperty(String name) {
+		throw new IllegalArgumentException("Property '" + name + "' is not supported by the export writer");
+	}
+
+	/**
+	 * A value of a row.
+	 */
+	protected static class Field {
+
+		private String name;
+
+		private String value;
+
+		private String xsdType;
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the value, null if the element is nil.
+		 */
+		public String getValue() {
+			return value;
+		}
+
+		/**
+		 * Returns the local name of the schema type of the value, null if it is not known.
+		 */
+		public String getXsdType() {
+			return xsdType;
+		}
+
+	}
+
+}
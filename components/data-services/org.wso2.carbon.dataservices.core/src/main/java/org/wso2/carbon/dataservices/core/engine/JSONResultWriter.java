@@ -0,0 +1,557 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+
+import org.wso2.carbon.dataservices.common.DBConstants;
+
+/**
+ * A streaming JSON generator exposed as an XMLStreamWriter, so results can be written as JSON
+ * through the same code path as XML, without building the XML infoset first.
+ * Elements are written as object members, the result rows and the repeated elements are written
+ * as arrays, and the elements written with {@link #writeField(String, ParamValue, QName, boolean)}
+ * keep the numbers and the booleans of their schema type. Namespaces are ignored, the attributes are
+ * written as members, and an element with no content is written as an empty object.
+ */
+public class JSONResultWriter implements ResultStreamWriter {
+
+	private static final Set<String> NUMERIC_TYPES = new HashSet<String>(Arrays.asList(
+			"integer", "int", "long", "short", "byte", "decimal", "double", "float",
+			"nonNegativeInteger", "positiveInteger", "negativeInteger", "nonPositiveInteger",
+			"unsignedLong", "unsignedInt", "unsignedShort", "unsignedByte"));
+
+	private static final String BOOLEAN_TYPE = "boolean";
+
+	/* the member used for the text of an element which also has attributes or child elements */
+	private static final String TEXT_MEMBER = "$";
+
+	/* valid in JSON strings, but not in JavaScript ones */
+	private static final char LINE_SEPARATOR = (char) 0x2028;
+
+	private static final char PARAGRAPH_SEPARATOR = (char) 0x2029;
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final Writer writer;
+
+	/* the open elements, the first one is the root object of the document;
+	 * the frames are reused, the current depth says which ones are in use */
+	private final List<Frame> frames = new ArrayList<Frame>();
+
+	private int depth;
+
+	public JSONResultWriter(Writer writer) {
+		this.writer = writer;
+		this.frames.add(new Frame());
+		this.frames.get(0).reset(null);
+	}
+
+	/**
+	 * Starts an element which is an item of the array with the given name, e.g. a result row;
+	 * consecutive items with the same name are written in the same array.
+	 */
+	@Override
+	public void writeStartRow(String name) throws XMLStreamException {
+		this.startElement(name, true);
+	}
+
+	/**
+	 * Writes an element with a value, as a JSON number or boolean if the schema type is numeric or
+	 * boolean and the value is valid for it, or else as a string; a null value is written as null and
+	 * an array value as an array.
+	 */
+	@Override
+	public void writeField(String name, ParamValue value, QName xsdType,
+			boolean repeated) throws XMLStreamException {
+		try {
+			this.startMember(this.currentFrame(), name, repeated);
+			this.writeValue(value, xsdType == null ? null : xsdType.getLocalPart());
+		} catch (IOException e) {
+			throw new XMLStreamException("Error in writing JSON field: " + name, e);
+		}
+	}
+
+	private void startElement(String name, boolean repeated) throws XMLStreamException {
+		try {
+			this.startMember(this.currentFrame(), name, repeated);
+		} catch (IOException e) {
+			throw new XMLStreamException("Error in writing JSON element: " + name, e);
+		}
+		this.depth++;
+		if (this.depth == this.frames.size()) {
+			this.frames.add(new Frame());
+		}
+		this.frames.get(this.depth).reset(name);
+	}
+
+	private Frame currentFrame() {
+		return this.frames.get(this.depth);
+	}
+
+	/**
+	 * Writes the name of a member in the given element, opening the element as an object if needed.
+	 */
+	private void startMember(Frame parent, String name, boolean repeated) throws IOException {
+		this.openObject(parent);
+		if (repeated && name.equals(parent.openArray)) {
+			this.writer.write(',');
+			return;
+		}
+		this.closeArray(parent);
+		if (parent.hasMembers) {
+			this.writer.write(',');
+		}
+		parent.hasMembers = true;
+		writeString(this.writer, name);
+		this.writer.write(':');
+		if (repeated) {
+			this.writer.write('[');
+			parent.openArray = name;
+		}
+	}
+
+	private void openObject(Frame frame) throws IOException {
+		if (!frame.object) {
+			this.writer.write('{');
+			frame.object = true;
+			if (frame.text != null && !isWhitespace(frame.text)) {
+				frame.hasMembers = true;
+				writeString(this.writer, TEXT_MEMBER);
+				this.writer.write(':');
+				writeString(this.writer, frame.text.toString());
+			}
+			frame.text = null;
+		}
+	}
+
+	private void closeArray(Frame frame) throws IOException {
+		if (frame.openArray != null) {
+			this.writer.write(']');
+			frame.openArray = null;
+		}
+	}
+
+	private void writeValue(ParamValue value, String xsdType) throws IOException {
+		if (value == null || (value.getArrayValue() == null && value.getScalarValue() == null &&
+				value.getUdt() == null)) {
+			this.writer.write("null");
+		} else if (value.getValueType() == ParamValue.PARAM_VALUE_ARRAY) {
+			this.writer.write('[');
+			Iterator<ParamValue> itr = value.getArrayValue().iterator();
+			while (itr.hasNext()) {
+				this.writeValue(itr.next(), xsdType);
+				if (itr.hasNext()) {
+					this.writer.write(',');
+				}
+			}
+			this.writer.write(']');
+		} else {
+			writeScalar(this.writer, value.toString(), xsdType);
+		}
+	}
+
+	/**
+	 * Writes the given value as a JSON number or boolean if the schema type is numeric or boolean and
+	 * the value is valid for it, or else as a JSON string.
+	 * @param xsdType The local name of the schema type, or null
+	 */
+	static void writeScalar(Writer out, String value, String xsdType) throws IOException {
+		if (value == null) {
+			out.write("null");
+		} else if (xsdType != null && NUMERIC_TYPES.contains(xsdType) && isNumber(value)) {
+			out.write(value);
+		} else if (BOOLEAN_TYPE.equals(xsdType) && ("true".equals(value) || "1".equals(value))) {
+			out.write("true");
+		} else if (BOOLEAN_TYPE.equals(xsdType) && ("false".equals(value) || "0".equals(value))) {
+			out.write("false");
+		} else {
+			writeString(out, value);
+		}
+	}
+
+	/**
+	 * Checks if the given value is a valid JSON number, i.e. -?int(.digits)?([eE][+-]?digits)?
+	 */
+	private static boolean isNumber(String value) {
+		int length = value.length();
+		int i = 0;
+		if (i < length && value.charAt(i) == '-') {
+			i++;
+		}
+		int start = i;
+		while (i < length && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+			i++;
+		}
+		if (i == start || (value.charAt(start) == '0' && i - start > 1)) {
+			return false;
+		}
+		if (i < length && value.charAt(i) == '.') {
+			start = ++i;
+			while (i < length && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+				i++;
+			}
+			if (i == start) {
+				return false;
+			}
+		}
+		if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+			i++;
+			if (i < length && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+				i++;
+			}
+			start = i;
+			while (i < length && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+				i++;
+			}
+			if (i == start) {
+				return false;
+			}
+		}
+		return i == length;
+	}
+
+	private static boolean isWhitespace(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (!Character.isWhitespace(text.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the given value as a JSON string.
+	 */
+	static void writeString(Writer out, String value) throws IOException {
+		out.write('"');
+		int length = value.length();
+		int last = 0;
+		char c;
+		for (int i = 0; i < length; i++) {
+			c = value.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\' && c != LINE_SEPARATOR && c != PARAGRAPH_SEPARATOR) {
+				continue;
+			}
+			if (i > last) {
+				out.write(value, last, i - last);
+			}
+			last = i + 1;
+			switch (c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				out.write("\\u");
+				out.write(HEX_DIGITS[(c >> 12) & 0xF]);
+				out.write(HEX_DIGITS[(c >> 8) & 0xF]);
+				out.write(HEX_DIGITS[(c >> 4) & 0xF]);
+				out.write(HEX_DIGITS[c & 0xF]);
+			}
+		}
+		if (length > last) {
+			out.write(value, last, length - last);
+		}
+		out.write('"');
+	}
+
+	@Override
+	public void writeStartElement(String localName) throws XMLStreamException {
+		this.startElement(localName, false);
+	}
+
+	@Override
+	public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+		this.startElement(localName, false);
+	}
+
+	@Override
+	public void writeStartElement(String prefix, String localName,
+			String namespaceURI) throws XMLStreamException {
+		this.startElement(localName, false);
+	}
+
+	@Override
+	public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+		this.startElement(localName, false);
+		this.writeEndElement();
+	}
+
+	@Override
+	public void writeEmptyElement(String prefix, String localName,
+			String namespaceURI) throws XMLStreamException {
+		this.startElement(localName, false);
+		this.writeEndElement();
+	}
+
+	@Override
+	public void writeEmptyElement(String localName) throws XMLStreamException {
+		this.startElement(localName, false);
+		this.writeEndElement();
+	}
+
+	@Override
+	public void writeEndElement() throws XMLStreamException {
+		if (this.depth == 0) {
+			throw new XMLStreamException("No element to end in the JSON result");
+		}
+		Frame frame = this.currentFrame();
+		try {
+			if (frame.nil) {
+				this.writer.write("null");
+			} else if (!frame.object && frame.text != null) {
+				writeString(this.writer, frame.text.toString());
+			} else {
+				this.openObject(frame);
+				this.closeArray(frame);
+				this.writer.write('}');
+			}
+			this.depth--;
+			if (this.depth == 0) {
+				/* the document element is complete */
+				Frame root = this.currentFrame();
+				this.closeArray(root);
+				this.writer.write('}');
+				root.reset(null);
+			}
+		} catch (IOException e) {
+			throw new XMLStreamException("Error in ending JSON element: " + frame.name, e);
+		}
+	}
+
+	@Override
+	public void writeEndDocument() throws XMLStreamException {
+		while (this.depth > 0) {
+			this.writeEndElement();
+		}
+	}
+
+	@Override
+	public void close() throws XMLStreamException {
+		this.flush();
+	}
+
+	@Override
+	public void flush() throws XMLStreamException {
+		try {
+			this.writer.flush();
+		} catch (IOException e) {
+			throw new XMLStreamException("Error in flushing the JSON result", e);
+		}
+	}
+
+	@Override
+	public void writeAttribute(String localName, String value) throws XMLStreamException {
+		this.writeAttributeMember(null, localName, value);
+	}
+
+	@Override
+	public void writeAttribute(String prefix, String namespaceURI, String localName,
+			String value) throws XMLStreamException {
+		this.writeAttributeMember(namespaceURI, localName, value);
+	}
+
+	@Override
+	public void writeAttribute(String namespaceURI, String localName,
+			String value) throws XMLStreamException {
+		this.writeAttributeMember(namespaceURI, localName, value);
+	}
+
+	private void writeAttributeMember(String namespaceURI, String localName,
+			String value) throws XMLStreamException {
+		Frame frame = this.currentFrame();
+		if (DBConstants.XSI_NAMESPACE.equals(namespaceURI) && "nil".equals(localName)) {
+			frame.nil = "true".equals(value);
+			return;
+		}
+		try {
+			this.startMember(frame, localName, false);
+			writeString(this.writer, value);
+		} catch (IOException e) {
+			throw new XMLStreamException("Error in writing JSON attribute: " + localName, e);
+		}
+	}
+
+	@Override
+	public void writeNamespace(String prefix, String namespaceURI) {
+		/* namespaces are not written in JSON */
+	}
+
+	@Override
+	public void writeDefaultNamespace(String namespaceURI) {
+		/* namespaces are not written in JSON */
+	}
+
+	@Override
+	public void writeComment(String data) {
+		/* comments are not written in JSON */
+	}
+
+	@Override
+	public void writeProcessingInstruction(String target) {
+		/* processing instructions are not written in JSON */
+	}
+
+	@Override
+	public void writeProcessingInstruction(String target, String data) {
+		/* processing instructions are not written in JSON */
+	}
+
+	@Override
+	public void writeCData(String data) throws XMLStreamException {
+		this.writeCharacters(data);
+	}
+
+	@Override
+	public void writeDTD(String dtd) {
+		/* DTDs are not written in JSON */
+	}
+
+	@Override
+	public void writeEntityRef(String name) {
+		/* entity references are not written in JSON */
+	}
+
+	@Override
+	public void writeStartDocument() {
+		/* the document object is started by its element */
+	}
+
+	@Override
+	public void writeStartDocument(String version) {
+		/* the document object is started by its element */
+	}
+
+	@Override
+	public void writeStartDocument(String encoding, String version) {
+		/* the document object is started by its element */
+	}
+
+	@Override
+	public void writeCharacters(String text) throws XMLStreamException {
+		Frame frame = this.currentFrame();
+		if (this.depth == 0 || text == null) {
+			return;
+		}
+		if (frame.object) {
+			if (!isWhitespace(text)) {
+				try {
+					this.startMember(frame, TEXT_MEMBER, false);
+					writeString(this.writer, text);
+				} catch (IOException e) {
+					throw new XMLStreamException("Error in writing JSON text", e);
+				}
+			}
+		} else if (frame.text == null) {
+			frame.text = new StringBuilder(text);
+		} else {
+			frame.text.append(text);
+		}
+	}
+
+	@Override
+	public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+		this.writeCharacters(new String(text, start, len));
+	}
+
+	@Override
+	public String getPrefix(String uri) {
+		return null;
+	}
+
+	@Override
+	public void setPrefix(String prefix, String uri) {
+		/* namespaces are not written in JSON */
+	}
+
+	@Override
+	public void setDefaultNamespace(String uri) {
+		/* namespaces are not written in JSON */
+	}
+
+	@Override
+	public void setNamespaceContext(NamespaceContext context) {
+		/* namespaces are not written in JSON */
+	}
+
+	@Override
+	public NamespaceContext getNamespaceContext() {
+		return EmptyNamespaceContext.INSTANCE;
+	}
+
+	@Override
+	public Object getProperty(String name) {
+		throw new IllegalArgumentException("Property '" + name + "' is not supported by the JSON writer");
+	}
+
+	/**
+	 * The state of an element being written.
+	 */
+	private static class Frame {
+
+		private String name;
+
+		/* whether the element has been opened as a JSON object */
+		private boolean object;
+
+		private boolean hasMembers;
+
+		/* the name of the array member which is open in this object, if any */
+		private String openArray;
+
+		/* the text of the element, until it is known whether it is an object */
+		private StringBuilder text;
+
+		private boolean nil;
+
+		private void reset(String name) {
+			this.name = name;
+			this.object = false;
+			this.hasMembers = false;
+			this.openArray = null;
+			this.text = null;
+			this.nil = false;
+		}
+
+	}
+
+}
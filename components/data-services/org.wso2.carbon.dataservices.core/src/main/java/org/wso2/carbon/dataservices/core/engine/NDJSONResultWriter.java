@@ -0,0 +1,85 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes the result rows as newline delimited JSON, i.e. one JSON object per line and row.
+ * The values keep the numbers and the booleans of their schema type, a nil value is written as null and
+ * the values repeated in a row, e.g. arrays, are written as a JSON array.
+ */
+public class NDJSONResultWriter extends ExportResultWriter {
+
+	/* the values of the current row which have been written */
+	private boolean[] written = new boolean[16];
+
+	public NDJSONResultWriter(Writer writer) {
+		super(writer);
+	}
+
+	@Override
+	protected void writeRow(List<Field> fields, int fieldCount) throws IOException {
+		if (this.written.length < fieldCount) {
+			this.written = new boolean[Math.max(fieldCount, this.written.length * 2)];
+		}
+		for (int i = 0; i < fieldCount; i++) {
+			this.written[i] = false;
+		}
+		Writer out = this.getWriter();
+		out.write('{');
+		Field field;
+		boolean repeated;
+		for (int i = 0; i < fieldCount; i++) {
+			if (this.written[i]) {
+				continue;
+			}
+			field = fields.get(i);
+			if (i > 0) {
+				out.write(',');
+			}
+			JSONResultWriter.writeString(out, field.getName());
+			out.write(':');
+			repeated = false;
+			for (int j = i + 1; j < fieldCount && !repeated; j++) {
+				repeated = field.getName().equals(fields.get(j).getName());
+			}
+			if (!repeated) {
+				JSONResultWriter.writeScalar(out, field.getValue(), field.getXsdType());
+				continue;
+			}
+			/* write all the values with the same name as an array */
+			out.write('[');
+			for (int j = i; j < fieldCount; j++) {
+				if (field.getName().equals(fields.get(j).getName())) {
+					if (j > i) {
+						out.write(',');
+					}
+					JSONResultWriter.writeScalar(out, fields.get(j).getValue(), fields.get(j).getXsdType());
+					this.written[j] = true;
+				}
+			}
+			out.write(']');
+		}
+		out.write("}\n");
+	}
+
+}
@@ -89,8 +89,13 @@ public class OutputElementGroup extends OutputElement {
             queryLevel++;
             /* start writing element group */
             if (this.getName() != null) {
-                this.startWrapperElement(xmlWriter, this.getNamespace(), this.getName(),
-                        this.getParentResult().getResultType());
+                if (this.getArrayName() != null && xmlWriter instanceof ResultStreamWriter) {
+                    /* the elements of an array are written as an array of the output format */
+                    ((ResultStreamWriter) xmlWriter).writeStartRow(this.getName());
+                } else {
+                    this.startWrapperElement(xmlWriter, this.getNamespace(), this.getName(),
+                            this.getParentResult().getResultType());
+                }
             }
             /* write attributes first */
             List<StaticOutputElement> attributes = this.getAttributeEntriesForCurrentRole();
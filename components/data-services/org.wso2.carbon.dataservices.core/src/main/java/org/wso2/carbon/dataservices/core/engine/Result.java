@@ -49,6 +49,12 @@ public class Result {
     private boolean useColumnNumbers;
 
     private boolean escapeNonPrintableChar;
+
+    /**
+     * Whether this result was declared with a JSON mapping,
+     * in which case it can be written directly as JSON
+     */
+    private boolean jsonMapping;
     
     public Result(String xsltPath, int resultType)
             throws DataServiceFault {
@@ -179,4 +185,12 @@ public class Result {
     public void setEscapeNonPrintableChar(boolean escapeNonPrintableChar) {
         this.escapeNonPrintableChar = escapeNonPrintableChar;
     }
+
+    public boolean isJSONMapping() {
+        return jsonMapping;
+    }
+
+    public void setJSONMapping(boolean jsonMapping) {
+        this.jsonMapping = jsonMapping;
+    }
 }
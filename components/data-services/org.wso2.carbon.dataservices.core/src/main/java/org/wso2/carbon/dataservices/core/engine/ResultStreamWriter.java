@@ -0,0 +1,46 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core.engine;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * An XMLStreamWriter for an output format of the results other than XML, which is given the result rows
+ * and the values of the result elements with their schema types, instead of their XML infoset.
+ */
+public interface ResultStreamWriter extends XMLStreamWriter {
+
+	/**
+	 * Starts an element which is an item of the array with the given name, e.g. a result row;
+	 * consecutive items with the same name belong to the same array.
+	 */
+	void writeStartRow(String name) throws XMLStreamException;
+
+	/**
+	 * Writes an element with its value.
+	 * @param name The name of the element
+	 * @param value The value, null or with a null value if the element is nil
+	 * @param xsdType The schema type of the value
+	 * @param repeated Whether the element is an item of an array, i.e. it can occur more than once
+	 */
+	void writeField(String name, ParamValue value, QName xsdType, boolean repeated) throws XMLStreamException;
+
+}
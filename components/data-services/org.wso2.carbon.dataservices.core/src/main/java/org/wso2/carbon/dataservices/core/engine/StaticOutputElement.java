@@ -258,7 +258,11 @@ public class StaticOutputElement extends OutputElement {
         }
         try {
             /* write element */
-            if (this.getElementType().equals(DBSFields.ELEMENT)) {
+            if (this.getElementType().equals(DBSFields.ELEMENT) && xmlWriter instanceof ResultStreamWriter) {
+                /* write the value directly in the output format, with its schema type */
+                ((ResultStreamWriter) xmlWriter).writeField(this.getName(), paramValue, this.getXsdType(),
+                        this.getArrayName() != null);
+            } else if (this.getElementType().equals(DBSFields.ELEMENT)) {
 
                 this.writeResultElement(xmlWriter, this.getName(), paramValue, this.getXsdType(),
                         this.getDataCategory(), this.getResultType(), params);
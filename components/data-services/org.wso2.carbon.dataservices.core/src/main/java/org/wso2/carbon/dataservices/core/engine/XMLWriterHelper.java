@@ -53,7 +53,12 @@ public class XMLWriterHelper {
         }
 		switch (resultType) {
 		case DBConstants.ResultTypes.XML:
-			xmlWriter.writeStartElement(this.getNamespace(), name);
+			if (xmlWriter instanceof ResultStreamWriter) {
+				/* the rows are written as an array of the output format */
+				((ResultStreamWriter) xmlWriter).writeStartRow(name);
+			} else {
+				xmlWriter.writeStartElement(this.getNamespace(), name);
+			}
 			break;
 		case DBConstants.ResultTypes.RDF:
 			/* <rdf:Description  rdf:about="http://www.product.fake/cd/S10_1678 "> 
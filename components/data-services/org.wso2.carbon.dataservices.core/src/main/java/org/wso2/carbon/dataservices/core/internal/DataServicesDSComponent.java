@@ -23,6 +23,7 @@ import org.apache.commons.logging.LogFactory;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.component.ComponentContext;
 import org.wso2.carbon.context.CarbonContext;
+import org.wso2.carbon.dataservices.core.DBDeployer;
 import org.wso2.carbon.dataservices.core.DataServiceFault;
 import org.wso2.carbon.dataservices.core.admin.rest.DataServiceManager;
 import org.wso2.carbon.dataservices.core.description.event.EventTrigger;
@@ -107,6 +108,7 @@ public class DataServicesDSComponent {
     }
 
     protected void deactivate(ComponentContext ctxt) {
+        DBDeployer.shutdownConfigWarmUpExecutor();
         log.debug("Data Services bundle is deactivated ");
     }
 
@@ -0,0 +1,135 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core.jmx;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Connection pool statistics of a SQL data source configuration: the time spent waiting to borrow
+ * a connection, the borrows which timed out, the connections abandoned, i.e. reclaimed by the pool before
+ * the data service released them, and how long each query held its connection. The borrow waits and the
+ * hold times are also kept for the current window, which is used for the adaptive sizing of the pool.
+ */
+public class ConnectionPoolStatistics {
+
+	private final RequestStatistics borrowWaits = new RequestStatistics();
+
+	private final AtomicLong abandonedCount = new AtomicLong();
+
+	private final ConcurrentMap<String, RequestStatistics> holdTimes =
+			new ConcurrentHashMap<String, RequestStatistics>();
+
+	private final AtomicReference<RequestStatistics> windowBorrowWaits =
+			new AtomicReference<RequestStatistics>(new RequestStatistics());
+
+	private final AtomicReference<RequestStatistics> windowHoldTimes =
+			new AtomicReference<RequestStatistics>(new RequestStatistics());
+
+	private final AtomicInteger windowPeakActive = new AtomicInteger();
+
+	/**
+	 * Records a connection borrow.
+	 * @param nanos The time spent waiting for the connection
+	 * @param timeout Whether the borrow failed because the pool was exhausted
+	 * @param active The number of connections in use after the borrow
+	 */
+	public void recordBorrow(long nanos, boolean timeout, int active) {
+		this.borrowWaits.record(nanos, 0, timeout);
+		this.windowBorrowWaits.get().record(nanos, 0, timeout);
+		int peak = this.windowPeakActive.get();
+		while (active > peak && !this.windowPeakActive.compareAndSet(peak, active)) {
+			peak = this.windowPeakActive.get();
+		}
+	}
+
+	/**
+	 * Records the release of a connection.
+	 * @param queryId The id of the query which borrowed the connection
+	 * @param nanos The time the connection was held
+	 * @param abandoned Whether the connection had already been reclaimed by the pool
+	 */
+	public void recordHold(String queryId, long nanos, boolean abandoned) {
+		if (abandoned) {
+			this.abandonedCount.incrementAndGet();
+		}
+		RequestStatistics stats = this.holdTimes.get(queryId);
+		if (stats == null) {
+			stats = new RequestStatistics();
+			RequestStatistics existing = this.holdTimes.putIfAbsent(queryId, stats);
+			if (existing != null) {
+				stats = existing;
+			}
+		}
+		stats.record(nanos, 0, abandoned);
+		this.windowHoldTimes.get().record(nanos, 0, abandoned);
+	}
+
+	public RequestStatistics getBorrowWaits() {
+		return borrowWaits;
+	}
+
+	public long getBorrowTimeoutCount() {
+		return this.borrowWaits.getErrorCount();
+	}
+
+	public long getAbandonedCount() {
+		return abandonedCount.get();
+	}
+
+	/**
+	 * Returns the connection hold times, by the id of the query which borrowed the connection.
+	 */
+	public Map<String, RequestStatistics> getHoldTimes() {
+		return new TreeMap<String, RequestStatistics>(this.holdTimes);
+	}
+
+	/**
+	 * Returns the borrow waits of the current window and starts a new one.
+	 */
+	public RequestStatistics takeWindowBorrowWaits() {
+		return this.windowBorrowWaits.getAndSet(new RequestStatistics());
+	}
+
+	/**
+	 * Returns the hold times of the current window and starts a new one.
+	 */
+	public RequestStatistics takeWindowHoldTimes() {
+		return this.windowHoldTimes.getAndSet(new RequestStatistics());
+	}
+
+	/**
+	 * Returns the highest number of connections in use seen in the current window and starts a new one.
+	 */
+	public int takeWindowPeakActive() {
+		return this.windowPeakActive.getAndSet(0);
+	}
+
+	public void reset() {
+		this.borrowWaits.reset();
+		this.abandonedCount.set(0);
+		this.holdTimes.clear();
+	}
+
+}
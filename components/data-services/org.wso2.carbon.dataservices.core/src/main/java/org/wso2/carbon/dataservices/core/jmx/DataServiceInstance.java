@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Set;
 
 import org.wso2.carbon.dataservices.common.DBConstants;
+import org.wso2.carbon.dataservices.core.JDBCPoolSQLConfig;
 import org.wso2.carbon.dataservices.core.description.config.CSVConfig;
 import org.wso2.carbon.dataservices.core.description.config.SQLCarbonDataSourceConfig;
 import org.wso2.carbon.dataservices.core.description.config.Config;
@@ -166,4 +167,144 @@ public class DataServiceInstance implements DataServiceInstanceMBean {
 		}
 	}
 	
+	public int getDatabaseConnectionPoolMaxSize(String configId) {
+		Config config = this.getDataService().getConfig(configId);
+		if (config instanceof JDBCPoolSQLConfig) {
+			try {
+				return ((JDBCPoolSQLConfig) config).getDataSource().getMaxActive();
+			} catch (Exception e) {
+				throw new RuntimeException(e.getMessage(), e);
+			}
+		} else {
+			return -1;
+		}
+	}
+	
+	public double getConnectionBorrowWaitMillis(String configId, double percentile) {
+		ConnectionPoolStatistics stats = this.getPoolStatistics(configId);
+		return stats != null ? stats.getBorrowWaits().getLatencyPercentileMillis(percentile) : 0;
+	}
+	
+	public long getConnectionBorrowTimeoutCount(String configId) {
+		ConnectionPoolStatistics stats = this.getPoolStatistics(configId);
+		return stats != null ? stats.getBorrowTimeoutCount() : 0;
+	}
+	
+	public long getAbandonedConnectionCount(String configId) {
+		ConnectionPoolStatistics stats = this.getPoolStatistics(configId);
+		return stats != null ? stats.getAbandonedCount() : 0;
+	}
+	
+	public double getConnectionHoldMillis(String configId, String queryId, double percentile) {
+		ConnectionPoolStatistics stats = this.getPoolStatistics(configId);
+		if (stats == null) {
+			return 0;
+		}
+		return nonNull(stats.getHoldTimes().get(queryId)).getLatencyPercentileMillis(percentile);
+	}
+	
+	private ConnectionPoolStatistics getPoolStatistics(String configId) {
+		Config config = this.getDataService().getConfig(configId);
+		if (config instanceof SQLConfig) {
+			return ((SQLConfig) config).getPoolStatistics();
+		} else {
+			return null;
+		}
+	}
+	
+	public long getOperationRequestCount(String operationName) {
+		return this.getOperationStatistics(operationName).getCount();
+	}
+	
+	public long getOperationErrorCount(String operationName) {
+		return this.getOperationStatistics(operationName).getErrorCount();
+	}
+	
+	public long getOperationBytesWritten(String operationName) {
+		return this.getOperationStatistics(operationName).getBytesWritten();
+	}
+	
+	public double getOperationLatencyMillis(String operationName, double percentile) {
+		return this.getOperationStatistics(operationName).getLatencyPercentileMillis(percentile);
+	}
+	
+	public long getResourceRequestCount(String resourcePath, String httpMethod) {
+		return this.getResourceStatistics(resourcePath, httpMethod).getCount();
+	}
+	
+	public long getResourceErrorCount(String resourcePath, String httpMethod) {
+		return this.getResourceStatistics(resourcePath, httpMethod).getErrorCount();
+	}
+	
+	public long getResourceBytesWritten(String resourcePath, String httpMethod) {
+		return this.getResourceStatistics(resourcePath, httpMethod).getBytesWritten();
+	}
+	
+	public double getResourceLatencyMillis(String resourcePath, String httpMethod, double percentile) {
+		return this.getResourceStatistics(resourcePath, httpMethod).getLatencyPercentileMillis(percentile);
+	}
+	
+	public long getQueryExecutionCount(String queryId) {
+		return this.getQueryStatistics(queryId).getCount();
+	}
+	
+	public long getQueryErrorCount(String queryId) {
+		return this.getQueryStatistics(queryId).getErrorCount();
+	}
+	
+	public long getQueryRowCount(String queryId) {
+		return this.getQueryStatistics(queryId).getRowCount();
+	}
+	
+	public double getQueryLatencyMillis(String queryId, double percentile) {
+		return this.getQueryStatistics(queryId).getLatencyPercentileMillis(percentile);
+	}
+	
+	public String getStatisticsText() {
+		return this.getDataService().getStatistics().toText(this.getServiceName());
+	}
+	
+	public void resetStatistics() {
+		this.getDataService().getStatistics().reset();
+	}
+	
+	public long getSlowQueryThresholdMillis() {
+		return this.getDataService().getSlowQueryLog().getThresholdMillis();
+	}
+	
+	public void setSlowQueryThresholdMillis(long thresholdMillis) {
+		this.getDataService().getSlowQueryLog().setThresholdMillis(thresholdMillis);
+	}
+	
+	public String[] getSlowQueries() {
+		List<String> list = new ArrayList<String>();
+		for (SlowQueryRecord record : this.getDataService().getSlowQueryLog().getRecords()) {
+			list.add(record.toString());
+		}
+		return list.toArray(new String[0]);
+	}
+	
+	public void clearSlowQueries() {
+		this.getDataService().getSlowQueryLog().clear();
+	}
+	
+	/* the statistics are read from a snapshot, so that unknown names do not create entries */
+	
+	private RequestStatistics getOperationStatistics(String operationName) {
+		return nonNull(this.getDataService().getStatistics().getOperationStatistics().get(operationName));
+	}
+	
+	private RequestStatistics getResourceStatistics(String resourcePath, String httpMethod) {
+		return nonNull(this.getDataService().getStatistics().getResourceStatistics().get(
+				httpMethod + " " + resourcePath));
+	}
+	
+	private RequestStatistics getQueryStatistics(String queryId) {
+		return nonNull(this.getDataService().getStatistics().getQueryStatistics().get(queryId));
+	}
+	
+	private static RequestStatistics nonNull(RequestStatistics stats) {
+		return stats == null ? new RequestStatistics() : stats;
+	}
+	
 }
@@ -48,5 +48,69 @@ public interface DataServiceInstanceMBean {
 	boolean isDatabaseConnectionStatsAvailable(String configId);
 	
 	int getOpenDatabaseConnectionsCount(String configId);
+	
+	/**
+	 * Returns the current maximum size of the connection pool of a config, -1 if it is not a pooled config.
+	 */
+	int getDatabaseConnectionPoolMaxSize(String configId);
+	
+	double getConnectionBorrowWaitMillis(String configId, double percentile);
+	
+	long getConnectionBorrowTimeoutCount(String configId);
+	
+	long getAbandonedConnectionCount(String configId);
+	
+	/**
+	 * Returns the time the connections borrowed by a query were held, at the given percentile.
+	 */
+	double getConnectionHoldMillis(String configId, String queryId, double percentile);
+	
+	long getOperationRequestCount(String operationName);
+	
+	long getOperationErrorCount(String operationName);
+	
+	long getOperationBytesWritten(String operationName);
+	
+	double getOperationLatencyMillis(String operationName, double percentile);
+	
+	long getResourceRequestCount(String resourcePath, String httpMethod);
+	
+	long getResourceErrorCount(String resourcePath, String httpMethod);
+	
+	long getResourceBytesWritten(String resourcePath, String httpMethod);
+	
+	double getResourceLatencyMillis(String resourcePath, String httpMethod, double percentile);
+	
+	long getQueryExecutionCount(String queryId);
+	
+	long getQueryErrorCount(String queryId);
+	
+	long getQueryRowCount(String queryId);
+	
+	double getQueryLatencyMillis(String queryId, double percentile);
+	
+	/**
+	 * Returns all the operation, resource and query statistics in the Prometheus text exposition format.
+	 */
+	String getStatisticsText();
+	
+	void resetStatistics();
+	
+	/**
+	 * Returns the threshold of the slow query log in milliseconds, -1 if the log is disabled.
+	 */
+	long getSlowQueryThresholdMillis();
+	
+	/**
+	 * Sets the threshold of the slow query log in milliseconds, a negative value disables the log.
+	 */
+	void setSlowQueryThresholdMillis(long thresholdMillis);
+	
+	/**
+	 * Returns the query executions recorded by the slow query log, the oldest first.
+	 */
+	String[] getSlowQueries();
+	
+	void clearSlowQueries();
 
 }
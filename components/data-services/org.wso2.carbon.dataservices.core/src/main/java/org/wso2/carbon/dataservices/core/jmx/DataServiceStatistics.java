@@ -0,0 +1,222 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core.jmx;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per operation, per resource and per query execution statistics of a data service.
+ * <p>
+ * A request with a result is executed in two passes on the same thread, the pre-fetching of the data
+ * and the writing of the result, so an execution is started with {@link #begin(Object)} in every pass,
+ * which returns the trace created by the first one, and it is ended with {@link #end(Object)} only at the
+ * end of the last pass. The traces are reused, so that tracing an execution does not allocate.
+ */
+public class DataServiceStatistics {
+
+	private static final double[] PERCENTILES = { 50, 95, 99 };
+
+	/**
+	 * The executions in progress on the current thread, including the ones waiting for their second pass,
+	 * keyed by the request or query object
+	 */
+	private static ThreadLocal<InFlightExecutions> inFlight = new ThreadLocal<InFlightExecutions>() {
+		@Override
+		protected InFlightExecutions initialValue() {
+			return new InFlightExecutions();
+		}
+	};
+
+	private final ConcurrentMap<String, RequestStatistics> operations =
+			new ConcurrentHashMap<String, RequestStatistics>();
+
+	private final ConcurrentMap<String, RequestStatistics> resources =
+			new ConcurrentHashMap<String, RequestStatistics>();
+
+	private final ConcurrentMap<String, RequestStatistics> queries =
+			new ConcurrentHashMap<String, RequestStatistics>();
+
+	public RequestStatistics getOperationStatistics(String operationName) {
+		return getOrCreate(this.operations, operationName);
+	}
+
+	/**
+	 * @param resourceKey The method and the path of the resource, e.g. "GET employees/{id}"
+	 */
+	public RequestStatistics getResourceStatistics(String resourceKey) {
+		return getOrCreate(this.resources, resourceKey);
+	}
+
+	public RequestStatistics getQueryStatistics(String queryId) {
+		return getOrCreate(this.queries, queryId);
+	}
+
+	public Map<String, RequestStatistics> getOperationStatistics() {
+		return new TreeMap<String, RequestStatistics>(this.operations);
+	}
+
+	public Map<String, RequestStatistics> getResourceStatistics() {
+		return new TreeMap<String, RequestStatistics>(this.resources);
+	}
+
+	public Map<String, RequestStatistics> getQueryStatistics() {
+		return new TreeMap<String, RequestStatistics>(this.queries);
+	}
+
+	public void reset() {
+		for (RequestStatistics stats : this.operations.values()) {
+			stats.reset();
+		}
+		for (RequestStatistics stats : this.resources.values()) {
+			stats.reset();
+		}
+		for (RequestStatistics stats : this.queries.values()) {
+			stats.reset();
+		}
+	}
+
+	/**
+	 * Writes the statistics in the Prometheus text exposition format, so that they can be pulled
+	 * by a scraper as they are.
+	 * @param serviceName The name of the data service, added as a label to all the samples
+	 */
+	public String toText(String serviceName) {
+		StringBuilder out = new StringBuilder();
+		appendMetrics(out, "dss_operation", "operation", serviceName, this.getOperationStatistics());
+		appendMetrics(out, "dss_resource", "resource", serviceName, this.getResourceStatistics());
+		appendMetrics(out, "dss_query", "query", serviceName, this.getQueryStatistics());
+		return out.toString();
+	}
+
+	/**
+	 * Starts an execution of the given request or query on the current thread, or continues it
+	 * if its first pass is done.
+	 * @return The trace of the execution, valid until {@link #end(Object)} is called
+	 */
+	public static ExecutionTrace begin(Object executable) {
+		InFlightExecutions executions = inFlight.get();
+		ExecutionTrace trace = executions.traces.get(executable);
+		if (trace == null) {
+			trace = executions.free.isEmpty() ? new ExecutionTrace() : executions.free.pop();
+			trace.start(System.nanoTime());
+			executions.traces.put(executable, trace);
+		}
+		return trace;
+	}
+
+	/**
+	 * Returns the trace of the execution in progress of the given request or query on the current thread.
+	 * @return The trace, null if there is no execution in progress
+	 */
+	public static ExecutionTrace getTrace(Object executable) {
+		return inFlight.get().traces.get(executable);
+	}
+
+	/**
+	 * Ends the execution of the given request or query on the current thread.
+	 */
+	public static void end(Object executable) {
+		InFlightExecutions executions = inFlight.get();
+		ExecutionTrace trace = executions.traces.remove(executable);
+		if (trace != null) {
+			executions.free.push(trace);
+		}
+	}
+
+	/**
+	 * Drops the executions of the current thread left in progress, i.e. when the second pass of
+	 * a request never happened.
+	 */
+	public static void resetInFlight() {
+		InFlightExecutions executions = inFlight.get();
+		executions.free.addAll(executions.traces.values());
+		executions.traces.clear();
+	}
+
+	private static RequestStatistics getOrCreate(ConcurrentMap<String, RequestStatistics> map, String key) {
+		RequestStatistics stats = map.get(key);
+		if (stats == null) {
+			stats = new RequestStatistics();
+			RequestStatistics existing = map.putIfAbsent(key, stats);
+			if (existing != null) {
+				stats = existing;
+			}
+		}
+		return stats;
+	}
+
+	private static void appendMetrics(StringBuilder out, String prefix, String label, String serviceName,
+			Map<String, RequestStatistics> statistics) {
+		if (statistics.isEmpty()) {
+			return;
+		}
+		out.append("# TYPE ").append(prefix).append("_latency_milliseconds summary\n");
+		for (Map.Entry<String, RequestStatistics> entry : statistics.entrySet()) {
+			String labels = "service=\"" + escape(serviceName) + "\"," + label + "=\"" + escape(entry.getKey()) + "\"";
+			RequestStatistics stats = entry.getValue();
+			for (double percentile : PERCENTILES) {
+				out.append(prefix).append("_latency_milliseconds{").append(labels).append(",quantile=\"")
+						.append(percentile / 100).append("\"} ").append(stats.getLatencyPercentileMillis(percentile))
+						.append('\n');
+			}
+			out.append(prefix).append("_latency_milliseconds_count{").append(labels).append("} ")
+					.append(stats.getCount()).append('\n');
+		}
+		appendCounter(out, prefix + "_errors_total", label, serviceName, statistics, 0);
+		if ("dss_query".equals(prefix)) {
+			appendCounter(out, prefix + "_rows_total", label, serviceName, statistics, 1);
+		} else {
+			appendCounter(out, prefix + "_bytes_written_total", label, serviceName, statistics, 2);
+		}
+	}
+
+	private static void appendCounter(StringBuilder out, String name, String label, String serviceName,
+			Map<String, RequestStatistics> statistics, int counter) {
+		out.append("# TYPE ").append(name).append(" counter\n");
+		for (Map.Entry<String, RequestStatistics> entry : statistics.entrySet()) {
+			RequestStatistics stats = entry.getValue();
+			long value = counter == 0 ? stats.getErrorCount() :
+					(counter == 1 ? stats.getRowCount() : stats.getBytesWritten());
+			out.append(name).append("{service=\"").append(escape(serviceName)).append("\",").append(label)
+					.append("=\"").append(escape(entry.getKey())).append("\"} ").append(value).append('\n');
+		}
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * The traces of the executions in progress on a thread, and the ones which can be reused.
+	 */
+	private static class InFlightExecutions {
+
+		private final Map<Object, ExecutionTrace> traces = new IdentityHashMap<Object, ExecutionTrace>();
+
+		private final Deque<ExecutionTrace> free = new ArrayDeque<ExecutionTrace>();
+
+	}
+
+}
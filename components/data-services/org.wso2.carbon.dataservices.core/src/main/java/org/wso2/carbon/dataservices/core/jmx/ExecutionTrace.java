@@ -0,0 +1,89 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core.jmx;
+
+/**
+ * The state of an execution of a request or a query in progress on the current thread: its start time,
+ * the rows it wrote and the time spent in each of its phases. The instances are reused by
+ * {@link DataServiceStatistics}, so they must not be kept after the end of the execution.
+ */
+public class ExecutionTrace {
+
+	/**
+	 * Acquiring the connection of the query
+	 */
+	public static final int CONNECTION = 0;
+
+	/**
+	 * Preparing the statement of the query
+	 */
+	public static final int PREPARE = 1;
+
+	/**
+	 * The whole first phase of the query, i.e. Query#runPreQuery, including the connection and the statement
+	 */
+	public static final int PRE_QUERY = 2;
+
+	/**
+	 * The whole second phase of the query, i.e. Query#runPostQuery, including the writing of the rows
+	 */
+	public static final int POST_QUERY = 3;
+
+	/**
+	 * Writing the rows of the query, including the nested queries
+	 */
+	public static final int SERIALIZE = 4;
+
+	private static final int PHASE_COUNT = 5;
+
+	private final long[] phaseNanos = new long[PHASE_COUNT];
+
+	private long startNanos;
+
+	private long rowCount;
+
+	void start(long startNanos) {
+		this.startNanos = startNanos;
+		this.rowCount = 0;
+		for (int i = 0; i < PHASE_COUNT; i++) {
+			this.phaseNanos[i] = 0;
+		}
+	}
+
+	public long getStartNanos() {
+		return startNanos;
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public void addRow() {
+		this.rowCount++;
+	}
+
+	public long getPhaseNanos(int phase) {
+		return this.phaseNanos[phase];
+	}
+
+	public void addPhaseNanos(int phase, long nanos) {
+		this.phaseNanos[phase] += nanos;
+	}
+
+}
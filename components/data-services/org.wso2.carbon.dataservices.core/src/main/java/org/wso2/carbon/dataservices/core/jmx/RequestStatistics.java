@@ -0,0 +1,149 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core.jmx;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Execution statistics of an operation, a resource or a query: invocation, error, row and byte counters
+ * and a latency histogram. All the updates are lock-free, so that they can be done in the dispatch path.
+ * The histogram has four buckets per power of two microseconds, so a percentile is known within 25%.
+ */
+public class RequestStatistics {
+
+	private static final int SUB_BUCKET_BITS = 2;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/* the last bucket holds all the latencies over 2^48 microseconds */
+	private static final int BUCKET_COUNT = 48 * SUB_BUCKETS;
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong errorCount = new AtomicLong();
+
+	private final AtomicLong rowCount = new AtomicLong();
+
+	private final AtomicLong bytesWritten = new AtomicLong();
+
+	private final AtomicLong totalMicros = new AtomicLong();
+
+	private final AtomicLongArray latencyBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+	/**
+	 * Records a finished execution.
+	 * @param nanos The duration of the execution
+	 * @param rows The number of rows returned, 0 if not applicable
+	 * @param error Whether the execution failed
+	 */
+	public void record(long nanos, long rows, boolean error) {
+		long micros = Math.max(0, nanos / 1000);
+		this.count.incrementAndGet();
+		if (error) {
+			this.errorCount.incrementAndGet();
+		}
+		if (rows > 0) {
+			this.rowCount.addAndGet(rows);
+		}
+		this.totalMicros.addAndGet(micros);
+		this.latencyBuckets.incrementAndGet(bucketOf(micros));
+	}
+
+	public void addBytesWritten(long bytes) {
+		this.bytesWritten.addAndGet(bytes);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	public long getRowCount() {
+		return rowCount.get();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	public double getAverageLatencyMillis() {
+		long count = this.getCount();
+		return count == 0 ? 0 : this.totalMicros.get() / 1000.0 / count;
+	}
+
+	/**
+	 * Returns the latency under which the given fraction of the executions finished.
+	 * @param percentile The percentile, between 0 and 100, e.g. 99
+	 * @return The upper bound of the histogram bucket of the percentile in milliseconds, 0 if there were no executions
+	 */
+	public double getLatencyPercentileMillis(double percentile) {
+		long[] buckets = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets[i] = this.latencyBuckets.get(i);
+			total += buckets[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += buckets[i];
+			if (seen >= rank && buckets[i] > 0) {
+				return upperBoundOf(i) / 1000.0;
+			}
+		}
+		return upperBoundOf(BUCKET_COUNT - 1) / 1000.0;
+	}
+
+	public void reset() {
+		this.count.set(0);
+		this.errorCount.set(0);
+		this.rowCount.set(0);
+		this.bytesWritten.set(0);
+		this.totalMicros.set(0);
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			this.latencyBuckets.set(i, 0);
+		}
+	}
+
+	private static int bucketOf(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int) (micros >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return Math.min(msb * SUB_BUCKETS + sub, BUCKET_COUNT - 1);
+	}
+
+	private static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int msb = bucket / SUB_BUCKETS;
+		long width = 1L << (msb - SUB_BUCKET_BITS);
+		return ((SUB_BUCKETS + (bucket % SUB_BUCKETS)) * width) + width - 1;
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core.jmx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.wso2.carbon.dataservices.core.engine.ParamValue;
+
+/**
+ * Bounded ring buffer of the query executions of a data service which took longer than a threshold.
+ * The log is disabled when the threshold is negative, and nothing is allocated for the executions
+ * under the threshold.
+ */
+public class SlowQueryLog {
+
+	private static final int MAX_PARAM_VALUE_LENGTH = 64;
+
+	private static final String MASKED_VALUE = "****";
+
+	private static final String[] SENSITIVE_PARAM_NAMES = { "password", "passwd", "pwd", "secret", "token",
+			"credential" };
+
+	private final AtomicReferenceArray<SlowQueryRecord> records;
+
+	private final AtomicLong recordCount = new AtomicLong();
+
+	private volatile long thresholdNanos;
+
+	/**
+	 * @param thresholdMillis The minimum duration of the recorded executions, a negative value disables the log
+	 * @param capacity The number of records kept, the oldest ones are overwritten
+	 */
+	public SlowQueryLog(long thresholdMillis, int capacity) {
+		this.records = new AtomicReferenceArray<SlowQueryRecord>(Math.max(1, capacity));
+		this.setThresholdMillis(thresholdMillis);
+	}
+
+	public boolean isEnabled() {
+		return this.thresholdNanos >= 0;
+	}
+
+	public long getThresholdMillis() {
+		return this.thresholdNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(this.thresholdNanos);
+	}
+
+	public void setThresholdMillis(long thresholdMillis) {
+		this.thresholdNanos = thresholdMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+	}
+
+	public int getCapacity() {
+		return this.records.length();
+	}
+
+	/**
+	 * Records the execution of a query if it took longer than the threshold.
+	 * @param queryId The id of the query
+	 * @param trace The trace of the execution, with its phase timings and its row count
+	 * @param nanos The duration of the execution
+	 * @param params The parameters of the query
+	 * @param error Whether the execution failed
+	 */
+	public void record(String queryId, ExecutionTrace trace, long nanos, Map<String, ParamValue> params,
+			boolean error) {
+		long threshold = this.thresholdNanos;
+		if (threshold < 0 || nanos < threshold) {
+			return;
+		}
+		SlowQueryRecord record = new SlowQueryRecord(System.currentTimeMillis(), queryId, nanos,
+				trace.getPhaseNanos(ExecutionTrace.CONNECTION), trace.getPhaseNanos(ExecutionTrace.PREPARE),
+				trace.getPhaseNanos(ExecutionTrace.PRE_QUERY), trace.getPhaseNanos(ExecutionTrace.POST_QUERY),
+				trace.getPhaseNanos(ExecutionTrace.SERIALIZE), trace.getRowCount(), sanitize(params), error);
+		long index = this.recordCount.getAndIncrement();
+		this.records.set((int) (index % this.records.length()), record);
+	}
+
+	/**
+	 * Returns the records in the buffer, the oldest first.
+	 */
+	public List<SlowQueryRecord> getRecords() {
+		long count = this.recordCount.get();
+		int capacity = this.records.length();
+		List<SlowQueryRecord> result = new ArrayList<SlowQueryRecord>(capacity);
+		for (long i = Math.max(0, count - capacity); i < count; i++) {
+			SlowQueryRecord record = this.records.get((int) (i % capacity));
+			if (record != null) {
+				result.add(record);
+			}
+		}
+		return result;
+	}
+
+	public void clear() {
+		for (int i = 0; i < this.records.length(); i++) {
+			this.records.set(i, null);
+		}
+	}
+
+	/**
+	 * Writes the parameters, masking the values of the ones which look like credentials and
+	 * truncating the long values.
+	 */
+	private static String sanitize(Map<String, ParamValue> params) {
+		if (params == null || params.isEmpty()) {
+			return "";
+		}
+		StringBuilder out = new StringBuilder();
+		for (Map.Entry<String, ParamValue> entry : params.entrySet()) {
+			if (out.length() > 0) {
+				out.append(", ");
+			}
+			out.append(entry.getKey()).append('=');
+			if (isSensitive(entry.getKey())) {
+				out.append(MASKED_VALUE);
+			} else {
+				String value = String.valueOf(entry.getValue());
+				if (value.length() > MAX_PARAM_VALUE_LENGTH) {
+					value = value.substring(0, MAX_PARAM_VALUE_LENGTH) + "...";
+				}
+				out.append(value);
+			}
+		}
+		return out.toString();
+	}
+
+	private static boolean isSensitive(String paramName) {
+		String name = paramName.toLowerCase(Locale.ENGLISH);
+		for (String sensitiveName : SENSITIVE_PARAM_NAMES) {
+			if (name.contains(sensitiveName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.core.jmx;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * A query execution recorded by the {@link SlowQueryLog}. The execute time is the part of the first phase
+ * of the query which is not spent in acquiring the connection and preparing the statement, and the fetch
+ * time is the part of the second phase which is not spent in writing the rows.
+ */
+public class SlowQueryRecord {
+
+	private final long timestamp;
+
+	private final String queryId;
+
+	private final long totalNanos;
+
+	private final long connectionNanos;
+
+	private final long prepareNanos;
+
+	private final long executeNanos;
+
+	private final long fetchNanos;
+
+	private final long serializeNanos;
+
+	private final long rowCount;
+
+	private final String params;
+
+	private final boolean error;
+
+	public SlowQueryRecord(long timestamp, String queryId, long totalNanos, long connectionNanos,
+			long prepareNanos, long preQueryNanos, long postQueryNanos, long serializeNanos, long rowCount,
+			String params, boolean error) {
+		this.timestamp = timestamp;
+		this.queryId = queryId;
+		this.totalNanos = totalNanos;
+		this.connectionNanos = connectionNanos;
+		this.prepareNanos = prepareNanos;
+		this.executeNanos = Math.max(0, preQueryNanos - connectionNanos - prepareNanos);
+		this.fetchNanos = Math.max(0, postQueryNanos - serializeNanos);
+		this.serializeNanos = serializeNanos;
+		this.rowCount = rowCount;
+		this.params = params;
+		this.error = error;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public String getQueryId() {
+		return queryId;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	public long getConnectionNanos() {
+		return connectionNanos;
+	}
+
+	public long getPrepareNanos() {
+		return prepareNanos;
+	}
+
+	public long getExecuteNanos() {
+		return executeNanos;
+	}
+
+	public long getFetchNanos() {
+		return fetchNanos;
+	}
+
+	public long getSerializeNanos() {
+		return serializeNanos;
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public String getParams() {
+		return params;
+	}
+
+	public boolean isError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date(this.getTimestamp())) +
+				" query=" + this.getQueryId() + " total=" + millis(this.getTotalNanos()) +
+				"ms connection=" + millis(this.getConnectionNanos()) + "ms prepare=" +
+				millis(this.getPrepareNanos()) + "ms execute=" + millis(this.getExecuteNanos()) +
+				"ms fetch=" + millis(this.getFetchNanos()) + "ms serialize=" + millis(this.getSerializeNanos()) +
+				"ms rows=" + this.getRowCount() + (this.isError() ? " error=true" : "") +
+				" params=[" + this.getParams() + "]";
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ENGLISH, "%.3f", nanos / 1e6);
+	}
+
+}
@@ -30,6 +30,8 @@ import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.TableMetadata;
 import org.apache.axis2.databinding.utils.ConverterUtil;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.dataservices.common.DBConstants;
 import org.wso2.carbon.dataservices.core.DBUtils;
 import org.wso2.carbon.dataservices.core.DataServiceFault;
@@ -39,10 +41,7 @@ import org.apache.olingo.commons.api.data.Property;
 import org.apache.olingo.commons.api.http.HttpStatusCode;
 import org.apache.olingo.server.api.ODataApplicationException;
 import org.apache.olingo.server.api.uri.UriInfo;
-import org.apache.olingo.server.api.uri.queryoption.CountOption;
-import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
 import org.apache.olingo.server.api.uri.queryoption.FilterOption;
-import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
 import org.apache.olingo.server.api.uri.queryoption.SelectOption;
 import org.apache.olingo.server.api.uri.queryoption.SkipOption;
 import org.apache.olingo.server.api.uri.queryoption.TopOption;
@@ -61,7 +60,10 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class implements cassandra datasource related operations for ODataDataHandler.
@@ -70,6 +72,8 @@ import java.util.UUID;
  */
 public class CassandraDataHandler implements ODataDataHandler {
 
+    private static final Log log = LogFactory.getLog(CassandraDataHandler.class);
+
     /**
      * Table metadata.
      */
@@ -108,6 +112,11 @@ public class CassandraDataHandler implements ODataDataHandler {
 
     private static final int RECORD_INSERT_STATEMENTS_CACHE_SIZE = 10000;
 
+    /**
+     * Maximum number of rows of an in-memory snapshot; the $filter queries of larger tables are sent to Cassandra.
+     */
+    private static final int MAX_SNAPSHOT_ROWS = 100000;
+
     private Map<String, PreparedStatement> preparedStatementMap =
             Collections.synchronizedMap(new LinkedHashMap<String, PreparedStatement>() {
                 private static final long serialVersionUID = 1L;
@@ -118,17 +127,52 @@ public class CassandraDataHandler implements ODataDataHandler {
                 }
             });
 
+    /**
+     * Columns to index for each table whose $filter queries are answered from an in-memory snapshot
+     * (Map<Table Name, List<Column Name>>).
+     */
+    private final Map<String, List<String>> indexedColumns;
+
+    /**
+     * In-memory snapshots of the tables with indexed columns, loaded on the first $filter query and discarded when
+     * the table is modified through this handler.
+     */
+    private final Map<String, ODataEntryIndex> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * Versions of the tables with indexed columns, incremented on each modification of the table, so that a snapshot
+     * loaded concurrently with a modification is not kept.
+     */
+    private final Map<String, AtomicLong> snapshotVersions = new HashMap<>();
+
+    /**
+     * Tables with more than MAX_SNAPSHOT_ROWS rows when last read, until they are modified through this handler.
+     */
+    private final Set<String> oversizedTables = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
     public CassandraDataHandler(String configID, Session session, String keyspace) {
+        this(configID, session, keyspace, null);
+    }
+
+    public CassandraDataHandler(String configID, Session session, String keyspace, String indexedColumns) {
         this.configID = configID;
         this.session = session;
         this.keyspace = keyspace;
         this.tableList = generateTableList();
         this.primaryKeys = generatePrimaryKeyList();
         this.tableMetaData = generateMetaData();
+        this.indexedColumns = parseIndexedColumns(indexedColumns);
+        for (String tableName : this.indexedColumns.keySet()) {
+            this.snapshotVersions.put(tableName, new AtomicLong());
+        }
     }
 
     @Override
     public List<ODataEntry> readTable(String tableName, UriInfo uriInfo, List<Property> navProperties) throws ODataServiceFault, ExpressionVisitException, ODataApplicationException {
+        List<ODataEntry> indexedEntries = readIndexedTable(tableName, uriInfo);
+        if (indexedEntries != null) {
+            return indexedEntries;
+        }
     	Statement statement = new SimpleStatement(generateCassandraQuery(tableName, uriInfo)); // generates the query to apply to the Cassandra database
         
         ResultSet resultSet = this.session.execute(statement);
@@ -142,21 +186,168 @@ public class CassandraDataHandler implements ODataDataHandler {
         return entryList;
     }
     
+	/**
+	 * Reads the entries of a table matching the $filter option from the in-memory snapshot of the table.
+	 *
+	 * @param tableName	Name of the table
+	 * @param uriInfo	Contains the OData query options
+	 * @return			The entries, or null if the table has no indexed column or the filter cannot be answered by the indexes
+	 */
+	private List<ODataEntry> readIndexedTable(String tableName, UriInfo uriInfo) throws ODataApplicationException, ODataServiceFault {
+		List<String> columns = this.indexedColumns.get(tableName);
+		FilterOption filterOpt = uriInfo.getFilterOption();
+		if (columns == null || filterOpt == null) {
+			return null;
+		}
+		checkQueryOptions(uriInfo);
+		ODataEntryIndex snapshot = getSnapshot(tableName, columns);
+		if (snapshot == null) {
+			return null;
+		}
+		List<ODataEntry> entries = snapshot.filter(filterOpt.getExpression());
+		if (entries == null) {
+			return null;
+		}
+		TopOption topOpt = uriInfo.getTopOption();
+		if (topOpt != null) { // same limit as the LIMIT clause of the query, $skip and $top are applied afterwards
+			int limit = topOpt.getValue() + (uriInfo.getSkipOption() != null ? uriInfo.getSkipOption().getValue() : 0);
+			if (entries.size() > limit) {
+				entries = entries.subList(0, limit);
+			}
+		}
+		SelectOption selectOpt = uriInfo.getSelectOption();
+		if (selectOpt == null || selectOpt.getText().contains("*")) {
+			return new ArrayList<>(entries);
+		}
+		List<String> selectColumns = new ArrayList<>(this.primaryKeys.get(tableName)); // same columns as the SELECT clause of the query
+		selectColumns.addAll(Arrays.asList(selectOpt.getText().split(",")));
+		List<ODataEntry> projectedEntries = new ArrayList<>(entries.size());
+		for (ODataEntry entry : entries) {
+			ODataEntry projectedEntry = new ODataEntry();
+			for (String column : selectColumns) {
+				if (entry.getNames().contains(column)) {
+					projectedEntry.addValue(column, entry.getValue(column));
+				}
+			}
+			projectedEntry.addValue(ODataConstants.E_TAG, ODataUtils.generateETag(this.configID, tableName, projectedEntry));
+			projectedEntries.add(projectedEntry);
+		}
+		return projectedEntries;
+	}
+
+	/**
+	 * Returns the in-memory snapshot of a table, reading the whole table if it is not loaded.
+	 *
+	 * @param tableName	Name of the table
+	 * @param columns	Columns to index
+	 * @return			The snapshot, or null if the table has more than MAX_SNAPSHOT_ROWS rows
+	 */
+	private ODataEntryIndex getSnapshot(String tableName, List<String> columns) throws ODataServiceFault {
+		ODataEntryIndex snapshot = this.snapshots.get(tableName);
+		if (snapshot != null || this.oversizedTables.contains(tableName)) {
+			return snapshot;
+		}
+		AtomicLong version = this.snapshotVersions.get(tableName);
+		long loadedVersion = version.get();
+		ResultSet resultSet = this.session.execute(new SimpleStatement("SELECT * FROM " + this.keyspace + "." +
+				CassandraUtils.preserveCase(tableName) + " LIMIT " + (MAX_SNAPSHOT_ROWS + 1) + ";"));
+		ColumnDefinitions columnDefinitions = resultSet.getColumnDefinitions();
+		List<ODataEntry> entries = new ArrayList<>();
+		for (Row row : resultSet) {
+			if (entries.size() == MAX_SNAPSHOT_ROWS) {
+				log.warn("The table " + tableName + " has more than " + MAX_SNAPSHOT_ROWS + " rows, its OData " +
+						 "$filter queries are sent to Cassandra.");
+				this.oversizedTables.add(tableName);
+				if (version.get() != loadedVersion) { // a modification may have made the table smaller
+					this.oversizedTables.remove(tableName);
+				}
+				return null;
+			}
+			entries.add(createDataEntryFromRow(tableName, row, columnDefinitions));
+		}
+		snapshot = new ODataEntryIndex(entries, this.tableMetaData.get(tableName), columns);
+		this.snapshots.put(tableName, snapshot);
+		if (version.get() != loadedVersion) {
+			// the table was modified while being read, the snapshot is discarded unless it was replaced meanwhile
+			this.snapshots.remove(tableName, snapshot);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Discards the in-memory snapshot of a table, after a modification of the table.
+	 *
+	 * @param tableName	Name of the table
+	 */
+	private void invalidateSnapshot(String tableName) {
+		AtomicLong version = this.snapshotVersions.get(tableName);
+		if (version != null) {
+			version.incrementAndGet();
+			this.snapshots.remove(tableName);
+			this.oversizedTables.remove(tableName);
+		}
+	}
+
+	/**
+	 * Parses the columns to index, given as a comma separated list of table.column.
+	 *
+	 * @param indexedColumns	The columns to index, may be null
+	 * @return					Map<Table Name, List<Column Name>>
+	 */
+	private Map<String, List<String>> parseIndexedColumns(String indexedColumns) {
+		Map<String, List<String>> result = new HashMap<>();
+		if (indexedColumns == null || indexedColumns.trim().isEmpty()) {
+			return result;
+		}
+		for (String indexedColumn : indexedColumns.split(",")) {
+			indexedColumn = indexedColumn.trim();
+			int separator = indexedColumn.indexOf('.');
+			String tableName = separator > 0 ? indexedColumn.substring(0, separator) : null;
+			String columnName = separator > 0 ? indexedColumn.substring(separator + 1) : null;
+			if (tableName == null || !this.tableMetaData.containsKey(tableName) ||
+				!this.tableMetaData.get(tableName).containsKey(columnName)) {
+				log.warn("Ignoring the OData indexed column " + indexedColumn + ", which is not a column of the keyspace " +
+						 this.keyspace + ".");
+				continue;
+			}
+			if (!ODataEntryIndex.isIndexable(this.tableMetaData.get(tableName).get(columnName).getColumnType())) {
+				log.warn("Ignoring the OData indexed column " + indexedColumn + ", whose type cannot be indexed.");
+				continue;
+			}
+			List<String> columns = result.get(tableName);
+			if (columns == null) {
+				columns = new ArrayList<>();
+				result.put(tableName, columns);
+			}
+			columns.add(columnName);
+		}
+		return result;
+	}
+
+	/**
+	 * Checks that the OData query options can be applied to Cassandra.
+	 *
+	 * @param uriInfo	Contains the OData query options
+	 */
+	private void checkQueryOptions(UriInfo uriInfo) throws ODataApplicationException, ODataServiceFault {
+		if (uriInfo.getExpandOption() != null) { // $expand is not supported, due to Cassandra's lack of foreign keys
+			throw new ODataApplicationException("The OData query option $expand is not supported by Cassandra. ",
+					HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+		}
+		if (uriInfo.getTopOption() != null && (uriInfo.getOrderByOption() != null || uriInfo.getCountOption() != null)) { // $top should be applied after $orderby and $count, but it is currently impossible to do so in the DB query
+			throw new ODataServiceFault("$top is currently not supported for Cassandra when used together with one of the following: $orderby, $count");
+		}
+	}
+
 	public String generateCassandraQuery(String tableName, UriInfo uriInfo) throws ExpressionVisitException, ODataApplicationException, ODataServiceFault {
 		SelectOption selectOpt = uriInfo.getSelectOption(); // extracts the various OData options
-		ExpandOption expandOpt = uriInfo.getExpandOption();
 		FilterOption filterOpt = uriInfo.getFilterOption();
 		TopOption topOpt = uriInfo.getTopOption();
-		OrderByOption orderByOpt = uriInfo.getOrderByOption();
-		CountOption countOpt = uriInfo.getCountOption();
 		SkipOption skipOpt = uriInfo.getSkipOption();
 		
 		String query = "SELECT "; // The query that will be returned by this method
 		String select = "*"; // starts with *, changes it later if necessary
-		if (expandOpt != null) { // $expand is not supported, due to Cassandra's lack of foreign keys
-			throw new ODataApplicationException("The OData query option $expand is not supported by Cassandra. ",
-					HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
-		}
+		checkQueryOptions(uriInfo);
 		if (selectOpt != null) { // OData $select option
 			select = selectOpt.getText();
 			if (select.contains("*")) { // if it contains *, it becomes SELECT * FROM
@@ -203,7 +394,7 @@ public class CassandraDataHandler implements ODataDataHandler {
 			String where = " WHERE " + filterOpt.getExpression().accept(fev); // determines the WHERE part
 			query += where; // the WHERE part is added
 		}
-		if (topOpt != null && orderByOpt == null && countOpt == null) { // OData $top option
+		if (topOpt != null) { // OData $top option
 			int limit;
 			if (skipOpt != null) { // if $skip is present, add its value to $top's
 				limit = topOpt.getValue() + skipOpt.getValue();
@@ -211,8 +402,6 @@ public class CassandraDataHandler implements ODataDataHandler {
 				limit = topOpt.getValue();
 			}
 			query += " LIMIT " + limit; // records to extract
-		} else if (topOpt != null) { // $top should be applied after $orderby and $count, but it is currently impossible to do so in the DB query
-			throw new ODataServiceFault("$top is currently not supported for Cassandra when used together with one of the following: $orderby, $count");
 		}
 		if (filterOpt != null) { // necessary for some WHERE conditions
 			query += " ALLOW FILTERING";
@@ -278,7 +467,11 @@ public class CassandraDataHandler implements ODataDataHandler {
             statement = this.session.prepare(query);
             this.preparedStatementMap.put(query, statement);
         }
-        this.session.execute(statement.bind(values.toArray()));
+        try {
+            this.session.execute(statement.bind(values.toArray()));
+        } finally {
+            invalidateSnapshot(tableName);
+        }
         entity.addValue(ODataConstants.E_TAG, ODataUtils.generateETag(this.configID, tableName, entity));
         return entity;
     }
@@ -308,8 +501,12 @@ public class CassandraDataHandler implements ODataDataHandler {
             statement = this.session.prepare(query);
             this.preparedStatementMap.put(query, statement);
         }
-        ResultSet result = this.session.execute(statement.bind(values.toArray()));
-        return result.wasApplied();
+        try {
+            ResultSet result = this.session.execute(statement.bind(values.toArray()));
+            return result.wasApplied();
+        } finally {
+            invalidateSnapshot(tableName);
+        }
     }
 
     private boolean deleteEntityInTableTransactional(String tableName, ODataEntry entity) throws ODataServiceFault {
@@ -333,8 +530,12 @@ public class CassandraDataHandler implements ODataDataHandler {
             statement = this.session.prepare(query);
             this.preparedStatementMap.put(query, statement);
         }
-        ResultSet result = this.session.execute(statement.bind(values.toArray()));
-        return result.wasApplied();
+        try {
+            ResultSet result = this.session.execute(statement.bind(values.toArray()));
+            return result.wasApplied();
+        } finally {
+            invalidateSnapshot(tableName);
+        }
     }
 
     @Override
@@ -359,8 +560,12 @@ public class CassandraDataHandler implements ODataDataHandler {
             statement = this.session.prepare(query);
             this.preparedStatementMap.put(query, statement);
         }
-        ResultSet result = this.session.execute(statement.bind(values.toArray()));
-        return result.wasApplied();
+        try {
+            ResultSet result = this.session.execute(statement.bind(values.toArray()));
+            return result.wasApplied();
+        } finally {
+            invalidateSnapshot(tableName);
+        }
     }
 
     public boolean updateEntityInTableTransactional(String tableName, ODataEntry oldProperties,
@@ -390,8 +595,12 @@ public class CassandraDataHandler implements ODataDataHandler {
             statement = this.session.prepare(query);
             this.preparedStatementMap.put(query, statement);
         }
-        ResultSet result = this.session.execute(statement.bind(values.toArray()));
-        return result.wasApplied();
+        try {
+            ResultSet result = this.session.execute(statement.bind(values.toArray()));
+            return result.wasApplied();
+        } finally {
+            invalidateSnapshot(tableName);
+        }
     }
 
     @Override
@@ -414,6 +623,11 @@ public class CassandraDataHandler implements ODataDataHandler {
         return null;
     }
 
+    @Override
+    public long getMetadataVersion() {
+        return 0;
+    }
+
     @Override
     public void openTransaction() throws ODataServiceFault {
         this.transactionAvailable.set(true);
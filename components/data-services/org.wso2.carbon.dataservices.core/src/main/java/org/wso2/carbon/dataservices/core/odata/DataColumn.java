@@ -18,10 +18,14 @@
 
 package org.wso2.carbon.dataservices.core.odata;
 
+import java.io.Serializable;
+
 /**
  * This class represents a data column properties. This class is used to store column specific data to create odata service.
  */
-public class DataColumn {
+public class DataColumn implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      * Name of the table column.
@@ -1,6 +1,10 @@
 package org.wso2.carbon.dataservices.core.odata;
 
-public class ForeignKey {
+import java.io.Serializable;
+
+public class ForeignKey implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	public static enum FKType {IMPORTED, EXPORTED}
 	
 	private FKType type;
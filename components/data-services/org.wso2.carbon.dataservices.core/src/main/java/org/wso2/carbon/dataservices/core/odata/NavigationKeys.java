@@ -18,10 +18,14 @@
 
 package org.wso2.carbon.dataservices.core.odata;
 
+import java.io.Serializable;
+
 /**
  * This class stores the primary key in the exported table and stores the related foreign key in the imported table.
  */
-public class NavigationKeys {
+public class NavigationKeys implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String primaryKey;
 
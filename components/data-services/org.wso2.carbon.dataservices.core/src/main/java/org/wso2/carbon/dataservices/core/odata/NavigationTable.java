@@ -18,6 +18,7 @@
 
 package org.wso2.carbon.dataservices.core.odata;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,7 +29,9 @@ import java.util.Set;
  *
  * @see NavigationKeys
  */
-public class NavigationTable {
+public class NavigationTable implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private Map<String, List<NavigationKeys>> columns;
 
@@ -18,8 +18,6 @@
 
 package org.wso2.carbon.dataservices.core.odata;
 
-import org.apache.axis2.databinding.types.Time;
-import org.apache.axis2.databinding.utils.ConverterUtil;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
@@ -66,8 +64,6 @@ import org.apache.olingo.server.api.uri.UriResourceEntitySet;
 import org.apache.olingo.server.api.uri.UriResourceFunction;
 import org.apache.olingo.server.api.uri.UriResourceNavigation;
 import org.apache.olingo.server.api.uri.queryoption.CountOption;
-import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
-import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
 import org.apache.olingo.server.api.uri.queryoption.FilterOption;
 import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
 import org.apache.olingo.server.api.uri.queryoption.SkipOption;
@@ -109,16 +105,14 @@ import java.net.URISyntaxException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.text.ParseException;
-import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class implements the olingo serviceHandler to process requests and response.
@@ -158,6 +152,22 @@ public class ODataAdapter implements ServiceHandler {
      */
     private boolean editMode;
 
+    /**
+     * Metadata of the data handler the EDM is built from. It is read once, so that the EDM, the entity conversions
+     * and the navigations of this adapter all refer to the same version of the metadata, even if the data handler
+     * refreshes it in the meantime.
+     */
+    private long metadataVersion;
+    private List<String> tableList;
+    private Map<String, Map<String, DataColumn>> tableMetadata;
+    private Map<String, List<String>> primaryKeys;
+    private Map<String, NavigationTable> navigationProperties;
+
+    /**
+     * Conversion plans of the entities of each table, created when the service is registered.
+     */
+    private final Map<String, ODataEntityConverter> entityConverters = new ConcurrentHashMap<>();
+
     private ThreadLocal<Boolean> batchRequest = new ThreadLocal<Boolean>() {
         protected synchronized Boolean initialValue() {
             return false;
@@ -167,13 +177,63 @@ public class ODataAdapter implements ServiceHandler {
     public ODataAdapter(ODataDataHandler dataHandler, String namespace, String configID) throws ODataServiceFault {
         this.dataHandler = dataHandler;
         this.namespace = namespace;
+        readMetadata();
         this.edmProvider = initializeEdmProvider(configID);
         this.editMode = true;
     }
 
+    /**
+     * Reads the metadata of the data handler, again if it has been refreshed while it was being read.
+     */
+    private void readMetadata() {
+        long version;
+        do {
+            version = this.dataHandler.getMetadataVersion();
+            this.tableList = this.dataHandler.getTableList();
+            this.tableMetadata = this.dataHandler.getTableMetadata();
+            this.primaryKeys = this.dataHandler.getPrimaryKeys();
+            this.navigationProperties = this.dataHandler.getNavigationProperties();
+        } while (version != this.dataHandler.getMetadataVersion());
+        this.metadataVersion = version;
+    }
+
+    /**
+     * Returns the version of the metadata the EDM of this adapter is built from.
+     *
+     * @return Metadata version
+     * @see ODataDataHandler#getMetadataVersion()
+     */
+    public long getMetadataVersion() {
+        return this.metadataVersion;
+    }
+
     @Override
     public void init(OData odata, ServiceMetadata serviceMetadata) {
         this.serviceMetadata = serviceMetadata;
+        this.entityConverters.clear();
+        for (String tableName : this.tableList) {
+            getEntityConverter(tableName);
+        }
+    }
+
+    /**
+     * Returns the conversion plan of the entities of a table, creating it on first use.
+     *
+     * @param tableName Name of the table
+     * @return Entity converter
+     */
+    private ODataEntityConverter getEntityConverter(String tableName) {
+        ODataEntityConverter converter = this.entityConverters.get(tableName);
+        if (converter == null) {
+            EdmEntityType entityType = this.serviceMetadata.getEdm()
+                                                           .getEntityType(new FullQualifiedName(this.namespace,
+                                                                                                tableName));
+            converter = new ODataEntityConverter(tableName, this.namespace,
+                                                 this.tableMetadata.get(tableName).values(),
+                                                 entityType, this.dataHandler instanceof CassandraDataHandler);
+            this.entityConverters.put(tableName, converter);
+        }
+        return converter;
     }
 
     @Override
@@ -212,6 +272,9 @@ public class ODataAdapter implements ServiceHandler {
         EntityDetails details = new EntityDetails();
         String baseURL = request.getODataRequest().getRawBaseUri();
         UriInfo uriInfo = request.getUriInfo();
+        String collectionTable = null; // table the returned collection was read from
+        RDBMSDataHandler.TablePage collectionPage = null; // page the returned collection was read as
+        List<Property> collectionNavProperties = null; // properties the collection was filtered by, if navigated to
         try {
             if (request.isSingleton()) {
                 log.error(new ODataServiceFault("Singletons are not supported."));
@@ -226,8 +289,6 @@ public class ODataAdapter implements ServiceHandler {
                     if (!request.getNavigations().isEmpty())
                         uriInfoNode = null;
                     entitiesWithKey = getEntity(entityType, keys, baseURL, uriInfoNode);
-                    if (uriInfoNode != null)
-                        buildRelatedEntities(edmEntitySet.getName(), entitiesWithKey, baseURL, uriInfo.getExpandOption());
                     if (entitiesWithKey != null && entitiesWithKey.size() > 0) {
                         entity = entitiesWithKey.get(0);
                     }
@@ -236,8 +297,9 @@ public class ODataAdapter implements ServiceHandler {
                     }
                 } else {
                     try {
-                        entitySet = getEntityCollection(edmEntitySet.getName(), baseURL, uriInfo, null);
-                        buildRelatedEntities(edmEntitySet.getName(), entitySet.getEntities(), baseURL, uriInfo.getExpandOption());
+                        collectionTable = edmEntitySet.getName();
+                        collectionPage = readCollectionPage(collectionTable, uriInfo, null);
+                        entitySet = createEntityCollectionFromDataEntryList(collectionTable, collectionPage.getEntries(), baseURL);
                     } catch (ExpressionVisitException e) {
                         // TODO Auto-generated catch block
                         e.printStackTrace();
@@ -258,8 +320,10 @@ public class ODataAdapter implements ServiceHandler {
                             entitySet = getNavigableEntitySet(this.serviceMetadata, entity, nav, baseURL);
                         else {
                             List<Property> navProperties = determineNavigationProperties(serviceMetadata, entity, nav);
-                            entitySet = getEntityCollection(targetNode, baseURL, uriInfo, navProperties);
-                            buildRelatedEntities(targetNode, entitySet.getEntities(), baseURL, uriInfo.getExpandOption());
+                            collectionTable = targetNode;
+                            collectionNavProperties = navProperties;
+                            collectionPage = readCollectionPage(targetNode, uriInfo, navProperties);
+                            entitySet = createEntityCollectionFromDataEntryList(targetNode, collectionPage.getEntries(), baseURL);
                         }
                     } else {
                         if (i < navLength - 1) {
@@ -277,7 +341,6 @@ public class ODataAdapter implements ServiceHandler {
                             for (ForeignKey fk : navFKs)
                                 navUriParameters.add(new NavigationUriParameter(fk.getForeignName(), "" + entity.getProperty(fk.getForeignName()).getValue()));
                             List<Entity> leafEntities = getEntity(entityType, navUriParameters, baseURL, uriInfo);
-                            buildRelatedEntities(targetNode, leafEntities, baseURL, uriInfo.getExpandOption());
                             if (leafEntities != null && leafEntities.size() > 0)
                                 entity = leafEntities.get(0);
                         }
@@ -287,6 +350,12 @@ public class ODataAdapter implements ServiceHandler {
                 }
             }
 
+            if (entitySet != null && collectionPage != null) {
+                String nextSkipToken = collectionPage.getNextSkipToken();
+                if (nextSkipToken != null)
+                    entitySet.setNext(createKeysetNextLink(request.getODataRequest(), nextSkipToken));
+            }
+
             details.entity = entity;
             details.entitySet = entitySet;
             details.entityType = entityType;
@@ -303,7 +372,12 @@ public class ODataAdapter implements ServiceHandler {
                 QueryHandler.applyFilterSystemQuery(filterOption, details.entitySet, edmEntitySet);
             }*/
             if (countOption != null) {
-                int countRecords = getCountCollection(uriInfo,edmEntitySet.getName());
+                int countRecords;
+                if (entitySet != null && collectionPage != null && collectionPage.getTotal() != null) {
+                    countRecords = collectionPage.getTotal(); // read along with the page
+                } else {
+                    countRecords = getCountCollection(uriInfo, edmEntitySet.getName(), collectionNavProperties);
+                }
                 //QueryHandler.applyCountSystemQueryOption(countOption, details.entitySet);
                 QueryHandler.applyCountOption(countOption, entitySet, countRecords);
                 
@@ -341,185 +415,33 @@ public class ODataAdapter implements ServiceHandler {
     }
     
     /**
-     * Builds related entities, if $expand was specified
-     * 
-     * @param tableName		Name of the table the user queried
-     * @param entityList	List of entities returned by the query
-     * @param baseURL		URL of the request
-     * @param expandOption	Contains the $expand option, if it was specified
-     * @throws ODataServiceFault	createExpandEntity: Error occurred while parsing the value of the entity obtained through the JOIN
-     */
-    private void buildRelatedEntities(String tableName, List<Entity> entityList, String baseURL, ExpandOption expandOption) throws ODataServiceFault {
-        if (expandOption == null || this.dataHandler instanceof CassandraDataHandler || entityList == null)
-            return;
-        Map<List<Object>, Map<String, EntityCollection>> keyToRelatedEntities = new HashMap<List<Object>, Map<String, EntityCollection>>(); // map that relates an entity to the collections of its related items from foreign tables
-        EdmNavigationProperty edmNavigationProperty = null;
-        List<String> primaryKeys = this.dataHandler.getPrimaryKeys().get(tableName); // columns that make up the PK of this table
-        for (ExpandItem expandItem : expandOption.getExpandItems()) { // each expandItem corresponds to a table listed under the $expand option
-            UriResource uriResource = expandItem.getResourcePath().getUriResourceParts().get(0);
-            if (uriResource instanceof UriResourceNavigation)
-                edmNavigationProperty = ((UriResourceNavigation) uriResource).getProperty();
-            
-            if (edmNavigationProperty != null) {
-                String navPropName = edmNavigationProperty.getName(); // name of the foreign table
-                List<String> foreignPrimaryKeys = this.dataHandler.getPrimaryKeys().get(navPropName); // columns that make up the PK of the foreign table being expanded on
-                HashSet<List<Object>> foreignPKset = new HashSet<List<Object>>(); // list used to avoid inserting duplicate sub-entries
-                Map<String, EntityCollection> foreignCollections; // map to related entities of the foreign table
-                
-                int top = -1, skip = 0;
-                TopOption topOption = expandItem.getTopOption();
-                if (topOption != null)
-                    top = topOption.getValue();
-                SkipOption skipOption = expandItem.getSkipOption();
-                if (skipOption != null)
-                    skip = skipOption.getValue();
-                Map<List<Object>, int[]> keyTopSkip = new HashMap<List<Object>, int[]>();
-                for (Entity entityObject : entityList) {
-                    Link link = new Link(); // link to add the related entities
-                    link.setTitle(navPropName);
-                    link.setType(Constants.ENTITY_NAVIGATION_LINK_TYPE);
-                    link.setRel(Constants.NS_ASSOCIATION_LINK_REL + navPropName);
-                    if (edmNavigationProperty.isCollection()) { // to-many relationship
-                        // Builds primary key of this foreign element, to avoid inserting duplicate sub-entries
-                        // These duplicate sub-entries were caused by the JOIN that was executed on the database
-                        List<Object> foreignPK = new ArrayList<Object>();
-                        for (String k : primaryKeys) // adds PK of main table to a structure used to avoid duplicates
-                            foreignPK.add(entityObject.getProperty(k).getValue());
-                        for (String k : foreignPrimaryKeys) // adds PK of foreign table
-                            foreignPK.add(entityObject.getProperty(navPropName + "." + k).getValue());
-                        if (foreignPKset.contains(foreignPK)) // element is already present, skip to next iteration
-                            continue;
-                        else // element is new, insert it in the set to find future duplicates
-                            foreignPKset.add(foreignPK);
-                        
-                        Entity expandEntity = createExpandEntity(entityObject, navPropName, baseURL); // creates a sub-entry
-                        if (expandEntity == null) // entity doesn't reference any external entity, skip to next iteration
-                            continue;
-                        
-                        // Builds primary key of this item, to avoid inserting it multiple times if it has multiple sub-entries
-                        // These duplicate entities were caused by the JOIN that was executed on the database
-                        List<Object> entityObjectKeys = new ArrayList<Object>();
-                        for (String k : primaryKeys)
-                            entityObjectKeys.add(entityObject.getProperty(k).getValue());
-                        foreignCollections = keyToRelatedEntities.get(entityObjectKeys); // retrieves collections related to this entity
-                        if (foreignCollections == null) { // first time reading a row with this PK, so there are no collections
-                            foreignCollections = new HashMap<String, EntityCollection>();
-                            keyToRelatedEntities.put(entityObjectKeys, foreignCollections); // primary key -> collections of foreign items
-                        }
-                        
-                        EntityCollection expandCollection = foreignCollections.get(navPropName); // retrieves collection that relates this entity to the current foreign table
-                        
-                        if (expandCollection == null) { // collection does not exist yet
-                            expandCollection = new EntityCollection(); // creates collection
-                            expandCollection.setCount(0); // collection has just been created, so the count is 0
-                            link.setInlineEntitySet(expandCollection); // link to the collection of sub-entries
-                            foreignCollections.put(navPropName, expandCollection); // foreign table name -> related sub-entries from such foreign table
-                        }
-                        
-                        expandCollection.setCount(expandCollection.getCount() + 1); // increases count by 1
-                        link.setHref(expandEntity.getId().toASCIIString());
-                        entityObject.getNavigationLinks().add(link); // set the link containing the expanded data to the current entity.
-                        
-                        // applies possible $top and $skip nested inside $expand
-                        int[] topSkipArr = keyTopSkip.get(entityObjectKeys); // Map of top and skip values for each element in the table
-                        if (topSkipArr == null) {
-                            topSkipArr = new int[] {top, skip};
-                            keyTopSkip.put(entityObjectKeys, topSkipArr);
-                        }
-                        if (topSkipArr[1] > 0) { // sub-entry should not be returned
-                            topSkipArr[1]--; // one less element to skip
-                            continue;
-                        }
-                        if (topSkipArr[0] == 0) // sub-entry should not be returned
-                            continue;
-                        topSkipArr[0]--; // one less element to retrieve
-                        
-                        expandCollection.getEntities().add(expandEntity); // adds new sub-entry
-                    } else { // to-one relationship
-                        Entity expandEntity = createExpandEntity(entityObject, navPropName, baseURL); // creates a sub-entry
-                        if (expandEntity == null) // entity doesn't reference any external entity for this foreign key
-                            continue;
-                        
-                        link.setInlineEntity(expandEntity); // link to the sub-entry
-                        link.setHref(expandEntity.getId().toASCIIString());
-                        entityObject.getNavigationLinks().add(link); // set the link containing the expanded data to the current entity.
-                    }
-                }
-            }
-        }
-        removeDuplicates(entityList, primaryKeys);
-    }
-    
-    /**
-     * This method, used when the $expand command is present, creates a sub-entry with the values of the related item from the foreign table
+     * This method creates the next link of a page read with keyset pagination, by replacing any $skip and
+     * $skiptoken of the request with the given skip token, so that the other query options still apply.
      *
-     * @param   joinEntity          The entity obtained through the JOIN executed on the database 
-     * @param   foreignTable        The foreign table that $expand is called on
-     * @param   baseURL             Necessary to link the sub-entry
-     * @return                      The sub-entry with the values of the related item
-     * @throws  ODataServiceFault   Error occurred while parsing the value of the entity obtained through the JOIN
+     * @param request       OData request
+     * @param nextSkipToken Skip token of the next page
+     * @return uri
+     * @throws ODataApplicationException
      */
-    private Entity createExpandEntity(Entity joinEntity, String foreignTable, String baseURL) throws ODataServiceFault {
-        Entity expandEntity = null;
-        for (DataColumn column : this.dataHandler.getTableMetadata().get(foreignTable).values()) { // columns of the foreign table
-            Property expandProperty = null;
-            try {
-                Object value = joinEntity.getProperty(foreignTable + "." + column.getColumnName()).getValue();
-                if (value != null) {
-                    expandProperty = createPrimitive(column.getColumnType(), column.getColumnName(), value.toString());
-                    if (expandEntity == null)
-                        expandEntity = new Entity();
-                    expandEntity.addProperty(expandProperty); // adds property to the sub-entry
-                }
-            } catch (ParseException e) {
-                throw new ODataServiceFault("There was an error while parsing values from " + foreignTable + ": " + e.getMessage());
+    private URI createKeysetNextLink(ODataRequest request, String nextSkipToken) throws ODataApplicationException {
+        StringBuilder nextLink = new StringBuilder(request.getRawBaseUri()).append(request.getRawODataPath()).append("?");
+        String rawQuery = request.getRawQueryPath();
+        if (rawQuery != null && !rawQuery.isEmpty()) {
+            for (String param : rawQuery.split("&")) {
+                String name = param.split("=", 2)[0].replace("%24", "$");
+                if (!param.isEmpty() && !"$skip".equals(name) && !"$skiptoken".equals(name))
+                    nextLink.append(param).append("&");
             }
         }
-        if (expandEntity == null) // entity doesn't reference any external entity for this foreign key
-            return null;
-        
-        //Set ETag to the entity
-        EdmEntityType expandEntityType = this.serviceMetadata.getEdm()
-                                   .getEntityType(new FullQualifiedName(this.namespace, foreignTable));
-        String location = "";
+        nextLink.append("$skiptoken=").append(nextSkipToken);
         try {
-            // As of 2018/07/24, the EntityResponse.buildLocation method included by the pom is bugged, see ODataUtils.buildLocation for more information
-            location = ODataUtils.buildLocation(baseURL, expandEntity, expandEntityType.getName(), expandEntityType);
-            //location = EntityResponse.buildLocation(baseURL, entity, entityType.getName(), entityType);
-            expandEntity.setId(new URI(location));
-        } catch (EdmPrimitiveTypeException | URISyntaxException e) {
-            throw new ODataServiceFault("Error while applying $expand on " + foreignTable + ": " + e.getMessage());
-        }
-        expandEntity.setETag(joinEntity.getETag());
-        expandEntity.setType(new FullQualifiedName(this.namespace, foreignTable).getFullQualifiedNameAsString());
-        
-        return expandEntity;
-    }
-    
-    /**
-     * Removes duplicate entities from the set
-     * 
-     * @param entityList	List of entities
-     * @param primaryKeys	Names of the columns that make up the primary key of the entities
-     */
-    private void removeDuplicates(List<Entity> entityList, List<String> primaryKeys) {
-        HashSet<List<Object>> pkSet = new HashSet<List<Object>>(); // names of the columns that make up the primary key
-        List<Entity> entitiesToRemove = new ArrayList<Entity>();
-        for (Entity e : entityList) {
-            List<Object> entityObjectKeys = new ArrayList<Object>();
-            for (String k : primaryKeys) // determines the values of the primary key
-                entityObjectKeys.add(e.getProperty(k).getValue());
-            if (pkSet.contains(entityObjectKeys)) { // this element is a duplicate, it will have to be removed
-                entitiesToRemove.add(e);
-            } else {
-                pkSet.add(entityObjectKeys); // this element is new, add it to the set so that future duplicates will be correctly detected
-            }
+            return new URI(nextLink.toString());
+        } catch (URISyntaxException e) {
+            throw new ODataApplicationException("Exception while constructing next link",
+                                                HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ROOT);
         }
-        
-        for (Entity e : entitiesToRemove) // remove duplicates
-            entityList.remove(e);
     }
-    
+
     private EdmEntitySet getEdmEntitySet(final UriInfoResource uriInfo) throws ODataApplicationException {
         EdmEntitySet entitySet;
         final List<UriResource> resourcePaths = uriInfo.getUriResourceParts();
@@ -713,7 +635,10 @@ public class ODataAdapter implements ServiceHandler {
                         if (result) {
                             response.writeUpdatedEntity();
                         } else {
-                            response.writeNotModified();
+                            // the entity was modified or removed after it was read, so the update didn't match it
+                            response.writeError(new ODataServerError().setStatusCode(
+                                    HttpStatusCode.PRECONDITION_FAILED.getStatusCode())
+                                                                      .setMessage("E-Tag checksum didn't match."));
                         }
                     } else {
                         response.writeError(
@@ -885,10 +810,12 @@ public class ODataAdapter implements ServiceHandler {
                         }
                     } else {
                         entity = getETagMatchedEntity(entityETag, getIfMatch(request), entity);
+                        if (entity != null && !this.dataHandler.updateEntityInTableTransactional(
+                                entityType.getName(), wrapEntityToDataEntry(entityType, entity), entry)) {
+                            // the entity was modified or removed after it was read, so the update didn't match it
+                            entity = null;
+                        }
                         if (entity != null) {
-                            this.dataHandler.updateEntityInTableTransactional(entityType.getName(),
-                                                                              wrapEntityToDataEntry(entityType, entity),
-                                                                              entry);
                             if (property.getValue() == null) {
                                 response.writePropertyDeleted();
                             } else {
@@ -973,10 +900,12 @@ public class ODataAdapter implements ServiceHandler {
                         }
                     } else {
                         entity = getETagMatchedEntity(entityETag, getIfMatch(request), entity);
+                        if (entity != null && !this.dataHandler.updateEntityInTableTransactional(
+                                entityType.getName(), wrapEntityToDataEntry(entityType, entity), entry)) {
+                            // the entity was modified or removed after it was read, so the update didn't match it
+                            entity = null;
+                        }
                         if (entity != null) {
-                            this.dataHandler.updateEntityInTableTransactional(entityType.getName(),
-                                                                              wrapEntityToDataEntry(entityType, entity),
-                                                                              entry);
                             if (property.getValue() == null) {
                                 response.writePropertyDeleted();
                             } else {
@@ -1054,6 +983,7 @@ public class ODataAdapter implements ServiceHandler {
         String baseUrl = request.getRawBaseUri();
         EdmEntityType entityType = edmEntitySet.getEntityType();
         String tableName = entityType.getName();
+        boolean transactional = false;
         try {
             ODataEntry entry = new ODataEntry();
             for (UriParameter key : keys) {
@@ -1065,6 +995,9 @@ public class ODataAdapter implements ServiceHandler {
                 if (EMPTY_E_TAG.equals(entityETag)) {
                     deleted = this.dataHandler.updateEntityInTable(tableName, entry);
                 } else {
+                    // run in a transaction, so that the entity stays locked from the E-Tag check to the update
+                    initializeTransactionalConnection();
+                    transactional = true;
                 	Entity entity = null;
                     List<Entity> entities = getEntity(edmEntitySet.getEntityType(), keys, baseUrl, null);
                     if (entities != null && entities.size() != 0)
@@ -1092,6 +1025,9 @@ public class ODataAdapter implements ServiceHandler {
                 if (EMPTY_E_TAG.equals(entityETag)) {
                     updated = this.dataHandler.updateEntityInTable(tableName, entry);
                 } else {
+                    // run in a transaction, so that the entity stays locked from the E-Tag check to the update
+                    initializeTransactionalConnection();
+                    transactional = true;
                 	Entity entity = null;
                     List<Entity> entities = getEntity(edmEntitySet.getEntityType(), keys, baseUrl, null);
                     if (entities != null && entities.size() != 0)
@@ -1116,6 +1052,15 @@ public class ODataAdapter implements ServiceHandler {
         } catch (ODataServiceFault | IOException e) {
             response.writeNotModified();
             log.error("Error occurred while upserting the property. :" + e.getMessage(), e);
+        } finally {
+            if (transactional) {
+                try {
+                    finalizeTransactionalConnection();
+                } catch (ODataServiceFault e) {
+                    response.writeNotModified();
+                    log.error("Error occurred while upserting the property. :" + e.getMessage(), e);
+                }
+            }
         }
     }
 
@@ -1147,11 +1092,11 @@ public class ODataAdapter implements ServiceHandler {
                 foreignKeys.addValue(keyValues[0], keyValues[1]);
             }
         } else {
-            if (this.dataHandler.getPrimaryKeys().get(navigation).size() == 1) {
+            if (this.primaryKeys.get(navigation).size() == 1) {
                 if (resource.startsWith("'") && resource.endsWith("'")) {
                     resource = resource.substring(1, resource.length() - 1);
                 }
-                foreignKeys.addValue(this.dataHandler.getPrimaryKeys().get(navigation).get(0), resource);
+                foreignKeys.addValue(this.primaryKeys.get(navigation).get(0), resource);
             } else {
                 throw new ODataServiceFault("Wrong number of key properties in reference id.");
             }
@@ -1353,46 +1298,14 @@ public class ODataAdapter implements ServiceHandler {
      * @see EntityCollection
      */
     private EntityCollection createEntityCollectionFromDataEntryList(String tableName, List<ODataEntry> entries,
-                                                                     String baseURL, ExpandOption expandOption) throws ODataServiceFault {
+                                                                     String baseURL) throws ODataServiceFault {
         if (!editMode) // operation not allowed
             return null;
         try {
             EntityCollection entitySet = new EntityCollection();
             int count = 0;
             for (ODataEntry entry : entries) {
-                Entity entity = new Entity();
-                for (DataColumn column : this.dataHandler.getTableMetadata().get(tableName).values()) {
-                    String columnName = column.getColumnName();
-                    ODataDataType columnType = column.getColumnType();
-                    entity.addProperty(createPrimitive(columnType, columnName, entry.getValue(columnName)));
-                }
-                
-                if (expandOption != null) { // adds columns of foreign tables
-                    List<ExpandItem> expandItems = expandOption.getExpandItems();
-                    if (expandItems != null && expandItems.size() > 0) {
-                        for (ExpandItem expandItem : expandItems) {
-                            String foreignTable = expandItem.getResourcePath().getUriResourceParts().get(0).getSegmentValue();
-                            for (DataColumn column : this.dataHandler.getTableMetadata().get(foreignTable).values()) { // add each column
-                                String columnName = column.getColumnName();
-                                ODataDataType columnType = column.getColumnType();
-                                entity.addProperty(createPrimitive(columnType, foreignTable + "." + columnName, entry.getValue(foreignTable + "." + columnName)));
-                            }
-                        }
-                    }
-                }
-                //Set ETag to the entity
-                EdmEntityType entityType = this.serviceMetadata.getEdm()
-                                                               .getEntityType(new FullQualifiedName(this.namespace,
-                                                                                                    tableName));
-                String location = "";
-                
-                // As of 2018/07/24, the EntityResponse.buildLocation method included by the pom is bugged, see ODataUtils.buildLocation for more information
-                location = ODataUtils.buildLocation(baseURL, entity, entityType.getName(), entityType);
-                //location = EntityResponse.buildLocation(baseURL, entity, entityType.getName(), entityType);
-                entity.setId(new URI(location));
-                entity.setETag(entry.getValue("ETag"));
-                entity.setType(new FullQualifiedName(this.namespace, tableName).getFullQualifiedNameAsString());
-                entitySet.getEntities().add(entity);
+                entitySet.getEntities().add(createEntityFromDataEntry(tableName, entry, baseURL));
                 count++;
             }
             entitySet.setCount(count);
@@ -1407,6 +1320,46 @@ public class ODataAdapter implements ServiceHandler {
                                            e.getMessage());
         }
     }
+
+    /**
+     * Returns the entity of a data entry, along with the related entities read for $expand, which are
+     * added as inline navigation links.
+     *
+     * @param tableName Name of the table
+     * @param entry     Data Entry
+     * @param baseURL	URL of the request, used in the buildLocation method
+     * @return Entity
+     */
+    private Entity createEntityFromDataEntry(String tableName, ODataEntry entry, String baseURL)
+            throws URISyntaxException, ParseException, EdmPrimitiveTypeException, ODataServiceFault {
+        ODataEntityConverter converter = getEntityConverter(tableName);
+        Entity entity = converter.createEntity(entry, baseURL);
+        EdmEntityType entityType = converter.getEntityType();
+        for (String navPropName : entry.getNavigationNames()) { // related entities read for $expand
+            EdmNavigationProperty edmNavigationProperty = entityType.getNavigationProperty(navPropName);
+            List<ODataEntry> navigationEntries = entry.getNavigationEntries(navPropName);
+            Link link = new Link(); // link to add the related entities
+            link.setTitle(navPropName);
+            link.setType(Constants.ENTITY_NAVIGATION_LINK_TYPE);
+            link.setRel(Constants.NS_ASSOCIATION_LINK_REL + navPropName);
+            if (edmNavigationProperty == null || edmNavigationProperty.isCollection()) { // to-many relationship
+                EntityCollection expandCollection = new EntityCollection();
+                for (ODataEntry navigationEntry : navigationEntries)
+                    expandCollection.getEntities().add(createEntityFromDataEntry(navPropName, navigationEntry, baseURL));
+                expandCollection.setCount(expandCollection.getEntities().size());
+                link.setInlineEntitySet(expandCollection); // link to the collection of sub-entries
+                link.setHref(entity.getId().toASCIIString() + "/" + navPropName);
+            } else { // to-one relationship
+                if (navigationEntries.isEmpty()) // entity doesn't reference any external entity for this foreign key
+                    continue;
+                Entity expandEntity = createEntityFromDataEntry(navPropName, navigationEntries.get(0), baseURL);
+                link.setInlineEntity(expandEntity); // link to the sub-entry
+                link.setHref(expandEntity.getId().toASCIIString());
+            }
+            entity.getNavigationLinks().add(link); // set the link containing the expanded data to the current entity.
+        }
+        return entity;
+    }
     
     /**
      * This method creates the entity in table by calling the insertEntityToTable method in ODataDataHandler.
@@ -1431,7 +1384,7 @@ public class ODataAdapter implements ServiceHandler {
                                                                             wrapEntityToDataEntry(entityType, entity));
             for(String paramName : createdEntity.getNames()) {
                 if(!paramName.equals(ODataConstants.E_TAG)) {
-                    DataColumn column = this.dataHandler.getTableMetadata().get(rootTable).get(paramName);
+                    DataColumn column = this.tableMetadata.get(rootTable).get(paramName);
                     entity.addProperty(createPrimitive(column.getColumnType(), paramName, createdEntity.getValue(paramName)));
                 }
             }
@@ -1533,14 +1486,6 @@ public class ODataAdapter implements ServiceHandler {
         return this.edmProvider;
     }
 
-    private byte[] getBytesFromBase64String(String base64Str) throws ODataServiceFault {
-        try {
-            return Base64.decodeBase64(base64Str.getBytes(DBConstants.DEFAULT_CHAR_SET_TYPE));
-        } catch (Exception e) {
-            throw new ODataServiceFault(e.getMessage());
-        }
-    }
-
     private String getBase64StringFromBytes(byte[] data) throws ODataServiceFault {
         byte[] base64Data = Base64.encodeBase64(data);
         try {
@@ -1622,29 +1567,34 @@ public class ODataAdapter implements ServiceHandler {
      *
      * @param uriInfo	Contains OData query options
      * @param tableName	Name of the table
+     * @param navProperties Properties the collection is filtered by when it is navigated to, null otherwise
      * @return EntityCollection
      * @throws ODataServiceFault
      * @throws ODataApplicationException 
      * @throws ExpressionVisitException 
      */
-    private int getCountCollection(UriInfo uriInfo, String tableName) throws ODataServiceFault, ExpressionVisitException, ODataApplicationException {
+    private int getCountCollection(UriInfo uriInfo, String tableName, List<Property> navProperties) throws ODataServiceFault, ExpressionVisitException, ODataApplicationException {
+        if (navProperties != null && this.dataHandler instanceof RDBMSDataHandler) {
+            return ((RDBMSDataHandler) this.dataHandler).countRecords(uriInfo, tableName, navProperties);
+        }
         return this.dataHandler.countRecords(uriInfo, tableName);
     }
 
     /**
-     * This method returns the entity collection from the ODataDataHandler
+     * Reads the entries of a collection along with its total and the skip token of its next page, which only
+     * RDBMSDataHandler reads with the entries.
      *
-     * @param tableName Name of the table
-     * @param baseUrl	URL of the request
-     * @param uriInfo	Contains OData query options
-     * @return EntityCollection
+     * @param tableName     Name of the table
+     * @param uriInfo       Contains OData query options
+     * @param navProperties Properties the entries are filtered by when they are read through a navigation
+     * @return Page of entries
      * @throws ODataServiceFault
      */
-    private EntityCollection getEntityCollection(String tableName, String baseUrl, UriInfo uriInfo, List<Property> navProperties) throws ODataServiceFault, ExpressionVisitException, ODataApplicationException {
-        ExpandOption expandOption = null;
-        if (uriInfo != null)
-            expandOption = uriInfo.getExpandOption();
-        return createEntityCollectionFromDataEntryList(tableName, this.dataHandler.readTable(tableName, uriInfo, navProperties), baseUrl, expandOption);
+    private RDBMSDataHandler.TablePage readCollectionPage(String tableName, UriInfo uriInfo, List<Property> navProperties) throws ODataServiceFault, ExpressionVisitException, ODataApplicationException {
+        if (this.dataHandler instanceof RDBMSDataHandler) {
+            return ((RDBMSDataHandler) this.dataHandler).readTablePage(tableName, uriInfo, navProperties);
+        }
+        return new RDBMSDataHandler.TablePage(this.dataHandler.readTable(tableName, uriInfo, navProperties));
     }
     
     /**
@@ -1774,11 +1724,8 @@ public class ODataAdapter implements ServiceHandler {
      */
     private List<Entity> getEntity(EdmEntityType entityType, List<UriParameter> keys, String baseUrl, UriInfo uriInfo)
             throws ODataApplicationException, ODataServiceFault {
-        ExpandOption expandOption = null;
-        if (uriInfo != null)
-            expandOption = uriInfo.getExpandOption();
         EntityCollection entityCollection = createEntityCollectionFromDataEntryList(entityType.getName(), dataHandler
-                .readTableWithKeys(entityType.getName(), wrapKeyParamToDataEntry(keys), uriInfo), baseUrl, expandOption);
+                .readTableWithKeys(entityType.getName(), wrapKeyParamToDataEntry(keys), uriInfo), baseUrl);
         return getEntity(entityType, entityCollection, keys);
     }
 
@@ -1851,7 +1798,7 @@ public class ODataAdapter implements ServiceHandler {
         EntityCollection results;
         List<Property> properties = new ArrayList<>();
         Map<String, EdmProperty> propertyMap = new HashMap<>();
-        for (NavigationKeys keys : this.dataHandler.getNavigationProperties().get(type.getName())
+        for (NavigationKeys keys : this.navigationProperties.get(type.getName())
                                                    .getNavigationKeys(linkName)) {
             if (parentEntity.getProperty(keys.getPrimaryKey()) != null) {
                 Property property = parentEntity.getProperty(keys.getPrimaryKey());
@@ -1862,7 +1809,7 @@ public class ODataAdapter implements ServiceHandler {
         }
         
         results = createEntityCollectionFromDataEntryList(linkName, dataHandler
-                .readTableWithKeys(linkName, wrapPropertiesToDataEntry(type, properties, propertyMap),null), baseURL, null);
+                .readTableWithKeys(linkName, wrapPropertiesToDataEntry(type, properties, propertyMap),null), baseURL);
         return results;
 
     }
@@ -1878,7 +1825,7 @@ public class ODataAdapter implements ServiceHandler {
 		EdmEntityType type = metadata.getEdm().getEntityType(new FullQualifiedName(parentEntity.getType()));
 		String linkName = navigation.getProperty().getName();
 		List<Property> properties = new ArrayList<>();
-		for (NavigationKeys keys : this.dataHandler.getNavigationProperties().get(type.getName())
+		for (NavigationKeys keys : this.navigationProperties.get(type.getName())
 									.getNavigationKeys(linkName)) {
 			Property parentProperty = parentEntity.getProperty(keys.getPrimaryKey());
 			if (parentProperty != null) {
@@ -1910,7 +1857,7 @@ public class ODataAdapter implements ServiceHandler {
         String linkName = navigation.getProperty().getName();
         List<Property> properties = new ArrayList<>();
         Map<String, EdmProperty> propertyMap = new HashMap<>();
-        for (NavigationKeys keys : this.dataHandler.getNavigationProperties().get(linkName)
+        for (NavigationKeys keys : this.navigationProperties.get(linkName)
                                                    .getNavigationKeys(type.getName())) {
             if (parentEntity.getProperty(keys.getForeignKey()) != null) {
                 Property property = parentEntity.getProperty(keys.getForeignKey());
@@ -1921,7 +1868,7 @@ public class ODataAdapter implements ServiceHandler {
         }
         EntityCollection results;
         results = createEntityCollectionFromDataEntryList(linkName, dataHandler
-                .readTableWithKeys(linkName, wrapPropertiesToDataEntry(type, properties, propertyMap), null), baseUrl, null);
+                .readTableWithKeys(linkName, wrapPropertiesToDataEntry(type, properties, propertyMap), null), baseUrl);
         if (!results.getEntities().isEmpty()) {
             return results.getEntities().get(0);
         } else {
@@ -1934,9 +1881,9 @@ public class ODataAdapter implements ServiceHandler {
 
     private Map<String, List<CsdlPropertyRef>> getKeysCsdlMap() throws ODataServiceFault {
         Map<String, List<CsdlPropertyRef>> keyMap = new HashMap<>();
-        for (String tableName : this.dataHandler.getTableList()) {
+        for (String tableName : this.tableList) {
             List<CsdlPropertyRef> propertyList = new ArrayList<>();
-            for (String element : this.dataHandler.getPrimaryKeys().get(tableName)) {
+            for (String element : this.primaryKeys.get(tableName)) {
                 propertyList.add(new CsdlPropertyRef().setName(element));
             }
             keyMap.put(tableName, propertyList);
@@ -1952,7 +1899,7 @@ public class ODataAdapter implements ServiceHandler {
      */
     private List<CsdlProperty> getProperties(String tableName) {
         List<CsdlProperty> properties = new ArrayList<>();
-        for (DataColumn column : this.dataHandler.getTableMetadata().get(tableName).values()) {
+        for (DataColumn column : this.tableMetadata.get(tableName).values()) {
             CsdlProperty property = new CsdlProperty();
             property.setName(column.getColumnName());
             DataColumn.ODataDataType columnType = column.getColumnType();
@@ -2156,7 +2103,7 @@ public class ODataAdapter implements ServiceHandler {
      */
     private Map<String, List<CsdlProperty>> getPropertiesMap() {
         Map<String, List<CsdlProperty>> propertiesMap = new HashMap<>();
-        for (String tableName : this.dataHandler.getTableList()) {
+        for (String tableName : this.tableList) {
             propertiesMap.put(tableName, getProperties(tableName));
         }
         return propertiesMap;
@@ -2175,168 +2122,9 @@ public class ODataAdapter implements ServiceHandler {
      */
     private Property createPrimitive(final DataColumn.ODataDataType columnType, final String name,
                                      final String paramValue) throws ODataServiceFault, ParseException {
-        String propertyType;
-        Object value;
-        switch (columnType) {
-            case INT32:
-                propertyType = EdmPrimitiveTypeKind.Int32.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue == null ? null : ConverterUtil.convertToInt(paramValue);
-                break;
-            case INT16:
-                propertyType = EdmPrimitiveTypeKind.Int16.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue == null ? null : ConverterUtil.convertToByte(paramValue);
-                break;
-            case DOUBLE:
-                propertyType = EdmPrimitiveTypeKind.Double.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue == null ? null : ConverterUtil.convertToDouble(paramValue);
-                break;
-            case STRING:
-                propertyType = EdmPrimitiveTypeKind.String.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case BOOLEAN:
-                propertyType = EdmPrimitiveTypeKind.Boolean.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue == null ? null : ConverterUtil.convertToBoolean(paramValue);
-                break;
-            case BINARY:
-                propertyType = EdmPrimitiveTypeKind.Binary.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue == null ? null : getBytesFromBase64String(paramValue);
-                break;
-            case BYTE:
-                propertyType = EdmPrimitiveTypeKind.Byte.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case SBYTE:
-                propertyType = EdmPrimitiveTypeKind.SByte.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case DATE:
-                propertyType = EdmPrimitiveTypeKind.Date.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = ConverterUtil.convertToDate(paramValue);
-                break;
-            case DURATION:
-                propertyType = EdmPrimitiveTypeKind.Duration.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case DECIMAL:
-                propertyType = EdmPrimitiveTypeKind.Decimal.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue == null ? null : ConverterUtil.convertToBigDecimal(paramValue);
-                break;
-            case SINGLE:
-                propertyType = EdmPrimitiveTypeKind.Single.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue == null ? null : ConverterUtil.convertToFloat(paramValue);
-                break;
-            case TIMEOFDAY:
-                propertyType = EdmPrimitiveTypeKind.TimeOfDay.getFullQualifiedName().getFullQualifiedNameAsString();
-                if (paramValue == null) {
-                    value = null;
-                } else if (this.dataHandler instanceof CassandraDataHandler){ // Cassandra returns the time in nanoseconds
-                    // Converts to Time and afterwards to Calendar.
-                    value = new Time(LocalTime.ofNanoOfDay(Long.parseLong(paramValue)).toString()).getAsCalendar();
-                } else {
-                    value = ConverterUtil.convertToTime(paramValue).getAsCalendar();
-                }
-                break;
-            case INT64:
-                propertyType = EdmPrimitiveTypeKind.Int64.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue == null ? null : ConverterUtil.convertToLong(paramValue);
-                break;
-            case DATE_TIMEOFFSET:
-                propertyType = EdmPrimitiveTypeKind.DateTimeOffset.getFullQualifiedName()
-                                                                  .getFullQualifiedNameAsString();
-                value = ConverterUtil.convertToDateTime(paramValue);
-                break;
-            case GUID:
-                propertyType = EdmPrimitiveTypeKind.Guid.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = UUID.fromString(paramValue);
-                break;
-            case STREAM:
-                propertyType = EdmPrimitiveTypeKind.Stream.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOGRAPHY:
-                propertyType = EdmPrimitiveTypeKind.Geography.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOGRAPHY_POINT:
-                propertyType = EdmPrimitiveTypeKind.GeographyPoint.getFullQualifiedName()
-                                                                  .getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOGRAPHY_LINE_STRING:
-                propertyType = EdmPrimitiveTypeKind.GeographyLineString.getFullQualifiedName()
-                                                                       .getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOGRAPHY_POLYGON:
-                propertyType = EdmPrimitiveTypeKind.GeographyPolygon.getFullQualifiedName()
-                                                                    .getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOGRAPHY_MULTIPOINT:
-                propertyType = EdmPrimitiveTypeKind.GeographyMultiPoint.getFullQualifiedName()
-                                                                       .getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOGRAPHY_MULTILINE_STRING:
-                propertyType = EdmPrimitiveTypeKind.GeographyMultiLineString.getFullQualifiedName()
-                                                                            .getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOGRAPHY_MULTIPOLYGON:
-                propertyType = EdmPrimitiveTypeKind.GeographyMultiPolygon.getFullQualifiedName()
-                                                                         .getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOGRAPHY_COLLECTION:
-                propertyType = EdmPrimitiveTypeKind.GeographyCollection.getFullQualifiedName()
-                                                                       .getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOMETRY:
-                propertyType = EdmPrimitiveTypeKind.Geometry.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOMETRY_POINT:
-                propertyType = EdmPrimitiveTypeKind.GeometryPoint.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOMETRY_LINE_STRING:
-                propertyType = EdmPrimitiveTypeKind.GeometryLineString.getFullQualifiedName()
-                                                                      .getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOMETRY_POLYGON:
-                propertyType = EdmPrimitiveTypeKind.GeometryPolygon.getFullQualifiedName()
-                                                                   .getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOMETRY_MULTIPOINT:
-                propertyType = EdmPrimitiveTypeKind.GeometryMultiPoint.getFullQualifiedName()
-                                                                      .getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOMETRY_MULTILINE_STRING:
-                propertyType = EdmPrimitiveTypeKind.GeographyMultiLineString.getFullQualifiedName()
-                                                                            .getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOMETRY_MULTIPOLYGON:
-                propertyType = EdmPrimitiveTypeKind.GeometryMultiPolygon.getFullQualifiedName()
-                                                                        .getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            case GEOMETRY_COLLECTION:
-                propertyType = EdmPrimitiveTypeKind.GeometryCollection.getFullQualifiedName()
-                                                                      .getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-            default:
-                propertyType = EdmPrimitiveTypeKind.String.getFullQualifiedName().getFullQualifiedNameAsString();
-                value = paramValue;
-                break;
-        }
-        return new Property(propertyType, name, ValueType.PRIMITIVE, value);
+        return new Property(ODataEntityConverter.getPropertyType(columnType), name, ValueType.PRIMITIVE,
+                            ODataEntityConverter.convertValue(columnType, paramValue,
+                                                              this.dataHandler instanceof CassandraDataHandler));
     }
 
     /**
@@ -2394,9 +2182,9 @@ public class ODataAdapter implements ServiceHandler {
      * @see EDMProvider
      */
     private CsdlEdmProvider initializeEdmProvider(String configID) throws ODataServiceFault {
-        return new EDMProvider(this.dataHandler.getTableList(), configID, this.namespace, getPropertiesMap(),
-                               getKeysCsdlMap(), this.dataHandler.getTableList(),
-                               this.dataHandler.getNavigationProperties());
+        return new EDMProvider(this.tableList, configID, this.namespace, getPropertiesMap(),
+                               getKeysCsdlMap(), this.tableList,
+                               this.navigationProperties);
     }
 
     private void initializeTransactionalConnection() throws ODataServiceFault {
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.dataservices.core.odata;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ODataLibraryException;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.uri.queryoption.FilterOption;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
+import org.apache.olingo.server.core.uri.parser.Parser;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.wso2.carbon.dataservices.core.odata.DataColumn.ODataDataType;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class answers the OData requests that carry the $apply option, which the Olingo version in use does not
+ * parse. The aggregation is translated into a single GROUP BY query by the RDBMS data handler, and the groups are
+ * written as dynamic JSON entities holding only the grouping properties and the aggregated values.
+ *
+ * @see RDBMSODataApply
+ */
+public class ODataApplyProcessor {
+    private static final Log log = LogFactory.getLog(ODataApplyProcessor.class);
+
+    private static final String APPLY = "$apply";
+
+    private static final String ENCODING = "UTF-8";
+
+    private final ODataDataHandler dataHandler;
+
+    private final OData odata;
+
+    private final ServiceMetadata serviceMetadata;
+
+    public ODataApplyProcessor(ODataDataHandler dataHandler, OData odata, ServiceMetadata serviceMetadata) {
+        this.dataHandler = dataHandler;
+        this.odata = odata;
+        this.serviceMetadata = serviceMetadata;
+    }
+
+    /**
+     * Returns whether the request carries the $apply option.
+     *
+     * @param req HTTPServletRequest
+     * @return true if the request has to be processed by this class
+     */
+    public static boolean isApplyRequest(HttpServletRequest req) {
+        String query = req.getQueryString();
+        if (query == null) {
+            return false;
+        }
+        for (String param : query.split("&")) {
+            String name = param.split("=", 2)[0].replace("%24", "$");
+            if (APPLY.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method processes a request with $apply and writes the aggregated entities.
+     *
+     * @param req             HTTPServletRequest
+     * @param resp            HTTPServletResponse
+     * @param serviceRootPath Service root Path
+     */
+    public void process(HttpServletRequest req, HttpServletResponse resp, String serviceRootPath) {
+        try {
+            try {
+                if (!"GET".equalsIgnoreCase(req.getMethod())) {
+                    throw new ODataApplicationException("$apply is only supported when reading an entity set.",
+                                                        HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ROOT);
+                }
+                String prefix = req.getContextPath() + req.getServletPath() + serviceRootPath;
+                String requestUri = req.getRequestURI();
+                String entitySet = requestUri.startsWith(prefix) ? decode(requestUri.substring(prefix.length())) : "";
+                while (entitySet.startsWith("/")) {
+                    entitySet = entitySet.substring(1);
+                }
+                while (entitySet.endsWith("/")) {
+                    entitySet = entitySet.substring(0, entitySet.length() - 1);
+                }
+                if (entitySet.isEmpty() || entitySet.contains("/") || entitySet.contains("(") ||
+                    this.serviceMetadata.getEdm().getEntityContainer().getEntitySet(entitySet) == null) {
+                    throw new ODataApplicationException("$apply is only supported on entity sets.",
+                                                        HttpStatusCode.NOT_FOUND.getStatusCode(), Locale.ROOT);
+                }
+                if (!(this.dataHandler instanceof RDBMSDataHandler)) {
+                    throw new ODataApplicationException("$apply is not supported by this data source.",
+                                                        HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ROOT);
+                }
+                String apply = null;
+                int top = -1;
+                int skip = 0;
+                List<String> orderBy = new ArrayList<>();
+                for (String param : req.getQueryString().split("&")) {
+                    String[] pair = param.split("=", 2);
+                    String name = decode(pair[0]);
+                    String value = pair.length > 1 ? decode(pair[1]) : "";
+                    if (APPLY.equals(name)) {
+                        apply = value;
+                    } else if ("$top".equals(name)) {
+                        top = parseNonNegative(name, value);
+                    } else if ("$skip".equals(name)) {
+                        skip = parseNonNegative(name, value);
+                    } else if ("$orderby".equals(name)) {
+                        for (String item : value.split(",")) {
+                            String[] tokens = item.trim().split("\\s+");
+                            if (tokens.length > 2 || (tokens.length == 2 && !"asc".equals(tokens[1]) &&
+                                                      !"desc".equals(tokens[1]))) {
+                                throw new ODataApplicationException("Invalid $orderby: " + value,
+                                                                    HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ROOT);
+                            }
+                            boolean descending = tokens.length == 2 && "desc".equals(tokens[1]);
+                            orderBy.add(descending ? tokens[0] + " DESC" : tokens[0]);
+                        }
+                    } else if ("$format".equals(name)) {
+                        if (!value.toLowerCase().startsWith("json") && !value.toLowerCase().startsWith("application/json")) {
+                            throw new ODataApplicationException("$apply results are only available in JSON.",
+                                                                HttpStatusCode.NOT_ACCEPTABLE.getStatusCode(), Locale.ROOT);
+                        }
+                    } else if (name.startsWith("$")) {
+                        throw new ODataApplicationException("The " + name + " option is not supported with $apply.",
+                                                            HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ROOT);
+                    }
+                }
+                RDBMSODataApply rdbmsApply = RDBMSODataApply.parse(apply);
+                List<FilterOption> filters = new ArrayList<>();
+                for (String filter : rdbmsApply.getFilters()) {
+                    // the filter transformations have the same syntax as $filter, so Olingo can parse them as such
+                    filters.add(new Parser(this.serviceMetadata.getEdm(), this.odata)
+                                        .parseUri("/" + entitySet, "$filter=" + encode(filter), null)
+                                        .getFilterOption());
+                }
+                List<ODataEntry> entries = top == 0 ? new ArrayList<ODataEntry>() :
+                                           ((RDBMSDataHandler) this.dataHandler)
+                                                   .readAggregatedTable(entitySet, rdbmsApply, filters, orderBy, top, skip);
+                writeEntries(req, resp, prefix, entitySet, rdbmsApply, entries);
+            } catch (ODataApplicationException e) {
+                writeError(resp, e.getStatusCode(), e.getMessage());
+            } catch (ODataLibraryException e) { // raised by the parser of the filter transformations
+                writeError(resp, HttpStatusCode.BAD_REQUEST.getStatusCode(),
+                           "Invalid filter transformation in $apply: " + e.getMessage());
+            } catch (ODataServiceFault | ExpressionVisitException e) {
+                log.error("Error in processing the $apply request. : " + e.getMessage(), e);
+                writeError(resp, HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), e.getMessage());
+            }
+        } catch (IOException | JSONException e) {
+            log.error("Error occurred while writing the $apply response. : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * This method writes the aggregated entities as an OData JSON collection.
+     */
+    private void writeEntries(HttpServletRequest req, HttpServletResponse resp, String prefix, String entitySet,
+                              RDBMSODataApply apply, List<ODataEntry> entries) throws IOException, JSONException {
+        Map<String, DataColumn> columns = this.dataHandler.getTableMetadata().get(entitySet);
+        List<String> properties = new ArrayList<>(apply.getGroupBy());
+        for (RDBMSODataApply.Aggregation aggregation : apply.getAggregations()) {
+            properties.add(aggregation.getAlias());
+        }
+        String requestUrl = req.getRequestURL().toString();
+        int rootEnd = requestUrl.indexOf(prefix);
+        String serviceRoot = (rootEnd < 0 ? "" : requestUrl.substring(0, rootEnd + prefix.length())) + "/";
+        JSONArray value = new JSONArray();
+        for (ODataEntry entry : entries) {
+            JSONObject entity = new JSONObject();
+            for (String column : apply.getGroupBy()) {
+                entity.put(column, toJsonValue(entry.getValue(column), columns.get(column).getColumnType()));
+            }
+            for (RDBMSODataApply.Aggregation aggregation : apply.getAggregations()) {
+                String aggregated = entry.getValue(aggregation.getAlias());
+                Object jsonValue;
+                if (aggregated == null) {
+                    jsonValue = JSONObject.NULL;
+                } else if (RDBMSODataApply.COUNT.equals(aggregation.getColumn()) ||
+                           RDBMSODataApply.COUNT_DISTINCT.equals(aggregation.getMethod())) {
+                    jsonValue = Long.parseLong(aggregated.trim());
+                } else if (RDBMSODataApply.SUM.equals(aggregation.getMethod()) ||
+                           RDBMSODataApply.AVERAGE.equals(aggregation.getMethod())) {
+                    jsonValue = new BigDecimal(aggregated.trim());
+                } else { // min and max have the type of the aggregated column
+                    jsonValue = toJsonValue(aggregated, columns.get(aggregation.getColumn()).getColumnType());
+                }
+                entity.put(aggregation.getAlias(), jsonValue);
+            }
+            value.put(entity);
+        }
+        JSONObject collection = new JSONObject();
+        collection.put("@odata.context", serviceRoot + "$metadata#" + entitySet + "(" + String.join(",", properties) + ")");
+        collection.put("value", value);
+        resp.setStatus(HttpStatusCode.OK.getStatusCode());
+        resp.setHeader("OData-Version", "4.0");
+        resp.setContentType("application/json;odata.metadata=minimal");
+        resp.setCharacterEncoding(ENCODING);
+        resp.getWriter().write(collection.toString());
+        resp.getWriter().flush();
+    }
+
+    private Object toJsonValue(String value, ODataDataType type) {
+        if (value == null) {
+            return JSONObject.NULL;
+        }
+        switch (type) {
+            case BYTE:
+            case SBYTE:
+            case INT16:
+            case INT32:
+            case INT64:
+                return Long.parseLong(value.trim());
+            case SINGLE:
+            case DOUBLE:
+            case DECIMAL:
+                return new BigDecimal(value.trim());
+            case BOOLEAN:
+                return Boolean.parseBoolean(value.trim());
+            default:
+                return value;
+        }
+    }
+
+    private void writeError(HttpServletResponse resp, int statusCode, String message)
+            throws IOException, JSONException {
+        JSONObject error = new JSONObject();
+        error.put("code", JSONObject.NULL);
+        error.put("message", message);
+        JSONObject body = new JSONObject();
+        body.put("error", error);
+        resp.setStatus(statusCode);
+        resp.setHeader("OData-Version", "4.0");
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding(ENCODING);
+        resp.getWriter().write(body.toString());
+        resp.getWriter().flush();
+    }
+
+    private int parseNonNegative(String name, String value) throws ODataApplicationException {
+        try {
+            int result = Integer.parseInt(value.trim());
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException ignore) {
+            // reported below
+        }
+        throw new ODataApplicationException("Invalid " + name + ": " + value,
+                                            HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ROOT);
+    }
+
+    /**
+     * Decodes a part of the URL. A '+' is kept as is, as in the other parts of the OData URLs.
+     */
+    private static String decode(String s) throws UnsupportedEncodingException {
+        return URLDecoder.decode(s.replace("+", "%2B"), ENCODING);
+    }
+
+    private static String encode(String s) throws UnsupportedEncodingException {
+        return URLEncoder.encode(s, ENCODING).replace("+", "%20");
+    }
+}
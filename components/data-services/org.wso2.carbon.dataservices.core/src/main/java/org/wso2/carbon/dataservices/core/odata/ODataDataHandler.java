@@ -129,6 +129,13 @@ public interface ODataDataHandler {
      */
     Map<String, NavigationTable> getNavigationProperties();
 
+    /**
+     * This method returns the version of the metadata, which changes each time the metadata is refreshed.
+     *
+     * @return Metadata version
+     */
+    long getMetadataVersion();
+
     /**
      * This method opens the transaction.
      *
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.dataservices.core.odata;
+
+import org.apache.axis2.databinding.types.Time;
+import org.apache.axis2.databinding.utils.ConverterUtil;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.Property;
+import org.apache.olingo.commons.api.data.ValueType;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeException;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.EdmProperty;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.core.Encoder;
+import org.apache.olingo.commons.core.edm.primitivetype.EdmPrimitiveTypeFactory;
+import org.apache.olingo.commons.core.edm.primitivetype.EdmString;
+import org.wso2.carbon.dataservices.common.DBConstants;
+import org.wso2.carbon.dataservices.core.odata.DataColumn.ODataDataType;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.text.ParseException;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Converts the data entries of one entity set into Olingo entities.
+ * The entity type, the property types and the key predicate of the entity id are resolved once, when the converter
+ * is created, so that the conversion of a row only iterates over the columns of the table.
+ */
+public class ODataEntityConverter {
+
+    /**
+     * EDM primitive type of each column type.
+     */
+    private static final Map<ODataDataType, EdmPrimitiveTypeKind> PRIMITIVE_TYPE_KINDS =
+            new EnumMap<>(ODataDataType.class);
+
+    /**
+     * Full qualified name of the EDM primitive type of each column type.
+     */
+    private static final Map<ODataDataType, String> PROPERTY_TYPES = new EnumMap<>(ODataDataType.class);
+
+    static {
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.INT32, EdmPrimitiveTypeKind.Int32);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.INT16, EdmPrimitiveTypeKind.Int16);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.DOUBLE, EdmPrimitiveTypeKind.Double);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.STRING, EdmPrimitiveTypeKind.String);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.BOOLEAN, EdmPrimitiveTypeKind.Boolean);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.BINARY, EdmPrimitiveTypeKind.Binary);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.BYTE, EdmPrimitiveTypeKind.Byte);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.SBYTE, EdmPrimitiveTypeKind.SByte);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.DATE, EdmPrimitiveTypeKind.Date);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.DURATION, EdmPrimitiveTypeKind.Duration);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.DECIMAL, EdmPrimitiveTypeKind.Decimal);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.SINGLE, EdmPrimitiveTypeKind.Single);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.TIMEOFDAY, EdmPrimitiveTypeKind.TimeOfDay);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.INT64, EdmPrimitiveTypeKind.Int64);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.DATE_TIMEOFFSET, EdmPrimitiveTypeKind.DateTimeOffset);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GUID, EdmPrimitiveTypeKind.Guid);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.STREAM, EdmPrimitiveTypeKind.Stream);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOGRAPHY, EdmPrimitiveTypeKind.Geography);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOGRAPHY_POINT, EdmPrimitiveTypeKind.GeographyPoint);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOGRAPHY_LINE_STRING, EdmPrimitiveTypeKind.GeographyLineString);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOGRAPHY_POLYGON, EdmPrimitiveTypeKind.GeographyPolygon);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOGRAPHY_MULTIPOINT, EdmPrimitiveTypeKind.GeographyMultiPoint);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOGRAPHY_MULTILINE_STRING,
+                                 EdmPrimitiveTypeKind.GeographyMultiLineString);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOGRAPHY_MULTIPOLYGON, EdmPrimitiveTypeKind.GeographyMultiPolygon);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOGRAPHY_COLLECTION, EdmPrimitiveTypeKind.GeographyCollection);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOMETRY, EdmPrimitiveTypeKind.Geometry);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOMETRY_POINT, EdmPrimitiveTypeKind.GeometryPoint);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOMETRY_LINE_STRING, EdmPrimitiveTypeKind.GeometryLineString);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOMETRY_POLYGON, EdmPrimitiveTypeKind.GeometryPolygon);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOMETRY_MULTIPOINT, EdmPrimitiveTypeKind.GeometryMultiPoint);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOMETRY_MULTILINE_STRING,
+                                 EdmPrimitiveTypeKind.GeographyMultiLineString);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOMETRY_MULTIPOLYGON, EdmPrimitiveTypeKind.GeometryMultiPolygon);
+        PRIMITIVE_TYPE_KINDS.put(ODataDataType.GEOMETRY_COLLECTION, EdmPrimitiveTypeKind.GeometryCollection);
+        for (ODataDataType columnType : ODataDataType.values()) {
+            PROPERTY_TYPES.put(columnType, getPrimitiveTypeKind(columnType).getFullQualifiedName()
+                                                                           .getFullQualifiedNameAsString());
+        }
+    }
+
+    private final String entitySetName;
+
+    private final EdmEntityType entityType;
+
+    /**
+     * Full qualified name of the entity type, set to each entity.
+     */
+    private final String typeName;
+
+    /**
+     * Columns of the table, in the order of the table metadata.
+     */
+    private final String[] columnNames;
+
+    private final ODataDataType[] columnTypes;
+
+    private final String[] propertyTypes;
+
+    /**
+     * Key predicate names and, for each of them, the index of the column, or -1 if the key is not a column.
+     */
+    private final String[] keyNames;
+
+    private final int[] keyColumns;
+
+    private final EdmPrimitiveType[] keyTypes;
+
+    private final EdmProperty[] keyProperties;
+
+    /**
+     * Whether time values are read as nanoseconds of the day (Cassandra).
+     */
+    private final boolean nanoTimes;
+
+    /**
+     * Creates the conversion plan of an entity set.
+     *
+     * @param entitySetName Name of the entity set (table)
+     * @param namespace     Namespace of the data service
+     * @param columns       Columns of the table
+     * @param entityType    Entity type of the entity set
+     * @param nanoTimes     Whether time values are read as nanoseconds of the day
+     */
+    public ODataEntityConverter(String entitySetName, String namespace, Collection<DataColumn> columns,
+                                EdmEntityType entityType, boolean nanoTimes) {
+        this.entitySetName = entitySetName;
+        this.entityType = entityType;
+        this.typeName = new FullQualifiedName(namespace, entitySetName).getFullQualifiedNameAsString();
+        this.nanoTimes = nanoTimes;
+        this.columnNames = new String[columns.size()];
+        this.columnTypes = new ODataDataType[columns.size()];
+        this.propertyTypes = new String[columns.size()];
+        int i = 0;
+        for (DataColumn column : columns) {
+            this.columnNames[i] = column.getColumnName();
+            this.columnTypes[i] = column.getColumnType();
+            this.propertyTypes[i] = getPropertyType(column.getColumnType());
+            i++;
+        }
+        List<String> keyPredicateNames = entityType.getKeyPredicateNames();
+        this.keyNames = keyPredicateNames.toArray(new String[keyPredicateNames.size()]);
+        this.keyColumns = new int[this.keyNames.length];
+        this.keyTypes = new EdmPrimitiveType[this.keyNames.length];
+        this.keyProperties = new EdmProperty[this.keyNames.length];
+        for (int k = 0; k < this.keyNames.length; k++) {
+            this.keyColumns[k] = -1;
+            for (int c = 0; c < this.columnNames.length; c++) {
+                if (this.columnNames[c].equals(this.keyNames[k])) {
+                    this.keyColumns[k] = c;
+                    this.keyTypes[k] = EdmPrimitiveTypeFactory.getInstance(getPrimitiveTypeKind(this.columnTypes[c]));
+                    break;
+                }
+            }
+            this.keyProperties[k] = (EdmProperty) entityType.getProperty(this.keyNames[k]);
+        }
+    }
+
+    /**
+     * Returns the entity type of the entity set.
+     *
+     * @return Entity type
+     */
+    public EdmEntityType getEntityType() {
+        return this.entityType;
+    }
+
+    /**
+     * Creates the entity of a data entry, with its id, ETag and type, but without its navigation links.
+     * The columns absent from the entry (not in $select) are not added to the entity.
+     *
+     * @param entry   Data entry
+     * @param baseURL URL of the request, used for the entity id
+     * @return Entity
+     */
+    public Entity createEntity(ODataEntry entry, String baseURL)
+            throws ODataServiceFault, ParseException, URISyntaxException, EdmPrimitiveTypeException {
+        Map<String, String> values = entry.getData();
+        Entity entity = new Entity();
+        Object[] keyValues = new Object[this.keyNames.length];
+        boolean[] keyPresent = new boolean[this.keyNames.length];
+        for (int c = 0; c < this.columnNames.length; c++) {
+            String value = values.get(this.columnNames[c]);
+            if (value == null && !values.containsKey(this.columnNames[c])) { // not read, because it is not in $select
+                continue;
+            }
+            Object convertedValue = convertValue(this.columnTypes[c], value, this.nanoTimes);
+            entity.addProperty(new Property(this.propertyTypes[c], this.columnNames[c], ValueType.PRIMITIVE,
+                                            convertedValue));
+            for (int k = 0; k < this.keyColumns.length; k++) {
+                if (this.keyColumns[k] == c) {
+                    keyValues[k] = convertedValue;
+                    keyPresent[k] = true;
+                }
+            }
+        }
+        entity.setId(new URI(buildLocation(baseURL, keyValues, keyPresent)));
+        entity.setETag(values.get("ETag"));
+        entity.setType(this.typeName);
+        return entity;
+    }
+
+    /**
+     * Builds the entity id from the key values, as ODataUtils.buildLocation does from the properties of the entity.
+     *
+     * @see ODataUtils#buildLocation(String, Entity, String, EdmEntityType)
+     */
+    private String buildLocation(String baseURL, Object[] keyValues, boolean[] keyPresent)
+            throws EdmPrimitiveTypeException {
+        StringBuilder location = new StringBuilder();
+        location.append(baseURL).append("/").append(this.entitySetName).append("(");
+        boolean useName = this.keyNames.length > 1;
+        for (int k = 0; k < this.keyNames.length; k++) {
+            if (k > 0) {
+                location.append(",");
+            }
+            if (useName) {
+                location.append(this.keyNames[k]).append("=");
+            }
+            if (!keyPresent[k]) { // the key is not included in the odata columns configuration
+                continue;
+            }
+            if (keyValues[k] == null) {
+                throw new EdmPrimitiveTypeException("The key value for property " + this.keyNames[k] +
+                                                    " is invalid; Key value cannot be null");
+            }
+            EdmProperty property = this.keyProperties[k];
+            String value = this.keyTypes[k].valueToString(keyValues[k], true, property.getMaxLength(),
+                                                          property.getPrecision(), property.getScale(), true);
+            if (this.keyTypes[k] instanceof EdmString) {
+                value = EdmString.getInstance().toUriLiteral(Encoder.encode(value));
+            }
+            location.append(value);
+        }
+        location.append(")");
+        return location.toString();
+    }
+
+    /**
+     * Returns the EDM primitive type of a column type.
+     *
+     * @param columnType Data type of the column
+     * @return EDM primitive type
+     */
+    public static EdmPrimitiveTypeKind getPrimitiveTypeKind(ODataDataType columnType) {
+        EdmPrimitiveTypeKind kind = PRIMITIVE_TYPE_KINDS.get(columnType);
+        return kind == null ? EdmPrimitiveTypeKind.String : kind;
+    }
+
+    /**
+     * Returns the full qualified name of the EDM primitive type of a column type.
+     *
+     * @param columnType Data type of the column
+     * @return Property type
+     */
+    public static String getPropertyType(ODataDataType columnType) {
+        return PROPERTY_TYPES.get(columnType);
+    }
+
+    /**
+     * Converts the string value of a column into the value of its EDM primitive type.
+     *
+     * @param columnType Data type of the column
+     * @param paramValue String value
+     * @param nanoTimes  Whether time values are nanoseconds of the day
+     * @return Value
+     * @throws ODataServiceFault
+     * @throws ParseException
+     */
+    public static Object convertValue(ODataDataType columnType, String paramValue, boolean nanoTimes)
+            throws ODataServiceFault, ParseException {
+        switch (columnType) {
+            case INT32:
+                return paramValue == null ? null : ConverterUtil.convertToInt(paramValue);
+            case INT16:
+                return paramValue == null ? null : ConverterUtil.convertToByte(paramValue);
+            case DOUBLE:
+                return paramValue == null ? null : ConverterUtil.convertToDouble(paramValue);
+            case BOOLEAN:
+                return paramValue == null ? null : ConverterUtil.convertToBoolean(paramValue);
+            case BINARY:
+                return paramValue == null ? null : getBytesFromBase64String(paramValue);
+            case DATE:
+                return ConverterUtil.convertToDate(paramValue);
+            case DECIMAL:
+                return paramValue == null ? null : ConverterUtil.convertToBigDecimal(paramValue);
+            case SINGLE:
+                return paramValue == null ? null : ConverterUtil.convertToFloat(paramValue);
+            case TIMEOFDAY:
+                if (paramValue == null) {
+                    return null;
+                } else if (nanoTimes) { // Cassandra returns the time in nanoseconds
+                    // Converts to Time and afterwards to Calendar.
+                    return new Time(LocalTime.ofNanoOfDay(Long.parseLong(paramValue)).toString()).getAsCalendar();
+                } else {
+                    return ConverterUtil.convertToTime(paramValue).getAsCalendar();
+                }
+            case INT64:
+                return paramValue == null ? null : ConverterUtil.convertToLong(paramValue);
+            case DATE_TIMEOFFSET:
+                return ConverterUtil.convertToDateTime(paramValue);
+            case GUID:
+                return UUID.fromString(paramValue);
+            default:
+                return paramValue;
+        }
+    }
+
+    private static byte[] getBytesFromBase64String(String base64Str) throws ODataServiceFault {
+        try {
+            return Base64.decodeBase64(base64Str.getBytes(DBConstants.DEFAULT_CHAR_SET_TYPE));
+        } catch (Exception e) {
+            throw new ODataServiceFault(e.getMessage());
+        }
+    }
+}
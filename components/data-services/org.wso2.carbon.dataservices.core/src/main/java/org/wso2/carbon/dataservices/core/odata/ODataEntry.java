@@ -18,6 +18,9 @@
 package org.wso2.carbon.dataservices.core.odata;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -28,6 +31,11 @@ public class ODataEntry {
 
     private Map<String, String> values;
 
+    /**
+     * Related entries read for $expand (Map<Navigation property name, Related entries>).
+     */
+    private Map<String, List<ODataEntry>> navigationEntries;
+
     public ODataEntry() {
         this.values = new HashMap<>();
     }
@@ -48,4 +56,22 @@ public class ODataEntry {
         return this.getData().keySet();
     }
 
+    public void addNavigationEntries(String navigation, List<ODataEntry> entries) {
+        if (this.navigationEntries == null) {
+            this.navigationEntries = new LinkedHashMap<>();
+        }
+        this.navigationEntries.put(navigation, entries);
+    }
+
+    public List<ODataEntry> getNavigationEntries(String navigation) {
+        return this.navigationEntries == null ? null : this.navigationEntries.get(navigation);
+    }
+
+    public Set<String> getNavigationNames() {
+        if (this.navigationEntries == null) {
+            return new HashSet<>();
+        }
+        return this.navigationEntries.keySet();
+    }
+
 }
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.dataservices.core.odata;
+
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourcePrimitiveProperty;
+import org.apache.olingo.server.api.uri.queryoption.expression.Binary;
+import org.apache.olingo.server.api.uri.queryoption.expression.BinaryOperatorKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
+import org.apache.olingo.server.api.uri.queryoption.expression.Literal;
+import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+import org.wso2.carbon.dataservices.core.odata.DataColumn.ODataDataType;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In-memory snapshot of the entries of an entity set, with a hash index and, for ordered types, a sorted index on
+ * each indexed column. It answers the $filter expressions made of equality and range comparisons between an indexed
+ * column and a literal, combined with "and"; any other expression has to be evaluated by the data source.
+ * Null values are not indexed, since they never satisfy a comparison.
+ */
+public class ODataEntryIndex {
+
+    /**
+     * All the entries of the entity set, in the order they were read.
+     */
+    private final List<ODataEntry> entries;
+
+    /**
+     * Data types of the indexed columns.
+     */
+    private final Map<String, ODataDataType> indexedColumns = new HashMap<>();
+
+    /**
+     * Hash indexes (Map<Column name, Map<Normalized value, Entries>>).
+     */
+    private final Map<String, Map<Object, List<ODataEntry>>> hashIndexes = new HashMap<>();
+
+    /**
+     * Sorted indexes of the numeric and string columns (Map<Column name, Map<Normalized value, Entries>>).
+     */
+    private final Map<String, NavigableMap<Object, List<ODataEntry>>> sortedIndexes = new HashMap<>();
+
+    /**
+     * Creates the snapshot and its indexes.
+     *
+     * @param entries        All the entries of the entity set
+     * @param columns        Columns of the entity set
+     * @param indexedColumns Names of the columns to index; the columns whose type cannot be indexed are ignored
+     */
+    public ODataEntryIndex(List<ODataEntry> entries, Map<String, DataColumn> columns,
+                           Collection<String> indexedColumns) {
+        this.entries = Collections.unmodifiableList(entries);
+        for (String columnName : indexedColumns) {
+            DataColumn column = columns.get(columnName);
+            if (column == null || !isIndexable(column.getColumnType())) {
+                continue;
+            }
+            ODataDataType columnType = column.getColumnType();
+            this.indexedColumns.put(columnName, columnType);
+            Map<Object, List<ODataEntry>> hashIndex = new HashMap<>();
+            for (ODataEntry entry : entries) {
+                Object key = normalize(columnType, entry.getValue(columnName));
+                if (key == null) {
+                    continue;
+                }
+                List<ODataEntry> matches = hashIndex.get(key);
+                if (matches == null) {
+                    matches = new ArrayList<>(1);
+                    hashIndex.put(key, matches);
+                }
+                matches.add(entry);
+            }
+            this.hashIndexes.put(columnName, hashIndex);
+            if (columnType != ODataDataType.BOOLEAN && columnType != ODataDataType.GUID) {
+                this.sortedIndexes.put(columnName, new TreeMap<>(hashIndex));
+            }
+        }
+    }
+
+    /**
+     * Returns whether the columns of the given type can be indexed.
+     *
+     * @param columnType Data type of the column
+     * @return true if the type is numeric, textual, boolean or a GUID
+     */
+    public static boolean isIndexable(ODataDataType columnType) {
+        return isNumeric(columnType) || columnType == ODataDataType.STRING || columnType == ODataDataType.GUID ||
+               columnType == ODataDataType.BOOLEAN;
+    }
+
+    /**
+     * Returns all the entries of the snapshot.
+     *
+     * @return Entries
+     */
+    public List<ODataEntry> getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * Returns the entries matching a $filter expression, using the indexes.
+     *
+     * @param expression Expression of the $filter option
+     * @return Matching entries, or null if the expression cannot be answered by the indexes
+     */
+    public List<ODataEntry> filter(Expression expression) {
+        if (!(expression instanceof Binary)) {
+            return null;
+        }
+        Binary binary = (Binary) expression;
+        if (binary.getOperator() == BinaryOperatorKind.AND) {
+            List<ODataEntry> left = filter(binary.getLeftOperand());
+            if (left == null) {
+                return null;
+            }
+            List<ODataEntry> right = filter(binary.getRightOperand());
+            if (right == null) {
+                return null;
+            }
+            return intersect(left, right);
+        }
+        BinaryOperatorKind operator = binary.getOperator();
+        String columnName = getColumnName(binary.getLeftOperand());
+        Expression value = binary.getRightOperand();
+        if (columnName == null) { // literal on the left, e.g. 5 lt Price
+            columnName = getColumnName(binary.getRightOperand());
+            value = binary.getLeftOperand();
+            operator = reverse(operator);
+        }
+        if (columnName == null || operator == null || !(value instanceof Literal)) {
+            return null;
+        }
+        ODataDataType columnType = this.indexedColumns.get(columnName);
+        if (columnType == null) {
+            return null;
+        }
+        Object key = parseLiteral(columnType, ((Literal) value).getText());
+        if (key == null) {
+            return null;
+        }
+        if (operator == BinaryOperatorKind.EQ) {
+            List<ODataEntry> matches = this.hashIndexes.get(columnName).get(key);
+            return matches == null ? new ArrayList<ODataEntry>() : new ArrayList<ODataEntry>(matches);
+        }
+        NavigableMap<Object, List<ODataEntry>> sortedIndex = this.sortedIndexes.get(columnName);
+        if (sortedIndex == null) {
+            return null;
+        }
+        NavigableMap<Object, List<ODataEntry>> range;
+        switch (operator) {
+            case GT:
+                range = sortedIndex.tailMap(key, false);
+                break;
+            case GE:
+                range = sortedIndex.tailMap(key, true);
+                break;
+            case LT:
+                range = sortedIndex.headMap(key, false);
+                break;
+            case LE:
+                range = sortedIndex.headMap(key, true);
+                break;
+            default:
+                return null;
+        }
+        List<ODataEntry> matches = new ArrayList<>();
+        for (List<ODataEntry> rangeEntries : range.values()) {
+            matches.addAll(rangeEntries);
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the entries present in both lists, in the order of the first one.
+     */
+    private static List<ODataEntry> intersect(List<ODataEntry> first, List<ODataEntry> second) {
+        Set<ODataEntry> secondEntries = Collections.newSetFromMap(new IdentityHashMap<ODataEntry, Boolean>());
+        secondEntries.addAll(second);
+        List<ODataEntry> result = new ArrayList<>();
+        for (ODataEntry entry : first) {
+            if (secondEntries.contains(entry)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the name of the property referenced by an expression, null if it is not a primitive property.
+     */
+    private static String getColumnName(Expression expression) {
+        if (!(expression instanceof Member)) {
+            return null;
+        }
+        List<UriResource> parts = ((Member) expression).getResourcePath().getUriResourceParts();
+        if (parts.size() != 1 || !(parts.get(0) instanceof UriResourcePrimitiveProperty)) {
+            return null;
+        }
+        return ((UriResourcePrimitiveProperty) parts.get(0)).getProperty().getName();
+    }
+
+    /**
+     * Returns the operator to use when the operands are swapped, null if it is not supported.
+     */
+    private static BinaryOperatorKind reverse(BinaryOperatorKind operator) {
+        switch (operator) {
+            case EQ:
+                return BinaryOperatorKind.EQ;
+            case GT:
+                return BinaryOperatorKind.LT;
+            case GE:
+                return BinaryOperatorKind.LE;
+            case LT:
+                return BinaryOperatorKind.GT;
+            case LE:
+                return BinaryOperatorKind.GE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Converts the text of a $filter literal to the normalized value of a column type.
+     *
+     * @return Normalized value, or null if the literal does not fit the column type
+     */
+    private static Object parseLiteral(ODataDataType columnType, String text) {
+        if (text == null || "null".equals(text)) {
+            return null;
+        }
+        if (columnType == ODataDataType.STRING) {
+            if (text.length() < 2 || !text.startsWith("'") || !text.endsWith("'")) {
+                return null;
+            }
+            return text.substring(1, text.length() - 1).replace("''", "'");
+        }
+        if (text.startsWith("'")) { // a string literal compared to a column which is not textual
+            return null;
+        }
+        return normalize(columnType, text);
+    }
+
+    /**
+     * Converts the string value of a column to a value which can be compared with the other values of the column:
+     * numbers are converted to BigDecimal without trailing zeros, so that 2, 2.0 and 2.00 are equal.
+     *
+     * @return Normalized value, or null if the value is null or invalid
+     */
+    private static Object normalize(ODataDataType columnType, String value) {
+        if (value == null) {
+            return null;
+        }
+        if (isNumeric(columnType)) {
+            try {
+                BigDecimal number = new BigDecimal(value);
+                return number.signum() == 0 ? BigDecimal.ZERO : number.stripTrailingZeros();
+            } catch (NumberFormatException e) { // e.g. NaN or INF
+                return null;
+            }
+        } else if (columnType == ODataDataType.BOOLEAN) {
+            if ("true".equalsIgnoreCase(value)) {
+                return Boolean.TRUE;
+            } else if ("false".equalsIgnoreCase(value)) {
+                return Boolean.FALSE;
+            }
+            return null;
+        } else if (columnType == ODataDataType.GUID) {
+            return value.toLowerCase(Locale.ROOT);
+        }
+        return value;
+    }
+
+    private static boolean isNumeric(ODataDataType columnType) {
+        switch (columnType) {
+            case INT16:
+            case INT32:
+            case INT64:
+            case DOUBLE:
+            case SINGLE:
+            case DECIMAL:
+            case BYTE:
+            case SBYTE:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
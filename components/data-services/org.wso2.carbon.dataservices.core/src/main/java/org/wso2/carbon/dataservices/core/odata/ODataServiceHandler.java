@@ -18,6 +18,8 @@
 
 package org.wso2.carbon.dataservices.core.odata;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.olingo.commons.api.edmx.EdmxReference;
 import org.apache.olingo.server.api.OData;
 import org.apache.olingo.server.api.ODataHttpHandler;
@@ -51,24 +53,100 @@ import java.util.Map;
  * This class pass the OData requests into Olingo ODataHTTPHandler to process.
  */
 public class ODataServiceHandler {
+    private static final Log log = LogFactory.getLog(ODataServiceHandler.class);
+
+    /**
+     * Time in milliseconds before a failed rebuild of the Olingo handler is tried again for the same metadata.
+     */
+    private static final long REBUILD_RETRY_INTERVAL = 30000;
+
     /**
      * Olingo ODataHTTPHandler
      */
-    private ODataHttpHandler handler;
+    private volatile ODataHttpHandler handler;
+
+    /**
+     * Processor of the requests with $apply, built along with the Olingo handler.
+     */
+    private volatile ODataApplyProcessor applyProcessor;
     
     private boolean isPublicOdata;
     
     private String creator;
 
+    private final ODataDataHandler dataHandler;
+
+    private final String namespace;
+
+    private final String configID;
+
+    /**
+     * Metadata version of the data handler the current Olingo handler was built with.
+     */
+    private volatile long metadataVersion;
+
+    /**
+     * Metadata version the last rebuild of the Olingo handler failed with, and the time it may be tried again.
+     */
+    private volatile long failedMetadataVersion = Long.MIN_VALUE;
+
+    private volatile long rebuildRetryTime;
+
     public ODataServiceHandler(ODataDataHandler dataHandler, String namespace, String configID, boolean isPublicOdata, String creator)
             throws ODataServiceFault {
     	this.isPublicOdata = isPublicOdata;
     	this.creator = creator;
-        ODataAdapter processor = new ODataAdapter(dataHandler, namespace, configID);
+        this.dataHandler = dataHandler;
+        this.namespace = namespace;
+        this.configID = configID;
+        this.handler = createHandler();
+    }
+
+    /**
+     * This method creates the Olingo handler from the current metadata of the data handler.
+     *
+     * @return Olingo ODataHttpHandler
+     * @throws ODataServiceFault
+     */
+    private ODataHttpHandler createHandler() throws ODataServiceFault {
+        ODataAdapter processor = new ODataAdapter(this.dataHandler, this.namespace, this.configID);
         OData odata = OData4Impl.newInstance();
         ServiceMetadata edm = odata.createServiceMetadata(processor.getEdmProvider(), new ArrayList<EdmxReference>());
-        this.handler = odata.createHandler(edm);
-        this.handler.register(processor);
+        ODataHttpHandler httpHandler = odata.createHandler(edm);
+        httpHandler.register(processor);
+        this.applyProcessor = new ODataApplyProcessor(this.dataHandler, odata, edm);
+        // the version of the metadata the EDM was actually built from, which a concurrent refresh may have changed
+        this.metadataVersion = processor.getMetadataVersion();
+        return httpHandler;
+    }
+
+    /**
+     * This method rebuilds the Olingo handler if the metadata has been refreshed since it was created.
+     * If the rebuild fails, the previous handler keeps serving the requests, and the rebuild is only tried again
+     * for the same metadata after REBUILD_RETRY_INTERVAL, rather than by every request.
+     */
+    private ODataHttpHandler getHandler() {
+        long currentVersion = this.dataHandler.getMetadataVersion();
+        if (isRebuildDue(currentVersion)) {
+            synchronized (this) {
+                if (isRebuildDue(currentVersion)) {
+                    try {
+                        this.handler = createHandler();
+                    } catch (ODataServiceFault | RuntimeException e) {
+                        this.failedMetadataVersion = currentVersion;
+                        this.rebuildRetryTime = System.currentTimeMillis() + REBUILD_RETRY_INTERVAL;
+                        log.error("Error occurred while rebuilding the OData metadata, using the previous one until " +
+                                  "the next attempt in " + REBUILD_RETRY_INTERVAL + " ms. :" + e.getMessage(), e);
+                    }
+                }
+            }
+        }
+        return this.handler;
+    }
+
+    private boolean isRebuildDue(long currentVersion) {
+        return currentVersion != this.metadataVersion && (currentVersion != this.failedMetadataVersion ||
+                                                          System.currentTimeMillis() >= this.rebuildRetryTime);
     }
 
     /**
@@ -83,7 +161,12 @@ public class ODataServiceHandler {
             Security Comment :
             Modifying only servlet path in the request.
          */
-        handler.process(modifyServletPath(req, serviceRootPath), resp);
+        ODataHttpHandler httpHandler = getHandler();
+        if (ODataApplyProcessor.isApplyRequest(req)) { // not supported by the Olingo URI parser
+            this.applyProcessor.process(req, resp, serviceRootPath);
+            return;
+        }
+        httpHandler.process(modifyServletPath(req, serviceRootPath), resp);
     }
 
     public boolean isPublicOdata() {
@@ -33,6 +33,8 @@ import org.wso2.carbon.dataservices.common.DBConstants;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -129,4 +131,52 @@ public class ODataUtils {
 				result = db + ".";
 		return result;
 	}
+	
+	/**
+	 * Encodes the primary key values of the last entry of a page into a $skiptoken.
+	 * Each value is prefixed by its length, so that values may contain any character.
+	 * 
+	 * @param keyValues	Primary key values, in the order of the primary key columns
+	 * @return			URL safe skip token
+	 * @throws ODataServiceFault	Error while encoding the values
+	 */
+	public static String encodeSkipToken(List<String> keyValues) throws ODataServiceFault {
+		StringBuilder token = new StringBuilder();
+		for (String value : keyValues) {
+			token.append(value.length()).append(':').append(value);
+		}
+		try {
+			return Base64.encodeBase64URLSafeString(token.toString().getBytes(DBConstants.DEFAULT_CHAR_SET_TYPE));
+		} catch (UnsupportedEncodingException e) {
+			throw new ODataServiceFault(e, "Error occurred while encoding the skip token. :" + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Decodes the primary key values of a $skiptoken created by encodeSkipToken.
+	 * 
+	 * @param skipToken	The skip token
+	 * @return			Primary key values, or null if the token is not valid
+	 */
+	public static List<String> decodeSkipToken(String skipToken) {
+		List<String> keyValues = new ArrayList<>();
+		try {
+			String token = new String(Base64.decodeBase64(skipToken), DBConstants.DEFAULT_CHAR_SET_TYPE);
+			int pos = 0;
+			while (pos < token.length()) {
+				int separator = token.indexOf(':', pos);
+				if (separator < 0)
+					return null;
+				int length = Integer.parseInt(token.substring(pos, separator));
+				int end = separator + 1 + length;
+				if (length < 0 || end > token.length())
+					return null;
+				keyValues.add(token.substring(separator + 1, end));
+				pos = end;
+			}
+		} catch (UnsupportedEncodingException | NumberFormatException e) {
+			return null;
+		}
+		return keyValues.isEmpty() ? null : keyValues;
+	}
 }
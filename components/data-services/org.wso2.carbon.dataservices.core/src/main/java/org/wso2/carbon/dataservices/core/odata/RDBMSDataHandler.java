@@ -36,11 +36,15 @@ import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
 import org.apache.olingo.server.api.uri.queryoption.FilterOption;
 import org.apache.olingo.server.api.uri.queryoption.OrderByItem;
 import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
+import org.apache.olingo.server.api.uri.queryoption.SelectItem;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
 import org.apache.olingo.server.api.uri.queryoption.SkipOption;
+import org.apache.olingo.server.api.uri.queryoption.SkipTokenOption;
 import org.apache.olingo.server.api.uri.queryoption.TopOption;
 import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
 import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
 import org.wso2.carbon.dataservices.common.DBConstants;
+import org.wso2.carbon.dataservices.common.RDBMSUtils;
 import org.wso2.carbon.dataservices.common.conf.DynamicODataConfig;
 import org.wso2.carbon.dataservices.common.conf.ODataColumnsConfig;
 import org.wso2.carbon.dataservices.core.DBUtils;
@@ -52,17 +56,31 @@ import org.wso2.carbon.dataservices.core.odata.expression.FilterExpressionVisito
 import org.wso2.carbon.dataservices.core.odata.expression.operand.TypedOperand;
 import org.wso2.carbon.dataservices.core.odata.expression.operand.VisitorOperand;
 import org.wso2.carbon.dataservices.core.odata.RDBMSDataHandler;
+import org.wso2.carbon.utils.CarbonUtils;
 
 import javax.sql.DataSource;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InvalidClassException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
 import java.io.StringReader;
+import java.lang.ref.WeakReference;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -76,13 +94,25 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class implements RDBMS datasource related operations for ODataDataHandler.
@@ -92,21 +122,11 @@ import java.util.Set;
 public class RDBMSDataHandler implements ODataDataHandler {
     private static final Log log = LogFactory.getLog(RDBMSDataHandler.class);
     /**
-     * Table metadata.
+     * Metadata of the tables: columns, SQL types, primary keys, foreign keys and navigation properties.
+     * A refresh replaces the whole snapshot, so each operation reads this field once and uses that snapshot
+     * throughout, and never sees the metadata of two different refreshes.
      */
-    private Map<String, Map<String, Integer>> rdbmsDataTypes;
-
-    private Map<String, Map<String, DataColumn>> tableMetaData;
-
-    /**
-     * Primary Keys of the tables (Map<Table Name, List>).
-     */
-    private Map<String, List<String>> primaryKeys;
-
-    /**
-     * Foreign Keys of the tables (Map<Table name, Map<Foreign table name, Foreign keys to such table>>).
-     */
-    private Map<String, Map<String, List<ForeignKey>>> foreignKeys;
+    private volatile RDBMSMetadataSnapshot metadata;
 
     /**
      * Config ID.
@@ -118,18 +138,42 @@ public class RDBMSDataHandler implements ODataDataHandler {
      */
     private final DataSource dataSource;
 
-    /**
-     * List of tables in the database.
-     */
-    private List<String> tableList;
     private List<String> oDataTableList;
-    private String dbTable;
-    private String dbSchema;
     //private Map<String,String> oDataTableSchema = new HashMap<String,String>();
     private Map<String,List<ODataColumnsConfig>> oDataColumnsConfig = new HashMap<String,List<ODataColumnsConfig>>();
     private int oDataMaxLimit;
     private String dbType;
 
+    /**
+     * How $count totals are computed, one of COUNT_MODE_QUERY or COUNT_MODE_WINDOW.
+     */
+    private String countMode = COUNT_MODE_QUERY;
+
+    /**
+     * Whether the database supports COUNT(*) OVER() window aggregates.
+     */
+    private boolean windowCountSupported;
+
+    /**
+     * String quoting the identifiers of the database, empty if identifiers cannot be quoted.
+     */
+    private String identifierQuote = "";
+
+    /**
+     * Time to live of cached totals of unfiltered tables in milliseconds, 0 disables the cache.
+     */
+    private long countCacheTTL;
+
+    /**
+     * Cached totals of unfiltered tables (Map<Table name, Cached total>).
+     */
+    private final Map<String, CachedCount> countCache = new ConcurrentHashMap<>();
+
+    /**
+     * Page sizes of the tables read with keyset pagination (Map<Table name, Page size>).
+     */
+    private Map<String, Integer> pageSizes = new HashMap<>();
+
     public static final String TABLE_CAT = "TABLE_CAT";
     public static final String TABLE_NAME = "TABLE_NAME";
     public static final String TABLE_SCHEM = "TABLE_SCHEM";
@@ -141,6 +185,29 @@ public class RDBMSDataHandler implements ODataDataHandler {
     public static final String POSTGRESQL = "postgresql";
     public static final String H2 = "h2";
     public static final String SPECIAL_CHAR_SCHEMA_TBL_SEPARATOR = "__";
+    public static final String COUNT_MODE_QUERY = "query";
+    public static final String COUNT_MODE_WINDOW = "window";
+    /**
+     * Maximum number of parent keys in one $expand query, Oracle rejects IN lists of more than 1000 elements.
+     */
+    private static final int EXPAND_BATCH_SIZE = 1000;
+    private static final String WINDOW_COUNT_COLUMN = "ODATA_TOTAL_COUNT";
+    private static final String METADATA_SNAPSHOT_DIR = "odata-metadata";
+    private static final long DEFAULT_METADATA_REFRESH_INTERVAL = 300000;
+
+    /**
+     * Runs the metadata refreshes of all the handlers, on a daemon thread of its own so that slow catalog queries
+     * neither delay nor are delayed by the other tasks of the data services.
+     */
+    private static final ScheduledExecutorService metadataRefreshExecutor =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "odata-metadata-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
 
     private ThreadLocal<Connection> transactionalConnection = new ThreadLocal<Connection>() {
         protected synchronized Connection initialValue() {
@@ -148,18 +215,49 @@ public class RDBMSDataHandler implements ODataDataHandler {
         }
     };
 
-    private boolean defaultAutoCommit;
-    private int defaultTransactionalIsolation;
+    /**
+     * Write statements prepared on the transactional connection, kept open until the transaction ends so that the
+     * operations of a $batch changeset that share the same SQL reuse one statement (Map<SQL, Statement>).
+     */
+    private ThreadLocal<Map<String, PreparedStatement>> transactionalStatements =
+            new ThreadLocal<Map<String, PreparedStatement>>() {
+                protected synchronized Map<String, PreparedStatement> initialValue() {
+                    return new HashMap<>();
+                }
+            };
+
+    private static final int MAX_TRANSACTIONAL_STATEMENTS = 64;
+
+    /**
+     * Settings the transactional connection of the thread had when it was borrowed, restored when it is returned.
+     */
+    private ThreadLocal<ConnectionDefaults> transactionalConnectionDefaults = new ThreadLocal<>();
+
+    /**
+     * Isolation level of the OData transactions, -1 to keep the isolation level of the pool.
+     */
+    private int transactionIsolation = -1;
+
+    /**
+     * Whether the metadata is persisted as a snapshot and refreshed in the background.
+     */
+    private boolean metadataCache;
 
     /**
-     * Navigation properties map <Target Table Name, Map<Source Table Name, List<String>).
+     * Interval of the background metadata refreshes in milliseconds.
      */
-    private Map<String, NavigationTable> navigationProperties;
+    private long metadataRefreshInterval = DEFAULT_METADATA_REFRESH_INTERVAL;
+
+    /**
+     * The odata configuration, part of the metadata snapshot fingerprint.
+     */
+    private final String odataConfig;
 
     public RDBMSDataHandler(DataSource dataSource, String configId, String odataConfig) throws ODataServiceFault {
     	
     	this.dataSource = dataSource;
         this.configID = configId;
+        this.odataConfig = odataConfig;
         try {
 	        OMElement dynTableODataConfEl = AXIOMUtil.stringToOM(odataConfig);
 	        ArrayList<String> dynamicTableList = new ArrayList<String>();
@@ -167,6 +265,27 @@ public class RDBMSDataHandler implements ODataDataHandler {
 	            DynamicODataConfig dynamicODataTableConfiguration = new DynamicODataConfig();
 	            Iterator<OMElement> dynamicODataTablesConfigs = dynTableODataConfEl.getChildrenWithName(new QName("tblname"));
 	            this.oDataMaxLimit = Integer.parseInt(dynTableODataConfEl.getAttributeValue(new QName("maxLimit")) );
+	            String countModeValue = dynTableODataConfEl.getAttributeValue(new QName(DBConstants.RDBMS.ODATA_COUNT_MODE));
+	            if (countModeValue != null && !countModeValue.trim().isEmpty()) {
+	                this.countMode = countModeValue.trim().toLowerCase();
+	            }
+	            String countCacheTTLValue = dynTableODataConfEl.getAttributeValue(new QName(DBConstants.RDBMS.ODATA_COUNT_CACHE_TTL));
+	            if (countCacheTTLValue != null && !countCacheTTLValue.trim().isEmpty()) {
+	                this.countCacheTTL = Long.parseLong(countCacheTTLValue.trim()) * 1000;
+	            }
+	            this.metadataCache = Boolean.parseBoolean(
+	                    dynTableODataConfEl.getAttributeValue(new QName(DBConstants.RDBMS.ODATA_METADATA_CACHE)));
+	            String refreshIntervalValue = dynTableODataConfEl.getAttributeValue(
+	                    new QName(DBConstants.RDBMS.ODATA_METADATA_REFRESH_INTERVAL));
+	            if (refreshIntervalValue != null && !refreshIntervalValue.trim().isEmpty()) {
+	                this.metadataRefreshInterval = Long.parseLong(refreshIntervalValue.trim()) * 1000;
+	                if (this.metadataRefreshInterval <= 0) {
+	                    throw new ODataServiceFault("Invalid OData metadata refresh interval: " + refreshIntervalValue);
+	                }
+	            }
+	            String defaultPageSize = dynTableODataConfEl.getAttributeValue(new QName(DBConstants.RDBMS.ODATA_PAGE_SIZE));
+	            this.transactionIsolation = RDBMSUtils.toIntTransactionIsolation(
+	                    dynTableODataConfEl.getAttributeValue(new QName(DBConstants.RDBMS.ODATA_TRANSACTION_ISOLATION)));
 	            ODataColumnsConfig columnsConf = new ODataColumnsConfig();
 	            List<ODataColumnsConfig> columnsConfAll = new ArrayList<ODataColumnsConfig>();
 	            while (dynamicODataTablesConfigs.hasNext()) {
@@ -180,6 +299,21 @@ public class RDBMSDataHandler implements ODataDataHandler {
 	                	key = schemaname + SPECIAL_CHAR_SCHEMA_TBL_SEPARATOR + tblname;
 	                	dynamicTableList.add(key);
 	                }
+	                String pageSize = dynamicOdataConfig.getAttributeValue(new QName(DBConstants.RDBMS.ODATA_PAGE_SIZE));
+	                if (pageSize == null || pageSize.trim().isEmpty()) {
+	                    pageSize = defaultPageSize;
+	                }
+	                if (pageSize != null && !pageSize.trim().isEmpty()) {
+	                    int size;
+	                    try {
+	                        size = Integer.parseInt(pageSize.trim());
+	                    } catch (NumberFormatException e) {
+	                        throw new ODataServiceFault(e, "Invalid OData page size of " + key + " table: " + pageSize);
+	                    }
+	                    if (size > 0) {
+	                        this.pageSizes.put(key, size);
+	                    }
+	                }
 	                //this.oDataTableSchema.put(tblname, schemaname);
 	                Iterator<OMElement> dynamicColConfigs = dynamicOdataConfig.getChildrenWithName(new QName("column"));
 	                columnsConfAll = new ArrayList<ODataColumnsConfig>();
@@ -196,9 +330,9 @@ public class RDBMSDataHandler implements ODataDataHandler {
 	            }
 	        }
             this.oDataTableList=dynamicTableList;
-            this.tableList = generateTableList(dynamicTableList);
-            this.rdbmsDataTypes = new HashMap<>(this.tableList.size());
             this.dbType = getDBType();
+            this.windowCountSupported = COUNT_MODE_WINDOW.equals(this.countMode) && isWindowCountSupported();
+            this.identifierQuote = getIdentifierQuote();
         }
         catch (XMLStreamException e) {
         	
@@ -208,7 +342,13 @@ public class RDBMSDataHandler implements ODataDataHandler {
 
     @Override
     public Map<String, NavigationTable> getNavigationProperties() {
-        return this.navigationProperties;
+        return this.metadata.getNavigationProperties();
+    }
+
+    @Override
+    public long getMetadataVersion() {
+        // the version is part of the snapshot, so that it always matches the metadata returned with it
+        return this.metadata.getVersion();
     }
 
     @Override
@@ -216,15 +356,15 @@ public class RDBMSDataHandler implements ODataDataHandler {
         try {
             if (getTransactionalConnection() == null) {
                 Connection connection = this.dataSource.getConnection();
-                this.defaultAutoCommit = connection.getAutoCommit();
+                ConnectionDefaults defaults = new ConnectionDefaults(connection.getAutoCommit(),
+                                                                     connection.getTransactionIsolation());
                 connection.setAutoCommit(false);
-                this.defaultTransactionalIsolation = connection.getTransactionIsolation();
-                try {
-                    connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
-                } catch (SQLException e) {
-                    // Some Databases are not supported REPEATABLE_READ Isolation level.
-                    connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+                // the pool's isolation level is kept unless one is configured, the entities read in the transaction
+                // are locked until it ends instead, so that they cannot change between the E-Tag check and the write
+                if (this.transactionIsolation != -1 && this.transactionIsolation != defaults.isolation) {
+                    connection.setTransactionIsolation(this.transactionIsolation);
                 }
+                transactionalConnectionDefaults.set(defaults);
                 transactionalConnection.set(connection);
             }
         } catch (SQLException e) {
@@ -236,9 +376,13 @@ public class RDBMSDataHandler implements ODataDataHandler {
     public void commitTransaction() throws ODataServiceFault {
         Connection connection = getTransactionalConnection();
         try {
+            closeTransactionalStatements();
             connection.commit();
-            connection.setTransactionIsolation(defaultTransactionalIsolation);
-            connection.setAutoCommit(defaultAutoCommit);
+            ConnectionDefaults defaults = transactionalConnectionDefaults.get();
+            if (this.transactionIsolation != -1) {
+                connection.setTransactionIsolation(defaults.isolation);
+            }
+            connection.setAutoCommit(defaults.autoCommit);
         } catch (SQLException e) {
             throw new ODataServiceFault(e, "Connection Error occurred while committing. :" + e.getMessage());
         } finally {
@@ -246,6 +390,7 @@ public class RDBMSDataHandler implements ODataDataHandler {
             try {
                 connection.close();
                 transactionalConnection.set(null);
+                transactionalConnectionDefaults.remove();
             } catch (Exception ignore) {
                 // ignore
             }
@@ -256,13 +401,69 @@ public class RDBMSDataHandler implements ODataDataHandler {
         return transactionalConnection.get();
     }
 
+    /**
+     * Prepares a write statement. Inside a transaction the statement is kept for the rest of the transaction and
+     * returned again, with its parameters cleared, to the following operations with the same SQL, which avoids
+     * preparing it once per operation of a large $batch changeset.
+     * Statements returned by this method must be released with releaseWriteStatement.
+     *
+     * @param connection           Connection to prepare the statement on
+     * @param query                SQL of the statement
+     * @param returnGeneratedKeys  Whether the generated keys have to be returned
+     * @return The statement
+     * @throws SQLException
+     */
+    private PreparedStatement prepareWriteStatement(Connection connection, String query, boolean returnGeneratedKeys)
+            throws SQLException {
+        if (connection != getTransactionalConnection()) {
+            return returnGeneratedKeys ? connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS) :
+                   connection.prepareStatement(query);
+        }
+        Map<String, PreparedStatement> statements = this.transactionalStatements.get();
+        String statementKey = returnGeneratedKeys + ":" + query;
+        PreparedStatement statement = statements.get(statementKey);
+        if (statement != null) {
+            statement.clearParameters();
+            return statement;
+        }
+        statement = returnGeneratedKeys ? connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS) :
+                    connection.prepareStatement(query);
+        if (statements.size() < MAX_TRANSACTIONAL_STATEMENTS) {
+            statements.put(statementKey, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Closes a statement returned by prepareWriteStatement, unless it is kept for the transaction.
+     *
+     * @param statement Statement to release
+     */
+    private void releaseWriteStatement(PreparedStatement statement) {
+        if (statement != null && !this.transactionalStatements.get().containsValue(statement)) {
+            releaseResources(null, statement);
+        }
+    }
+
+    private void closeTransactionalStatements() {
+        Map<String, PreparedStatement> statements = this.transactionalStatements.get();
+        for (PreparedStatement statement : statements.values()) {
+            releaseResources(null, statement);
+        }
+        statements.clear();
+    }
+
     @Override
     public void rollbackTransaction() throws ODataServiceFault {
         Connection connection = getTransactionalConnection();
         try {
+            closeTransactionalStatements();
             connection.rollback();
-            connection.setTransactionIsolation(defaultTransactionalIsolation);
-            connection.setAutoCommit(defaultAutoCommit);
+            ConnectionDefaults defaults = transactionalConnectionDefaults.get();
+            if (this.transactionIsolation != -1) {
+                connection.setTransactionIsolation(defaults.isolation);
+            }
+            connection.setAutoCommit(defaults.autoCommit);
         } catch (SQLException e) {
             throw new ODataServiceFault(e, "Connection Error occurred while rollback. :" + e.getMessage());
         } finally {
@@ -270,6 +471,7 @@ public class RDBMSDataHandler implements ODataDataHandler {
             try {
                 connection.close();
                 transactionalConnection.set(null);
+                transactionalConnectionDefaults.remove();
             } catch (Exception ignore) {
                 // ignore
             }
@@ -282,7 +484,8 @@ public class RDBMSDataHandler implements ODataDataHandler {
 		/* To add a reference first we need to find the foreign key values of the tables,
 		and therefore we need to identify which table has been exported */
         // Identifying the exported table and change the imported tables' column value
-        NavigationTable navigation = navigationProperties.get(rootTable);
+        RDBMSMetadataSnapshot metadata = this.metadata;
+        NavigationTable navigation = metadata.getNavigationProperties().get(rootTable);
         boolean rootTableExportedColumns = false;
         if (navigation != null && navigation.getTables().contains(navigationTable)) {
             // that means rootTable is the exportedTable -confirmed
@@ -304,9 +507,9 @@ public class RDBMSDataHandler implements ODataDataHandler {
             exportedTableKeys = navigationTableKeys;
             importedTableKeys = rootTableKeys;
         }
-        keys = navigationProperties.get(exportedTable).getNavigationKeys(importedTable);
-        ODataEntry exportedKeyValues = getForeignKeysValues(exportedTable, exportedTableKeys, keys);
-        modifyReferences(keys, importedTable, exportedTable, exportedKeyValues, importedTableKeys);
+        keys = metadata.getNavigationProperties().get(exportedTable).getNavigationKeys(importedTable);
+        ODataEntry exportedKeyValues = getForeignKeysValues(metadata, exportedTable, exportedTableKeys, keys);
+        modifyReferences(metadata, keys, importedTable, exportedTable, exportedKeyValues, importedTableKeys);
     }
 
     @Override
@@ -315,7 +518,8 @@ public class RDBMSDataHandler implements ODataDataHandler {
 		/* To add a reference first we need to find the foreign key values of the tables,
 		and therefore we need to identify which table has been exported */
         // Identifying the exported table and change the imported tables' column value
-        NavigationTable navigation = navigationProperties.get(rootTable);
+        RDBMSMetadataSnapshot metadata = this.metadata;
+        NavigationTable navigation = metadata.getNavigationProperties().get(rootTable);
         boolean rootTableExportedColumns = false;
         if (navigation != null && navigation.getTables().contains(navigationTable)) {
             // that means rootTable is the exportedTable -confirmed
@@ -334,32 +538,33 @@ public class RDBMSDataHandler implements ODataDataHandler {
             importedTable = rootTable;
             importedTableKeys = rootTableKeys;
         }
-        keys = navigationProperties.get(exportedTable).getNavigationKeys(importedTable);
+        keys = metadata.getNavigationProperties().get(exportedTable).getNavigationKeys(importedTable);
         ODataEntry nullReferenceValues = new ODataEntry();
         for (NavigationKeys key : keys) {
             nullReferenceValues.addValue(key.getForeignKey(), null);
         }
-        modifyReferences(keys, importedTable, exportedTable, nullReferenceValues, importedTableKeys);
+        modifyReferences(metadata, keys, importedTable, exportedTable, nullReferenceValues, importedTableKeys);
     }
 
-    private void modifyReferences(List<NavigationKeys> keys, String importedTable, String exportedTable,
-                                  ODataEntry modifyValues, ODataEntry primaryKeys) throws ODataServiceFault {
+    private void modifyReferences(RDBMSMetadataSnapshot metadata, List<NavigationKeys> keys, String importedTable,
+                                  String exportedTable, ODataEntry modifyValues, ODataEntry primaryKeys)
+            throws ODataServiceFault {
         Connection connection = null;
         PreparedStatement statement = null;
         try {
             connection = initializeConnection();
-            String query = createAddReferenceSQL(importedTable, keys);
+            String query = createAddReferenceSQL(metadata, importedTable, keys);
             statement = connection.prepareStatement(query);
             int index = 1;
             for (String column : modifyValues.getNames()) {
                 String value = modifyValues.getValue(column);
-                bindValuesToPreparedStatement(this.rdbmsDataTypes.get(exportedTable).get(column), value, index,
+                bindValuesToPreparedStatement(metadata.getRdbmsDataTypes().get(exportedTable).get(column), value, index,
                                               statement);
                 index++;
             }
             for (String column : primaryKeys.getNames()) {
                 String value = primaryKeys.getValue(column);
-                bindValuesToPreparedStatement(this.rdbmsDataTypes.get(importedTable).get(column), value, index,
+                bindValuesToPreparedStatement(metadata.getRdbmsDataTypes().get(importedTable).get(column), value, index,
                                               statement);
                 index++;
             }
@@ -375,19 +580,19 @@ public class RDBMSDataHandler implements ODataDataHandler {
         }
     }
 
-    private ODataEntry getForeignKeysValues(String tableName, ODataEntry keys, List<NavigationKeys> columns)
-            throws ODataServiceFault {
+    private ODataEntry getForeignKeysValues(RDBMSMetadataSnapshot metadata, String tableName, ODataEntry keys,
+                                            List<NavigationKeys> columns) throws ODataServiceFault {
         ResultSet resultSet = null;
         PreparedStatement statement = null;
         Connection connection = null;
         try {
             connection = initializeConnection();
-            String query = createSelectReferenceKeyFromExportedTable(tableName, keys, columns);
+            String query = createSelectReferenceKeyFromExportedTable(metadata, tableName, keys, columns);
             statement = connection.prepareStatement(query);
             int index = 1;
             for (String column : keys.getNames()) {
                 String value = keys.getValue(column);
-                bindValuesToPreparedStatement(this.rdbmsDataTypes.get(tableName).get(column), value, index, statement);
+                bindValuesToPreparedStatement(metadata.getRdbmsDataTypes().get(tableName).get(column), value, index, statement);
                 index++;
             }
             resultSet = statement.executeQuery();
@@ -396,7 +601,7 @@ public class RDBMSDataHandler implements ODataDataHandler {
             for (NavigationKeys column : columns) {
                 String columnName = column.getPrimaryKey();
                 while (resultSet.next()) {
-                    value = getValueFromResultSet(this.rdbmsDataTypes.get(tableName).get(columnName), columnName,
+                    value = getValueFromResultSet(metadata.getRdbmsDataTypes().get(tableName).get(columnName), columnName,
                                                   resultSet);
                     values.addValue(columnName, value);
                 }
@@ -410,8 +615,8 @@ public class RDBMSDataHandler implements ODataDataHandler {
         }
     }
 
-    private String createSelectReferenceKeyFromExportedTable(String tableName, ODataEntry keys,
-                                                             List<NavigationKeys> columns) {
+    private String createSelectReferenceKeyFromExportedTable(RDBMSMetadataSnapshot metadata, String tableName,
+                                                             ODataEntry keys, List<NavigationKeys> columns) {
         StringBuilder sql = new StringBuilder();
         boolean propertyMatch = false;
         sql.append("SELECT ");
@@ -422,9 +627,9 @@ public class RDBMSDataHandler implements ODataDataHandler {
             sql.append(column.getPrimaryKey());
             propertyMatch = true;
         }
-        sql.append(" FROM ").append(tableName).append(" WHERE ");
+        sql.append(" FROM ").append(new TableReference(tableName).getQualifiedName()).append(" WHERE ");
         propertyMatch = false;
-        for (String column : this.rdbmsDataTypes.get(tableName).keySet()) {
+        for (String column : metadata.getRdbmsDataTypes().get(tableName).keySet()) {
             if (keys.getValue(column) != null) {
                 if (propertyMatch) {
                     sql.append(" AND ");
@@ -436,10 +641,11 @@ public class RDBMSDataHandler implements ODataDataHandler {
         return sql.toString();
     }
 
-    private String createAddReferenceSQL(String tableName, List<NavigationKeys> keys) {
-        List<String> pKeys = primaryKeys.get(tableName);
+    private String createAddReferenceSQL(RDBMSMetadataSnapshot metadata, String tableName,
+                                         List<NavigationKeys> keys) {
+        List<String> pKeys = metadata.getPrimaryKeys().get(tableName);
         StringBuilder sql = new StringBuilder();
-        sql.append("UPDATE ").append(tableName).append(" SET ");
+        sql.append("UPDATE ").append(new TableReference(tableName).getQualifiedName()).append(" SET ");
         boolean propertyMatch = false;
         for (NavigationKeys column : keys) {
             if (propertyMatch) {
@@ -463,6 +669,24 @@ public class RDBMSDataHandler implements ODataDataHandler {
 
     @Override
     public List<ODataEntry> readTable(String tableName, UriInfo uriInfo, List<Property> navProperties) throws ODataServiceFault, ExpressionVisitException, ODataApplicationException {
+        return readTablePage(tableName, uriInfo, navProperties).getEntries();
+    }
+
+    /**
+     * Reads a page of the entries of a table, as readTable does, along with the total of $count when it is read
+     * with the page and the skip token of the next page. Everything is returned to the caller, so that concurrent
+     * requests, even on the same table and the same thread, never see each other's totals and skip tokens.
+     *
+     * @param tableName     Name of the table
+     * @param uriInfo       Contains OData query options
+     * @param navProperties Properties the entries are filtered by when they are read through a navigation
+     * @return The page read
+     * @throws ODataServiceFault
+     * @throws ExpressionVisitException
+     * @throws ODataApplicationException
+     */
+    public TablePage readTablePage(String tableName, UriInfo uriInfo, List<Property> navProperties) throws ODataServiceFault, ExpressionVisitException, ODataApplicationException {
+        TablePage page = new TablePage();
         ResultSet resultSet = null;
         Connection connection = null;
         PreparedStatement statement = null;
@@ -470,16 +694,15 @@ public class RDBMSDataHandler implements ODataDataHandler {
         OrderByOption orderByOption = uriInfo.getOrderByOption();
         SkipOption skipOption = uriInfo.getSkipOption();
         TopOption topOption = uriInfo.getTopOption();
+        SkipTokenOption skipTokenOption = uriInfo.getSkipTokenOption();
         if (topOption != null && topOption.getValue() == 0) // MSSQL and Oracle will throw an exception when queried with $top=0: might as well return an empty set here, since no records must be extracted anyway
-            return new ArrayList<ODataEntry>(); 
+            return page;
         ExpandOption expandOption = uriInfo.getExpandOption();
-        dbSchema = "";
-    	dbTable = tableName;
-        if(tableName.contains(SPECIAL_CHAR_SCHEMA_TBL_SEPARATOR)) {  //takes in consideration dbs that don't use schema like MySQL
-        	dbSchema = tableName.split(SPECIAL_CHAR_SCHEMA_TBL_SEPARATOR)[0];
-        	int pos = tableName.indexOf(SPECIAL_CHAR_SCHEMA_TBL_SEPARATOR) +2;
-        	dbTable = tableName.substring(pos);
-        }
+        RDBMSMetadataSnapshot metadata = this.metadata;
+        List<String> columns = getProjectedColumns(metadata, tableName, uriInfo.getSelectOption(), expandOption, null);
+        // the handler serves concurrent requests, so everything derived from the request is kept in local variables
+        TableReference tableReference = new TableReference(tableName);
+        String dbTable = tableReference.table;
         
         RDBMSODataQuery rdbmsQuery = new RDBMSODataQuery();
         String dbType = this.dbType;
@@ -489,14 +712,31 @@ public class RDBMSDataHandler implements ODataDataHandler {
         // Without the following, the order of the elements would be inconsistent when the user specifies an $orderby nested within $expand,
         // since a nested $orderby is only referring to the related sub-entries and not to the "main" elements. We apply a default ORDER BY even when $expand is not specified, to maintain a consistent order.
         // If the user specifies a non-nested $orderby that refers to the "main" table, it will override this default one.
-        List<String> primaryKeys = getPrimaryKeys().get(tableName);
+        List<String> primaryKeys = metadata.getPrimaryKeys().get(tableName);
         if (primaryKeys != null && primaryKeys.size() > 0) {
             for (String s : primaryKeys)
                 rdbmsQuery.addOrderBy(dbTable + "." + s);
         }
         
+        // Keyset pagination: pages are read in primary key order, starting after the key encoded in $skiptoken
+        Integer pageSize = this.pageSizes.get(tableName);
+        boolean keysetPaging = pageSize != null && primaryKeys != null && primaryKeys.size() > 0 &&
+                               orderByOption == null && topOption == null;
+        // A $skiptoken is only issued by keyset paging, otherwise it is ignored and the page is read with $skip
+        List<String> skipTokenKeys = null;
+        if (skipTokenOption != null && keysetPaging) {
+            skipTokenKeys = ODataUtils.decodeSkipToken(skipTokenOption.getValue());
+            if (skipTokenKeys == null || skipTokenKeys.size() != primaryKeys.size())
+                throw new ODataApplicationException("Invalid skip token", HttpStatusCode.BAD_REQUEST.getStatusCode(),
+                                                    Locale.ROOT);
+        }
+        // The total of a $count request can be fetched with the page itself, unless the page is sought by key
+        boolean windowCount = this.windowCountSupported && skipTokenKeys == null && isCountRequested(uriInfo);
+        
         if (topOption != null) {
             rdbmsQuery.setLimit(topOption.getValue());
+        } else if (keysetPaging) {
+            rdbmsQuery.setLimit(pageSize + 1); // one more row tells whether there is a next page
         } else {
         	rdbmsQuery.setLimit(this.oDataMaxLimit);
         }
@@ -510,32 +750,61 @@ public class RDBMSDataHandler implements ODataDataHandler {
                 rdbmsQuery.addOrderBy(dbTable + "." + s);
         }
         if (filterOption != null)
-            rdbmsQuery.setWhere("" + filterOption.getExpression().accept(new FilterExpressionVisitor(dbTable, getPrimaryKeys(), getForeignKeys(), false, dbType)));
-        if (navProperties != null && navProperties.size() > 0)
-            for (Property p : navProperties) {
-                if (rdbmsQuery.getWhere() != null && !rdbmsQuery.getWhere().equals(""))
-                	rdbmsQuery.appendWhere(" AND ");
-                rdbmsQuery.appendWhere(dbTable + "." + p.getName() + " = '" + p.getValue() + "'");
-            }
+            rdbmsQuery.setWhere("" + filterOption.getExpression().accept(new FilterExpressionVisitor(dbTable, metadata.getPrimaryKeys(), metadata.getForeignKeys(), false, dbType)));
+        if (navProperties != null && navProperties.size() > 0) {
+            if (rdbmsQuery.getWhere() != null && !rdbmsQuery.getWhere().equals(""))
+                rdbmsQuery.appendWhere(" AND ");
+            rdbmsQuery.appendWhere(createNavigationCondition(dbTable, navProperties));
+        }
+        List<String> seekParameters = new ArrayList<>();
+        if (skipTokenKeys != null) {
+            if (rdbmsQuery.getWhere() != null && !rdbmsQuery.getWhere().equals(""))
+                rdbmsQuery.setWhere("(" + rdbmsQuery.getWhere() + ") AND ");
+            rdbmsQuery.appendWhere(createSeekCondition(dbTable, primaryKeys, skipTokenKeys, seekParameters));
+        }
         try {
             connection = initializeConnection();
-            // Sets proper SELECT statement if there are JOINs to perform. Also updates ORDER BY, if necessary.
-            handleExpand(rdbmsQuery, connection.getCatalog(), dbTable, expandOption);
-            
             log.info("limit: " + rdbmsQuery.getLimit() + " offset: " + rdbmsQuery.getOffset() + " orderBy: " + rdbmsQuery.getOrderBy() + " where: " + rdbmsQuery.getWhere());
-            if (rdbmsQuery.getSelect() == null || rdbmsQuery.getSelect().size() == 0) { // There is no expand option, so we can just SELECT * from the table
-                String schema_prefix = "";
-                if(!dbSchema.equals(""))
-                	schema_prefix = dbSchema + ".";
-            	rdbmsQuery.addSelect(schema_prefix + dbTable + ".*");
-                rdbmsQuery.setFrom(schema_prefix + dbTable);
+            String qualifiedName = tableReference.getQualifiedName();
+            List<String> queriedColumns = getQueriedColumns(metadata, tableName, columns);
+            if (queriedColumns == null) {
+                rdbmsQuery.addSelect(qualifiedName + ".*");
+            } else {
+                for (String column : queriedColumns)
+                    rdbmsQuery.addSelect(qualifiedName + "." + column);
+            }
+            rdbmsQuery.setFrom(qualifiedName);
+            if (windowCount) {
+                rdbmsQuery.addSelect("COUNT(*) OVER() AS " + WINDOW_COUNT_COLUMN);
             }
             query = queryBasedOnDBType(rdbmsQuery.printSelect() + rdbmsQuery.printFrom(), rdbmsQuery.printWhere(), rdbmsQuery.getLimit(), rdbmsQuery.getOffset(), rdbmsQuery.printOrderBy());
             log.info("Generated query: " + query);
             statement = connection.prepareStatement(query);
+            for (int i = 0; i < seekParameters.size(); i += 2) {
+                bindValuesToPreparedStatement(metadata.getRdbmsDataTypes().get(tableName).get(seekParameters.get(i)),
+                                              seekParameters.get(i + 1), i / 2 + 1, statement);
+            }
             resultSet = statement.executeQuery();
-            return createDataEntryCollectionFromRS(tableName, resultSet, expandOption);
-        } catch (SQLException e) {
+            List<ODataEntry> entries = createDataEntryCollectionFromRS(metadata, tableName, resultSet, columns,
+                                                                       windowCount ? page : null);
+            if (windowCount && entries.isEmpty() && rdbmsQuery.getOffset() == 0) {
+                // nothing matched, otherwise the total is unknown and countRecords has to query it
+                page.total = 0;
+            }
+            if (keysetPaging && entries.size() > pageSize) {
+                entries.remove(entries.size() - 1);
+                ODataEntry lastEntry = entries.get(entries.size() - 1);
+                List<String> lastKeys = new ArrayList<>();
+                for (String key : primaryKeys)
+                    lastKeys.add(lastEntry.getValue(key));
+                if (!lastKeys.contains(null))
+                    page.nextSkipToken = ODataUtils.encodeSkipToken(lastKeys);
+            }
+            // related entries are read with one query per navigation, instead of joining them to the page
+            expandEntries(metadata, tableName, entries, expandOption, connection);
+            page.entries = entries;
+            return page;
+        } catch (SQLException | ParseException e) {
             throw new ODataServiceFault(e, "Error occurred while reading entities from " + tableName + " table. :" +
                                            e.getMessage());
         } finally {
@@ -544,6 +813,113 @@ public class RDBMSDataHandler implements ODataDataHandler {
         }
     }
     
+    /**
+     * Reads the aggregated values of a table described by $apply, with a single GROUP BY query.
+     * The grouping columns are returned with their names, the aggregated values with their aliases, which are
+     * quoted in the query so that they can be any name. Without $top, at most maxLimit groups are returned.
+     *
+     * @param tableName Name of the table
+     * @param apply     Parsed $apply option
+     * @param filters   $filter options parsed from the filter transformations of $apply
+     * @param orderBy   Grouping properties or aliases to order by, each one possibly followed by " desc"
+     * @param top       Maximum number of groups to return, -1 for the configured max limit
+     * @param skip      Number of groups to skip
+     * @return List of aggregated entries
+     * @throws ODataServiceFault
+     */
+    public List<ODataEntry> readAggregatedTable(String tableName, RDBMSODataApply apply, List<FilterOption> filters,
+                                                List<String> orderBy, int top, int skip)
+            throws ODataServiceFault, ExpressionVisitException, ODataApplicationException {
+        RDBMSMetadataSnapshot metadata = this.metadata;
+        Map<String, Integer> columnTypes = metadata.getRdbmsDataTypes().get(tableName);
+        if (columnTypes == null) {
+            throw new ODataApplicationException("Unknown entity set " + tableName + ".",
+                                                HttpStatusCode.NOT_FOUND.getStatusCode(), Locale.ROOT);
+        }
+        TableReference tableReference = new TableReference(tableName);
+        String table = tableReference.table;
+        RDBMSODataQuery rdbmsQuery = new RDBMSODataQuery();
+        rdbmsQuery.setDBType(this.dbType);
+        rdbmsQuery.setFrom(tableReference.getQualifiedName());
+        for (String column : apply.getGroupBy()) {
+            if (!columnTypes.containsKey(column)) {
+                throw new ODataApplicationException("Unknown property " + column + " in $apply.",
+                                                    HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ROOT);
+            }
+            rdbmsQuery.addSelect(table + "." + column);
+            rdbmsQuery.addGroupByColumn(table + "." + column);
+        }
+        for (RDBMSODataApply.Aggregation aggregation : apply.getAggregations()) {
+            String column = table + "." + aggregation.getColumn();
+            if (!RDBMSODataApply.COUNT.equals(aggregation.getColumn()) && !columnTypes.containsKey(aggregation.getColumn())) {
+                throw new ODataApplicationException("Unknown property " + aggregation.getColumn() + " in $apply.",
+                                                    HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ROOT);
+            }
+            String expression;
+            if (RDBMSODataApply.COUNT.equals(aggregation.getColumn())) {
+                expression = "COUNT(*)";
+            } else if (RDBMSODataApply.COUNT_DISTINCT.equals(aggregation.getMethod())) {
+                expression = "COUNT(DISTINCT " + column + ")";
+            } else if (RDBMSODataApply.AVERAGE.equals(aggregation.getMethod())) {
+                expression = "AVG(" + column + " * 1.0)"; // integer columns would be averaged as integers otherwise
+            } else {
+                expression = aggregation.getMethod().toUpperCase(Locale.ROOT) + "(" + column + ")";
+            }
+            rdbmsQuery.addSelect(expression + " AS " + quoteIdentifier(aggregation.getAlias()));
+        }
+        for (FilterOption filter : filters) {
+            if (rdbmsQuery.getWhere() != null && !rdbmsQuery.getWhere().equals(""))
+                rdbmsQuery.appendWhere(" AND ");
+            rdbmsQuery.appendWhere("(" + filter.getExpression().accept(new FilterExpressionVisitor(table, metadata.getPrimaryKeys(), metadata.getForeignKeys(), false, dbType)) + ")");
+        }
+        for (String order : orderBy) {
+            String name = order.split(" ")[0];
+            if (!apply.isResultProperty(name)) {
+                throw new ODataApplicationException("$orderby can only refer to the properties returned by $apply.",
+                                                    HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ROOT);
+            }
+            if (apply.getGroupBy().contains(name)) {
+                rdbmsQuery.addOrderBy(table + "." + order);
+            } else {
+                rdbmsQuery.addOrderBy(quoteIdentifier(name) + order.substring(name.length()));
+            }
+        }
+        if (orderBy.isEmpty()) { // keeps the groups in a consistent order across pages
+            for (String column : apply.getGroupBy())
+                rdbmsQuery.addOrderBy(table + "." + column);
+        }
+        ResultSet resultSet = null;
+        Connection connection = null;
+        PreparedStatement statement = null;
+        try {
+            connection = initializeConnection();
+            String query = queryBasedOnDBType(rdbmsQuery.printSelect() + rdbmsQuery.printFrom(),
+                                              rdbmsQuery.printWhere() + rdbmsQuery.printGroupBy(),
+                                              top < 0 ? this.oDataMaxLimit : top, skip, rdbmsQuery.printOrderBy());
+            log.info("Generated $apply query: " + query);
+            statement = connection.prepareStatement(query);
+            resultSet = statement.executeQuery();
+            List<ODataEntry> entries = new ArrayList<>();
+            while (resultSet.next()) {
+                ODataEntry entry = new ODataEntry();
+                for (String column : apply.getGroupBy())
+                    entry.addValue(column, getValueFromResultSet(columnTypes.get(column), column, resultSet));
+                // the aggregated values follow the grouping columns, the case of their labels depends on the database
+                int index = apply.getGroupBy().size();
+                for (RDBMSODataApply.Aggregation aggregation : apply.getAggregations())
+                    entry.addValue(aggregation.getAlias(), resultSet.getString(++index));
+                entries.add(entry);
+            }
+            return entries;
+        } catch (SQLException e) {
+            throw new ODataServiceFault(e, "Error occurred while aggregating entities of " + tableName + " table. :" +
+                                           e.getMessage());
+        } finally {
+            releaseResources(resultSet, statement);
+            releaseConnection(connection);
+        }
+    }
+    
 	/**
 	 * Determines the database type.
 	 * 
@@ -567,101 +943,321 @@ public class RDBMSDataHandler implements ODataDataHandler {
 	}
 	
 	/**
-	 * If $expand is present, it generates SELECT, JOIN, and the ORDER BY update to attach to the current ORDER BY
-	 * 
-	 * @param rdbmsQuery	Object containing the various parts of the query
-	 * @param dbName		Name of the database that tableName belongs to
-	 * @param tableName		Name of the "main" table, with which to join the other tables
-	 * @param expandOption	Contains the names of the table to expand on
-	 * @throws ODataApplicationException 	FilterExpressionVisitor: error building JOIN command while visiting the $filter nested within $expand
-	 * @throws ExpressionVisitException 	FilterExpressionVisitor: error building JOIN command while visiting the $filter nested within $expand
+	 * This method handles $expand by reading the related entries of all the given entries at once, with one query
+	 * per navigation property (split in chunks of EXPAND_BATCH_SIZE parent keys), and attaching them to their
+	 * parent entries. Nested $expand options are handled the same way on the related entries, so each level of
+	 * the expansion costs one query rather than one per entity.
+	 *
+	 * @param metadata		Metadata snapshot the entries are read with
+	 * @param tableName		Name of the table of the entries
+	 * @param entries		Entries to expand
+	 * @param expandOption	Contains the names of the tables to expand on
+	 * @param connection	Connection to read the related entries with
+	 * @throws ODataServiceFault	Error while reading the related entries, or invalid $expand
 	 */
-	private void handleExpand(RDBMSODataQuery rdbmsQuery, String dbName, String tableName, ExpandOption expandOption) throws ExpressionVisitException, ODataApplicationException {
-		if (expandOption == null)
+	private void expandEntries(RDBMSMetadataSnapshot metadata, String tableName, List<ODataEntry> entries,
+							   ExpandOption expandOption, Connection connection) throws ODataServiceFault {
+		if (expandOption == null || entries.isEmpty())
 			return;
-		
-		List<ExpandItem> expandItems = expandOption.getExpandItems(); // tables that are to be expanded on
-		FilterOption expandFilter;
-		OrderByOption expandOrderBy;
-		
-		rdbmsQuery.addSelect(tableName + ".*"); // SELECT all fields of the "main" table
-		if (dbName != null && !dbName.equals("") && dbType.contains(MYSQL)) // if database was specified, attach it
-			rdbmsQuery.appendFrom(dbName + "."); // name of the database plus dot
-		rdbmsQuery.appendFrom(tableName); // name of the table
-		buildFromSubQuery(rdbmsQuery, dbName, tableName); // Used when FROM needs a subquery, which happens when both $expand and $top/$skip are present in the OData query
-		
-		for (ExpandItem expandItem : expandItems) { // for each table listed in $expand, reference it and include its columns
+		for (ExpandItem expandItem : expandOption.getExpandItems()) { // for each table listed in $expand
 			String targetTable = expandItem.getResourcePath().getUriResourceParts().get(0).getSegmentValue(); // name of the table to expand on
-			Map<String, List<ForeignKey>> tableFKs = foreignKeys.get(tableName); // Map: Foreign table name -> Foreign keys to reach such foreign table
+			Map<String, List<ForeignKey>> tableFKs = metadata.getForeignKeys().get(tableName); // Map: Foreign table name -> Foreign keys to reach such foreign table
 			if (tableFKs == null || tableFKs.size() == 0)
-				throw new ODataApplicationException("Table " + tableName + " has no foreign keys.",HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.getDefault());
+				throw new ODataServiceFault("Table " + tableName + " has no foreign keys.");
 			List<ForeignKey> toForeignTableFKs = tableFKs.get(targetTable); // Foreign keys to reach table targetTable
 			if (toForeignTableFKs == null || toForeignTableFKs.size() == 0)
-				throw new ODataApplicationException("Table " + tableName + " has no foreign key that references " + targetTable + ".",HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.getDefault());
-			String foreignDB = toForeignTableFKs.get(0).getForeignDatabase();
-			if (expandItem.getExpandOption() != null)
-				throw new ODataApplicationException("Nested $expand commands have not been implemented yet.", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.getDefault());
+				throw new ODataServiceFault("Table " + tableName + " has no foreign key that references " + targetTable + ".");
 			
-			addSelectColumns(rdbmsQuery, foreignDB, targetTable); // adds columns of the foreign table
-			boolean addJoin = true;
-			for (ForeignKey fk : toForeignTableFKs) {
-				if (addJoin) { // add join command
-					rdbmsQuery.appendFrom(" LEFT OUTER JOIN " + ODataUtils.dbPrefix(foreignDB, dbType) + targetTable + " ON "); // joins this foreign table
-					addJoin = false;
-				} else
-					rdbmsQuery.appendFrom(" AND "); // additional foreign key
-				rdbmsQuery.appendFrom(fk.getFullName() + " = " + fk.getFullForeignName());
+			// groups the entries by the values of their foreign key columns, several entries may reference the same related entries
+			Map<List<String>, List<ODataEntry>> entriesByKey = new LinkedHashMap<>();
+			for (ODataEntry entry : entries) {
+				List<String> key = getForeignKeyValues(entry, toForeignTableFKs, false);
+				if (key == null) { // entry doesn't reference any external entity
+					entry.addNavigationEntries(targetTable, new ArrayList<ODataEntry>());
+					continue;
+				}
+				List<ODataEntry> keyEntries = entriesByKey.get(key);
+				if (keyEntries == null) {
+					keyEntries = new ArrayList<>();
+					entriesByKey.put(key, keyEntries);
+				}
+				keyEntries.add(entry);
 			}
-			expandFilter = expandItem.getFilterOption();
-			if (expandFilter != null) { // if there are filters on the $expand tables, they need to be applied together with the JOIN command
-				rdbmsQuery.appendFrom(" AND " + expandFilter.getExpression().accept(new FilterExpressionVisitor(targetTable, getPrimaryKeys(), getForeignKeys(), false, rdbmsQuery.getDBType())));
+			
+			Map<List<String>, List<ODataEntry>> relatedByKey = new HashMap<>();
+			List<List<String>> keys = new ArrayList<>(entriesByKey.keySet());
+			for (int i = 0; i < keys.size(); i += EXPAND_BATCH_SIZE) {
+				List<List<String>> batch = keys.subList(i, Math.min(keys.size(), i + EXPAND_BATCH_SIZE));
+				for (ODataEntry related : readRelatedEntries(metadata, targetTable, toForeignTableFKs, batch, expandItem, connection)) {
+					List<String> key = getForeignKeyValues(related, toForeignTableFKs, true);
+					List<ODataEntry> keyRelated = relatedByKey.get(key);
+					if (keyRelated == null) {
+						keyRelated = new ArrayList<>();
+						relatedByKey.put(key, keyRelated);
+					}
+					keyRelated.add(related);
+				}
 			}
-			List<String> foreignPKs = primaryKeys.get(targetTable);
-			expandOrderBy = expandItem.getOrderByOption();
-			if (expandOrderBy != null) { // if there are nested $orderby's, adds the parameters to the already present ORDER BY
-				for (String s : getOrderBy(expandOrderBy))
-					rdbmsQuery.addOrderBy(ODataUtils.dbPrefix(foreignDB, dbType) + targetTable + "." + s);
-			} else if (foreignPKs != null) { // adds default ordering for consistency
-				for (String s : foreignPKs)
-					rdbmsQuery.addOrderBy(ODataUtils.dbPrefix(foreignDB, dbType) + targetTable + "." + s);
+			
+			// applies possible $top and $skip nested inside $expand, for each entry
+			int top = -1, skip = 0;
+			if (expandItem.getTopOption() != null)
+				top = expandItem.getTopOption().getValue();
+			if (expandItem.getSkipOption() != null)
+				skip = expandItem.getSkipOption().getValue();
+			Set<ODataEntry> nestedEntries = Collections.newSetFromMap(new IdentityHashMap<ODataEntry, Boolean>());
+			for (Map.Entry<List<String>, List<ODataEntry>> keyEntries : entriesByKey.entrySet()) {
+				List<ODataEntry> related = relatedByKey.get(keyEntries.getKey());
+				if (related == null)
+					related = new ArrayList<>();
+				int from = Math.min(skip, related.size());
+				int to = top < 0 ? related.size() : Math.min(related.size(), from + top);
+				related = new ArrayList<>(related.subList(from, to));
+				nestedEntries.addAll(related);
+				for (ODataEntry entry : keyEntries.getValue())
+					entry.addNavigationEntries(targetTable, related);
 			}
+			expandEntries(metadata, targetTable, new ArrayList<>(nestedEntries), expandItem.getExpandOption(), connection);
 		}
 	}
 	
 	/**
-	 * Returns the sub-query to use in FROM, when both $expand and $top/$skip are present in the OData query
+	 * Returns the columns to read from a table for the given $select, which are the selected ones plus the columns
+	 * needed to identify the entries and to expand them: the primary key, the foreign keys of the tables listed in
+	 * $expand and, for the entries of an $expand, the columns referenced by the parent table.
 	 * 
-	 * @param rdbmsQuery	The query that will contain the sub-query returned
-	 * @param dbName		Name of the database
+	 * @param metadata		Metadata snapshot the entries are read with
 	 * @param tableName		Name of the table
-	 * @return				The FROM sub-query necessary, or null if not necessary
+	 * @param selectOption	$select option, may be null
+	 * @param expandOption	$expand option applied to the entries of the table, may be null
+	 * @param parentFKs		Foreign keys the entries are read through when expanding a parent table, null otherwise
+	 * @return				The columns in table order, or null if every column has to be read
 	 */
-	private void buildFromSubQuery(RDBMSODataQuery rdbmsQuery, String dbName, String tableName) {
-		if (rdbmsQuery.getLimit() < 0 && rdbmsQuery.getOffset() <= 0) // no sub-query necessary, no need to edit FROM statement
-			return;
-		
-		RDBMSODataQuery subQuery = new RDBMSODataQuery(rdbmsQuery); // sub-query is essentially the same as the query would be without the bits added by handling $expand
-		rdbmsQuery.setFrom("(" + subQuery + ") " + tableName); // sets FROM statement, containing sub-query and alias for the results of the sub-query
-		rdbmsQuery.setLimit(-1); // LIMIT will be applied in the sub-query, remove from "main" query (otherwise it would give incorrect results)
-		rdbmsQuery.setOffset(0); // OFFSET will be applied in the sub-query, remove from "main" query (otherwise it would give incorrect results)
-		rdbmsQuery.setWhere(""); // WHERE will be applied in the sub-query, remove from "main" query (it would give the same results, we remove it simply because it would be redundant)
+	private List<String> getProjectedColumns(RDBMSMetadataSnapshot metadata, String tableName,
+											 SelectOption selectOption, ExpandOption expandOption,
+											 List<ForeignKey> parentFKs) {
+		if (selectOption == null || selectOption.getSelectItems() == null || selectOption.getSelectItems().isEmpty())
+			return null;
+		Set<String> required = new HashSet<>();
+		for (SelectItem selectItem : selectOption.getSelectItems()) {
+			if (selectItem.isStar())
+				return null;
+			if (selectItem.getResourcePath() != null && !selectItem.getResourcePath().getUriResourceParts().isEmpty())
+				required.add(selectItem.getResourcePath().getUriResourceParts().get(0).getSegmentValue());
+		}
+		if (metadata.getPrimaryKeys().get(tableName) != null)
+			required.addAll(metadata.getPrimaryKeys().get(tableName));
+		if (parentFKs != null) {
+			for (ForeignKey fk : parentFKs)
+				required.add(fk.getForeignName());
+		}
+		if (expandOption != null && metadata.getForeignKeys().get(tableName) != null) {
+			for (ExpandItem expandItem : expandOption.getExpandItems()) {
+				String targetTable = expandItem.getResourcePath().getUriResourceParts().get(0).getSegmentValue();
+				List<ForeignKey> fks = metadata.getForeignKeys().get(tableName).get(targetTable);
+				if (fks != null) {
+					for (ForeignKey fk : fks)
+						required.add(fk.getName());
+				}
+			}
+		}
+		List<String> columns = new ArrayList<>();
+		for (String column : metadata.getRdbmsDataTypes().get(tableName).keySet()) {
+			if (required.contains(column))
+				columns.add(column);
+		}
+		return columns.size() == metadata.getRdbmsDataTypes().get(tableName).size() ? null : columns;
+	}
+	
+	/**
+	 * Returns the columns a query reads for the given projection, which are the projected ones plus the columns
+	 * the ETag of a projection is computed from.
+	 * 
+	 * @param metadata	Metadata snapshot the entries are read with
+	 * @param tableName	Name of the table
+	 * @param columns	Projected columns, null if every column is read
+	 * @return			The columns in table order, or null if every column has to be read
+	 */
+	private List<String> getQueriedColumns(RDBMSMetadataSnapshot metadata, String tableName, List<String> columns) {
+		if (columns == null)
+			return null;
+		List<String> eTagColumns = getProjectionETagColumns(metadata, tableName);
+		List<String> queried = new ArrayList<>();
+		for (String column : metadata.getRdbmsDataTypes().get(tableName).keySet()) {
+			if (columns.contains(column) || eTagColumns.contains(column))
+				queried.add(column);
+		}
+		return queried.size() == metadata.getRdbmsDataTypes().get(tableName).size() ? null : queried;
+	}
+	
+	/**
+	 * Returns the columns the ETag of a projection is computed from, which are the primary key and the columns
+	 * that are not large objects, so that large objects are not read only to compute the ETag of a projection.
+	 * The ETag of a whole entity is computed from all of its columns, so the ETag of a projection of a table with
+	 * large objects doesn't match it, and a change conditioned on it is rejected.
+	 * 
+	 * @param metadata	Metadata snapshot the entries are read with
+	 * @param tableName	Name of the table
+	 * @return			The columns in table order
+	 */
+	private List<String> getProjectionETagColumns(RDBMSMetadataSnapshot metadata, String tableName) {
+		List<String> pKeys = metadata.getPrimaryKeys().get(tableName);
+		List<String> columns = new ArrayList<>();
+		for (Map.Entry<String, Integer> column : metadata.getRdbmsDataTypes().get(tableName).entrySet()) {
+			if (pKeys != null && pKeys.contains(column.getKey())) {
+				columns.add(column.getKey());
+				continue;
+			}
+			switch (column.getValue()) {
+				case Types.BLOB:
+				case Types.CLOB:
+				case Types.NCLOB:
+				case Types.BINARY:
+				case Types.VARBINARY:
+				case Types.LONGVARBINARY:
+				case Types.LONGVARCHAR:
+				case Types.LONGNVARCHAR:
+				case Types.SQLXML:
+					break;
+				default:
+					columns.add(column.getKey());
+					break;
+			}
+		}
+		return columns;
 	}
 	
 	/**
-	 * Adds the names of the columns belonging to the input table to the SELECT command.
-	 * Column names are converted to <table_name>.<column_name> to avoid issues with columns with the same name in different tables.
+	 * Computes the ETag of an entity from the values of all of its columns, or of a projection from the values of
+	 * its ETag columns.
 	 * 
-	 * @param rdbmsQuery	Object containing the various parts of the query
-	 * @param db		Name of the database the table belongs to
-	 * @param table		Name of the table
+	 * @param metadata	Metadata snapshot the entity is read or written with
+	 * @param tableName	Name of the table
+	 * @param entry		Values of the entity
+	 * @param projected	Whether the entry is a projection of the entity
+	 * @return			The ETag
+	 * @see #getProjectionETagColumns(RDBMSMetadataSnapshot, String)
 	 */
-	private void addSelectColumns(RDBMSODataQuery rdbmsQuery, String db, String table) {
-		String quote = "\""; // default
-		if (dbType.contains(MYSQL))
-			quote = "`";
-		for (DataColumn column : this.tableMetaData.get(table).values()) {
-			rdbmsQuery.addSelect(ODataUtils.dbPrefix(db, dbType) + table + "." + column.getColumnName() + " AS " +
-					quote + table + "." + column.getColumnName() + quote); // note that there will be a trailing comma
+	private String generateETag(RDBMSMetadataSnapshot metadata, String tableName, ODataEntry entry,
+								 boolean projected) {
+		Collection<String> eTagColumns = projected ? getProjectionETagColumns(metadata, tableName) :
+				metadata.getRdbmsDataTypes().get(tableName).keySet();
+		ODataEntry eTagEntry = new ODataEntry();
+		for (String column : eTagColumns) {
+			if (entry.getNames().contains(column))
+				eTagEntry.addValue(column, entry.getValue(column));
+		}
+		return ODataUtils.generateETag(this.configID, tableName, eTagEntry);
+	}
+	
+	/**
+	 * Returns the values of the columns of a foreign key in an entry.
+	 * 
+	 * @param entry			The entry
+	 * @param fks			Columns that make up the foreign key
+	 * @param foreignSide	If true, the values are read from the referenced columns instead of the referencing ones
+	 * @return				The values, or null if any of them is null
+	 */
+	private List<String> getForeignKeyValues(ODataEntry entry, List<ForeignKey> fks, boolean foreignSide) {
+		List<String> values = new ArrayList<>(fks.size());
+		for (ForeignKey fk : fks) {
+			String value = entry.getValue(foreignSide ? fk.getForeignName() : fk.getName());
+			if (value == null)
+				return null;
+			values.add(value);
+		}
+		return values;
+	}
+	
+	/**
+	 * Reads the entries of the foreign table referenced by any of the given keys, applying the $filter and $orderby
+	 * nested within $expand.
+	 * 
+	 * @param metadata		Metadata snapshot the entries are read with
+	 * @param targetTable	Name of the table to expand on
+	 * @param fks			Foreign keys to reach table targetTable
+	 * @param keys			Values of the foreign key columns of the entries being expanded
+	 * @param expandItem	Contains the options nested within $expand
+	 * @param connection	Connection to read the entries with
+	 * @return				The related entries
+	 * @throws ODataServiceFault	Error while building or executing the query
+	 */
+	private List<ODataEntry> readRelatedEntries(RDBMSMetadataSnapshot metadata, String targetTable,
+												List<ForeignKey> fks, List<List<String>> keys, ExpandItem expandItem,
+												Connection connection) throws ODataServiceFault {
+		String sqlTable = ODataUtils.dbPrefix(fks.get(0).getForeignDatabase(), dbType) + targetTable;
+		if (targetTable.contains(SPECIAL_CHAR_SCHEMA_TBL_SEPARATOR)) {
+			int pos = targetTable.indexOf(SPECIAL_CHAR_SCHEMA_TBL_SEPARATOR);
+			sqlTable = targetTable.substring(0, pos) + "." + targetTable.substring(pos + 2);
+		}
+		List<String> columns = getProjectedColumns(metadata, targetTable, expandItem.getSelectOption(),
+												   expandItem.getExpandOption(), fks);
+		// the table is aliased to its entity name, which is what the filter visitor prefixes columns with
+		StringBuilder sql = new StringBuilder("SELECT ");
+		List<String> queriedColumns = getQueriedColumns(metadata, targetTable, columns);
+		if (queriedColumns == null) {
+			sql.append(targetTable).append(".*");
+		} else {
+			for (int i = 0; i < queriedColumns.size(); i++)
+				sql.append(i == 0 ? "" : ", ").append(targetTable).append(".").append(queriedColumns.get(i));
+		}
+		sql.append(" FROM ").append(sqlTable).append(" ").append(targetTable).append(" WHERE ");
+		if (fks.size() == 1) {
+			sql.append(targetTable).append(".").append(fks.get(0).getForeignName()).append(" IN (");
+			for (int i = 0; i < keys.size(); i++)
+				sql.append(i == 0 ? "?" : ", ?");
+			sql.append(")");
+		} else {
+			sql.append("(");
+			for (int i = 0; i < keys.size(); i++) {
+				if (i > 0)
+					sql.append(" OR ");
+				sql.append("(");
+				for (int j = 0; j < fks.size(); j++) {
+					if (j > 0)
+						sql.append(" AND ");
+					sql.append(targetTable).append(".").append(fks.get(j).getForeignName()).append(" = ?");
+				}
+				sql.append(")");
+			}
+			sql.append(")");
+		}
+		ResultSet resultSet = null;
+		PreparedStatement statement = null;
+		try {
+			FilterOption expandFilter = expandItem.getFilterOption();
+			if (expandFilter != null) // filters on the $expand table
+				sql.append(" AND (").append(expandFilter.getExpression().accept(new FilterExpressionVisitor(targetTable, metadata.getPrimaryKeys(), metadata.getForeignKeys(), false, dbType))).append(")");
+			List<String> orderBy = new ArrayList<>();
+			OrderByOption expandOrderBy = expandItem.getOrderByOption();
+			if (expandOrderBy != null) { // nested $orderby
+				for (String s : getOrderBy(expandOrderBy))
+					orderBy.add(targetTable + "." + s);
+			} else if (metadata.getPrimaryKeys().get(targetTable) != null) { // adds default ordering for consistency
+				for (String s : metadata.getPrimaryKeys().get(targetTable))
+					orderBy.add(targetTable + "." + s);
+			}
+			for (int i = 0; i < orderBy.size(); i++)
+				sql.append(i == 0 ? " ORDER BY " : ", ").append(orderBy.get(i));
+			log.info("Generated $expand query: " + sql);
+			statement = connection.prepareStatement(sql.toString());
+			int index = 1;
+			for (List<String> key : keys) {
+				for (int j = 0; j < fks.size(); j++) {
+					bindValuesToPreparedStatement(metadata.getRdbmsDataTypes().get(targetTable).get(fks.get(j).getForeignName()),
+												  key.get(j), index, statement);
+					index++;
+				}
+			}
+			resultSet = statement.executeQuery();
+			return createDataEntryCollectionFromRS(metadata, targetTable, resultSet, columns, null);
+		} catch (SQLException | ParseException e) {
+			throw new ODataServiceFault(e, "Error occurred while reading entities from " + targetTable + " table. :" +
+										   e.getMessage());
+		} catch (ExpressionVisitException | ODataApplicationException e) { // caused by the $filter nested within the $expand
+			throw new ODataServiceFault(e, "There was an error while handling the $expand command: " + e.getMessage());
+		} finally {
+			releaseResources(resultSet, statement);
 		}
 	}
 	
@@ -770,28 +1366,60 @@ public class RDBMSDataHandler implements ODataDataHandler {
     
     @Override
     public int countRecords(UriInfo uriInfo, String tableName) throws ODataServiceFault, ExpressionVisitException, ODataApplicationException {
+        return countRecords(uriInfo, tableName, null);
+    }
+
+    /**
+     * Counts the entries of a table matching $filter, as readTablePage reads them.
+     *
+     * @param uriInfo       Contains OData query options
+     * @param tableName     Name of the table
+     * @param navProperties Properties the entries are filtered by when they are read through a navigation
+     * @return Total, or 0 if $count=true was not requested
+     * @throws ODataServiceFault
+     * @throws ExpressionVisitException
+     * @throws ODataApplicationException
+     */
+    public int countRecords(UriInfo uriInfo, String tableName, List<Property> navProperties) throws ODataServiceFault, ExpressionVisitException, ODataApplicationException {
         String query = "" , where = "";
         int total = 0;
         CountOption countOption = uriInfo.getCountOption();
         FilterOption filterOption = uriInfo.getFilterOption();
-        if (filterOption != null) {
-            where = " where " + filterOption.getExpression().accept(new FilterExpressionVisitor(this.dbTable, getPrimaryKeys(), getForeignKeys(), false, this.dbType));
-        }
         Boolean count = countOption.getValue();
         Connection connection = null;
         ResultSet resultSet = null;
         PreparedStatement statement = null;
         
         if (count) {
+            boolean navigation = navProperties != null && navProperties.size() > 0;
+            boolean cacheable = this.countCacheTTL > 0 && filterOption == null && !navigation;
+            if (cacheable) {
+                CachedCount cachedCount = this.countCache.get(tableName);
+                if (cachedCount != null && cachedCount.expiry > System.currentTimeMillis()) {
+                    return cachedCount.total;
+                }
+            }
+            TableReference tableReference = new TableReference(tableName);
+            if (filterOption != null) {
+                RDBMSMetadataSnapshot metadata = this.metadata;
+                where = " where " + filterOption.getExpression().accept(new FilterExpressionVisitor(tableReference.table, metadata.getPrimaryKeys(), metadata.getForeignKeys(), false, this.dbType));
+            }
+            if (navigation) {
+                where += (where.isEmpty() ? " where " : " AND ") +
+                         createNavigationCondition(tableReference.table, navProperties);
+            }
             try {
                 connection = initializeConnection();
-                query = "select count(*) as total from " +  this.dbSchema + "." + this.dbTable + where;
+                query = "select count(*) as total from " + tableReference.getQualifiedName() + where;
                 log.info("Count query: " + query);
                 statement = connection.prepareStatement(query);
                 resultSet = statement.executeQuery();
                 while (resultSet.next()) {
                     total = resultSet.getInt("total");
                 }
+                if (cacheable) {
+                    this.countCache.put(tableName, new CachedCount(total, System.currentTimeMillis() + this.countCacheTTL));
+                }
             } catch (SQLException e) {
                 throw new ODataServiceFault(e, "Error occurred while counting entities from " + tableName + " table. :" +
                                                e.getMessage());
@@ -803,14 +1431,279 @@ public class RDBMSDataHandler implements ODataDataHandler {
         return total;
     }
     
+    /**
+     * Returns whether $count=true was requested.
+     *
+     * @param uriInfo Contains OData query options
+     * @return true if the total count has to be returned
+     */
+    private boolean isCountRequested(UriInfo uriInfo) {
+        CountOption countOption = uriInfo.getCountOption();
+        return countOption != null && countOption.getValue();
+    }
+
+    /**
+     * Creates the condition selecting the rows of a table reached through a navigation, i.e. the rows whose
+     * columns are equal to the given properties of the entity navigated from.
+     *
+     * @param table         Name of the table the columns are prefixed with
+     * @param navProperties Properties naming the columns and their values
+     * @return The condition
+     */
+    private String createNavigationCondition(String table, List<Property> navProperties) {
+        StringBuilder condition = new StringBuilder();
+        for (Property p : navProperties) {
+            if (condition.length() > 0)
+                condition.append(" AND ");
+            condition.append(table).append(".").append(p.getName()).append(" = '")
+                     .append(String.valueOf(p.getValue()).replace("'", "''")).append("'");
+        }
+        return condition.toString();
+    }
+
+    /**
+     * Creates the condition selecting the rows that come after the given primary key in primary key order,
+     * i.e. (k1 > ?) OR (k1 = ? AND k2 > ?) OR ..., which unlike row value comparison works on every database.
+     *
+     * @param table      Name of the table the columns are prefixed with
+     * @param keys       Primary key columns
+     * @param keyValues  Primary key values of the last row of the previous page
+     * @param parameters List the column names and values to bind are added to, in pairs
+     * @return The condition
+     */
+    private String createSeekCondition(String table, List<String> keys, List<String> keyValues, List<String> parameters) {
+        StringBuilder condition = new StringBuilder("(");
+        for (int i = 0; i < keys.size(); i++) {
+            if (i > 0)
+                condition.append(" OR ");
+            condition.append("(");
+            for (int j = 0; j < i; j++) {
+                condition.append(table).append(".").append(keys.get(j)).append(" = ? AND ");
+                parameters.add(keys.get(j));
+                parameters.add(keyValues.get(j));
+            }
+            condition.append(table).append(".").append(keys.get(i)).append(" > ?)");
+            parameters.add(keys.get(i));
+            parameters.add(keyValues.get(i));
+        }
+        return condition.append(")").toString();
+    }
+
+    /**
+     * Quotes an identifier with the identifier quote of the database.
+     *
+     * @param identifier Identifier to quote
+     * @return The quoted identifier
+     */
+    private String quoteIdentifier(String identifier) {
+        return this.identifierQuote + identifier + this.identifierQuote;
+    }
+
+    /**
+     * Reads the string quoting the identifiers of the database.
+     *
+     * @return The quote, empty if identifiers cannot be quoted
+     * @throws ODataServiceFault Error while connecting to the database
+     */
+    private String getIdentifierQuote() throws ODataServiceFault {
+        Connection connection = null;
+        try {
+            connection = initializeConnection();
+            String quote = connection.getMetaData().getIdentifierQuoteString();
+            return quote == null ? "" : quote.trim();
+        } catch (SQLException e) {
+            log.warn("Unable to read the identifier quote of the database, identifiers are not quoted. :" +
+                     e.getMessage());
+            return "";
+        } finally {
+            releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Determines whether the database can compute COUNT(*) OVER() in the data query, so that $count does not
+     * require a second execution of the same predicates.
+     *
+     * @return true if window aggregates are supported
+     * @throws ODataServiceFault Error while reading the database version
+     */
+    private boolean isWindowCountSupported() throws ODataServiceFault {
+        Connection connection = null;
+        try {
+            connection = initializeConnection();
+            DatabaseMetaData meta = connection.getMetaData();
+            int major = meta.getDatabaseMajorVersion();
+            int minor = meta.getDatabaseMinorVersion();
+            switch (this.dbType) {
+                case ORACLE_SERVER:
+                    return true;
+                case POSTGRESQL:
+                    return major > 8 || (major == 8 && minor >= 4);
+                case MSSQL_SERVER:
+                    return major >= 9;
+                case MYSQL:
+                    return major >= 8;
+                case H2:
+                    // window functions are available from H2 1.4.198 onwards
+                    String[] version = meta.getDatabaseProductVersion().split("[ .]");
+                    return major > 1 || (major == 1 && minor > 4) ||
+                           (major == 1 && minor == 4 && version.length > 2 && Integer.parseInt(version[2]) >= 198);
+                default:
+                    return false;
+            }
+        } catch (SQLException | NumberFormatException e) {
+            log.warn("Unable to determine window function support, falling back to count queries. :" + e.getMessage());
+            return false;
+        } finally {
+            releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Drops the cached total of the table, as rows have been added or removed.
+     *
+     * @param tableName Name of the table
+     */
+    private void invalidateCountCache(String tableName) {
+        if (this.countCacheTTL > 0) {
+            this.countCache.remove(tableName);
+        }
+    }
+
+    /**
+     * Schema and table of an entity set name, which has the form schema__table in databases that use schemas.
+     */
+    private static class TableReference {
+        private final String schema;
+        private final String table;
+
+        private TableReference(String tableName) {
+            int pos = tableName.indexOf(SPECIAL_CHAR_SCHEMA_TBL_SEPARATOR);
+            if (pos < 0) { // dbs that don't use schema like MySQL
+                this.schema = "";
+                this.table = tableName;
+            } else {
+                this.schema = tableName.substring(0, pos);
+                this.table = tableName.substring(pos + SPECIAL_CHAR_SCHEMA_TBL_SEPARATOR.length());
+            }
+        }
+
+        private String getQualifiedName() {
+            return schema.isEmpty() ? table : schema + "." + table;
+        }
+    }
+
+    /**
+     * Settings of a connection to restore when it is returned to the pool.
+     */
+    private static class ConnectionDefaults {
+        private final boolean autoCommit;
+        private final int isolation;
+
+        private ConnectionDefaults(boolean autoCommit, int isolation) {
+            this.autoCommit = autoCommit;
+            this.isolation = isolation;
+        }
+    }
+
+    /**
+     * Total of an unfiltered table along with the time it stops being valid.
+     */
+    private static class CachedCount {
+        private final int total;
+        private final long expiry;
+
+        private CachedCount(int total, long expiry) {
+            this.total = total;
+            this.expiry = expiry;
+        }
+    }
+
+    /**
+     * Reads a persisted metadata snapshot, rejecting any class a snapshot is not made of before it is instantiated,
+     * so that a tampered file cannot make the handler deserialize arbitrary objects.
+     */
+    private static class MetadataSnapshotInputStream extends ObjectInputStream {
+        private static final Set<String> SNAPSHOT_CLASSES = new HashSet<>(Arrays.asList(
+                RDBMSMetadataSnapshot.class.getName(), DataColumn.class.getName(),
+                DataColumn.ODataDataType.class.getName(), ForeignKey.class.getName(),
+                ForeignKey.FKType.class.getName(), NavigationTable.class.getName(), NavigationKeys.class.getName(),
+                String.class.getName(), Integer.class.getName(), Long.class.getName(), Number.class.getName(),
+                Enum.class.getName(), ArrayList.class.getName(), HashMap.class.getName(),
+                LinkedHashMap.class.getName(), "java.util.Collections$UnmodifiableMap",
+                "java.util.Collections$UnmodifiableList", "java.util.Collections$UnmodifiableRandomAccessList",
+                "java.util.Collections$UnmodifiableCollection"));
+
+        private MetadataSnapshotInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!SNAPSHOT_CLASSES.contains(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "Not part of an OData metadata snapshot");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+            throw new InvalidClassException("Proxy", "Not part of an OData metadata snapshot");
+        }
+    }
+
+    /**
+     * A page of entries read by readTablePage, along with what the request needs to complete its response.
+     */
+    public static class TablePage {
+        private List<ODataEntry> entries;
+        private Integer total;
+        private String nextSkipToken;
+
+        private TablePage() {
+            this(new ArrayList<ODataEntry>());
+        }
+
+        /**
+         * Creates a page of entries read at once, without total and next page.
+         *
+         * @param entries Entries read
+         */
+        TablePage(List<ODataEntry> entries) {
+            this.entries = entries;
+        }
+
+        public List<ODataEntry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * Returns the total of $count read along with the page.
+         *
+         * @return Total, or null if it was not read with the page and has to be counted with countRecords
+         */
+        public Integer getTotal() {
+            return total;
+        }
+
+        /**
+         * Returns the skip token of the next page.
+         *
+         * @return Skip token, or null if the page is the last one or keyset pagination is not enabled
+         */
+        public String getNextSkipToken() {
+            return nextSkipToken;
+        }
+    }
+
     @Override
     public List<String> getTableList() {
-        return this.tableList;
+        return this.metadata.getTableList();
     }
 
     @Override
     public Map<String, List<String>> getPrimaryKeys() {
-        return this.primaryKeys;
+        return this.metadata.getPrimaryKeys();
     }
 
     private String convertToTimeString(Time sqlTime) {
@@ -831,34 +1724,31 @@ public class RDBMSDataHandler implements ODataDataHandler {
         PreparedStatement statement = null;
         try {
             connection = initializeConnection();
-            String query = createInsertSQL(tableName, entry);
-            boolean isAvailableAutoIncrementColumns = isAvailableAutoIncrementColumns(tableName);
-            if(isAvailableAutoIncrementColumns) {
-                statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
-            } else {
-                statement = connection.prepareStatement(query);
-            }
+            RDBMSMetadataSnapshot metadata = this.metadata;
+            Map<String, Integer> columnTypes = metadata.getRdbmsDataTypes().get(tableName);
+            String query = createInsertSQL(metadata, tableName, entry);
+            boolean isAvailableAutoIncrementColumns = isAvailableAutoIncrementColumns(metadata, tableName);
+            statement = prepareWriteStatement(connection, query, isAvailableAutoIncrementColumns);
             int index = 1;
             for (String column : entry.getNames()) {
-                if (this.rdbmsDataTypes.get(tableName).keySet().contains(column)) {
+                if (columnTypes.keySet().contains(column)) {
                     String value = entry.getValue(column);
-                    bindValuesToPreparedStatement(this.rdbmsDataTypes.get(tableName).get(column), value, index,
-                                                  statement);
+                    bindValuesToPreparedStatement(columnTypes.get(column), value, index, statement);
                     index++;
                 }
             }
             ODataEntry createdEntry = new ODataEntry();
-            if (isAvailableAutoIncrementColumns(tableName)) {
+            if (isAvailableAutoIncrementColumns) {
                 statement.executeUpdate();
                 ResultSet resultSet = statement.getGeneratedKeys();
                 String paramValue;
                 int i = 1;
                 while (resultSet.next()) {
-                    for (DataColumn column : this.tableMetaData.get(tableName).values()) {
+                    for (DataColumn column : metadata.getTableMetaData().get(tableName).values()) {
                         if (column.isAutoIncrement()) {
                             String resultSetColumnName = resultSet.getMetaData().getColumnName(i);
                             String columnName = column.getColumnName();
-                            int columnType = this.rdbmsDataTypes.get(tableName).get(columnName);
+                            int columnType = columnTypes.get(columnName);
                             paramValue = getValueFromResultSet(columnType, resultSetColumnName, resultSet);
                             createdEntry.addValue(columnName, paramValue);
                             // Need to add this column to generate the E-tag
@@ -872,19 +1762,20 @@ public class RDBMSDataHandler implements ODataDataHandler {
                 statement.execute();
             }
             commitExecution(connection);
-            createdEntry.addValue(ODataConstants.E_TAG, ODataUtils.generateETag(this.configID, tableName, entry));
+            invalidateCountCache(tableName);
+            createdEntry.addValue(ODataConstants.E_TAG, generateETag(metadata, tableName, entry, false));
             return createdEntry;
         } catch (SQLException | ParseException e) {
             throw new ODataServiceFault(e, "Error occurred while writing entities to " + tableName + " table. :" +
                                            e.getMessage());
         } finally {
-            releaseResources(null, statement);
+            releaseWriteStatement(statement);
             releaseConnection(connection);
         }
     }
 
-    private boolean isAvailableAutoIncrementColumns(String table) {
-        for (DataColumn column : this.tableMetaData.get(table).values()) {
+    private boolean isAvailableAutoIncrementColumns(RDBMSMetadataSnapshot metadata, String table) {
+        for (DataColumn column : metadata.getTableMetaData().get(table).values()) {
             if (column.isAutoIncrement()) {
                 return true;
             }
@@ -902,18 +1793,24 @@ public class RDBMSDataHandler implements ODataDataHandler {
             ExpandOption expandOption = null;
             if (uriInfo != null)
                 expandOption = uriInfo.getExpandOption();
-            String query = createReadSqlWithKeys(connection.getCatalog(), tableName, keys, expandOption);
+            RDBMSMetadataSnapshot metadata = this.metadata;
+            Map<String, Integer> columnTypes = metadata.getRdbmsDataTypes().get(tableName);
+            // entities read in a transaction are read to be checked and written, so they are locked until it ends
+            boolean lock = getTransactionalConnection() != null;
+            String query = createReadSqlWithKeys(metadata, connection.getCatalog(), tableName, keys, lock);
             statement = connection.prepareStatement(query);
             int index = 1;
             
             for (String column : keys.getNames()) {
-                if (this.rdbmsDataTypes.get(tableName).keySet().contains(column)) {
-                    bindValuesToPreparedStatement(this.rdbmsDataTypes.get(tableName).get(column), keys.getValue(column), index, statement);
+                if (columnTypes.keySet().contains(column)) {
+                    bindValuesToPreparedStatement(columnTypes.get(column), keys.getValue(column), index, statement);
                     index++;
                 }
             }
             resultSet = statement.executeQuery();
-            return createDataEntryCollectionFromRS(tableName, resultSet, expandOption);
+            List<ODataEntry> entries = createDataEntryCollectionFromRS(metadata, tableName, resultSet);
+            expandEntries(metadata, tableName, entries, expandOption, connection);
+            return entries;
         } catch (SQLException | ParseException e) {
             throw new ODataServiceFault(e, "Error occurred while reading entities from " + tableName + " table. :" +
                                            e.getMessage());
@@ -1104,19 +2001,21 @@ public class RDBMSDataHandler implements ODataDataHandler {
 
     @Override
     public boolean updateEntityInTable(String tableName, ODataEntry newProperties) throws ODataServiceFault {
-        List<String> pKeys = this.primaryKeys.get(tableName);
+        RDBMSMetadataSnapshot metadata = this.metadata;
+        Map<String, Integer> columnTypes = metadata.getRdbmsDataTypes().get(tableName);
+        List<String> pKeys = metadata.getPrimaryKeys().get(tableName);
         Connection connection = null;
         PreparedStatement statement = null;
         String value;
         try {
             connection = initializeConnection();
-            String query = createUpdateEntitySQL(tableName, newProperties);
-            statement = connection.prepareStatement(query);
+            String query = createUpdateEntitySQL(metadata, tableName, newProperties);
+            statement = prepareWriteStatement(connection, query, false);
             int index = 1;
             for (String column : newProperties.getNames()) {
                 if (!pKeys.contains(column)) {
                     value = newProperties.getValue(column);
-                    bindValuesToPreparedStatement(this.rdbmsDataTypes.get(tableName).get(column), value, index,
+                    bindValuesToPreparedStatement(columnTypes.get(column), value, index,
                                                   statement);
                     index++;
                 }
@@ -1125,7 +2024,7 @@ public class RDBMSDataHandler implements ODataDataHandler {
                 if (!pKeys.isEmpty()) {
                     if (pKeys.contains(column)) {
                         value = newProperties.getValue(column);
-                        bindValuesToPreparedStatement(this.rdbmsDataTypes.get(tableName).get(column), value, index,
+                        bindValuesToPreparedStatement(columnTypes.get(column), value, index,
                                                       statement);
                         index++;
                     }
@@ -1141,70 +2040,82 @@ public class RDBMSDataHandler implements ODataDataHandler {
             throw new ODataServiceFault(e, "Error occurred while updating the entity to " + tableName + " table. :" +
                                            e.getMessage());
         } finally {
-            releaseResources(null, statement);
+            releaseWriteStatement(statement);
             releaseConnection(connection);
         }
     }
 
+    /**
+     * Updates an entity whose E-Tag has been checked in the current transaction. The entity was locked when it was
+     * read in the transaction, so it cannot have been modified since the check, whichever columns its E-Tag covers.
+     *
+     * @param tableName     Name of the table
+     * @param oldProperties Values of the entity the E-Tag was checked with, of which the keys are used
+     * @param newProperties New values of the entity
+     * @return true if the entity was updated
+     * @throws ODataServiceFault
+     */
+    @Override
     public boolean updateEntityInTableTransactional(String tableName, ODataEntry oldProperties,
                                                     ODataEntry newProperties) throws ODataServiceFault {
-        List<String> pKeys = this.primaryKeys.get(tableName);
+        RDBMSMetadataSnapshot metadata = this.metadata;
+        Map<String, Integer> columnTypes = metadata.getRdbmsDataTypes().get(tableName);
+        List<String> pKeys = metadata.getPrimaryKeys().get(tableName);
         PreparedStatement statement = null;
         Connection connection = null;
         String value;
         try {
+            if (pKeys.isEmpty()) {
+                throw new ODataServiceFault("Error occurred while updating the entity to " + tableName +
+                                            " table. couldn't find keys in the table.");
+            }
             connection = initializeConnection();
-            String query = createUpdateEntitySQL(tableName, newProperties);
-            statement = connection.prepareStatement(query);
+            String query = createUpdateEntitySQL(metadata, tableName, newProperties);
+            statement = prepareWriteStatement(connection, query, false);
             int index = 1;
             for (String column : newProperties.getNames()) {
                 if (!pKeys.contains(column)) {
                     value = newProperties.getValue(column);
-                    bindValuesToPreparedStatement(this.rdbmsDataTypes.get(tableName).get(column), value, index,
+                    bindValuesToPreparedStatement(columnTypes.get(column), value, index,
                                                   statement);
                     index++;
                 }
             }
-            for (String column : oldProperties.getNames()) {
-                if (!pKeys.isEmpty()) {
-                    if (pKeys.contains(column)) {
-                        value = oldProperties.getValue(column);
-                        bindValuesToPreparedStatement(this.rdbmsDataTypes.get(tableName).get(column), value, index,
-                                                      statement);
-                        index++;
-                    }
-                } else {
-                    throw new ODataServiceFault("Error occurred while updating the entity to " + tableName +
-                                                " table. couldn't find keys in the table.");
-                }
+            for (String column : pKeys) {
+                value = oldProperties.getValue(column);
+                bindValuesToPreparedStatement(columnTypes.get(column), value, index,
+                                              statement);
+                index++;
             }
-            statement.execute();
+            int rowCount = statement.executeUpdate();
             commitExecution(connection);
-            return true;
+            return rowCount > 0;
         } catch (SQLException | ParseException e) {
             throw new ODataServiceFault(e, "Error occurred while updating the entity to " + tableName + " table. :" +
                                            e.getMessage());
         } finally {
-            releaseResources(null, statement);
+            releaseWriteStatement(statement);
             releaseConnection(connection);
         }
     }
 
     @Override
     public boolean deleteEntityInTable(String tableName, ODataEntry entry) throws ODataServiceFault {
-        List<String> pKeys = this.primaryKeys.get(tableName);
+        RDBMSMetadataSnapshot metadata = this.metadata;
+        Map<String, Integer> columnTypes = metadata.getRdbmsDataTypes().get(tableName);
+        List<String> pKeys = metadata.getPrimaryKeys().get(tableName);
         Connection connection = null;
         PreparedStatement statement = null;
         String value;
         try {
             connection = initializeConnection();
-            String query = createDeleteSQL(tableName);
-            statement = connection.prepareStatement(query);
+            String query = createDeleteSQL(metadata, tableName);
+            statement = prepareWriteStatement(connection, query, false);
             int index = 1;
-            for (String column : this.rdbmsDataTypes.get(tableName).keySet()) {
+            for (String column : columnTypes.keySet()) {
                 if (pKeys.contains(column)) {
                     value = entry.getValue(column);
-                    bindValuesToPreparedStatement(this.rdbmsDataTypes.get(tableName).get(column), value, index,
+                    bindValuesToPreparedStatement(columnTypes.get(column), value, index,
                                                   statement);
                     index++;
                 }
@@ -1212,21 +2123,23 @@ public class RDBMSDataHandler implements ODataDataHandler {
             statement.execute();
             int rowCount = statement.getUpdateCount();
             commitExecution(connection);
+            invalidateCountCache(tableName);
             return rowCount > 0;
         } catch (SQLException | ParseException e) {
             throw new ODataServiceFault(e, "Error occurred while deleting the entity from " + tableName + " table. :" +
                                            e.getMessage());
         } finally {
-            releaseResources(null, statement);
+            releaseWriteStatement(statement);
             releaseConnection(connection);
         }
     }
 
-    private void addDataType(String tableName, String columnName, int dataType) {
-        Map<String, Integer> tableMap = this.rdbmsDataTypes.get(tableName);
+    private void addDataType(Map<String, Map<String, Integer>> rdbmsDataTypes, String tableName, String columnName,
+                             int dataType) {
+        Map<String, Integer> tableMap = rdbmsDataTypes.get(tableName);
         if (tableMap == null) {
             tableMap = new HashMap<>();
-            this.rdbmsDataTypes.put(tableName, tableMap);
+            rdbmsDataTypes.put(tableName, tableMap);
         }
         tableMap.put(columnName, dataType);
     }
@@ -1234,41 +2147,64 @@ public class RDBMSDataHandler implements ODataDataHandler {
     /**
      * This method wraps result set data in to DataEntry and creates a list of DataEntry.
      *
+     * @param metadata  Metadata snapshot the entries are read with
      * @param tableName Name of the table
      * @param resultSet Result set
      * @return List of DataEntry
      * @throws ODataServiceFault
      * @see DataEntry
      */
-    private List<ODataEntry> createDataEntryCollectionFromRS(String tableName, ResultSet resultSet, ExpandOption expandOption)
-            throws ODataServiceFault {
+    private List<ODataEntry> createDataEntryCollectionFromRS(RDBMSMetadataSnapshot metadata, String tableName,
+                                                             ResultSet resultSet) throws ODataServiceFault {
+        return createDataEntryCollectionFromRS(metadata, tableName, resultSet, null, null);
+    }
+
+    /**
+     * This method wraps result set data in to DataEntry and creates a list of DataEntry.
+     * When a page is given, the result set carries the COUNT(*) OVER() total of the query, which is set as the
+     * total of the page.
+     * The result set of a projection also carries the columns the ETag is computed from, which are only kept in
+     * the entries if they are projected.
+     *
+     * @param metadata          Metadata snapshot the entries are read with
+     * @param tableName         Name of the table
+     * @param resultSet         Result set
+     * @param columns           Projected columns, null if every column of the table is returned
+     * @param windowCountPage   Page the window count is set to if the query selects it, null otherwise
+     * @return List of DataEntry
+     * @throws ODataServiceFault
+     */
+    private List<ODataEntry> createDataEntryCollectionFromRS(RDBMSMetadataSnapshot metadata, String tableName,
+                                                             ResultSet resultSet, List<String> columns,
+                                                             TablePage windowCountPage) throws ODataServiceFault {
+        Map<String, Integer> columnTypes = metadata.getRdbmsDataTypes().get(tableName);
+        List<String> queriedColumns = getQueriedColumns(metadata, tableName, columns);
+        List<String> eTagOnlyColumns = new ArrayList<>();
+        if (columns != null) {
+            for (String column : queriedColumns == null ? columnTypes.keySet() : queriedColumns) {
+                if (!columns.contains(column))
+                    eTagOnlyColumns.add(column);
+            }
+        }
         List<ODataEntry> entitySet = new ArrayList<>();
         try {
             String paramValue;
             while (resultSet.next()) {
+                if (windowCountPage != null && entitySet.isEmpty()) {
+                    windowCountPage.total = resultSet.getInt(WINDOW_COUNT_COLUMN);
+                }
                 ODataEntry entry = new ODataEntry();
                 // adds columns of tableName to the entry
-                for (String column : this.rdbmsDataTypes.get(tableName).keySet()) {
-                    int columnType = this.rdbmsDataTypes.get(tableName).get(column);
+                for (String column : queriedColumns == null ? columnTypes.keySet() : queriedColumns) {
+                    int columnType = columnTypes.get(column);
                     paramValue = getValueFromResultSet(columnType, column, resultSet);
                     entry.addValue(column, paramValue);
                 }
-                
-                List<ExpandItem> expandItems = null; // tables to expand on
-                if (expandOption != null) // if $expand was used
-                    expandItems = expandOption.getExpandItems(); // retrieves list of tables to expand on
-                if (expandItems != null && expandItems.size() > 0) { // adds columns of foreign tables
-                    for (ExpandItem expandItem : expandItems) { // each item corresponds to one table to expand on
-                        String foreignTable = expandItem.getResourcePath().getUriResourceParts().get(0).getSegmentValue(); // name of the table
-                        for (String column : this.rdbmsDataTypes.get(foreignTable).keySet()) { // loop on columns of the foreign table
-                            int columnType = this.rdbmsDataTypes.get(foreignTable).get(column);
-                            String foreignValue = getValueFromResultSet(columnType, foreignTable + "." + column, resultSet);
-                            entry.addValue(foreignTable + "." + column, foreignValue); // adds column and value to the entry
-                        }
-                    }
-                }
+
                 //Set Etag to the entity
-                entry.addValue("ETag", ODataUtils.generateETag(this.configID, tableName, entry));
+                entry.addValue("ETag", generateETag(metadata, tableName, entry, queriedColumns != null));
+                for (String column : eTagOnlyColumns)
+                    entry.getData().remove(column);
                 entitySet.add(entry);
             }
             return entitySet;
@@ -1435,11 +2371,14 @@ public class RDBMSDataHandler implements ODataDataHandler {
     /**
      * This method reads table column meta data.
      *
-     * @param tableName Name of the table
+     * @param tableName      Name of the table
+     * @param meta           Database metadata
+     * @param rdbmsDataTypes Map the SQL types of the columns are added to
      * @return table MetaData
      * @throws ODataServiceFault
      */
-    private Map<String, DataColumn> readTableColumnMetaData(String tableName, DatabaseMetaData meta)
+    private Map<String, DataColumn> readTableColumnMetaData(String tableName, DatabaseMetaData meta,
+                                                            Map<String, Map<String, Integer>> rdbmsDataTypes)
             throws ODataServiceFault {
         ResultSet resultSet = null;
         Map<String, DataColumn> columnMap = new HashMap<>();
@@ -1509,7 +2448,7 @@ public class RDBMSDataHandler implements ODataDataHandler {
 	                    }
 	                }
 	                columnMap.put(columnName, column);
-	                addDataType(tableName, columnName, columnType);
+	                addDataType(rdbmsDataTypes, tableName, columnName, columnType);
 	                i++;
             	}	
             }
@@ -1523,30 +2462,176 @@ public class RDBMSDataHandler implements ODataDataHandler {
     }
 
     /**
-     * This method initializes metadata.
+     * This method initializes metadata. When the metadata cache is enabled, a previously persisted snapshot
+     * is used if available, and the metadata is refreshed periodically in the background.
      *
      * @throws ODataServiceFault
      */
     private void initializeMetaData() throws ODataServiceFault {
-        this.tableMetaData = new HashMap<>();
-        this.primaryKeys = new HashMap<>();
-        this.navigationProperties = new HashMap<>();
+        if (this.metadataCache) {
+            RDBMSMetadataSnapshot snapshot = loadMetadataSnapshot();
+            if (snapshot != null) {
+                this.metadata = snapshot;
+                scheduleMetadataRefresh(0);
+                return;
+            }
+        }
+        RDBMSMetadataSnapshot snapshot = readMetaData(generateTableList(this.oDataTableList), null);
+        this.metadata = snapshot;
+        if (this.metadataCache) {
+            saveMetadataSnapshot(snapshot);
+            if (snapshot.getDdlTimes() != null) {
+                scheduleMetadataRefresh(this.metadataRefreshInterval);
+            }
+        }
+    }
+
+    /**
+     * Schedules the periodic refresh of the metadata on the refresh executor. The task only holds a weak reference
+     * to the handler, and cancels itself once the handler has been discarded or when changes cannot be detected.
+     *
+     * @param initialDelay Delay of the first refresh in milliseconds
+     */
+    private void scheduleMetadataRefresh(long initialDelay) {
+        MetadataRefreshTask task = new MetadataRefreshTask(this);
+        task.future = metadataRefreshExecutor.scheduleAtFixedRate(task, initialDelay, this.metadataRefreshInterval,
+                                                                  TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This method re-reads the metadata of the tables whose definition changed since the current snapshot,
+     * and replaces the snapshot in use if anything changed. Refreshes are run one at a time by the refresh executor.
+     *
+     * @return false if the database exposes no change markers, in which case every refresh would re-read and
+     * replace the whole metadata, so only the first refresh after loading a persisted snapshot is worth running
+     */
+    private boolean refreshMetaData() {
+        try {
+            RDBMSMetadataSnapshot current = this.metadata;
+            RDBMSMetadataSnapshot snapshot = readMetaData(generateTableList(this.oDataTableList), current);
+            if (snapshot != current) {
+                this.metadata = snapshot;
+                saveMetadataSnapshot(snapshot);
+            }
+            return snapshot.getDdlTimes() != null;
+        } catch (ODataServiceFault | RuntimeException e) {
+            log.error("Error occurred while refreshing the OData metadata of " + this.configID + " config. :" +
+                      e.getMessage(), e);
+            return true;
+        }
+    }
+
+    /**
+     * Periodic metadata refresh of a handler.
+     */
+    private static class MetadataRefreshTask implements Runnable {
+        private final WeakReference<RDBMSDataHandler> handler;
+        private volatile ScheduledFuture<?> future;
+
+        private MetadataRefreshTask(RDBMSDataHandler handler) {
+            this.handler = new WeakReference<>(handler);
+        }
+
+        @Override
+        public void run() {
+            RDBMSDataHandler handler = this.handler.get();
+            if ((handler == null || !handler.refreshMetaData()) && this.future != null) {
+                this.future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * This method reads the metadata of the given tables. Tables whose change marker is the same as in the
+     * previous snapshot are not introspected again, neither are their relations unless they involve a changed table.
+     *
+     * @param tables   Tables to read
+     * @param previous Previous snapshot, null to read everything
+     * @return The new snapshot, or the previous one if nothing changed
+     * @throws ODataServiceFault
+     */
+    private RDBMSMetadataSnapshot readMetaData(List<String> tables, RDBMSMetadataSnapshot previous)
+            throws ODataServiceFault {
         Connection connection = null;
         try {
             connection = initializeConnection();
             DatabaseMetaData metadata = connection.getMetaData();
             String catalog = connection.getCatalog();
-            for (String tableName : this.tableList) {
-                this.tableMetaData.put(tableName, readTableColumnMetaData(tableName, metadata));
-                this.primaryKeys.put(tableName, readTablePrimaryKeys(tableName, metadata, catalog));
+            Map<String, Long> ddlTimes = this.metadataCache ? readDDLTimes(connection) : null;
+            // the maps are only filled here, the snapshot created from them is never modified afterwards
+            Map<String, Map<String, DataColumn>> tableMetaData = new HashMap<>();
+            Map<String, List<String>> primaryKeys = new HashMap<>();
+            Map<String, Map<String, List<ForeignKey>>> foreignKeys = new HashMap<>();
+            Map<String, NavigationTable> navigationProperties = new HashMap<>();
+            Map<String, Map<String, Integer>> rdbmsDataTypes = new HashMap<>(tables.size());
+            Set<String> changedTables = new HashSet<>();
+            for (String tableName : tables) {
+                if (previous != null && previous.isUnchanged(tableName, ddlTimes == null ? null : ddlTimes.get(tableName))) {
+                    tableMetaData.put(tableName, previous.getTableMetaData().get(tableName));
+                    primaryKeys.put(tableName, previous.getPrimaryKeys().get(tableName));
+                    if (previous.getRdbmsDataTypes().containsKey(tableName)) {
+                        rdbmsDataTypes.put(tableName, previous.getRdbmsDataTypes().get(tableName));
+                    }
+                } else {
+                    tableMetaData.put(tableName, readTableColumnMetaData(tableName, metadata, rdbmsDataTypes));
+                    primaryKeys.put(tableName, readTablePrimaryKeys(tableName, metadata, catalog));
+                    changedTables.add(tableName);
+                }
+            }
+            if (previous != null) {
+                for (String tableName : previous.getTableList()) {
+                    if (!tables.contains(tableName)) {
+                        changedTables.add(tableName);
+                    }
+                }
+                if (changedTables.isEmpty()) {
+                    return previous;
+                }
             }
-            for (String tableName : this.tableList) { // executes this in a separate loop because it needs the tableMetaData structure to be complete
-            	NavigationTable nt = readForeignKeys(tableName, metadata, catalog, metadata.storesLowerCaseIdentifiers(), metadata.storesUpperCaseIdentifiers());
-                if (nt != null)
-                    this.navigationProperties.put(tableName, nt);
+            // relations are read in a separate step because it needs the tableMetaData structure to be complete
+            boolean storesLower = metadata.storesLowerCaseIdentifiers();
+            boolean storesUpper = metadata.storesUpperCaseIdentifiers();
+            Set<String> relatedTables;
+            if (previous == null || dbType.contains(MSSQL_SERVER)) {
+                relatedTables = new HashSet<>(tables);
+            } else {
+                // a changed table affects the navigation properties of the tables it was related to
+                relatedTables = getRelatedTables(changedTables, previous.getForeignKeys());
+            }
+            Set<String> readTables = new HashSet<>();
+            while (!relatedTables.isEmpty()) {
+                for (String tableName : relatedTables) {
+                    if (tables.contains(tableName)) {
+                        NavigationTable nt = readForeignKeys(tableName, metadata, catalog, storesLower, storesUpper,
+                                                             tableMetaData, foreignKeys);
+                        if (nt != null) {
+                            navigationProperties.put(tableName, nt);
+                        }
+                    }
+                    readTables.add(tableName);
+                }
+                // as well as the tables it is related to after the change
+                relatedTables = getRelatedTables(changedTables, foreignKeys);
+                relatedTables.removeAll(readTables);
+            }
+            if (previous != null) {
+                for (String tableName : tables) {
+                    if (!readTables.contains(tableName)) {
+                        if (previous.getForeignKeys().containsKey(tableName)) {
+                            foreignKeys.put(tableName, previous.getForeignKeys().get(tableName));
+                        }
+                        if (previous.getNavigationProperties().containsKey(tableName)) {
+                            navigationProperties.put(tableName, previous.getNavigationProperties().get(tableName));
+                        }
+                    }
+                }
             }
             if (dbType.contains(MSSQL_SERVER))
-                fillNavPropertiesForMSSQL(metadata, catalog, metadata.storesLowerCaseIdentifiers(), metadata.storesUpperCaseIdentifiers());
+                fillNavPropertiesForMSSQL(tables, foreignKeys, navigationProperties);
+            return new RDBMSMetadataSnapshot(getMetadataFingerprint(metadata),
+                                             previous == null ? 0 : previous.getVersion() + 1, tables, ddlTimes,
+                                             tableMetaData, primaryKeys, foreignKeys, navigationProperties,
+                                             rdbmsDataTypes);
         } catch (SQLException e) {
             throw new ODataServiceFault(e, "Error in reading tables from the database. :" + e.getMessage());
         } finally {
@@ -1554,6 +2639,190 @@ public class RDBMSDataHandler implements ODataDataHandler {
         }
     }
 
+    /**
+     * Returns the given tables along with the tables they have foreign keys with.
+     *
+     * @param tables      Tables
+     * @param foreignKeys Foreign keys of the tables
+     * @return Related tables
+     */
+    private Set<String> getRelatedTables(Set<String> tables, Map<String, Map<String, List<ForeignKey>>> foreignKeys) {
+        Set<String> relatedTables = new HashSet<>(tables);
+        for (String tableName : tables) {
+            Map<String, List<ForeignKey>> tableFKs = foreignKeys.get(tableName);
+            if (tableFKs != null) {
+                relatedTables.addAll(tableFKs.keySet());
+            }
+        }
+        for (Map.Entry<String, Map<String, List<ForeignKey>>> tableFKs : foreignKeys.entrySet()) {
+            for (String tableName : tables) {
+                if (tableFKs.getValue().containsKey(tableName)) {
+                    relatedTables.add(tableFKs.getKey());
+                }
+            }
+        }
+        return relatedTables;
+    }
+
+    /**
+     * This method reads a change marker of each table from the catalog: the last DDL change time on Oracle and
+     * SQL Server, and on MySQL a checksum of the column and key definitions, as an in-place or instant
+     * ALTER TABLE leaves the creation time of the table untouched. Each table is stored both with and without
+     * its schema prefix, as the table list uses whichever form the driver reports.
+     *
+     * @param connection Database connection
+     * @return Map of table name to change marker, null if the database does not expose it
+     */
+    private Map<String, Long> readDDLTimes(Connection connection) {
+        String query;
+        if (dbType.contains(ORACLE_SERVER)) {
+            query = "SELECT USER, OBJECT_NAME, LAST_DDL_TIME FROM USER_OBJECTS WHERE OBJECT_TYPE IN ('TABLE', 'VIEW')";
+        } else if (dbType.contains(MSSQL_SERVER)) {
+            query = "SELECT s.name, o.name, o.modify_date FROM sys.objects o JOIN sys.schemas s " +
+                    "ON o.schema_id = s.schema_id WHERE o.type IN ('U', 'V')";
+        } else if (dbType.contains(MYSQL)) {
+            query = "SELECT TABLE_SCHEMA, TABLE_NAME, SUM(CHECKSUM) FROM (" +
+                    "SELECT TABLE_SCHEMA, TABLE_NAME, CRC32(CONCAT_WS(':', ORDINAL_POSITION, COLUMN_NAME, " +
+                    "COLUMN_TYPE, IS_NULLABLE, COLUMN_KEY, IFNULL(COLUMN_DEFAULT, ''), EXTRA)) AS CHECKSUM " +
+                    "FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = DATABASE() UNION ALL " +
+                    "SELECT TABLE_SCHEMA, TABLE_NAME, CRC32(CONCAT_WS(':', CONSTRAINT_NAME, COLUMN_NAME, " +
+                    "REFERENCED_TABLE_NAME, REFERENCED_COLUMN_NAME)) FROM information_schema.KEY_COLUMN_USAGE " +
+                    "WHERE TABLE_SCHEMA = DATABASE()) DEFINITIONS GROUP BY TABLE_SCHEMA, TABLE_NAME";
+        } else {
+            return null;
+        }
+        Statement statement = null;
+        ResultSet resultSet = null;
+        try {
+            statement = connection.createStatement();
+            resultSet = statement.executeQuery(query);
+            Map<String, Long> ddlTimes = new HashMap<>();
+            boolean checksum = dbType.contains(MYSQL);
+            while (resultSet.next()) {
+                Long ddlTime;
+                if (checksum) {
+                    ddlTime = resultSet.getLong(3);
+                } else {
+                    Timestamp timestamp = resultSet.getTimestamp(3);
+                    ddlTime = timestamp == null ? null : timestamp.getTime();
+                }
+                if (ddlTime != null) {
+                    ddlTimes.put(resultSet.getString(2), ddlTime);
+                    ddlTimes.put(resultSet.getString(1) + SPECIAL_CHAR_SCHEMA_TBL_SEPARATOR + resultSet.getString(2),
+                                 ddlTime);
+                }
+            }
+            return ddlTimes;
+        } catch (SQLException e) {
+            log.warn("Unable to read table change markers, the OData metadata will be fully refreshed. :" +
+                     e.getMessage());
+            return null;
+        } finally {
+            releaseResources(resultSet, statement);
+        }
+    }
+
+    /**
+     * Returns the string identifying the database and the OData configuration of this handler.
+     *
+     * @param metadata Database metadata
+     * @return Fingerprint
+     * @throws SQLException
+     */
+    private String getMetadataFingerprint(DatabaseMetaData metadata) throws SQLException {
+        return this.configID + "|" + metadata.getURL() + "|" + metadata.getUserName() + "|" + this.odataConfig;
+    }
+
+    /**
+     * Returns the file the metadata snapshot of this handler is persisted in, under the data directory of the
+     * Carbon home. Without a Carbon home the snapshot is not persisted, rather than being written to a shared
+     * directory where any local user could replace it.
+     *
+     * @param fingerprint Fingerprint of the snapshot
+     * @return Snapshot file, null if there is no Carbon home
+     */
+    private File getMetadataSnapshotFile(String fingerprint) {
+        String baseDir = CarbonUtils.getCarbonHome();
+        if (baseDir == null) {
+            return null;
+        }
+        File dir = new File(baseDir + File.separator + "repository" + File.separator + "data", METADATA_SNAPSHOT_DIR);
+        return new File(dir, this.configID.replaceAll("[^A-Za-z0-9_\\-]", "_") + "_" +
+                             Integer.toHexString(fingerprint.hashCode()) + ".ser");
+    }
+
+    /**
+     * Loads the persisted metadata snapshot of this handler.
+     *
+     * @return Metadata snapshot, null if there is no usable snapshot
+     */
+    private RDBMSMetadataSnapshot loadMetadataSnapshot() {
+        Connection connection = null;
+        ObjectInputStream in = null;
+        try {
+            connection = initializeConnection();
+            String fingerprint = getMetadataFingerprint(connection.getMetaData());
+            File file = getMetadataSnapshotFile(fingerprint);
+            if (file == null || !file.exists()) {
+                return null;
+            }
+            in = new MetadataSnapshotInputStream(new BufferedInputStream(new FileInputStream(file)));
+            RDBMSMetadataSnapshot snapshot = (RDBMSMetadataSnapshot) in.readObject();
+            return fingerprint.equals(snapshot.getFingerprint()) ? snapshot : null;
+        } catch (SQLException | IOException | ClassNotFoundException | ClassCastException e) {
+            log.warn("Unable to load the OData metadata snapshot of " + this.configID + " config. :" + e.getMessage());
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignore) {
+                    // ignore
+                }
+            }
+            releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Persists the metadata snapshot, the file is replaced only once it has been fully written.
+     *
+     * @param snapshot Metadata snapshot
+     */
+    private void saveMetadataSnapshot(RDBMSMetadataSnapshot snapshot) {
+        File file = getMetadataSnapshotFile(snapshot.getFingerprint());
+        if (file == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Carbon home is not set, the OData metadata snapshot of " + this.configID +
+                          " config is not persisted");
+            }
+            return;
+        }
+        File tmpFile = new File(file.getPath() + ".tmp");
+        ObjectOutputStream out = null;
+        try {
+            if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+                throw new IOException("Unable to create directory " + file.getParent());
+            }
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeObject(snapshot);
+            out.close();
+            out = null;
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Unable to persist the OData metadata snapshot of " + this.configID + " config. :" +
+                     e.getMessage());
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignore) {
+                    // ignore
+                }
+            }
+        }
+    }
+
     /**
      * This method creates a list of tables available in the DB.
      *
@@ -1637,16 +2906,18 @@ public class RDBMSDataHandler implements ODataDataHandler {
     /**
      * This method reads foreign keys of the table.
      *
-     * @param tableName Name of the table
+     * @param tableName     Name of the table
+     * @param tableMetaData Column metadata of all the tables
+     * @param foreignKeys   Map the foreign keys of the table are added to
      * @throws ODataServiceFault
      */
-    private NavigationTable readForeignKeys(String tableName, DatabaseMetaData metaData, String catalog, boolean storesLower, boolean storesUpper)
+    private NavigationTable readForeignKeys(String tableName, DatabaseMetaData metaData, String catalog, boolean storesLower, boolean storesUpper,
+                                            Map<String, Map<String, DataColumn>> tableMetaData,
+                                            Map<String, Map<String, List<ForeignKey>>> foreignKeys)
             throws ODataServiceFault {
         ResultSet resultSetExp = null;
         ResultSet resultSetImp = null;
         
-        if (foreignKeys == null)
-            foreignKeys = new HashMap<String, Map<String, List<ForeignKey>>>(); // initializes the Table->Foreign Keys map
         Map<String, List<ForeignKey>> tableFKs = foreignKeys.get(tableName); // Map: Foreign table name -> Foreign keys to reach such foreign table
         if (tableFKs == null) {
             tableFKs = new HashMap<String, List<ForeignKey>>();
@@ -1654,13 +2925,22 @@ public class RDBMSDataHandler implements ODataDataHandler {
         }
         
         try {
-            resultSetExp = metaData.getExportedKeys(catalog, null, tableName); // Retrieves the set of foreign keys of other tables that point to this table. MicroSoft SQL does not seem to work with this method, which will always return an empty set.
-            resultSetImp = metaData.getImportedKeys(catalog, null, tableName); // Retrieves the set of foreign keys of this table that point to other tables.
+            // the tables of a schema are named schema__table, as in the table list
+            String schema = null;
+            String dbTableName = tableName;
+            if (tableName.contains(SPECIAL_CHAR_SCHEMA_TBL_SEPARATOR)) {
+                int pos = tableName.indexOf(SPECIAL_CHAR_SCHEMA_TBL_SEPARATOR);
+                schema = tableName.substring(0, pos);
+                dbTableName = tableName.substring(pos + SPECIAL_CHAR_SCHEMA_TBL_SEPARATOR.length());
+            }
+            resultSetExp = metaData.getExportedKeys(catalog, schema, dbTableName); // Retrieves the set of foreign keys of other tables that point to this table. MicroSoft SQL does not seem to work with this method, which will always return an empty set.
+            resultSetImp = metaData.getImportedKeys(catalog, schema, dbTableName); // Retrieves the set of foreign keys of this table that point to other tables.
             NavigationTable navigationLinks = new NavigationTable();
             if (!dbType.equals(MSSQL_SERVER)) { // getExportedKeys does not work with MicroSoft SQL, so this would just throw exceptions
                 while (resultSetExp.next()) { 
                     String primaryKeyColumnName = resultSetExp.getString("PKCOLUMN_NAME");
-                    String foreignKeyTableName = resultSetExp.getString("FKTABLE_NAME"); // name of the foreign table related to tableName
+                    String foreignKeyTableName = getRelatedTableName(schema, resultSetExp.getString("FKTABLE_SCHEM"),
+                                                                     resultSetExp.getString("FKTABLE_NAME")); // name of the foreign table related to tableName
                     String foreignKeyColumnName = resultSetExp.getString("FKCOLUMN_NAME");
                     for (String s : tableMetaData.get(tableName).keySet()) { // corrects case
                         if ( (storesLower && s.toLowerCase().equals(primaryKeyColumnName)) ||
@@ -1679,7 +2959,7 @@ public class RDBMSDataHandler implements ODataDataHandler {
                         toForeignTableFKs = new ArrayList<ForeignKey>();
                         tableFKs.put(foreignKeyTableName,  toForeignTableFKs); // adds the list of foreign keys involved in the connection
                     }
-                    ForeignKey fk = new ForeignKey(ForeignKey.FKType.EXPORTED, resultSetExp.getString("PKTABLE_CAT"), resultSetExp.getString("PKTABLE_NAME"), primaryKeyColumnName,
+                    ForeignKey fk = new ForeignKey(ForeignKey.FKType.EXPORTED, resultSetExp.getString("PKTABLE_CAT"), tableName, primaryKeyColumnName,
                             resultSetExp.getString("FKTABLE_CAT"), foreignKeyTableName, foreignKeyColumnName);
                     toForeignTableFKs.add(fk); // adds the foreign key to the list
                 }
@@ -1687,7 +2967,8 @@ public class RDBMSDataHandler implements ODataDataHandler {
             
             try { // MicroSoft SQL throws an exception when there are no more elements, instead of just returning false, so this try-catch is necessary
                 while (resultSetImp.next()) { // thankfully at least getImportedKeys works in MicroSoft SQL
-                    String foreignKeyTableName = resultSetImp.getString("PKTABLE_NAME");
+                    String foreignKeyTableName = getRelatedTableName(schema, resultSetImp.getString("PKTABLE_SCHEM"),
+                                                                     resultSetImp.getString("PKTABLE_NAME"));
                     String foreignKeyColumnName = resultSetImp.getString("PKCOLUMN_NAME");
                     if(tableMetaData.get(foreignKeyTableName) == null) continue; 
                     for (String s : tableMetaData.get(foreignKeyTableName).keySet()) { // corrects case
@@ -1701,7 +2982,7 @@ public class RDBMSDataHandler implements ODataDataHandler {
                         toForeignTableFKs = new ArrayList<ForeignKey>();
                         tableFKs.put(foreignKeyTableName, toForeignTableFKs); // adds the list of foreign keys involved in the connection
                     }
-                    ForeignKey fk = new ForeignKey(ForeignKey.FKType.IMPORTED, resultSetImp.getString("FKTABLE_CAT"), resultSetImp.getString("FKTABLE_NAME"), resultSetImp.getString("FKCOLUMN_NAME"),
+                    ForeignKey fk = new ForeignKey(ForeignKey.FKType.IMPORTED, resultSetImp.getString("FKTABLE_CAT"), tableName, resultSetImp.getString("FKCOLUMN_NAME"),
                             resultSetImp.getString("PKTABLE_CAT"), foreignKeyTableName, foreignKeyColumnName);
                     toForeignTableFKs.add(fk); // adds the foreign key to the list
                     
@@ -1717,7 +2998,7 @@ public class RDBMSDataHandler implements ODataDataHandler {
                             foreignTableFKs.put(tableName, toTableFKs); // adds the list of foreign keys involved in the connection
                         }
                         ForeignKey fkMS = new ForeignKey(ForeignKey.FKType.EXPORTED, resultSetImp.getString("PKTABLE_CAT"),foreignKeyTableName,foreignKeyColumnName,
-                                resultSetImp.getString("FKTABLE_CAT"), resultSetImp.getString("FKTABLE_NAME"), resultSetImp.getString("FKCOLUMN_NAME"));
+                                resultSetImp.getString("FKTABLE_CAT"), tableName, resultSetImp.getString("FKCOLUMN_NAME"));
                         toTableFKs.add(fkMS);
                     }
                 }
@@ -1737,7 +3018,24 @@ public class RDBMSDataHandler implements ODataDataHandler {
         }
     }
     
-    private void fillNavPropertiesForMSSQL(DatabaseMetaData metaData, String catalog, boolean storesLower, boolean storesUpper) {
+    /**
+     * Returns the name of a table related by a foreign key, qualified with its schema as in the table list when
+     * the tables are read with their schemas.
+     *
+     * @param schema        Schema of the table the foreign keys are read from, null if the tables have no schema
+     * @param relatedSchema Schema of the related table
+     * @param relatedTable  Name of the related table in the database
+     * @return Name of the related table
+     */
+    private String getRelatedTableName(String schema, String relatedSchema, String relatedTable) {
+        if (schema == null || relatedSchema == null) {
+            return relatedTable;
+        }
+        return relatedSchema + SPECIAL_CHAR_SCHEMA_TBL_SEPARATOR + relatedTable;
+    }
+
+    private void fillNavPropertiesForMSSQL(List<String> tableList, Map<String, Map<String, List<ForeignKey>>> foreignKeys,
+                                           Map<String, NavigationTable> navigationProperties) {
         for (String tableName : tableList) {
             NavigationTable navigationLinks = new NavigationTable();
             Map<String, List<ForeignKey>> tableFKs = foreignKeys.get(tableName);
@@ -1757,20 +3055,21 @@ public class RDBMSDataHandler implements ODataDataHandler {
 
     @Override
     public Map<String, Map<String, DataColumn>> getTableMetadata() {
-        return this.tableMetaData;
+        return this.metadata.getTableMetaData();
     }
 
     /**
      * This method creates a SQL query to update data.
      *
+     * @param metadata   Metadata snapshot the update is made with
      * @param tableName  Name of the table
      * @param properties Properties
      * @return sql Query
      */
-    private String createUpdateEntitySQL(String tableName, ODataEntry properties) {
-        List<String> pKeys = primaryKeys.get(tableName);
+    private String createUpdateEntitySQL(RDBMSMetadataSnapshot metadata, String tableName, ODataEntry properties) {
+        List<String> pKeys = metadata.getPrimaryKeys().get(tableName);
         StringBuilder sql = new StringBuilder();
-        sql.append("UPDATE ").append(tableName).append(" SET ");
+        sql.append("UPDATE ").append(new TableReference(tableName).getQualifiedName()).append(" SET ");
         boolean propertyMatch = false;
         for (String column : properties.getNames()) {
             if (!pKeys.contains(column)) {
@@ -1797,15 +3096,16 @@ public class RDBMSDataHandler implements ODataDataHandler {
     /**
      * This method creates a SQL query to insert data in table.
      *
+     * @param metadata  Metadata snapshot the entity is inserted with
      * @param tableName Name of the table
      * @return sqlQuery
      */
-    private String createInsertSQL(String tableName, ODataEntry entry) {
+    private String createInsertSQL(RDBMSMetadataSnapshot metadata, String tableName, ODataEntry entry) {
         StringBuilder sql = new StringBuilder();
-        sql.append("INSERT INTO ").append(tableName).append(" (");
+        sql.append("INSERT INTO ").append(new TableReference(tableName).getQualifiedName()).append(" (");
         boolean propertyMatch = false;
         for (String column : entry.getNames()) {
-            if (this.rdbmsDataTypes.get(tableName).keySet().contains(column)) {
+            if (metadata.getRdbmsDataTypes().get(tableName).keySet().contains(column)) {
                 if (propertyMatch) {
                     sql.append(",");
                 }
@@ -1816,7 +3116,7 @@ public class RDBMSDataHandler implements ODataDataHandler {
         sql.append(" ) VALUES ( ");
         propertyMatch = false;
         for (String column : entry.getNames()) {
-            if (this.rdbmsDataTypes.get(tableName).keySet().contains(column)) {
+            if (metadata.getRdbmsDataTypes().get(tableName).keySet().contains(column)) {
                 if (propertyMatch) {
                     sql.append(",");
                 }
@@ -1831,61 +3131,53 @@ public class RDBMSDataHandler implements ODataDataHandler {
     /**
      * This method creates SQL query to read data with keys.
      *
+     * @param metadata		Metadata snapshot the entity is read with
      * @param dbName		Name of the database the table belongs to
      * @param tableName 	Name of the table
      * @param keys      	Keys
-     * @param expandOption	Used to handle the $expand command
+     * @param lock			Whether the rows read are locked until the end of the transaction
      * @return sql 			The SQL query to read data with keys
-     * @throws ODataServiceFault	handleExpand: FilterExpressionVisitor: error building JOIN command while visiting the $filter nested within $expand
      */
-    private String createReadSqlWithKeys(String dbName, String tableName, ODataEntry keys, ExpandOption expandOption) throws ODataServiceFault {
+    private String createReadSqlWithKeys(RDBMSMetadataSnapshot metadata, String dbName, String tableName,
+                                         ODataEntry keys, boolean lock) {
         StringBuilder sql = new StringBuilder();
         RDBMSODataQuery rdbmsQuery = new RDBMSODataQuery();
         rdbmsQuery.setDBType(this.dbType);
-        if (expandOption != null) {
-            try {
-                handleExpand(rdbmsQuery, dbName, tableName, expandOption); // returns proper SELECT statement if there are JOINs to perform
-            } catch ( ODataApplicationException | ExpressionVisitException e) { // error, if triggered it's likely that it was caused by a $filter nested within the $expand
-                throw new ODataServiceFault(e, "There was an error while handling the $expand command: " + e.getMessage());
-            }
-        }
-        
-        if (rdbmsQuery.getSelect() == null || rdbmsQuery.getSelect().size() == 0) { // There is no expand option, so we can just SELECT * from the table
-            rdbmsQuery.addSelect("*");
-            rdbmsQuery.setFrom(tableName);
-        }
+        TableReference tableReference = new TableReference(tableName);
+        rdbmsQuery.addSelect("*");
+        boolean lockHint = lock && MSSQL_SERVER.equals(this.dbType); // SQL Server has no FOR UPDATE on queries
+        rdbmsQuery.setFrom(tableReference.getQualifiedName() + (lockHint ? " WITH (UPDLOCK, ROWLOCK)" : ""));
         sql.append(rdbmsQuery.printSelect() + rdbmsQuery.printFrom()).append(" WHERE ");
         String columnPrefix = "";
         if (dbName != null && !dbName.equals("") && dbType.contains(MYSQL))
             columnPrefix = dbName + ".";
         boolean propertyMatch = false;
-        for (String column : this.rdbmsDataTypes.get(tableName).keySet()) {
+        for (String column : metadata.getRdbmsDataTypes().get(tableName).keySet()) {
             if (keys.getNames().contains(column)) {
                 if (propertyMatch) {
                     sql.append(" AND ");
                 }
-                sql.append(columnPrefix + tableName + "." + column).append(" = ").append(" ? ");
+                sql.append(columnPrefix + tableReference.table + "." + column).append(" = ").append(" ? ");
                 propertyMatch = true;
             }
         }
-        
-        if (rdbmsQuery.getOrderBy() != null && rdbmsQuery.getOrderBy().size() != 0) {
-            sql.append(rdbmsQuery.printOrderBy());
+        if (lock && !lockHint) {
+            sql.append(" FOR UPDATE");
         }
-        
         return sql.toString();
     }
 
     /**
      * This method creates SQL query to delete data.
      *
+     * @param metadata  Metadata snapshot the entity is deleted with
      * @param tableName Name of the table
      * @return sql Query
      */
-    private String createDeleteSQL(String tableName) {
+    private String createDeleteSQL(RDBMSMetadataSnapshot metadata, String tableName) {
         StringBuilder sql = new StringBuilder();
-        sql.append("DELETE FROM ").append(tableName).append(" WHERE ");
-        List<String> pKeys = primaryKeys.get(tableName);
+        sql.append("DELETE FROM ").append(new TableReference(tableName).getQualifiedName()).append(" WHERE ");
+        List<String> pKeys = metadata.getPrimaryKeys().get(tableName);
         boolean propertyMatch = false;
         for (String key : pKeys) {
             if (propertyMatch) {
@@ -2005,7 +3297,7 @@ public class RDBMSDataHandler implements ODataDataHandler {
 	 * @return	Map of foreign keys
 	 */
 	public Map<String, Map<String, List<ForeignKey>>> getForeignKeys() {
-		return this.foreignKeys;
+		return this.metadata.getForeignKeys();
 	}
 	
 	/**
@@ -2016,7 +3308,7 @@ public class RDBMSDataHandler implements ODataDataHandler {
 	 * @return				The list of columns that make up the foreign key that links the two tables together
 	 */
 	public List<ForeignKey> getForeignKeyBetween(String tableName, String foreignTable) {
-		Map<String, List<ForeignKey>> tableFKs = foreignKeys.get(tableName);
+		Map<String, List<ForeignKey>> tableFKs = this.metadata.getForeignKeys().get(tableName);
 		if (tableFKs != null)
 			return tableFKs.get(foreignTable);
 		return null;
@@ -2027,9 +3319,10 @@ public class RDBMSDataHandler implements ODataDataHandler {
 	 */
 	private void printForeignKeys() {
 		System.out.println("Database Type: " + dbType);
-		for (String table : tableList) {
+		RDBMSMetadataSnapshot metadata = this.metadata;
+		for (String table : metadata.getTableList()) {
 			System.out.println("FOREIGN TABLE FOR " + table);
-			Map <String, List<ForeignKey>> foreignTables = foreignKeys.get(table);
+			Map <String, List<ForeignKey>> foreignTables = metadata.getForeignKeys().get(table);
 			if (foreignTables != null) {
 				for (String foreignTable : foreignTables.keySet()) {
 					System.out.println(" To " + foreignTable + ": ");
@@ -2047,9 +3340,10 @@ public class RDBMSDataHandler implements ODataDataHandler {
 	 */
 	private void printNavigationProperties() {
 		System.out.println("Database Type: " + dbType);
-		for (String table : tableList) {
+		RDBMSMetadataSnapshot metadata = this.metadata;
+		for (String table : metadata.getTableList()) {
 			System.out.println("NAVIGATION PROPERTIES FOR " + table);
-			NavigationTable navTable = navigationProperties.get(table);
+			NavigationTable navTable = metadata.getNavigationProperties().get(table);
 			if (navTable != null) {
 				for (String foreignTable : navTable.getTables()) {
 					System.out.println(" To " + foreignTable + ": ");
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2015, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.dataservices.core.odata;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class holds the database metadata that the RDBMS OData handler builds the EDM from,
+ * so that it can be persisted and reloaded instead of introspecting every table at startup.
+ * A snapshot is immutable once created: a metadata refresh creates a new snapshot and the handler
+ * swaps it in as a whole, so that a request reads all its metadata from the same snapshot.
+ *
+ * @see RDBMSDataHandler
+ */
+public class RDBMSMetadataSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * Identifies the database and OData configuration the snapshot was read from.
+     */
+    private final String fingerprint;
+
+    /**
+     * Version of the metadata, incremented by each refresh that finds a change.
+     */
+    private final long version;
+
+    private final List<String> tableList;
+
+    private final Map<String, Map<String, DataColumn>> tableMetaData;
+
+    private final Map<String, List<String>> primaryKeys;
+
+    private final Map<String, Map<String, List<ForeignKey>>> foreignKeys;
+
+    private final Map<String, NavigationTable> navigationProperties;
+
+    private final Map<String, Map<String, Integer>> rdbmsDataTypes;
+
+    /**
+     * Change markers of the tables as reported by the catalog, null if the database does not expose them.
+     */
+    private final Map<String, Long> ddlTimes;
+
+    public RDBMSMetadataSnapshot(String fingerprint, long version, List<String> tableList, Map<String, Long> ddlTimes,
+                                 Map<String, Map<String, DataColumn>> tableMetaData,
+                                 Map<String, List<String>> primaryKeys,
+                                 Map<String, Map<String, List<ForeignKey>>> foreignKeys,
+                                 Map<String, NavigationTable> navigationProperties,
+                                 Map<String, Map<String, Integer>> rdbmsDataTypes) {
+        this.fingerprint = fingerprint;
+        this.version = version;
+        this.tableList = Collections.unmodifiableList(new ArrayList<>(tableList));
+        this.ddlTimes = ddlTimes == null ? null : Collections.unmodifiableMap(new HashMap<>(ddlTimes));
+        this.tableMetaData = Collections.unmodifiableMap(new HashMap<>(tableMetaData));
+        this.primaryKeys = Collections.unmodifiableMap(new HashMap<>(primaryKeys));
+        this.foreignKeys = Collections.unmodifiableMap(new HashMap<>(foreignKeys));
+        this.navigationProperties = Collections.unmodifiableMap(new HashMap<>(navigationProperties));
+        this.rdbmsDataTypes = Collections.unmodifiableMap(new HashMap<>(rdbmsDataTypes));
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<String> getTableList() {
+        return tableList;
+    }
+
+    public Map<String, Map<String, DataColumn>> getTableMetaData() {
+        return tableMetaData;
+    }
+
+    public Map<String, List<String>> getPrimaryKeys() {
+        return primaryKeys;
+    }
+
+    public Map<String, Map<String, List<ForeignKey>>> getForeignKeys() {
+        return foreignKeys;
+    }
+
+    public Map<String, NavigationTable> getNavigationProperties() {
+        return navigationProperties;
+    }
+
+    public Map<String, Map<String, Integer>> getRdbmsDataTypes() {
+        return rdbmsDataTypes;
+    }
+
+    public Map<String, Long> getDdlTimes() {
+        return ddlTimes;
+    }
+
+    /**
+     * Returns whether the table was introspected in this snapshot and its definition has not changed since.
+     *
+     * @param tableName Name of the table
+     * @param ddlTime   Current change marker of the table, null if unknown
+     * @return true if the stored metadata of the table can be reused
+     */
+    public boolean isUnchanged(String tableName, Long ddlTime) {
+        return ddlTime != null && this.ddlTimes != null && this.tableMetaData.containsKey(tableName) &&
+               ddlTime.equals(this.ddlTimes.get(tableName));
+    }
+}
@@ -0,0 +1,244 @@
+package org.wso2.carbon.dataservices.core.odata;
+
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Class that represents the OData $apply option, as far as it can be translated into a single GROUP BY query.
+ * Supported transformations are filter, groupby and aggregate, with the sum, min, max, average and countdistinct
+ * methods and the virtual $count property, e.g. filter(Price gt 5)/groupby((Category),aggregate(Price with sum as Total)).
+ * A filter can only precede the aggregation, since the filters on aggregated values would require a HAVING clause
+ * on properties that are not part of the entity type.
+ */
+public class RDBMSODataApply {
+	public static final String SUM = "sum";
+	public static final String MIN = "min";
+	public static final String MAX = "max";
+	public static final String AVERAGE = "average";
+	public static final String COUNT_DISTINCT = "countdistinct";
+	public static final String COUNT = "$count"; // virtual property counting the rows of each group
+
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+	private List<String> filters = new ArrayList<String>(); // $filter expressions applied before the aggregation
+	private List<String> groupBy = new ArrayList<String>(); // columns to group by
+	private List<Aggregation> aggregations = new ArrayList<Aggregation>(); // aggregated values
+
+	/**
+	 * Represents one aggregate expression, i.e. "column with method as alias".
+	 */
+	public static class Aggregation {
+		private String column;
+		private String method;
+		private String alias;
+
+		public Aggregation(String column, String method, String alias) {
+			this.column = column;
+			this.method = method;
+			this.alias = alias;
+		}
+
+		/**
+		 * Returns the aggregated column, or $count.
+		 *
+		 * @return	The aggregated column
+		 */
+		public String getColumn() {
+			return column;
+		}
+
+		/**
+		 * Returns the aggregation method, null for $count.
+		 *
+		 * @return	The aggregation method
+		 */
+		public String getMethod() {
+			return method;
+		}
+
+		/**
+		 * Returns the name of the aggregated value in the results.
+		 *
+		 * @return	The alias
+		 */
+		public String getAlias() {
+			return alias;
+		}
+	}
+
+	/**
+	 * Parses the text of the $apply option.
+	 *
+	 * @param apply		Decoded text of $apply
+	 * @return			The parsed option
+	 * @throws ODataApplicationException	Unsupported or invalid transformation
+	 */
+	public static RDBMSODataApply parse(String apply) throws ODataApplicationException {
+		RDBMSODataApply result = new RDBMSODataApply();
+		boolean aggregated = false;
+		for (String transformation : splitTopLevel(apply, '/')) {
+			transformation = transformation.trim();
+			int open = transformation.indexOf('(');
+			if (open < 0 || !transformation.endsWith(")"))
+				throw badRequest("Invalid $apply transformation: " + transformation);
+			String name = transformation.substring(0, open).trim();
+			String arguments = transformation.substring(open + 1, transformation.length() - 1).trim();
+			if (aggregated)
+				throw badRequest("Only one groupby or aggregate transformation is supported, as the last one of $apply.");
+			switch (name) {
+				case "filter":
+					if (arguments.isEmpty())
+						throw badRequest("Empty filter transformation in $apply.");
+					result.filters.add(arguments);
+					break;
+				case "groupby":
+					List<String> groupByArguments = splitTopLevel(arguments, ',');
+					String columns = groupByArguments.get(0).trim();
+					if (!columns.startsWith("(") || !columns.endsWith(")"))
+						throw badRequest("The properties of groupby must be enclosed in parentheses.");
+					for (String column : splitTopLevel(columns.substring(1, columns.length() - 1), ','))
+						result.groupBy.add(checkIdentifier(column.trim()));
+					if (groupByArguments.size() > 2)
+						throw badRequest("Unsupported groupby transformation: " + transformation);
+					if (groupByArguments.size() == 2) {
+						String aggregate = groupByArguments.get(1).trim();
+						if (!aggregate.startsWith("aggregate(") || !aggregate.endsWith(")"))
+							throw badRequest("Only aggregate is supported as the transformation of groupby.");
+						result.parseAggregations(aggregate.substring("aggregate(".length(), aggregate.length() - 1));
+					}
+					aggregated = true;
+					break;
+				case "aggregate":
+					result.parseAggregations(arguments);
+					aggregated = true;
+					break;
+				default:
+					throw badRequest("Unsupported $apply transformation: " + name);
+			}
+		}
+		if (!aggregated)
+			throw badRequest("$apply must end with a groupby or aggregate transformation.");
+		return result;
+	}
+
+	/**
+	 * Parses the comma separated aggregate expressions.
+	 *
+	 * @param arguments		Arguments of the aggregate transformation
+	 * @throws ODataApplicationException	Invalid aggregate expression
+	 */
+	private void parseAggregations(String arguments) throws ODataApplicationException {
+		for (String expression : splitTopLevel(arguments, ',')) {
+			String[] tokens = expression.trim().split("\\s+");
+			if (tokens.length == 3 && COUNT.equals(tokens[0]) && "as".equals(tokens[1])) {
+				aggregations.add(new Aggregation(COUNT, null, checkAlias(tokens[2])));
+			} else if (tokens.length == 5 && "with".equals(tokens[1]) && "as".equals(tokens[3])) {
+				String method = tokens[2];
+				if (!SUM.equals(method) && !MIN.equals(method) && !MAX.equals(method) && !AVERAGE.equals(method) &&
+					!COUNT_DISTINCT.equals(method))
+					throw badRequest("Unsupported aggregation method: " + method);
+				aggregations.add(new Aggregation(checkIdentifier(tokens[0]), method, checkAlias(tokens[4])));
+			} else {
+				throw badRequest("Invalid aggregate expression: " + expression.trim());
+			}
+		}
+	}
+
+	private String checkAlias(String alias) throws ODataApplicationException {
+		checkIdentifier(alias);
+		if (groupBy.contains(alias))
+			throw badRequest("The alias " + alias + " is already a grouping property.");
+		for (Aggregation aggregation : aggregations) {
+			if (aggregation.getAlias().equals(alias))
+				throw badRequest("The alias " + alias + " is used more than once.");
+		}
+		return alias;
+	}
+
+	private static String checkIdentifier(String name) throws ODataApplicationException {
+		if (!IDENTIFIER.matcher(name).matches()) // names end up in the generated SQL
+			throw badRequest("Invalid property name in $apply: " + name);
+		return name;
+	}
+
+	/**
+	 * Splits a string on a separator, ignoring the separators within parentheses and string literals.
+	 *
+	 * @param s			String to split
+	 * @param separator	Separator
+	 * @return			The parts of the string
+	 */
+	private static List<String> splitTopLevel(String s, char separator) {
+		List<String> parts = new ArrayList<String>();
+		int depth = 0;
+		boolean quoted = false;
+		int start = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\'')
+				quoted = !quoted;
+			else if (!quoted && c == '(')
+				depth++;
+			else if (!quoted && c == ')')
+				depth--;
+			else if (!quoted && depth == 0 && c == separator) {
+				parts.add(s.substring(start, i));
+				start = i + 1;
+			}
+		}
+		parts.add(s.substring(start));
+		return parts;
+	}
+
+	private static ODataApplicationException badRequest(String message) {
+		return new ODataApplicationException(message, HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ROOT);
+	}
+
+	/**
+	 * Returns the $filter expressions to apply before the aggregation.
+	 *
+	 * @return	The list of expressions
+	 */
+	public List<String> getFilters() {
+		return filters;
+	}
+
+	/**
+	 * Returns the columns to group by, empty if the whole entity set is aggregated.
+	 *
+	 * @return	The list of columns
+	 */
+	public List<String> getGroupBy() {
+		return groupBy;
+	}
+
+	/**
+	 * Returns the aggregated values.
+	 *
+	 * @return	The list of aggregations
+	 */
+	public List<Aggregation> getAggregations() {
+		return aggregations;
+	}
+
+	/**
+	 * Returns whether the name is a grouping property or an aggregation alias.
+	 *
+	 * @param name	The name
+	 * @return		true if the name is part of the results
+	 */
+	public boolean isResultProperty(String name) {
+		if (groupBy.contains(name))
+			return true;
+		for (Aggregation aggregation : aggregations) {
+			if (aggregation.getAlias().equals(name))
+				return true;
+		}
+		return false;
+	}
+}
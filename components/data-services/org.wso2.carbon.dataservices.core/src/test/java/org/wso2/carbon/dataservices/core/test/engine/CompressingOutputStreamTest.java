@@ -0,0 +1,244 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.transport.http.HTTPConstants;
+import org.wso2.carbon.dataservices.common.DBConstants;
+import org.wso2.carbon.dataservices.core.CompressingOutputStream;
+import org.wso2.carbon.dataservices.core.DBUtils;
+
+/**
+ * Checks that the responses written through a CompressingOutputStream are compressed with the negotiated
+ * encoding once they reach the minimum size, and written as they are below it, and the encoding negotiated
+ * with the Accept-Encoding header.
+ */
+public class CompressingOutputStreamTest extends TestCase {
+
+	private Map<String, String> headers;
+
+	public CompressingOutputStreamTest() {
+		super("CompressingOutputStreamTest");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.headers = new HashMap<String, String>();
+	}
+
+	public void testGzipRoundTrip() throws Exception {
+		byte[] data = createResponse(DBConstants.DEFAULT_RESPONSE_COMPRESSION_MIN_SIZE * 20);
+		byte[] compressed = this.write(DBConstants.CONTENT_ENCODING_GZIP, data);
+		assertTrue(compressed.length < data.length);
+		assertEquals(DBConstants.CONTENT_ENCODING_GZIP, this.headers.get(HTTPConstants.HEADER_CONTENT_ENCODING));
+		assertEquals(HTTPConstants.HEADER_ACCEPT_ENCODING, this.headers.get("Vary"));
+		assertEquals(new String(data, "UTF-8"), new String(read(new GZIPInputStream(
+				new ByteArrayInputStream(compressed))), "UTF-8"));
+	}
+
+	public void testDeflateRoundTrip() throws Exception {
+		byte[] data = createResponse(DBConstants.DEFAULT_RESPONSE_COMPRESSION_MIN_SIZE * 20);
+		byte[] compressed = this.write(DBConstants.CONTENT_ENCODING_DEFLATE, data);
+		assertTrue(compressed.length < data.length);
+		assertEquals(DBConstants.CONTENT_ENCODING_DEFLATE, this.headers.get(HTTPConstants.HEADER_CONTENT_ENCODING));
+		assertEquals(new String(data, "UTF-8"), new String(read(new InflaterInputStream(
+				new ByteArrayInputStream(compressed))), "UTF-8"));
+	}
+
+	public void testRoundTripWrittenByteByByte() throws Exception {
+		byte[] data = createResponse(DBConstants.DEFAULT_RESPONSE_COMPRESSION_MIN_SIZE * 2);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		OutputStream compressingOut = this.create(DBConstants.CONTENT_ENCODING_GZIP, out);
+		try {
+			for (byte b : data) {
+				compressingOut.write(b);
+			}
+			CompressingOutputStream.finish(compressingOut);
+		} finally {
+			CompressingOutputStream.release(compressingOut);
+		}
+		assertEquals(new String(data, "UTF-8"), new String(read(new GZIPInputStream(
+				new ByteArrayInputStream(out.toByteArray()))), "UTF-8"));
+	}
+
+	public void testBelowMinSizeNotCompressed() throws Exception {
+		byte[] data = createResponse(DBConstants.DEFAULT_RESPONSE_COMPRESSION_MIN_SIZE - 1);
+		assertEquals(new String(data, "UTF-8"), new String(this.write(DBConstants.CONTENT_ENCODING_GZIP, data),
+				"UTF-8"));
+		assertTrue(this.headers.isEmpty());
+		assertEquals(new String(data, "UTF-8"), new String(this.write(DBConstants.CONTENT_ENCODING_DEFLATE, data),
+				"UTF-8"));
+		assertTrue(this.headers.isEmpty());
+	}
+
+	public void testFlushBelowMinSizeKeepsData() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		OutputStream compressingOut = this.create(DBConstants.CONTENT_ENCODING_GZIP, out);
+		try {
+			compressingOut.write("<small/>".getBytes("UTF-8"));
+			compressingOut.flush();
+			/* nothing is written until it is known whether the response is compressed */
+			assertEquals(0, out.size());
+			CompressingOutputStream.finish(compressingOut);
+		} finally {
+			CompressingOutputStream.release(compressingOut);
+		}
+		assertEquals("<small/>", out.toString("UTF-8"));
+	}
+
+	public void testNotCompressedWithoutEncoding() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertSame(out, this.create(null, out));
+	}
+
+	public void testAcceptedContentEncoding() throws Exception {
+		assertEquals(DBConstants.CONTENT_ENCODING_GZIP, getAcceptedContentEncoding("gzip, deflate"));
+		assertEquals(DBConstants.CONTENT_ENCODING_GZIP, getAcceptedContentEncoding("deflate, x-gzip"));
+		assertEquals(DBConstants.CONTENT_ENCODING_DEFLATE, getAcceptedContentEncoding("DEFLATE"));
+		assertNull(getAcceptedContentEncoding("br, compress"));
+		assertNull(getAcceptedContentEncoding(""));
+		assertNull(getAcceptedContentEncoding(null));
+	}
+
+	public void testAcceptedContentEncodingQualityValues() throws Exception {
+		assertEquals(DBConstants.CONTENT_ENCODING_DEFLATE, getAcceptedContentEncoding("gzip;q=0.1, deflate;q=0.9"));
+		assertEquals(DBConstants.CONTENT_ENCODING_GZIP, getAcceptedContentEncoding("gzip ; q=0.5, deflate;q=0.5"));
+		assertEquals(DBConstants.CONTENT_ENCODING_DEFLATE, getAcceptedContentEncoding("gzip;q=0, deflate"));
+		assertEquals(DBConstants.CONTENT_ENCODING_DEFLATE, getAcceptedContentEncoding("gzip;q=0.000, deflate;q=0.2"));
+		assertNull(getAcceptedContentEncoding("gzip;q=0, deflate;q=0.0"));
+		/* an invalid quality value is not acceptable */
+		assertEquals(DBConstants.CONTENT_ENCODING_DEFLATE, getAcceptedContentEncoding("gzip;q=high, deflate"));
+		assertNull(getAcceptedContentEncoding("gzip;q=1.5"));
+	}
+
+	public void testAcceptedContentEncodingIdentity() throws Exception {
+		/* the response is compressed whenever it can be, refusing the identity coding changes nothing */
+		assertEquals(DBConstants.CONTENT_ENCODING_GZIP, getAcceptedContentEncoding("identity;q=0, gzip"));
+		assertEquals(DBConstants.CONTENT_ENCODING_DEFLATE, getAcceptedContentEncoding("deflate, identity;q=0"));
+		assertNull(getAcceptedContentEncoding("identity"));
+		assertNull(getAcceptedContentEncoding("identity;q=0"));
+	}
+
+	public void testAcceptedContentEncodingWildcard() throws Exception {
+		assertEquals(DBConstants.CONTENT_ENCODING_GZIP, getAcceptedContentEncoding("*"));
+		assertEquals(DBConstants.CONTENT_ENCODING_GZIP, getAcceptedContentEncoding("identity;q=0, *"));
+		/* the wildcard stands for the codings which are not listed */
+		assertEquals(DBConstants.CONTENT_ENCODING_DEFLATE, getAcceptedContentEncoding("gzip;q=0, *"));
+		assertEquals(DBConstants.CONTENT_ENCODING_DEFLATE, getAcceptedContentEncoding("*;q=0.3, deflate;q=0.8"));
+		assertEquals(DBConstants.CONTENT_ENCODING_GZIP, getAcceptedContentEncoding("*;q=0.3, deflate;q=0.1"));
+		assertNull(getAcceptedContentEncoding("*;q=0"));
+		assertNull(getAcceptedContentEncoding("*;q=0, identity"));
+	}
+
+	private byte[] write(String contentEncoding, byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		OutputStream compressingOut = this.create(contentEncoding, out);
+		try {
+			/* written in chunks, as by the message formatters */
+			for (int off = 0; off < data.length; off += 100) {
+				compressingOut.write(data, off, Math.min(100, data.length - off));
+			}
+			CompressingOutputStream.finish(compressingOut);
+		} finally {
+			CompressingOutputStream.release(compressingOut);
+		}
+		return out.toByteArray();
+	}
+
+	private OutputStream create(String contentEncoding, OutputStream out) {
+		HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(
+				CompressingOutputStreamTest.class.getClassLoader(), new Class<?>[] { HttpServletResponse.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if ("setHeader".equals(method.getName()) || "addHeader".equals(method.getName())) {
+							headers.put((String) args[0], (String) args[1]);
+						}
+						return null;
+					}
+				});
+		MessageContext msgContext = new MessageContext();
+		msgContext.setProperty(DBConstants.RESPONSE_CONTENT_ENCODING, contentEncoding);
+		msgContext.setProperty(HTTPConstants.MC_HTTP_SERVLETRESPONSE, response);
+		return CompressingOutputStream.create(msgContext, out);
+	}
+
+	/**
+	 * Returns the compression negotiated for a request with the given Accept-Encoding header.
+	 */
+	private static String getAcceptedContentEncoding(final String acceptEncoding) {
+		HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(
+				CompressingOutputStreamTest.class.getClassLoader(), new Class<?>[] { HttpServletRequest.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if ("getHeader".equals(method.getName()) &&
+								HTTPConstants.HEADER_ACCEPT_ENCODING.equals(args[0])) {
+							return acceptEncoding;
+						}
+						return null;
+					}
+				});
+		MessageContext msgContext = new MessageContext();
+		msgContext.setProperty(HTTPConstants.MC_HTTP_SERVLETREQUEST, request);
+		return DBUtils.getAcceptedContentEncoding(msgContext);
+	}
+
+	/**
+	 * Returns an XML response of the given size.
+	 */
+	private static byte[] createResponse(int size) throws IOException {
+		StringBuilder response = new StringBuilder("<Products>");
+		for (int i = 0; response.length() < size; i++) {
+			response.append("<Product><id>").append(i).append("</id><name>product ").append(i)
+					.append("</name></Product>");
+		}
+		response.setLength(size - "</Products>".length());
+		return response.append("</Products>").toString().getBytes("UTF-8");
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+}
@@ -0,0 +1,196 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.addressing.EndpointReference;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.description.AxisOperation;
+import org.apache.axis2.description.AxisService;
+import org.apache.axis2.description.InOutAxisOperation;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.axis2.engine.Handler;
+import org.apache.axis2.engine.Phase;
+import org.apache.axis2.phaseresolver.PhaseMetadata;
+import org.apache.axis2.transport.http.HTTPConstants;
+import org.wso2.carbon.dataservices.common.DBConstants;
+import org.wso2.carbon.dataservices.core.DBResourceDispatcher;
+import org.wso2.carbon.dataservices.core.ResourcePathTrie;
+
+/**
+ * Sends REST requests through the Dispatch phase with the DBResourceDispatcher added by the data services
+ * deployer, and checks the operations they are dispatched to and their path variables.
+ */
+public class DBResourceDispatcherTest extends TestCase {
+
+	private static final String SERVICE_NAME = "EmployeeService";
+
+	private AxisConfiguration axisConfig;
+
+	private Phase dispatchPhase;
+
+	private AxisService service;
+
+	public DBResourceDispatcherTest() {
+		super("DBResourceDispatcherTest");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.axisConfig = new AxisConfiguration();
+		List<Phase> phases = new ArrayList<Phase>();
+		phases.add(new Phase(PhaseMetadata.PHASE_TRANSPORTIN));
+		this.dispatchPhase = new Phase(PhaseMetadata.PHASE_DISPATCH);
+		phases.add(this.dispatchPhase);
+		this.axisConfig.setInPhasesUptoAndIncludingPostDispatch(phases);
+		this.service = new AxisService(SERVICE_NAME);
+		ResourcePathTrie<AxisOperation> trie = new ResourcePathTrie<AxisOperation>();
+		trie.add("GET", "employees", this.addOperation("_getemployees"));
+		trie.add("GET", "employees/{id}", this.addOperation("_getemployees_id"));
+		trie.add("GET", "employees/count", this.addOperation("_getemployees_count"));
+		trie.add("DELETE", "employees/{id}", this.addOperation("_deleteemployees_id"));
+		this.service.addParameter(DBConstants.RESOURCE_PATH_TRIE, trie);
+		this.axisConfig.addService(this.service);
+		DBResourceDispatcher.addToDispatchPhase(this.axisConfig);
+	}
+
+	public void testAddedFirstInDispatchPhase() throws Exception {
+		assertEquals(1, this.dispatchPhase.getHandlerCount());
+		assertTrue(this.dispatchPhase.getHandlers().get(0) instanceof DBResourceDispatcher);
+		/* the deployer of each data services repository adds it, only once */
+		DBResourceDispatcher.addToDispatchPhase(this.axisConfig);
+		assertEquals(1, this.dispatchPhase.getHandlerCount());
+		int count = 0;
+		for (Phase phase : this.axisConfig.getInFlowPhases()) {
+			for (Handler handler : phase.getHandlers()) {
+				if (handler instanceof DBResourceDispatcher) {
+					count++;
+				}
+			}
+		}
+		assertEquals(1, count);
+	}
+
+	public void testRequestDispatched() throws Exception {
+		MessageContext msgContext = this.dispatch("GET", "/services/EmployeeService/employees/12?format=json", null);
+		assertEquals("_getemployees_id", msgContext.getAxisOperation().getName().getLocalPart());
+		assertEquals("12", getPathVariables(msgContext).get("id"));
+		msgContext = this.dispatch("DELETE", "/services/EmployeeService.HTTPEndpoint/employees/7", null);
+		assertEquals("_deleteemployees_id", msgContext.getAxisOperation().getName().getLocalPart());
+		assertEquals("7", getPathVariables(msgContext).get("id"));
+		msgContext = this.dispatch("GET", "/services/EmployeeService/employees", null);
+		assertEquals("_getemployees", msgContext.getAxisOperation().getName().getLocalPart());
+		assertTrue(getPathVariables(msgContext).isEmpty());
+	}
+
+	public void testReplacesOperationResolvedByTransport() throws Exception {
+		/* the regex of the "employees/{id}" resource also matches the count resource */
+		MessageContext msgContext = this.dispatch("GET", "/services/EmployeeService/employees/count",
+				"_getemployees_id");
+		assertEquals("_getemployees_count", msgContext.getAxisOperation().getName().getLocalPart());
+		assertTrue(getPathVariables(msgContext).isEmpty());
+		assertEquals("_getemployees_id", ((AxisOperation) msgContext.getProperty(
+				DBConstants.RESOURCE_TRANSPORT_OPERATION)).getName().getLocalPart());
+		assertEquals("_getemployees_count", msgContext.getEnvelope().getBody().getFirstElement().getLocalName());
+	}
+
+	public void testInputMessageBuiltForResolvedOperation() throws Exception {
+		/* the transport resolves no operation and builds an empty input message */
+		MessageContext msgContext = this.dispatch("GET", "/services/EmployeeService/employees/12?format=json",
+				null);
+		assertNull(msgContext.getProperty(DBConstants.RESOURCE_TRANSPORT_OPERATION));
+		OMElement inputMessage = msgContext.getEnvelope().getBody().getFirstElement();
+		assertEquals("_getemployees_id", inputMessage.getLocalName());
+		assertEquals("json", inputMessage.getFirstChildWithName(new QName("format")).getText());
+		/* the input message built by the transport for the same operation is kept */
+		msgContext = this.createRequest("GET", "/services/EmployeeService/employees");
+		msgContext.setAxisOperation(this.service.getOperation(new QName("_getemployees")));
+		SOAPEnvelope envelope = msgContext.getEnvelope();
+		this.dispatchPhase.invoke(msgContext);
+		assertSame(envelope, msgContext.getEnvelope());
+		assertNull(envelope.getBody().getFirstElement());
+		assertEquals("_getemployees", ((AxisOperation) msgContext.getProperty(
+				DBConstants.RESOURCE_TRANSPORT_OPERATION)).getName().getLocalPart());
+	}
+
+	public void testRequestsLeftToOtherDispatchers() throws Exception {
+		/* no resource, another HTTP method */
+		MessageContext msgContext = this.dispatch("GET", "/services/EmployeeService/customers", null);
+		assertNull(msgContext.getAxisOperation());
+		assertNull(msgContext.getProperty(DBConstants.RESOURCE_PATH_VARIABLES));
+		msgContext = this.dispatch("POST", "/services/EmployeeService/employees", "_getemployees");
+		assertEquals("_getemployees", msgContext.getAxisOperation().getName().getLocalPart());
+		assertNull(msgContext.getProperty(DBConstants.RESOURCE_PATH_VARIABLES));
+		/* another service with a longer name */
+		msgContext = this.dispatch("GET", "/services/EmployeeServiceV2/employees", null);
+		assertNull(msgContext.getAxisOperation());
+		/* a SOAP request */
+		msgContext = this.createRequest("GET", "/services/EmployeeService/employees");
+		msgContext.setDoingREST(false);
+		this.dispatchPhase.invoke(msgContext);
+		assertNull(msgContext.getAxisOperation());
+	}
+
+	/**
+	 * Sends a request of the service through the Dispatch phase.
+	 * @param transportOperation The operation resolved by the HTTP transport before the phases, if any
+	 */
+	private MessageContext dispatch(String method, String path, String transportOperation) throws Exception {
+		MessageContext msgContext = this.createRequest(method, path);
+		if (transportOperation != null) {
+			msgContext.setAxisOperation(this.service.getOperation(new QName(transportOperation)));
+		}
+		this.dispatchPhase.invoke(msgContext);
+		return msgContext;
+	}
+
+	private MessageContext createRequest(String method, String path) throws Exception {
+		MessageContext msgContext = new MessageContext();
+		msgContext.setDoingREST(true);
+		msgContext.setProperty(HTTPConstants.HTTP_METHOD, method);
+		msgContext.setTo(new EndpointReference("http://localhost:9763" + path));
+		msgContext.setAxisService(this.service);
+		msgContext.setEnvelope(OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope());
+		return msgContext;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, String> getPathVariables(MessageContext msgContext) {
+		Map<String, String> variables = (Map<String, String>) msgContext.getProperty(
+				DBConstants.RESOURCE_PATH_VARIABLES);
+		assertNotNull(variables);
+		return variables;
+	}
+
+	private AxisOperation addOperation(String name) {
+		AxisOperation operation = new InOutAxisOperation(new QName(name));
+		this.service.addOperation(operation);
+		return operation;
+	}
+
+}
@@ -0,0 +1,293 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.engine;
+
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+
+import junit.framework.TestCase;
+
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.transport.http.HTTPConstants;
+import org.json.JSONObject;
+import org.wso2.carbon.dataservices.common.DBConstants;
+import org.wso2.carbon.dataservices.common.DBConstants.DBSFields;
+import org.wso2.carbon.dataservices.core.DBUtils;
+import org.wso2.carbon.dataservices.core.engine.CSVResultWriter;
+import org.wso2.carbon.dataservices.core.engine.ExportResultWriter;
+import org.wso2.carbon.dataservices.core.engine.ExternalParam;
+import org.wso2.carbon.dataservices.core.engine.ExternalParamCollection;
+import org.wso2.carbon.dataservices.core.engine.OutputElementGroup;
+import org.wso2.carbon.dataservices.core.engine.ParamValue;
+import org.wso2.carbon.dataservices.core.engine.Result;
+import org.wso2.carbon.dataservices.core.engine.StaticOutputElement;
+import org.wso2.carbon.dataservices.core.engine.XMLWriterHelper;
+
+/**
+ * Checks the CSV and newline delimited JSON records written from the output elements of a result, and the
+ * export format selected with the Accept header.
+ */
+public class ExportResultWriterTest extends TestCase {
+
+	private static final String NAMESPACE = "http://ws.wso2.org/dataservice/exportResultTest";
+
+	private Result result;
+
+	private XMLWriterHelper helper;
+
+	public ExportResultWriterTest() {
+		super("ExportResultWriterTest");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.result = new Result("Products", "Product", NAMESPACE, null, DBConstants.ResultTypes.XML);
+		OutputElementGroup group = new OutputElementGroup(null, NAMESPACE, null, null);
+		group.setParentResult(this.result);
+		group.addElementEntry(createElement("id", "integer"));
+		group.addElementEntry(createElement("name", "string"));
+		group.addElementEntry(createElement("price", "decimal"));
+		group.addElementEntry(createElement("note", "string"));
+		this.result.setDefaultElementGroup(group);
+		this.result.applyUserRoles(null);
+		this.helper = new XMLWriterHelper(NAMESPACE);
+	}
+
+	public void testCSV() throws Exception {
+		List<ExternalParamCollection> rows = new ArrayList<ExternalParamCollection>();
+		rows.add(createRow(1, "plain", "1.5", "note"));
+		rows.add(createRow(2, "with, \"quotes\"\nand lines", "2", null));
+		assertEquals("id,name,price,note\r\n" +
+				"1,plain,1.5,note\r\n" +
+				"2,\"with, \"\"quotes\"\"\nand lines\",2,\r\n",
+				this.write(DBConstants.CSV_CONTENT_TYPE, rows));
+	}
+
+	public void testCSVNoRows() throws Exception {
+		assertEquals("", this.write(DBConstants.CSV_CONTENT_TYPE, new ArrayList<ExternalParamCollection>()));
+	}
+
+	public void testCSVHeaderFromResultDefinition() throws Exception {
+		/* the first row has no value for the last columns, the header still has them */
+		StringWriter out = new StringWriter();
+		ExportResultWriter writer = ExportResultWriter.create(DBConstants.CSV_CONTENT_TYPE, out);
+		writer.startRow(this.result);
+		writer.writeStartRow("Product");
+		writer.writeField("id", new ParamValue("1"), null, false);
+		writer.writeEndElement();
+		writer.endRow();
+		writer.startRow(this.result);
+		this.helper.startRowElement(writer, this.result.getRowName(), this.result.getResultType(), this.result,
+				createRow(2, "second", "2.5", "note"));
+		this.result.getDefaultElementGroup().execute(writer, createRow(2, "second", "2.5", "note"), 0, false);
+		this.helper.endElement(writer);
+		writer.endRow();
+		writer.flush();
+		assertEquals("id,name,price,note\r\n" +
+				"1,,,\r\n" +
+				"2,second,2.5,note\r\n", out.toString());
+	}
+
+	public void testCSVColumnNamesOfNestedGroups() throws Exception {
+		Result result = new Result("Customers", "Customer", NAMESPACE, null, DBConstants.ResultTypes.XML);
+		OutputElementGroup group = new OutputElementGroup(null, NAMESPACE, null, null);
+		group.setParentResult(result);
+		group.addAttributeEntry(createAttribute("id"));
+		group.addElementEntry(createElement("name", "string"));
+		OutputElementGroup address = new OutputElementGroup("address", NAMESPACE, null, null);
+		address.addElementEntry(createElement("city", "string"));
+		address.addElementEntry(createElement("zip", "string"));
+		group.addOutputElementGroupEntry(address);
+		result.setDefaultElementGroup(group);
+		result.applyUserRoles(null);
+		assertEquals(Arrays.asList("id", "name", "address.city", "address.zip"),
+				new ArrayList<String>(CSVResultWriter.getColumnNames(result)));
+	}
+
+	public void testCSVHeaderFromFirstRow() throws Exception {
+		StringWriter out = new StringWriter();
+		ExportResultWriter writer = ExportResultWriter.create(DBConstants.CSV_CONTENT_TYPE, out);
+		writeCustomer(writer, "name", "first");
+		writeCustomer(writer, "name", "second");
+		writer.flush();
+		assertEquals("Customer.name\r\nfirst\r\nsecond\r\n", out.toString());
+	}
+
+	public void testCSVValueWithoutColumn() throws Exception {
+		StringWriter out = new StringWriter();
+		ExportResultWriter writer = ExportResultWriter.create(DBConstants.CSV_CONTENT_TYPE, out);
+		writeCustomer(writer, "name", "first");
+		try {
+			writeCustomer(writer, "email", "second@example.org");
+			fail("A value with no column in the header must not be dropped");
+		} catch (XMLStreamException e) {
+			assertTrue(e.getNestedException().getMessage(), e.getNestedException().getMessage().contains("email"));
+		}
+	}
+
+	public void testRequestedExportContentType() throws Exception {
+		assertEquals(DBConstants.CSV_CONTENT_TYPE, getRequestedExportContentType("text/csv"));
+		assertEquals(DBConstants.NDJSON_CONTENT_TYPE, getRequestedExportContentType(
+				"application/xml;q=0.5, Application/X-NDJSON"));
+		assertEquals(DBConstants.NDJSON_CONTENT_TYPE, getRequestedExportContentType(
+				"text/csv;q=0.4,application/x-ndjson;q=0.8"));
+		assertEquals(DBConstants.CSV_CONTENT_TYPE, getRequestedExportContentType(
+				"application/x-ndjson;q=0.5,text/csv;q=0.5"));
+		/* a zero quality value means not acceptable */
+		assertNull(getRequestedExportContentType("text/csv;q=0"));
+		assertEquals(DBConstants.NDJSON_CONTENT_TYPE, getRequestedExportContentType(
+				"text/csv;q=0.0, application/x-ndjson;q=0.1"));
+		assertNull(getRequestedExportContentType("text/csv;q=invalid"));
+		/* only the exact media types select an export */
+		assertNull(getRequestedExportContentType("application/x-ndjson-foo"));
+		assertNull(getRequestedExportContentType("text/csvx, application/xml"));
+		assertNull(getRequestedExportContentType("*/*"));
+		assertNull(getRequestedExportContentType("text/*"));
+		assertNull(getRequestedExportContentType(null));
+	}
+
+	public void testNDJSON() throws Exception {
+		List<ExternalParamCollection> rows = new ArrayList<ExternalParamCollection>();
+		for (int i = 1; i <= 3; i++) {
+			rows.add(createRow(i, "product " + i, i + ".25", i == 2 ? null : "note " + i));
+		}
+		String[] lines = this.write(DBConstants.NDJSON_CONTENT_TYPE, rows).split("\n");
+		assertEquals(3, lines.length);
+		for (int i = 0; i < lines.length; i++) {
+			JSONObject product = new JSONObject(lines[i]);
+			assertTrue(product.get("id") instanceof Number);
+			assertEquals(i + 1, product.getInt("id"));
+			assertEquals("product " + (i + 1), product.getString("name"));
+			assertEquals(i + 1.25, product.getDouble("price"), 0.0001);
+			if (i == 1) {
+				assertTrue(product.isNull("note"));
+			} else {
+				assertEquals("note " + (i + 1), product.getString("note"));
+			}
+		}
+	}
+
+	public void testNDJSONNestedElements() throws Exception {
+		StringWriter out = new StringWriter();
+		ExportResultWriter writer = ExportResultWriter.create(DBConstants.NDJSON_CONTENT_TYPE, out);
+		writer.startRow();
+		writer.writeStartElement(NAMESPACE, "Customer");
+		writer.writeAttribute("id", "7");
+		writer.writeStartElement(NAMESPACE, "address");
+		writer.writeStartElement(NAMESPACE, "city");
+		writer.writeCharacters("Trento");
+		writer.writeEndElement();
+		writer.writeEndElement();
+		writer.writeStartElement(NAMESPACE, "phone");
+		writer.writeCharacters("1");
+		writer.writeEndElement();
+		writer.writeStartElement(NAMESPACE, "phone");
+		writer.writeCharacters("2");
+		writer.writeEndElement();
+		writer.writeEndElement();
+		writer.endRow();
+		writer.flush();
+		JSONObject customer = new JSONObject(out.toString().trim());
+		assertEquals("7", customer.getString("Customer.id"));
+		assertEquals("Trento", customer.getString("Customer.address.city"));
+		assertEquals(2, customer.getJSONArray("Customer.phone").length());
+	}
+
+	private String write(String contentType, List<ExternalParamCollection> rows) throws Exception {
+		StringWriter out = new StringWriter();
+		ExportResultWriter writer = ExportResultWriter.create(contentType, out);
+		this.helper.startWrapperElement(writer, NAMESPACE, this.result.getElementName(),
+				this.result.getResultType());
+		/* the rows are delimited as the query does for the top level rows */
+		for (ExternalParamCollection row : rows) {
+			writer.startRow(this.result);
+			this.helper.startRowElement(writer, this.result.getRowName(), this.result.getResultType(),
+					this.result, row);
+			this.result.getDefaultElementGroup().execute(writer, row, 0, false);
+			this.helper.endElement(writer);
+			writer.endRow();
+		}
+		this.helper.endElement(writer);
+		writer.flush();
+		return out.toString();
+	}
+
+	/**
+	 * Writes a row made of a customer element with a single child element, without a result definition.
+	 */
+	private static void writeCustomer(ExportResultWriter writer, String name, String value) throws Exception {
+		writer.startRow();
+		writer.writeStartElement(NAMESPACE, "Customer");
+		writer.writeStartElement(NAMESPACE, name);
+		writer.writeCharacters(value);
+		writer.writeEndElement();
+		writer.writeEndElement();
+		writer.endRow();
+	}
+
+	/**
+	 * Returns the export format selected for a request with the given Accept header.
+	 */
+	private static String getRequestedExportContentType(final String accept) throws Exception {
+		HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(
+				ExportResultWriterTest.class.getClassLoader(), new Class<?>[] { HttpServletRequest.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if ("getHeader".equals(method.getName()) && HTTPConstants.HEADER_ACCEPT.equals(args[0])) {
+							return accept;
+						}
+						return null;
+					}
+				});
+		MessageContext msgContext = new MessageContext();
+		msgContext.setProperty(HTTPConstants.MC_HTTP_SERVLETREQUEST, request);
+		return DBUtils.getRequestedExportContentType(msgContext);
+	}
+
+	private static StaticOutputElement createAttribute(String name) throws Exception {
+		return new StaticOutputElement(null, name, name, name, DBSFields.COLUMN, DBSFields.ATTRIBUTE,
+				NAMESPACE, new QName(DBConstants.XSD_NAMESPACE, "string"), null, DBConstants.DataCategory.VALUE,
+				DBConstants.ResultTypes.XML, null, ParamValue.PARAM_VALUE_SCALAR, null);
+	}
+
+	private static StaticOutputElement createElement(String name, String type) throws Exception {
+		return new StaticOutputElement(null, name, name, name, DBSFields.COLUMN, DBSFields.ELEMENT,
+				NAMESPACE, new QName(DBConstants.XSD_NAMESPACE, type), null, DBConstants.DataCategory.VALUE,
+				DBConstants.ResultTypes.XML, null, ParamValue.PARAM_VALUE_SCALAR, null);
+	}
+
+	private static ExternalParamCollection createRow(int id, String name, String price, String note) {
+		ExternalParamCollection row = new ExternalParamCollection();
+		row.addParam(new ExternalParam("id", new ParamValue(String.valueOf(id)), DBSFields.COLUMN));
+		row.addParam(new ExternalParam("name", new ParamValue(name), DBSFields.COLUMN));
+		row.addParam(new ExternalParam("price", new ParamValue(price), DBSFields.COLUMN));
+		row.addParam(new ExternalParam("note", new ParamValue(note), DBSFields.COLUMN));
+		return row;
+	}
+
+}
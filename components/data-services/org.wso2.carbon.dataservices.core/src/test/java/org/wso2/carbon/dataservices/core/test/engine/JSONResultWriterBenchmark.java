@@ -0,0 +1,72 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.engine;
+
+import java.io.ByteArrayOutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+
+import org.json.XML;
+
+/**
+ * Compares the throughput of writing a JSON mapped result directly as JSON with writing it as XML and converting
+ * the XML to JSON, on the fixture of {@link JSONResultWriterTest}. It is not part of the test suites, since its
+ * figures depend on the machine, and is run with:
+ * <pre>
+ * java -cp &lt;test classpath&gt; org.wso2.carbon.dataservices.core.test.engine.JSONResultWriterBenchmark [iterations]
+ * </pre>
+ */
+public class JSONResultWriterBenchmark {
+
+	private static final int DEFAULT_ITERATIONS = 200;
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+		JSONResultWriterTest fixture = new JSONResultWriterTest();
+		fixture.setUp();
+		XMLOutputFactory factory = XMLOutputFactory.newInstance();
+		for (int i = 0; i < iterations / 4; i++) { // warm up
+			writeXMLAsJSON(fixture, factory);
+			fixture.writeJSON(fixture.getRows());
+		}
+		int rows = iterations * fixture.getRows().size();
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			writeXMLAsJSON(fixture, factory);
+		}
+		double xml = rows / ((System.nanoTime() - start) / 1e9);
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			fixture.writeJSON(fixture.getRows());
+		}
+		double json = rows / ((System.nanoTime() - start) / 1e9);
+		System.out.println("JSON result rows written per second: XML converted to JSON = " + (int) xml +
+				", direct JSON = " + (int) json);
+	}
+
+	/**
+	 * Writes the result as XML and converts it to JSON, as it is done when the XML infoset of the result
+	 * is formatted as JSON.
+	 */
+	private static String writeXMLAsJSON(JSONResultWriterTest fixture, XMLOutputFactory factory) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		fixture.writeResult(factory.createXMLStreamWriter(out, "UTF-8"), fixture.getRows());
+		return XML.toJSONObject(out.toString("UTF-8")).toString();
+	}
+
+}
@@ -0,0 +1,270 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.engine;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamWriter;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.wso2.carbon.dataservices.common.DBConstants;
+import org.wso2.carbon.dataservices.common.DBConstants.DBSFields;
+import org.wso2.carbon.dataservices.core.engine.ExternalParam;
+import org.wso2.carbon.dataservices.core.engine.ExternalParamCollection;
+import org.wso2.carbon.dataservices.core.engine.JSONResultWriter;
+import org.wso2.carbon.dataservices.core.engine.OutputElementGroup;
+import org.wso2.carbon.dataservices.core.engine.ParamValue;
+import org.wso2.carbon.dataservices.core.engine.Result;
+import org.wso2.carbon.dataservices.core.engine.StaticOutputElement;
+import org.wso2.carbon.dataservices.core.engine.XMLWriterHelper;
+
+/**
+ * Checks the JSON written directly from the output elements of a JSON mapped result: typed values, escaping,
+ * nested elements, arrays and null values.
+ */
+public class JSONResultWriterTest extends TestCase {
+
+	private static final String NAMESPACE = "http://ws.wso2.org/dataservice/jsonResultTest";
+
+	private static final int ROW_COUNT = 500;
+
+	private Result result;
+
+	private XMLWriterHelper helper;
+
+	private List<ExternalParamCollection> rows;
+
+	public JSONResultWriterTest() {
+		super("JSONResultWriterTest");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.result = new Result("Products", "Product", NAMESPACE, null, DBConstants.ResultTypes.XML);
+		this.result.setJSONMapping(true);
+		OutputElementGroup group = new OutputElementGroup(null, NAMESPACE, null, null);
+		group.setParentResult(this.result);
+		group.addElementEntry(createElement("id", "integer"));
+		group.addElementEntry(createElement("name", "string"));
+		group.addElementEntry(createElement("price", "decimal"));
+		group.addElementEntry(createElement("available", "boolean"));
+		group.addElementEntry(createElement("note", "string"));
+		this.result.setDefaultElementGroup(group);
+		this.result.applyUserRoles(null);
+		this.helper = new XMLWriterHelper(NAMESPACE);
+		this.rows = new ArrayList<ExternalParamCollection>();
+		for (int i = 1; i <= ROW_COUNT; i++) {
+			this.rows.add(createRow(i, "product \"" + i + "\"\n", i + ".25", i % 2 == 0 ? "1" : "false",
+					i % 3 == 0 ? null : "note " + i));
+		}
+	}
+
+	List<ExternalParamCollection> getRows() {
+		return this.rows;
+	}
+
+	public void testTypedValues() throws Exception {
+		JSONArray products = new JSONObject(this.writeJSON(this.rows)).getJSONObject("Products")
+				.getJSONArray("Product");
+		assertEquals(ROW_COUNT, products.length());
+		for (int i = 0; i < ROW_COUNT; i++) {
+			JSONObject product = products.getJSONObject(i);
+			assertEquals(i + 1, product.getInt("id"));
+			assertTrue(product.get("id") instanceof Number);
+			assertEquals("product \"" + (i + 1) + "\"\n", product.getString("name"));
+			assertTrue(product.get("price") instanceof Number);
+			assertEquals(i + 1.25, product.getDouble("price"), 0.0001);
+			assertEquals(Boolean.valueOf((i + 1) % 2 == 0), product.get("available"));
+			if ((i + 1) % 3 == 0) {
+				assertTrue(product.isNull("note"));
+			} else {
+				assertEquals("note " + (i + 1), product.getString("note"));
+			}
+		}
+	}
+
+	public void testSingleRowIsArray() throws Exception {
+		JSONObject products = new JSONObject(this.writeJSON(this.rows.subList(0, 1)))
+				.getJSONObject("Products");
+		assertEquals(1, products.getJSONArray("Product").length());
+	}
+
+	public void testInvalidNumberIsString() throws Exception {
+		List<ExternalParamCollection> invalidRows = new ArrayList<ExternalParamCollection>();
+		invalidRows.add(createRow(1, "product", "NaN", "yes", null));
+		JSONObject product = new JSONObject(this.writeJSON(invalidRows)).getJSONObject("Products")
+				.getJSONArray("Product").getJSONObject(0);
+		assertEquals("NaN", product.get("price"));
+		assertEquals("yes", product.get("available"));
+	}
+
+	public void testNoRows() throws Exception {
+		assertEquals("{\"Products\":{}}", this.writeJSON(new ArrayList<ExternalParamCollection>()));
+	}
+
+	public void testEscaping() throws Exception {
+		String value = "quote \" backslash \\ slash / tab \t cr \r lf \n nul \u0000 bell \u0007 " +
+				"us \u001f del \u007f e\u0301 \u00e9 \u2028 \u2029 \ud83d\ude00";
+		StringWriter out = new StringWriter();
+		JSONResultWriter writer = new JSONResultWriter(out);
+		writer.writeStartElement("Products");
+		writer.writeField("na\"me", new ParamValue(value), null, false);
+		writer.writeEndElement();
+		writer.flush();
+		assertEquals("{\"Products\":{\"na\\\"me\":\"quote \\\" backslash \\\\ slash / tab \\t cr \\r lf \\n " +
+				"nul \\u0000 bell \\u0007 us \\u001f del \u007f e\u0301 \u00e9 \\u2028 \\u2029 " +
+				"\ud83d\ude00\"}}", out.toString());
+		assertEquals(value, new JSONObject(out.toString()).getJSONObject("Products").getString("na\"me"));
+	}
+
+	public void testEscapedText() throws Exception {
+		StringWriter out = new StringWriter();
+		JSONResultWriter writer = new JSONResultWriter(out);
+		writer.writeStartElement("Products");
+		writer.writeStartElement("name");
+		writer.writeCharacters("a \"b\"");
+		writer.writeCharacters(" \\ c\n");
+		writer.writeEndElement();
+		writer.writeStartElement("code");
+		writer.writeAttribute("type", "<\"x\">");
+		writer.writeCharacters("\u0001");
+		writer.writeEndElement();
+		writer.writeEndElement();
+		assertEquals("{\"Products\":{\"name\":\"a \\\"b\\\" \\\\ c\\n\",\"code\":{\"type\":\"<\\\"x\\\">\"," +
+				"\"$\":\"\\u0001\"}}}", out.toString());
+	}
+
+	public void testNestedResults() throws Exception {
+		/* rows with nested rows, as written for a nested query, and nested elements with attributes */
+		StringWriter out = new StringWriter();
+		JSONResultWriter writer = new JSONResultWriter(out);
+		writer.writeStartElement(NAMESPACE, "Orders");
+		for (int order = 1; order <= 2; order++) {
+			writer.writeStartRow("Order");
+			writer.writeField("id", new ParamValue(String.valueOf(order)), new QName(DBConstants.XSD_NAMESPACE,
+					"int"), false);
+			writer.writeStartElement("customer");
+			writer.writeAttribute("id", "c" + order);
+			writer.writeStartElement("name");
+			writer.writeCharacters("customer " + order);
+			writer.writeEndElement();
+			writer.writeEndElement();
+			writer.writeStartElement("Lines");
+			for (int line = 1; line <= order; line++) {
+				writer.writeStartRow("Line");
+				writer.writeField("quantity", new ParamValue(String.valueOf(line * 10)),
+						new QName(DBConstants.XSD_NAMESPACE, "long"), false);
+				writer.writeEndElement();
+			}
+			writer.writeEndElement();
+			writer.writeEndElement();
+		}
+		writer.writeEndDocument();
+		assertEquals("{\"Orders\":{\"Order\":[" +
+				"{\"id\":1,\"customer\":{\"id\":\"c1\",\"name\":\"customer 1\"},\"Lines\":{\"Line\":[{\"quantity\":10}]}}," +
+				"{\"id\":2,\"customer\":{\"id\":\"c2\",\"name\":\"customer 2\"},\"Lines\":{\"Line\":[{\"quantity\":10}," +
+				"{\"quantity\":20}]}}]}}", out.toString());
+	}
+
+	public void testArrayValues() throws Exception {
+		ParamValue prices = new ParamValue(ParamValue.PARAM_VALUE_ARRAY);
+		prices.addArrayValue(new ParamValue("1.5"));
+		prices.addArrayValue(new ParamValue("x"));
+		prices.addArrayValue(new ParamValue((String) null));
+		prices.addArrayValue(new ParamValue("-2e3"));
+		StringWriter out = new StringWriter();
+		JSONResultWriter writer = new JSONResultWriter(out);
+		writer.writeStartElement("Products");
+		writer.writeField("prices", prices, new QName(DBConstants.XSD_NAMESPACE, "decimal"), false);
+		writer.writeField("tags", new ParamValue(ParamValue.PARAM_VALUE_ARRAY), null, false);
+		/* repeated elements are written in one array, until another member is written */
+		writer.writeField("code", new ParamValue("a"), null, true);
+		writer.writeField("code", new ParamValue("b"), null, true);
+		writer.writeField("id", new ParamValue("7"), new QName(DBConstants.XSD_NAMESPACE, "integer"), false);
+		writer.writeField("code", new ParamValue("c"), null, true);
+		writer.writeEndElement();
+		assertEquals("{\"Products\":{\"prices\":[1.5,\"x\",null,-2e3],\"tags\":[],\"code\":[\"a\",\"b\"],\"id\":7," +
+				"\"code\":[\"c\"]}}", out.toString());
+	}
+
+	public void testNullValues() throws Exception {
+		StringWriter out = new StringWriter();
+		JSONResultWriter writer = new JSONResultWriter(out);
+		writer.writeStartElement("Products");
+		writer.writeField("price", null, new QName(DBConstants.XSD_NAMESPACE, "decimal"), false);
+		writer.writeField("available", new ParamValue((String) null), new QName(DBConstants.XSD_NAMESPACE,
+				"boolean"), false);
+		writer.writeField("codes", new ParamValue((String) null), null, true);
+		writer.writeStartElement("note");
+		writer.writeAttribute("xsi", DBConstants.XSI_NAMESPACE, "nil", "true");
+		writer.writeEndElement();
+		writer.writeEmptyElement("empty");
+		writer.writeStartElement("blank");
+		writer.writeCharacters("");
+		writer.writeEndElement();
+		writer.writeEndElement();
+		assertEquals("{\"Products\":{\"price\":null,\"available\":null,\"codes\":[null],\"note\":null,\"empty\":{}," +
+				"\"blank\":\"\"}}", out.toString());
+	}
+
+	String writeJSON(List<ExternalParamCollection> rows) throws Exception {
+		StringWriter out = new StringWriter();
+		this.writeResult(new JSONResultWriter(out), rows);
+		return out.toString();
+	}
+
+	/**
+	 * Writes the result as the call query and the query of a request do.
+	 */
+	void writeResult(XMLStreamWriter writer, List<ExternalParamCollection> rows) throws Exception {
+		this.helper.startWrapperElement(writer, NAMESPACE, this.result.getElementName(),
+				this.result.getResultType());
+		for (ExternalParamCollection row : rows) {
+			this.helper.startRowElement(writer, this.result.getRowName(), this.result.getResultType(),
+					this.result, row);
+			this.result.getDefaultElementGroup().execute(writer, row, 0, false);
+			this.helper.endElement(writer);
+		}
+		this.helper.endElement(writer);
+		writer.flush();
+	}
+
+	private static StaticOutputElement createElement(String name, String type) throws Exception {
+		return new StaticOutputElement(null, name, name, name, DBSFields.COLUMN, DBSFields.ELEMENT,
+				NAMESPACE, new QName(DBConstants.XSD_NAMESPACE, type), null, DBConstants.DataCategory.VALUE,
+				DBConstants.ResultTypes.XML, null, ParamValue.PARAM_VALUE_SCALAR, null);
+	}
+
+	private static ExternalParamCollection createRow(int id, String name, String price, String available,
+			String note) {
+		ExternalParamCollection row = new ExternalParamCollection();
+		row.addParam(new ExternalParam("id", new ParamValue(String.valueOf(id)), DBSFields.COLUMN));
+		row.addParam(new ExternalParam("name", new ParamValue(name), DBSFields.COLUMN));
+		row.addParam(new ExternalParam("price", new ParamValue(price), DBSFields.COLUMN));
+		row.addParam(new ExternalParam("available", new ParamValue(available), DBSFields.COLUMN));
+		row.addParam(new ExternalParam("note", new ParamValue(note), DBSFields.COLUMN));
+		return row;
+	}
+
+}
@@ -0,0 +1,187 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.engine;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import junit.framework.TestCase;
+
+import org.apache.axiom.util.base64.Base64Utils;
+import org.apache.axis2.context.MessageContext;
+import org.wso2.carbon.dataservices.core.auth.JWTAuthorizationProvider;
+
+/**
+ * Checks the cache of the verified JWTs and of their roles, with the signature verification, the tenant, the
+ * role lookup and the clock of the provider replaced.
+ */
+public class JWTAuthorizationProviderTest extends TestCase {
+
+	private static final long NOW = 1000000000000L;
+
+	private TestProvider provider;
+
+	public JWTAuthorizationProviderTest() {
+		super("JWTAuthorizationProviderTest");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.provider = new TestProvider();
+		this.provider.init(new HashMap<String, String>());
+	}
+
+	public void testCacheHitSkipsVerification() throws Exception {
+		MessageContext msgContext = createMessageContext(createToken("alice", NOW / 1000 + 60));
+		assertEquals("alice", this.provider.getUsername(msgContext));
+		assertEquals("alice", this.provider.getUsername(msgContext));
+		assertEquals(1, this.provider.verifications);
+	}
+
+	public void testEntryExpiresAtExp() throws Exception {
+		MessageContext msgContext = createMessageContext(createToken("alice", NOW / 1000 + 60));
+		this.provider.getUsername(msgContext);
+		this.provider.time = NOW + 59999;
+		this.provider.getUsername(msgContext);
+		assertEquals(1, this.provider.verifications);
+		/* the expired token is verified again, and no longer cached */
+		this.provider.time = NOW + 60000;
+		this.provider.getUsername(msgContext);
+		assertEquals(2, this.provider.verifications);
+		this.provider.getUsername(msgContext);
+		assertEquals(3, this.provider.verifications);
+	}
+
+	public void testTokenWithoutExpIsNotCached() throws Exception {
+		MessageContext msgContext = createMessageContext(createToken("alice", null));
+		assertEquals("alice", this.provider.getUsername(msgContext));
+		assertEquals("alice", this.provider.getUsername(msgContext));
+		assertEquals(2, this.provider.verifications);
+	}
+
+	public void testCacheKeyIsolatesTenants() throws Exception {
+		MessageContext msgContext = createMessageContext(createToken("alice", NOW / 1000 + 60));
+		this.provider.getUsername(msgContext);
+		this.provider.tenantId = 1;
+		this.provider.getUsername(msgContext);
+		assertEquals(2, this.provider.verifications);
+		this.provider.tenantId = -1234;
+		this.provider.getUsername(msgContext);
+		this.provider.tenantId = 1;
+		this.provider.getUsername(msgContext);
+		assertEquals(2, this.provider.verifications);
+	}
+
+	public void testRolesExpireBeforeToken() throws Exception {
+		Map<String, String> props = new HashMap<String, String>();
+		props.put("roleCacheTimeout", "1000");
+		this.provider.init(props);
+		MessageContext msgContext = createMessageContext(createToken("alice", NOW / 1000 + 60));
+		assertEquals("alice-role-1", this.provider.getUserRoles(msgContext)[0]);
+		this.provider.time = NOW + 999;
+		assertEquals("alice-role-1", this.provider.getUserRoles(msgContext)[0]);
+		assertEquals(1, this.provider.roleLookups);
+		/* the roles are looked up again while the token is still cached */
+		this.provider.time = NOW + 1000;
+		assertEquals("alice-role-2", this.provider.getUserRoles(msgContext)[0]);
+		assertEquals(2, this.provider.roleLookups);
+		assertEquals(1, this.provider.verifications);
+	}
+
+	public void testInvalidRoleCacheTimeout() throws Exception {
+		Map<String, String> props = new HashMap<String, String>();
+		props.put("roleCacheTimeout", "1s");
+		try {
+			this.provider.init(props);
+			fail("The invalid role cache timeout is accepted");
+		} catch (Exception e) {
+			assertTrue(e.getMessage().contains("1s"));
+		}
+	}
+
+	/**
+	 * Creates a token of the given user, whose signature is not checked by the test provider.
+	 */
+	private static String createToken(String username, Long exp) throws Exception {
+		String header = "{\"typ\":\"JWT\",\"alg\":\"SHA256withRSA\",\"x5t\":\"YWJj\"}";
+		String body = "{\"http://wso2.org/claims/enduser\":\"" + username + "\"" +
+				(exp == null ? "" : ",\"exp\":" + exp) + "}";
+		return Base64Utils.encode(header.getBytes("UTF-8")) + "." + Base64Utils.encode(body.getBytes("UTF-8")) +
+				"." + Base64Utils.encode("signature".getBytes("UTF-8"));
+	}
+
+	private static MessageContext createMessageContext(final String token) {
+		HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(
+				HttpServletRequest.class.getClassLoader(), new Class<?>[] { HttpServletRequest.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if ("getHeader".equals(method.getName()) && "X-JWT-Assertion".equals(args[0])) {
+							return token;
+						}
+						return null;
+					}
+				});
+		MessageContext msgContext = new MessageContext();
+		msgContext.setProperty("transport.http.servletRequest", request);
+		return msgContext;
+	}
+
+	/**
+	 * Provider counting the signature verifications and the role lookups, with a settable tenant and clock.
+	 */
+	private static class TestProvider extends JWTAuthorizationProvider {
+
+		private int verifications;
+
+		private int roleLookups;
+
+		private int tenantId = -1234;
+
+		private long time = NOW;
+
+		@Override
+		protected Boolean validateSignature(String signedJWTToken) {
+			this.verifications++;
+			return true;
+		}
+
+		@Override
+		protected int getTenantId() {
+			return this.tenantId;
+		}
+
+		@Override
+		protected String[] getRolesOfUser(String username) {
+			this.roleLookups++;
+			return new String[] { username + "-role-" + this.roleLookups };
+		}
+
+		@Override
+		protected long currentTimeMillis() {
+			return this.time;
+		}
+
+	}
+
+}
@@ -0,0 +1,228 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.engine;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import junit.framework.TestCase;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.wso2.carbon.dataservices.common.DBConstants;
+import org.wso2.carbon.dataservices.common.DBConstants.DataSourceTypes;
+import org.wso2.carbon.dataservices.core.DataServiceFault;
+import org.wso2.carbon.dataservices.core.description.config.CassandraConfig;
+import org.wso2.carbon.dataservices.core.description.config.SQLConfig;
+import org.wso2.carbon.dataservices.core.description.query.SQLQuery;
+import org.wso2.carbon.dataservices.core.engine.DataService;
+import org.wso2.carbon.dataservices.core.engine.QueryParam;
+import org.wso2.carbon.dataservices.core.odata.ODataDataHandler;
+
+/**
+ * Checks that with the lazy initialization, the SQL and Cassandra configs connect to their data source when they
+ * are activated, not when they are created, and are not activated again once closed, and that the batch query
+ * support of an SQL query is determined on its first use.
+ */
+public class LazyConfigInitTest extends TestCase {
+
+	private String lazyInit;
+
+	private DataService dataService;
+
+	private JdbcConnectionPool pool;
+
+	public LazyConfigInitTest() {
+		super("LazyConfigInitTest");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.lazyInit = System.setProperty(DBConstants.DSS_LAZY_CONFIG_INIT, "true");
+		this.dataService = new DataService("LazyConfigInitService", null, "http://ws.wso2.org/dataservice/lazy",
+				null, null, true, false, null);
+		Class.forName("org.h2.Driver");
+		this.pool = JdbcConnectionPool.create("jdbc:h2:mem:lazy-config-init-test;DB_CLOSE_DELAY=-1", "sa", "");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (this.lazyInit == null) {
+			System.clearProperty(DBConstants.DSS_LAZY_CONFIG_INIT);
+		} else {
+			System.setProperty(DBConstants.DSS_LAZY_CONFIG_INIT, this.lazyInit);
+		}
+		this.pool.dispose();
+	}
+
+	public void testSQLConfigActivatedOnFirstUse() throws Exception {
+		H2Config config = new H2Config(this.dataService, "lazySQL", this.pool);
+		assertEquals(0, config.connections.get());
+		assertTrue(config.hasJDBCBatchUpdateSupport());
+		assertEquals(1, config.connections.get());
+		/* the config is only initialized once */
+		config.activate();
+		assertTrue(config.hasJDBCBatchUpdateSupport());
+		assertEquals(1, config.connections.get());
+	}
+
+	public void testClosedSQLConfigIsNotActivated() throws Exception {
+		H2Config config = new H2Config(this.dataService, "closedSQL", this.pool);
+		config.close();
+		try {
+			config.activate();
+			fail("A closed config is activated");
+		} catch (DataServiceFault e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("closed"));
+		}
+		assertEquals(0, config.connections.get());
+	}
+
+	public void testBatchQuerySupportResolvedOnFirstUse() throws Exception {
+		H2Config config = new H2Config(this.dataService, "batchSQL", this.pool);
+		this.dataService.addConfig(config);
+		SQLQuery query = new SQLQuery(this.dataService, "insertQuery", "batchSQL", false, false, null,
+				"INSERT INTO LAZY_TEST VALUES (?)", new ArrayList<QueryParam>(), null, null, null, null,
+				this.dataService.getDefaultNamespace());
+		assertEquals(0, config.connections.get());
+		assertTrue(query.hasBatchQuerySupport());
+		assertEquals(1, config.connections.get());
+		assertTrue(query.hasBatchQuerySupport());
+		assertEquals(1, config.connections.get());
+	}
+
+	public void testCassandraConfigActivatedOnFirstUse() throws Exception {
+		CassandraConfig config = new CassandraConfig(this.dataService, "lazyCassandra", createCassandraProperties(),
+				false);
+		/* nothing listens on the port, so the connection is attempted, and fails, at the activation */
+		try {
+			config.activate();
+			fail("The Cassandra config is activated without a cluster");
+		} catch (DataServiceFault e) {
+			assertEquals(DBConstants.FaultCodes.CONNECTION_UNAVAILABLE_ERROR, e.getCode());
+		}
+		config.close();
+	}
+
+	public void testClosedCassandraConfigIsNotActivated() throws Exception {
+		CassandraConfig config = new CassandraConfig(this.dataService, "closedCassandra", createCassandraProperties(),
+				false);
+		config.close();
+		try {
+			config.getSession();
+			fail("A closed config is activated");
+		} catch (DataServiceFault e) {
+			/* no cluster is built, which would not be closed */
+			assertFalse(DBConstants.FaultCodes.CONNECTION_UNAVAILABLE_ERROR.equals(e.getCode()));
+			assertTrue(e.getMessage(), e.getMessage().contains("closed"));
+		}
+	}
+
+	private static Map<String, String> createCassandraProperties() {
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put(DBConstants.Cassandra.CASSANDRA_SERVERS, "127.0.0.1");
+		properties.put(DBConstants.Cassandra.PORT, "1");
+		return properties;
+	}
+
+	/**
+	 * SQL config of an H2 connection pool, counting the connections taken from it.
+	 */
+	private static class H2Config extends SQLConfig {
+
+		private final AtomicInteger connections = new AtomicInteger();
+
+		private final DataSource dataSource;
+
+		private H2Config(DataService dataService, String configId, final JdbcConnectionPool pool)
+				throws DataServiceFault {
+			super(dataService, configId, DataSourceTypes.RDBMS, new HashMap<String, String>(), false);
+			this.dataSource = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+					new Class<?>[] { DataSource.class }, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					if ("getConnection".equals(method.getName())) {
+						connections.incrementAndGet();
+					}
+					try {
+						return method.invoke(pool, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				}
+			});
+			if (this.isInitOnCreate()) {
+				try {
+					this.initSQLDataSource();
+				} catch (SQLException e) {
+					throw new DataServiceFault(e, e.getMessage());
+				}
+			}
+		}
+
+		@Override
+		public DataSource getDataSource() {
+			return this.dataSource;
+		}
+
+		@Override
+		public boolean isStatsAvailable() {
+			return false;
+		}
+
+		@Override
+		public int getActiveConnectionCount() {
+			return -1;
+		}
+
+		@Override
+		public int getIdleConnectionCount() {
+			return -1;
+		}
+
+		@Override
+		public boolean isActive() {
+			return true;
+		}
+
+		@Override
+		public synchronized void close() {
+			this.setClosed();
+		}
+
+		@Override
+		public ODataDataHandler createODataHandler() {
+			return null;
+		}
+
+		@Override
+		public boolean isResultSetFieldsCaseSensitive() {
+			return false;
+		}
+
+	}
+
+}
@@ -0,0 +1,190 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.engine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.wso2.carbon.dataservices.common.DBConstants;
+import org.wso2.carbon.dataservices.core.DataServiceFault;
+import org.wso2.carbon.dataservices.core.description.config.RDFConfig;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * Checks the sharing of the model of a RDF config by its queries, and its reload when the RDF file
+ * is modified.
+ */
+public class RDFConfigTest extends TestCase {
+
+	private File rdfFile;
+
+	private RDFConfig config;
+
+	public RDFConfigTest() {
+		super("RDFConfigTest");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.rdfFile = File.createTempFile("rdf-config", ".rdf");
+		this.writeRDF(2);
+		/* the file is checked for modifications at every query */
+		this.config = this.createConfig("0");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		this.config.close();
+		this.rdfFile.delete();
+	}
+
+	public void testSharedModel() throws Exception {
+		Model model = this.config.getRDFModel();
+		assertEquals(2, model.size());
+		assertSame(model, this.config.getRDFModel());
+		this.config.activate();
+		assertSame(model, this.config.getRDFModel());
+	}
+
+	public void testReloadOnModification() throws Exception {
+		Model model = this.config.getRDFModel();
+		this.writeRDF(3);
+		this.touch();
+		Model reloaded = this.config.getRDFModel();
+		assertNotSame(model, reloaded);
+		assertEquals(3, reloaded.size());
+		assertSame(reloaded, this.config.getRDFModel());
+		/* the previous model is still readable by the running queries */
+		assertEquals(2, model.size());
+	}
+
+	public void testModificationCheckInterval() throws Exception {
+		RDFConfig config = this.createConfig("3600000");
+		try {
+			Model model = config.getRDFModel();
+			this.writeRDF(3);
+			this.touch();
+			/* the file is not checked again before the end of the interval */
+			assertSame(model, config.getRDFModel());
+		} finally {
+			config.close();
+		}
+	}
+
+	public void testFailedReloadKeepsModel() throws Exception {
+		Model model = this.config.getRDFModel();
+		OutputStream out = new FileOutputStream(this.rdfFile);
+		try {
+			out.write("<rdf:RDF".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		this.touch();
+		assertSame(model, this.config.getRDFModel());
+		assertSame(model, this.config.getRDFModel());
+		/* the file is loaded again once it is fixed */
+		this.writeRDF(4);
+		this.touch();
+		assertEquals(4, this.config.getRDFModel().size());
+	}
+
+	public void testConcurrentReadsDuringReload() throws Exception {
+		this.config.getRDFModel();
+		this.writeRDF(3);
+		this.touch();
+		final List<Long> sizes = Collections.synchronizedList(new ArrayList<Long>());
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread[] readers = new Thread[8];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 20; j++) {
+							sizes.add(config.getRDFModel().size());
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				}
+			};
+			readers[i].start();
+		}
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertEquals(160, sizes.size());
+		/* each query reads either the previous model or the reloaded one */
+		for (Long size : sizes) {
+			assertTrue(String.valueOf(size), size == 2 || size == 3);
+		}
+		assertEquals(3, this.config.getRDFModel().size());
+	}
+
+	public void testInvalidModificationCheckInterval() throws Exception {
+		try {
+			this.createConfig("often");
+			fail("An invalid modification check interval must be rejected");
+		} catch (DataServiceFault e) {
+			// expected
+		}
+	}
+
+	private RDFConfig createConfig(String modificationCheckInterval) throws DataServiceFault {
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put(DBConstants.RDF.DATASOURCE, this.rdfFile.getAbsolutePath());
+		properties.put(DBConstants.RDF.MODIFICATION_CHECK_INTERVAL, modificationCheckInterval);
+		return new RDFConfig(null, "rdfConfig", properties, false, false, "");
+	}
+
+	/**
+	 * Moves the modification time of the RDF file forward, since the file system may not record a
+	 * change within the same second.
+	 */
+	private void touch() {
+		this.rdfFile.setLastModified(this.rdfFile.lastModified() + 2000);
+	}
+
+	private void writeRDF(int count) throws IOException {
+		StringBuilder rdf = new StringBuilder("<rdf:RDF xmlns:rdf=\"" + DBConstants.RDF_NAMESPACE +
+				"\" xmlns:ex=\"http://example.org/\">");
+		for (int i = 0; i < count; i++) {
+			rdf.append("<rdf:Description rdf:about=\"http://example.org/product/").append(i).append(
+					"\"><ex:name>product ").append(i).append("</ex:name></rdf:Description>");
+		}
+		rdf.append("</rdf:RDF>");
+		OutputStream out = new FileOutputStream(this.rdfFile);
+		try {
+			out.write(rdf.toString().getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+}
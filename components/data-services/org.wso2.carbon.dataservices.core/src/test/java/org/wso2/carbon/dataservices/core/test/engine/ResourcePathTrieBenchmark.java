@@ -0,0 +1,63 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.engine;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.wso2.carbon.dataservices.core.ResourcePathTrie;
+
+/**
+ * Compares the throughput of resolving the resources of a data service with the resource path trie with
+ * matching the regex of each resource in turn, for services with 10, 100 and 1000 resources, on the fixture
+ * of {@link ResourcePathTrieTest}. It is not part of the test suites, since its figures depend on the
+ * machine, and is run with:
+ * <pre>
+ * java -cp &lt;test classpath&gt; org.wso2.carbon.dataservices.core.test.engine.ResourcePathTrieBenchmark [lookups]
+ * </pre>
+ */
+public class ResourcePathTrieBenchmark {
+
+	private static final int DEFAULT_LOOKUPS = 20000;
+
+	public static void main(String[] args) {
+		int lookups = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_LOOKUPS;
+		for (int resourceCount : ResourcePathTrieTest.RESOURCE_COUNTS) {
+			ResourcePathTrie<String> trie = ResourcePathTrieTest.createTrie(resourceCount);
+			Map<Pattern, String> table = ResourcePathTrieTest.createTable(resourceCount);
+			String[] requests = ResourcePathTrieTest.createRequests(resourceCount);
+			for (int i = 0; i < lookups / 4; i++) { // warm up
+				ResourcePathTrieTest.scan(table, requests[i % requests.length]);
+				trie.match("GET", requests[i % requests.length]);
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) {
+				ResourcePathTrieTest.scan(table, requests[i % requests.length]);
+			}
+			double scan = lookups / ((System.nanoTime() - start) / 1e9);
+			start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) {
+				trie.match("GET", requests[i % requests.length]);
+			}
+			double trieLookups = lookups / ((System.nanoTime() - start) / 1e9);
+			System.out.println("Resource lookups per second with " + resourceCount + " resources: regex scan = " +
+					(int) scan + ", trie = " + (int) trieLookups);
+		}
+	}
+
+}
@@ -0,0 +1,149 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.engine;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import org.wso2.carbon.dataservices.core.ResourcePathTrie;
+
+/**
+ * Checks the resolution of the resources of a data service with the resource path trie. The services
+ * with 10, 100 and 1000 resources are also the fixture of {@link ResourcePathTrieBenchmark}.
+ */
+public class ResourcePathTrieTest extends TestCase {
+
+	static final int[] RESOURCE_COUNTS = { 10, 100, 1000 };
+
+	public void testLiteralAndVariableSegments() {
+		ResourcePathTrie<String> trie = new ResourcePathTrie<String>();
+		trie.add("GET", "employees", "getEmployees");
+		trie.add("GET", "employees/{id}", "getEmployee");
+		trie.add("GET", "employees/count", "getEmployeeCount");
+		trie.add("DELETE", "employees/{id}", "deleteEmployee");
+		trie.add("GET", "employees/{id}/orders/{orderId}", "getOrder");
+		assertEquals("getEmployees", trie.match("GET", "/employees").getValue());
+		assertEquals("getEmployees", trie.match("get", "employees/").getValue());
+		assertEquals("getEmployeeCount", trie.match("GET", "/employees/count").getValue());
+		ResourcePathTrie.Match<String> match = trie.match("GET", "/employees/12?format=json");
+		assertEquals("getEmployee", match.getValue());
+		assertEquals("12", match.getVariables().get("id"));
+		assertEquals("deleteEmployee", trie.match("DELETE", "/employees/12").getValue());
+		match = trie.match("GET", "/employees/12/orders/7");
+		assertEquals("getOrder", match.getValue());
+		assertEquals("12", match.getVariables().get("id"));
+		assertEquals("7", match.getVariables().get("orderId"));
+		assertNull(trie.match("GET", "/employees/12/orders"));
+		assertNull(trie.match("POST", "/employees"));
+		assertNull(trie.match("GET", "/customers"));
+	}
+
+	public void testBacktrackingAndSharedVariables() {
+		ResourcePathTrie<String> trie = new ResourcePathTrie<String>();
+		trie.add("GET", "files/{name}", "getFile");
+		trie.add("GET", "files/latest/versions", "getLatestVersions");
+		trie.add("GET", "files/{fileId}/size", "getFileSize");
+		/* the literal segment is tried first, then the variable one */
+		ResourcePathTrie.Match<String> match = trie.match("GET", "/files/latest/size");
+		assertEquals("getFileSize", match.getValue());
+		assertEquals("latest", match.getVariables().get("fileId"));
+		assertEquals("getLatestVersions", trie.match("GET", "/files/latest/versions").getValue());
+		match = trie.match("GET", "/files/latest");
+		assertEquals("getFile", match.getValue());
+		assertEquals("latest", match.getVariables().get("name"));
+	}
+
+	public void testMixedSegments() {
+		ResourcePathTrie<String> trie = new ResourcePathTrie<String>();
+		trie.add("GET", "reports/{name}.{format}", "getReport");
+		trie.add("GET", "reports/{name}", "getReportInfo");
+		trie.add("GET", "", "getRoot");
+		ResourcePathTrie.Match<String> match = trie.match("GET", "/reports/sales.csv");
+		assertEquals("getReport", match.getValue());
+		assertEquals("sales", match.getVariables().get("name"));
+		assertEquals("csv", match.getVariables().get("format"));
+		assertEquals("getReportInfo", trie.match("GET", "/reports/sales").getValue());
+		assertEquals("getRoot", trie.match("GET", "/").getValue());
+		assertEquals(0, trie.match("GET", "").getVariables().size());
+	}
+
+	public void testSameResourcesAsRegexScan() {
+		for (int resourceCount : RESOURCE_COUNTS) {
+			ResourcePathTrie<String> trie = createTrie(resourceCount);
+			Map<Pattern, String> table = createTable(resourceCount);
+			for (String request : createRequests(resourceCount)) {
+				assertEquals(scan(table, request), trie.match("GET", request).getValue());
+			}
+		}
+	}
+
+	static ResourcePathTrie<String> createTrie(int resourceCount) {
+		ResourcePathTrie<String> trie = new ResourcePathTrie<String>();
+		for (String path : createPaths(resourceCount)) {
+			trie.add("GET", path, path);
+		}
+		return trie;
+	}
+
+	/**
+	 * Creates the regex table of the resources, as it is iterated by the HTTP location based dispatcher.
+	 */
+	static Map<Pattern, String> createTable(int resourceCount) {
+		Map<Pattern, String> table = new TreeMap<Pattern, String>(new Comparator<Pattern>() {
+			public int compare(Pattern o1, Pattern o2) {
+				return (-1 * o1.pattern().compareTo(o2.pattern()));
+			}
+		});
+		for (String path : createPaths(resourceCount)) {
+			table.put(Pattern.compile("GET_" + path.replaceAll("\\{[^}]*\\}", "[^/]+")), path);
+		}
+		return table;
+	}
+
+	static String[] createRequests(int resourceCount) {
+		String[] requests = new String[resourceCount];
+		for (int i = 0; i < requests.length; i++) {
+			requests[i] = i % 2 == 0 ? "resource" + (i / 2) + "/42" : "resource" + (i / 2) + "/42/items/7";
+		}
+		return requests;
+	}
+
+	static String scan(Map<Pattern, String> table, String path) {
+		String key = "GET_" + path;
+		for (Map.Entry<Pattern, String> entry : table.entrySet()) {
+			if (entry.getKey().matcher(key).matches()) {
+				return entry.getValue();
+			}
+		}
+		return null;
+	}
+
+	private static String[] createPaths(int resourceCount) {
+		String[] paths = new String[resourceCount];
+		for (int i = 0; i < resourceCount / 2; i++) {
+			paths[2 * i] = "resource" + i + "/{id}";
+			paths[2 * i + 1] = "resource" + i + "/{id}/items/{itemId}";
+		}
+		return paths;
+	}
+
+}
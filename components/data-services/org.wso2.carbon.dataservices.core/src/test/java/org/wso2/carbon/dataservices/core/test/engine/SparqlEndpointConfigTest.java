@@ -0,0 +1,153 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.wso2.carbon.dataservices.common.DBConstants;
+import org.wso2.carbon.dataservices.core.DataServiceFault;
+import org.wso2.carbon.dataservices.core.description.config.SparqlEndpointConfig;
+import org.wso2.carbon.dataservices.core.description.config.SparqlEndpointConfig.QueryResults;
+import org.wso2.carbon.dataservices.core.description.query.Query;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks the pooled connections to a SPARQL endpoint, which are released when the results are not
+ * written, and the wait for a connection when they are all in use.
+ */
+public class SparqlEndpointConfigTest extends TestCase {
+
+	private static final String RESULTS = "<?xml version=\"1.0\"?>" +
+			"<sparql xmlns=\"http://www.w3.org/2005/sparql-results#\"><head><variable name=\"s\"/></head>" +
+			"<results><result><binding name=\"s\"><uri>http://example.org/p1</uri></binding></result>" +
+			"<result><binding name=\"s\"><uri>http://example.org/p2</uri></binding></result></results></sparql>";
+
+	private static final String SELECT = "SELECT ?s WHERE { ?s ?p ?o }";
+
+	private HttpServer server;
+
+	private SparqlEndpointConfig config;
+
+	public SparqlEndpointConfigTest() {
+		super("SparqlEndpointConfigTest");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.createContext("/sparql", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = RESULTS.getBytes("UTF-8");
+				exchange.getResponseHeaders().set("Content-Type", DBConstants.SPARQL.RESULTS_XML_CONTENT_TYPE);
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		this.server.start();
+		/* a single connection, so a connection which is not released blocks the next queries */
+		this.config = this.createConfig("200");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Query.resetQueryPreprocessing();
+		this.config.close();
+		this.server.stop(0);
+	}
+
+	public void testResultsReleaseConnection() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			QueryResults results = this.config.executeSelect(SELECT);
+			assertEquals(2, this.count(results));
+			results.close();
+			/* the results can be closed again, e.g. when the query is finalized */
+			results.close();
+		}
+	}
+
+	public void testConnectionManagerTimeout() throws Exception {
+		QueryResults results = this.config.executeSelect(SELECT);
+		long start = System.currentTimeMillis();
+		try {
+			this.config.executeSelect(SELECT);
+			fail("A query must not wait indefinitely for a pooled connection");
+		} catch (DataServiceFault e) {
+			// expected
+		}
+		assertTrue(System.currentTimeMillis() - start < 10000);
+		results.close();
+		results = this.config.executeSelect(SELECT);
+		assertEquals(2, this.count(results));
+		results.close();
+	}
+
+	public void testUnwrittenResultsReleased() throws Exception {
+		/* the first phase of a query without a second phase, e.g. after an error */
+		Query.addQueryPreprocessedObject(this.config.executeSelect(SELECT));
+		Query.releaseQueryPreprocessObject();
+		QueryResults results = this.config.executeSelect(SELECT);
+		assertEquals(2, this.count(results));
+		results.close();
+		/* the results left by a previous request are released with the next one */
+		Query.addQueryPreprocessedObject(this.config.executeSelect(SELECT));
+		Query.resetQueryPreprocessing();
+		results = this.config.executeSelect(SELECT);
+		assertEquals(2, this.count(results));
+		results.close();
+	}
+
+	public void testInvalidConnectionManagerTimeout() throws Exception {
+		try {
+			this.createConfig("soon");
+			fail("An invalid connection manager timeout must be rejected");
+		} catch (DataServiceFault e) {
+			// expected
+		}
+	}
+
+	private SparqlEndpointConfig createConfig(String connectionManagerTimeout) throws DataServiceFault {
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put(DBConstants.SPARQL.DATASOURCE, "http://127.0.0.1:" + this.server.getAddress().getPort() +
+				"/sparql");
+		properties.put(DBConstants.SPARQL.MAX_CONNECTIONS, "1");
+		properties.put(DBConstants.SPARQL.CONNECTION_MANAGER_TIMEOUT, connectionManagerTimeout);
+		return new SparqlEndpointConfig(null, "sparqlConfig", properties, false, false, "");
+	}
+
+	private int count(QueryResults results) {
+		int count = 0;
+		while (results.getResultSet().hasNext()) {
+			results.getResultSet().next();
+			count++;
+		}
+		return count;
+	}
+
+}
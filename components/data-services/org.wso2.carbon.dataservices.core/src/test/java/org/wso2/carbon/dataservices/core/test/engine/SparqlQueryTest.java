@@ -0,0 +1,206 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.engine;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+
+import javax.xml.stream.XMLStreamWriter;
+
+import junit.framework.TestCase;
+
+import org.wso2.carbon.dataservices.common.DBConstants;
+import org.wso2.carbon.dataservices.core.DataServiceFault;
+import org.wso2.carbon.dataservices.core.description.query.SparqlQueryBase;
+import org.wso2.carbon.dataservices.core.engine.DataEntry;
+import org.wso2.carbon.dataservices.core.engine.InternalParam;
+import org.wso2.carbon.dataservices.core.engine.InternalParamCollection;
+import org.wso2.carbon.dataservices.core.engine.ParamValue;
+import org.wso2.carbon.dataservices.core.engine.QueryParam;
+import org.wso2.carbon.dataservices.core.engine.Result;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
+
+/**
+ * Checks the limit and the offset of the results pushed down into SPARQL queries, and the conversion
+ * of the SPARQL solutions to data entries.
+ */
+public class SparqlQueryTest extends TestCase {
+
+	private static final String NAMESPACE = "http://ws.wso2.org/dataservice/sparqlQueryTest";
+
+	private static final String SELECT = "SELECT ?s ?o WHERE { ?s ?p ?o } ";
+
+	public SparqlQueryTest() {
+		super("SparqlQueryTest");
+	}
+
+	public void testNoPagingParams() throws Exception {
+		Query query = createQuery(SELECT, null, null);
+		assertFalse(query.hasLimit());
+		assertFalse(query.hasOffset());
+		query = createQuery(SELECT + "LIMIT 5 OFFSET 2", null, null);
+		assertEquals(5, query.getLimit());
+		assertEquals(2, query.getOffset());
+		/* the empty values are ignored */
+		query = createQuery(SELECT, "", " ");
+		assertFalse(query.hasLimit());
+		assertFalse(query.hasOffset());
+	}
+
+	public void testLimit() throws Exception {
+		assertPaging(SELECT, "10", null, 10, -1);
+		assertPaging(SELECT, "0", null, 0, -1);
+		/* the limit of the query is only narrowed */
+		assertPaging(SELECT + "LIMIT 5", "10", null, 5, -1);
+		assertPaging(SELECT + "LIMIT 5", "3", null, 3, -1);
+		assertPaging(SELECT + "LIMIT 5 OFFSET 2", "3", null, 3, 2);
+	}
+
+	public void testOffset() throws Exception {
+		assertPaging(SELECT, null, "4", -1, 4);
+		assertPaging(SELECT + "OFFSET 3", null, "4", -1, 7);
+		/* the offset is counted in the results of the query, which are fewer with its limit */
+		assertPaging(SELECT + "LIMIT 5", null, "2", 3, 2);
+		assertPaging(SELECT + "LIMIT 5 OFFSET 1", null, "2", 3, 3);
+		assertPaging(SELECT + "LIMIT 5", null, "5", 0, 5);
+		assertPaging(SELECT + "LIMIT 5", null, "7", 0, 7);
+	}
+
+	public void testLimitAndOffset() throws Exception {
+		assertPaging(SELECT, "10", "20", 10, 20);
+		assertPaging(SELECT + "LIMIT 5", "10", "2", 3, 2);
+		assertPaging(SELECT + "LIMIT 5", "2", "2", 2, 2);
+		assertPaging(SELECT + "LIMIT 5 OFFSET 10", "2", "1", 2, 11);
+		assertPaging(SELECT + "LIMIT 5", "2", "6", 0, 6);
+	}
+
+	public void testResultColumns() throws Exception {
+		DataEntry entry = getDataEntry(false, "<binding name=\"s\"><uri>http://example.org/p1</uri></binding>" +
+				"<binding name=\"o\"><literal>product 1</literal></binding>");
+		assertEquals(2, entry.getNames().size());
+		assertEquals("http://example.org/p1", entry.getValue("s").getScalarValue());
+		assertEquals("product 1", entry.getValue("o").getScalarValue());
+		entry = getDataEntry(true, "<binding name=\"s\"><uri>http://example.org/p1</uri></binding>" +
+				"<binding name=\"o\"><literal>product 1</literal></binding>");
+		assertEquals("http://example.org/p1", entry.getValue("1").getScalarValue());
+		assertEquals("product 1", entry.getValue("2").getScalarValue());
+	}
+
+	public void testUnboundValues() throws Exception {
+		/* an optional variable without a value in the solution */
+		DataEntry entry = getDataEntry(false, "<binding name=\"s\"><uri>http://example.org/p1</uri></binding>");
+		assertEquals(2, entry.getNames().size());
+		assertEquals("http://example.org/p1", entry.getValue("s").getScalarValue());
+		assertNotNull(entry.getValue("o"));
+		assertNull(entry.getValue("o").getScalarValue());
+		entry = getDataEntry(true, "");
+		assertNull(entry.getValue("1").getScalarValue());
+		assertNull(entry.getValue("2").getScalarValue());
+	}
+
+	public void testDatatypeConversion() throws Exception {
+		assertEquals("true", getTypedValue("boolean", "1"));
+		assertEquals("false", getTypedValue("boolean", "false"));
+		assertEquals("7", getTypedValue("long", "007"));
+		assertEquals("1.50", getTypedValue("decimal", "1.50"));
+		assertEquals("150.0", getTypedValue("double", "1.5E2"));
+		assertEquals("2.5", getTypedValue("float", "2.5"));
+		/* the other datatypes and the plain literals are kept as they are */
+		assertEquals("0042", getTypedValue("string", "0042"));
+		assertEquals("0042", getTypedValue("integer", "0042"));
+		assertEquals("chat", getValue("<literal xml:lang=\"fr\">chat</literal>"));
+	}
+
+	private static void assertPaging(String select, String limit, String offset, long expectedLimit,
+			long expectedOffset) throws DataServiceFault {
+		Query query = createQuery(select, limit, offset);
+		String message = select + " _limit=" + limit + " _offset=" + offset;
+		assertEquals(message, expectedLimit >= 0, query.hasLimit());
+		if (expectedLimit >= 0) {
+			assertEquals(message, expectedLimit, query.getLimit());
+		}
+		assertEquals(message, expectedOffset >= 0, query.hasOffset());
+		if (expectedOffset >= 0) {
+			assertEquals(message, expectedOffset, query.getOffset());
+		}
+	}
+
+	private static Query createQuery(String select, String limit, String offset) throws DataServiceFault {
+		InternalParamCollection params = new InternalParamCollection();
+		int ordinal = 1;
+		if (limit != null) {
+			params.addParam(new InternalParam(DBConstants.SPARQL.LIMIT_PARAM, new ParamValue(limit), "INTEGER",
+					"IN", null, ordinal++));
+		}
+		if (offset != null) {
+			params.addParam(new InternalParam(DBConstants.SPARQL.OFFSET_PARAM, new ParamValue(offset), "INTEGER",
+					"IN", null, ordinal++));
+		}
+		return createSparqlQuery(select, false).createQuery(params);
+	}
+
+	private static String getTypedValue(String datatype, String value) throws Exception {
+		return getValue("<literal datatype=\"http://www.w3.org/2001/XMLSchema#" + datatype + "\">" + value +
+				"</literal>");
+	}
+
+	private static String getValue(String node) throws Exception {
+		return getDataEntry(false, "<binding name=\"o\">" + node + "</binding>").getValue("o").getScalarValue();
+	}
+
+	/**
+	 * Converts a SPARQL XML result with the variables s and o, and the given bindings, to a data entry.
+	 */
+	private static DataEntry getDataEntry(boolean useColumnNumbers, String bindings) throws Exception {
+		String xml = "<?xml version=\"1.0\"?><sparql xmlns=\"http://www.w3.org/2005/sparql-results#\">" +
+				"<head><variable name=\"s\"/><variable name=\"o\"/></head><results><result>" + bindings +
+				"</result></results></sparql>";
+		ResultSet rs = ResultSetFactory.fromXML(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+		return createSparqlQuery(SELECT, useColumnNumbers).getDataEntryFromRS(rs);
+	}
+
+	private static SparqlQueryBase createSparqlQuery(String query, boolean useColumnNumbers)
+			throws DataServiceFault {
+		Result result = new Result("Products", "Product", NAMESPACE, null, DBConstants.ResultTypes.XML);
+		result.setUseColumnNumbers(useColumnNumbers);
+		return new SparqlQueryBase(null, "sparqlQuery", "sparqlConfig", query, new ArrayList<QueryParam>(),
+				result, null, null, null, NAMESPACE) {
+
+			@Override
+			public Object processPreQuery(InternalParamCollection params, int queryLevel) {
+				return null;
+			}
+
+			@Override
+			public void processPostQuery(Object result, XMLStreamWriter xmlWriter,
+					InternalParamCollection params, int queryLevel) {
+			}
+
+			@Override
+			public QueryExecution getQueryExecution(Query query) {
+				return null;
+			}
+
+		};
+	}
+
+}
@@ -0,0 +1,232 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.engine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.wso2.carbon.dataservices.common.DBConstants;
+import org.wso2.carbon.dataservices.core.description.config.WebConfig;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks the reuse of the parsed web harvest configuration and the caching of the scraped variables
+ * of a web config, also by concurrent requests, with a local HTTP stub which counts the requests for
+ * its pages.
+ */
+public class WebConfigTest extends TestCase {
+
+	private HttpServer server;
+
+	private AtomicInteger requestCount;
+
+	private File configFile;
+
+	/* the requests for the "/slow" page wait for this latch, when it is set */
+	private volatile CountDownLatch slowPageLatch;
+
+	private CountDownLatch slowPageRequested;
+
+	public WebConfigTest() {
+		super("WebConfigTest");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		this.requestCount = new AtomicInteger();
+		this.slowPageRequested = new CountDownLatch(1);
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.setExecutor(Executors.newCachedThreadPool());
+		this.server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				requestCount.incrementAndGet();
+				CountDownLatch latch = slowPageLatch;
+				if (latch != null && "/slow".equals(exchange.getRequestURI().getPath())) {
+					slowPageRequested.countDown();
+					try {
+						latch.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				byte[] body = ("<page>" + exchange.getRequestURI().getPath() + "</page>").getBytes("UTF-8");
+				exchange.getResponseHeaders().add("Content-Type", "text/xml");
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		this.server.start();
+		this.configFile = File.createTempFile("web-harvest-config", ".xml");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (this.slowPageLatch != null) {
+			this.slowPageLatch.countDown();
+		}
+		this.server.stop(0);
+		this.configFile.delete();
+	}
+
+	public void testScrapedForEachRequestByDefault() throws Exception {
+		this.writeConfig("/v1");
+		WebConfig config = this.createConfig(null);
+		assertTrue(config.getScrapedResult("page").toString().contains("/v1"));
+		assertTrue(config.getScrapedResult("page").toString().contains("/v1"));
+		assertEquals(2, this.requestCount.get());
+	}
+
+	public void testScrapedVariablesCached() throws Exception {
+		this.writeConfig("/v1");
+		WebConfig config = this.createConfig("60000");
+		for (int i = 0; i < 5; i++) {
+			assertTrue(config.getScrapedResult("page").toString().contains("/v1"));
+		}
+		assertEquals(1, this.requestCount.get());
+	}
+
+	public void testCacheExpiry() throws Exception {
+		this.writeConfig("/v1");
+		WebConfig config = this.createConfig("100");
+		config.getScrapedResult("page");
+		config.getScrapedResult("page");
+		assertEquals(1, this.requestCount.get());
+		Thread.sleep(200);
+		config.getScrapedResult("page");
+		assertEquals(2, this.requestCount.get());
+	}
+
+	public void testConfigFileModification() throws Exception {
+		this.writeConfig("/v1");
+		WebConfig config = this.createConfig("60000");
+		assertTrue(config.getScrapedResult("page").toString().contains("/v1"));
+		long lastModified = this.configFile.lastModified();
+		this.writeConfig("/v2");
+		/* the file system may not record a change within the same second */
+		this.configFile.setLastModified(lastModified + 2000);
+		assertTrue(config.getScrapedResult("page").toString().contains("/v2"));
+		assertEquals(2, this.requestCount.get());
+	}
+
+	public void testConcurrentRequestsShareScrape() throws Exception {
+		this.writeConfig("/v1");
+		final WebConfig config = this.createConfig("60000");
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 32; i++) {
+				results.add(executor.submit(new Callable<String>() {
+					public String call() throws Exception {
+						return config.getScrapedResult("page").toString();
+					}
+				}));
+			}
+			for (Future<String> result : results) {
+				assertTrue(result.get(10, TimeUnit.SECONDS).contains("/v1"));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1, this.requestCount.get());
+	}
+
+	public void testCachedVariableNotBlockedByScrape() throws Exception {
+		this.writeConfig("/v1", "/slow");
+		final WebConfig config = this.createConfig("60000");
+		assertTrue(config.getScrapedResult("page").toString().contains("/v1"));
+		/* the scrape of the other variable is held by the server */
+		this.slowPageLatch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> slow = executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return config.getScrapedResult("other").toString();
+				}
+			});
+			assertTrue(this.slowPageRequested.await(10, TimeUnit.SECONDS));
+			long start = System.nanoTime();
+			assertTrue(config.getScrapedResult("page").toString().contains("/v1"));
+			assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+			assertFalse(slow.isDone());
+			this.slowPageLatch.countDown();
+			assertTrue(slow.get(10, TimeUnit.SECONDS).contains("/slow"));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testInvalidCacheTTL() {
+		try {
+			this.createConfig("soon");
+			fail("The invalid cache TTL is accepted");
+		} catch (Exception e) {
+			/* expected */
+		}
+	}
+
+	private void writeConfig(String pagePath) throws IOException {
+		this.writeConfig(pagePath, null);
+	}
+
+	/**
+	 * Writes a web harvest configuration with the variable "page", and the variable "other" if its page is given.
+	 */
+	private void writeConfig(String pagePath, String otherPagePath) throws IOException {
+		String baseURL = "http://localhost:" + this.server.getAddress().getPort();
+		String config = "<config><var-def name=\"page\"><http url=\"" + baseURL + pagePath + "\"/></var-def>" +
+				(otherPagePath == null ? "" : "<var-def name=\"other\"><http url=\"" + baseURL + otherPagePath +
+				"\"/></var-def>") + "</config>";
+		OutputStream out = new FileOutputStream(this.configFile);
+		try {
+			out.write(config.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	private WebConfig createConfig(String cacheTTL) throws Exception {
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put(DBConstants.WebDatasource.WEB_CONFIG, this.configFile.getAbsolutePath());
+		if (cacheTTL != null) {
+			properties.put(DBConstants.WebDatasource.CACHE_TTL, cacheTTL);
+		}
+		return new WebConfig(null, "webConfig", properties, false, false, "");
+	}
+
+}
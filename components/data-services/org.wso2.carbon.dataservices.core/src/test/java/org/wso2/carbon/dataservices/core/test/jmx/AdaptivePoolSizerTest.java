@@ -0,0 +1,108 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.jmx;
+
+import junit.framework.TestCase;
+
+import org.wso2.carbon.dataservices.core.AdaptivePoolSizer;
+import org.wso2.carbon.dataservices.core.jmx.RequestStatistics;
+
+/**
+ * Checks the pool sizes computed by AdaptivePoolSizer from the borrow waits, hold times and peak usage of a window.
+ */
+public class AdaptivePoolSizerTest extends TestCase {
+
+	private static final int MIN_ACTIVE = 2;
+
+	private static final int MAX_ACTIVE = 20;
+
+	private static final long TARGET_WAIT_MILLIS = 10;
+
+	private static final long NANOS_PER_MILLI = 1000000;
+
+	public AdaptivePoolSizerTest() {
+		super("AdaptivePoolSizerTest");
+	}
+
+	public void testGrowsWhenBorrowsWait() {
+		AdaptivePoolSizer sizer = createSizer();
+		assertEquals(10, sizer.computeTarget(8, waits(50, 20, 0), holds(5), 8));
+		/* by at least one connection, and up to the upper bound */
+		assertEquals(3, sizer.computeTarget(2, waits(50, 20, 0), holds(5), 2));
+		assertEquals(MAX_ACTIVE, sizer.computeTarget(18, waits(50, 20, 0), holds(5), 18));
+		assertEquals(MAX_ACTIVE, sizer.computeTarget(MAX_ACTIVE, waits(50, 20, 0), holds(5), MAX_ACTIVE));
+	}
+
+	public void testGrowsWhenBorrowsTimeOut() {
+		AdaptivePoolSizer sizer = createSizer();
+		assertEquals(10, sizer.computeTarget(8, waits(1, 20, 1), holds(5), 8));
+	}
+
+	public void testDoesNotGrowWhenTheDatabaseIsSlower() {
+		AdaptivePoolSizer sizer = createSizer();
+		/* the first window sets the baseline hold time */
+		assertEquals(8, sizer.computeTarget(8, waits(1, 20, 0), holds(10), 8));
+		/* connections held more than twice as long: more of them would only add load to the database */
+		assertEquals(8, sizer.computeTarget(8, waits(50, 20, 0), holds(30), 8));
+		assertEquals(8, sizer.computeTarget(8, waits(50, 20, 1), holds(30), 8));
+		/* the slow windows are not part of the baseline, so a usual hold time grows the pool again */
+		assertEquals(10, sizer.computeTarget(8, waits(50, 20, 0), holds(15), 8));
+	}
+
+	public void testShrinksWhenMostConnectionsAreIdle() {
+		AdaptivePoolSizer sizer = createSizer();
+		assertEquals(7, sizer.computeTarget(8, waits(1, 20, 0), holds(5), 3));
+		assertEquals(7, sizer.computeTarget(8, new RequestStatistics(), new RequestStatistics(), 0));
+		/* by one connection, down to the lower bound */
+		assertEquals(MIN_ACTIVE, sizer.computeTarget(MIN_ACTIVE, new RequestStatistics(), new RequestStatistics(), 0));
+	}
+
+	public void testKeepsTheSize() {
+		AdaptivePoolSizer sizer = createSizer();
+		/* short waits and at least half of the connections in use */
+		assertEquals(8, sizer.computeTarget(8, waits(1, 20, 0), holds(5), 4));
+		assertEquals(8, sizer.computeTarget(8, waits(TARGET_WAIT_MILLIS - 2, 20, 0), holds(5), 8));
+	}
+
+	private static AdaptivePoolSizer createSizer() {
+		return new AdaptivePoolSizer("adaptivePoolSizerTest", null, null, MIN_ACTIVE, MAX_ACTIVE, TARGET_WAIT_MILLIS);
+	}
+
+	/**
+	 * Creates the borrow waits of a window, the timed out borrows being recorded as errors.
+	 */
+	private static RequestStatistics waits(long millis, int count, int timeouts) {
+		RequestStatistics waits = new RequestStatistics();
+		for (int i = 0; i < count; i++) {
+			waits.record(millis * NANOS_PER_MILLI, 0, false);
+		}
+		for (int i = 0; i < timeouts; i++) {
+			waits.record(millis * NANOS_PER_MILLI, 0, true);
+		}
+		return waits;
+	}
+
+	private static RequestStatistics holds(long millis) {
+		RequestStatistics holds = new RequestStatistics();
+		for (int i = 0; i < 10; i++) {
+			holds.record(millis * NANOS_PER_MILLI, 0, false);
+		}
+		return holds;
+	}
+
+}
@@ -0,0 +1,146 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.jmx;
+
+import junit.framework.TestCase;
+
+import org.wso2.carbon.dataservices.core.jmx.RequestStatistics;
+
+/**
+ * Checks the counters of RequestStatistics and the latency percentiles computed from its histogram.
+ */
+public class RequestStatisticsTest extends TestCase {
+
+	private static final long NANOS_PER_MICRO = 1000;
+
+	/* the histogram has four buckets per power of two, a bucket bound exceeds its latencies by less than 25% */
+	private static final double BUCKET_ERROR = 1.25;
+
+	/* upper bound of the last bucket, holding all the latencies over 2^48 microseconds */
+	private static final double TOP_BUCKET_MILLIS = ((1L << 48) - 1) / 1000.0;
+
+	public RequestStatisticsTest() {
+		super("RequestStatisticsTest");
+	}
+
+	public void testNoSamples() {
+		RequestStatistics statistics = new RequestStatistics();
+		assertEquals(0, statistics.getCount());
+		assertEquals(0.0, statistics.getAverageLatencyMillis());
+		assertEquals(0.0, statistics.getLatencyPercentileMillis(0));
+		assertEquals(0.0, statistics.getLatencyPercentileMillis(50));
+		assertEquals(0.0, statistics.getLatencyPercentileMillis(100));
+	}
+
+	public void testOneSample() {
+		RequestStatistics statistics = new RequestStatistics();
+		statistics.record(1000 * NANOS_PER_MICRO, 3, false);
+		assertEquals(1, statistics.getCount());
+		assertEquals(0, statistics.getErrorCount());
+		assertEquals(3, statistics.getRowCount());
+		assertEquals(1.0, statistics.getAverageLatencyMillis());
+		/* all the percentiles are the bucket of the only sample */
+		double p50 = statistics.getLatencyPercentileMillis(50);
+		assertInBucket(1.0, p50);
+		assertEquals(p50, statistics.getLatencyPercentileMillis(0));
+		assertEquals(p50, statistics.getLatencyPercentileMillis(99));
+		assertEquals(p50, statistics.getLatencyPercentileMillis(100));
+	}
+
+	public void testPercentiles() {
+		RequestStatistics statistics = new RequestStatistics();
+		for (int i = 0; i < 90; i++) {
+			statistics.record(100 * NANOS_PER_MICRO, 0, false);
+		}
+		for (int i = 0; i < 9; i++) {
+			statistics.record(10000 * NANOS_PER_MICRO, 0, true);
+		}
+		statistics.record(1000000 * NANOS_PER_MICRO, 0, true);
+		assertEquals(100, statistics.getCount());
+		assertEquals(10, statistics.getErrorCount());
+		assertInBucket(0.1, statistics.getLatencyPercentileMillis(50));
+		assertInBucket(0.1, statistics.getLatencyPercentileMillis(90));
+		assertInBucket(10, statistics.getLatencyPercentileMillis(91));
+		assertInBucket(10, statistics.getLatencyPercentileMillis(99));
+		assertInBucket(1000, statistics.getLatencyPercentileMillis(100));
+		/* out of range percentiles are clamped */
+		assertEquals(statistics.getLatencyPercentileMillis(100), statistics.getLatencyPercentileMillis(150));
+		assertEquals(statistics.getLatencyPercentileMillis(0), statistics.getLatencyPercentileMillis(-1));
+		assertEquals((90 * 0.1 + 9 * 10 + 1000) / 100, statistics.getAverageLatencyMillis(), 1e-9);
+	}
+
+	public void testHistogramBuckets() {
+		/* every latency, from the exact buckets under 4 microseconds up, is reported within its bucket */
+		for (long micros = 1; micros < (1L << 40); micros = micros * 3 / 2 + 1) {
+			RequestStatistics statistics = new RequestStatistics();
+			statistics.record(micros * NANOS_PER_MICRO, 0, false);
+			assertInBucket(micros / 1000.0, statistics.getLatencyPercentileMillis(50));
+		}
+		RequestStatistics statistics = new RequestStatistics();
+		statistics.record(0, 0, false);
+		assertEquals(0.0, statistics.getLatencyPercentileMillis(50));
+		/* latencies under a microsecond and negative durations fall in the first bucket */
+		statistics.record(999, 0, false);
+		statistics.record(-5 * NANOS_PER_MICRO, 0, false);
+		assertEquals(0.0, statistics.getLatencyPercentileMillis(100));
+	}
+
+	public void testValuesAboveTheTopBucket() {
+		RequestStatistics statistics = new RequestStatistics();
+		statistics.record(100 * NANOS_PER_MICRO, 0, false);
+		statistics.record(Long.MAX_VALUE, 0, false);
+		statistics.record((1L << 50) * NANOS_PER_MICRO, 0, false);
+		assertEquals(3, statistics.getCount());
+		assertInBucket(0.1, statistics.getLatencyPercentileMillis(33));
+		/* the latencies over the range of the histogram are reported as its upper bound */
+		assertEquals(TOP_BUCKET_MILLIS, statistics.getLatencyPercentileMillis(50));
+		assertEquals(TOP_BUCKET_MILLIS, statistics.getLatencyPercentileMillis(100));
+	}
+
+	public void testCountersAndReset() {
+		RequestStatistics statistics = new RequestStatistics();
+		statistics.record(10 * NANOS_PER_MICRO, 5, false);
+		statistics.record(20 * NANOS_PER_MICRO, 0, true);
+		statistics.record(30 * NANOS_PER_MICRO, -1, false);
+		statistics.addBytesWritten(100);
+		statistics.addBytesWritten(28);
+		assertEquals(3, statistics.getCount());
+		assertEquals(1, statistics.getErrorCount());
+		assertEquals(5, statistics.getRowCount());
+		assertEquals(128, statistics.getBytesWritten());
+		assertEquals(0.02, statistics.getAverageLatencyMillis(), 1e-9);
+		statistics.reset();
+		assertEquals(0, statistics.getCount());
+		assertEquals(0, statistics.getErrorCount());
+		assertEquals(0, statistics.getRowCount());
+		assertEquals(0, statistics.getBytesWritten());
+		assertEquals(0.0, statistics.getAverageLatencyMillis());
+		assertEquals(0.0, statistics.getLatencyPercentileMillis(99));
+	}
+
+	/**
+	 * Checks that a percentile is the upper bound of the histogram bucket of a latency.
+	 */
+	private static void assertInBucket(double expectedMillis, double actualMillis) {
+		assertTrue(actualMillis + " ms is below the latency of " + expectedMillis + " ms",
+				actualMillis >= expectedMillis);
+		assertTrue(actualMillis + " ms is not in the bucket of " + expectedMillis + " ms",
+				actualMillis < expectedMillis * BUCKET_ERROR);
+	}
+
+}
@@ -0,0 +1,147 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.jmx;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.wso2.carbon.dataservices.core.engine.ParamValue;
+import org.wso2.carbon.dataservices.core.jmx.ExecutionTrace;
+import org.wso2.carbon.dataservices.core.jmx.SlowQueryLog;
+import org.wso2.carbon.dataservices.core.jmx.SlowQueryRecord;
+
+/**
+ * Checks which executions SlowQueryLog records and the eviction of the oldest records from its ring buffer.
+ */
+public class SlowQueryLogTest extends TestCase {
+
+	private static final long NANOS_PER_MILLI = 1000000;
+
+	public SlowQueryLogTest() {
+		super("SlowQueryLogTest");
+	}
+
+	public void testThreshold() {
+		SlowQueryLog log = new SlowQueryLog(100, 10);
+		assertTrue(log.isEnabled());
+		assertEquals(100, log.getThresholdMillis());
+		record(log, "fast", 99);
+		record(log, "limit", 100);
+		record(log, "slow", 250);
+		assertEquals(2, log.getRecords().size());
+		assertEquals("limit", log.getRecords().get(0).getQueryId());
+		assertEquals("slow", log.getRecords().get(1).getQueryId());
+		assertEquals(250 * NANOS_PER_MILLI, log.getRecords().get(1).getTotalNanos());
+		/* a zero threshold records every execution */
+		log.setThresholdMillis(0);
+		record(log, "instant", 0);
+		assertEquals(3, log.getRecords().size());
+	}
+
+	public void testDisabled() {
+		SlowQueryLog log = new SlowQueryLog(-1, 10);
+		assertFalse(log.isEnabled());
+		assertEquals(-1, log.getThresholdMillis());
+		record(log, "slow", 10000);
+		assertTrue(log.getRecords().isEmpty());
+		/* enabled at runtime */
+		log.setThresholdMillis(5000);
+		record(log, "slow", 10000);
+		assertEquals(1, log.getRecords().size());
+		log.setThresholdMillis(-10);
+		assertFalse(log.isEnabled());
+		record(log, "slow", 10000);
+		assertEquals(1, log.getRecords().size());
+	}
+
+	public void testRingBufferEviction() {
+		SlowQueryLog log = new SlowQueryLog(0, 3);
+		assertEquals(3, log.getCapacity());
+		record(log, "q1", 1);
+		record(log, "q2", 1);
+		assertQueryIds(log.getRecords(), "q1", "q2");
+		record(log, "q3", 1);
+		assertQueryIds(log.getRecords(), "q1", "q2", "q3");
+		/* the oldest records are overwritten, the others stay in execution order */
+		record(log, "q4", 1);
+		assertQueryIds(log.getRecords(), "q2", "q3", "q4");
+		for (int i = 5; i <= 11; i++) {
+			record(log, "q" + i, 1);
+		}
+		assertQueryIds(log.getRecords(), "q9", "q10", "q11");
+		log.clear();
+		assertTrue(log.getRecords().isEmpty());
+		record(log, "q12", 1);
+		assertQueryIds(log.getRecords(), "q12");
+	}
+
+	public void testMinimumCapacity() {
+		SlowQueryLog log = new SlowQueryLog(0, 0);
+		assertEquals(1, log.getCapacity());
+		record(log, "q1", 1);
+		record(log, "q2", 1);
+		assertQueryIds(log.getRecords(), "q2");
+	}
+
+	public void testRecordContents() {
+		SlowQueryLog log = new SlowQueryLog(0, 5);
+		/* the first phase includes the connection and the statement, the second one the serialization */
+		ExecutionTrace trace = new ExecutionTrace();
+		trace.addPhaseNanos(ExecutionTrace.CONNECTION, 1);
+		trace.addPhaseNanos(ExecutionTrace.PREPARE, 2);
+		trace.addPhaseNanos(ExecutionTrace.PRE_QUERY, 10);
+		trace.addPhaseNanos(ExecutionTrace.POST_QUERY, 9);
+		trace.addPhaseNanos(ExecutionTrace.SERIALIZE, 5);
+		trace.addRow();
+		trace.addRow();
+		Map<String, ParamValue> params = new LinkedHashMap<String, ParamValue>();
+		params.put("id", new ParamValue("42"));
+		params.put("userPassword", new ParamValue("hunter2"));
+		StringBuilder longValue = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			longValue.append('x');
+		}
+		params.put("comment", new ParamValue(longValue.toString()));
+		log.record("query", trace, 20, params, true);
+		SlowQueryRecord record = log.getRecords().get(0);
+		assertEquals(1, record.getConnectionNanos());
+		assertEquals(2, record.getPrepareNanos());
+		assertEquals(7, record.getExecuteNanos());
+		assertEquals(4, record.getFetchNanos());
+		assertEquals(5, record.getSerializeNanos());
+		assertEquals(2, record.getRowCount());
+		assertTrue(record.isError());
+		/* credentials are masked and long values truncated */
+		assertEquals("id=42, userPassword=****, comment=" + longValue.substring(0, 64) + "...", record.getParams());
+	}
+
+	private static void record(SlowQueryLog log, String queryId, long millis) {
+		log.record(queryId, new ExecutionTrace(), millis * NANOS_PER_MILLI, null, false);
+	}
+
+	private static void assertQueryIds(List<SlowQueryRecord> records, String... queryIds) {
+		assertEquals(queryIds.length, records.size());
+		for (int i = 0; i < queryIds.length; i++) {
+			assertEquals(queryIds[i], records.get(i).getQueryId());
+		}
+	}
+
+}
@@ -0,0 +1,224 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.odata;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.olingo.commons.api.edmx.EdmxReference;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.uri.queryoption.FilterOption;
+import org.apache.olingo.server.core.OData4Impl;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.wso2.carbon.dataservices.core.odata.ODataAdapter;
+import org.wso2.carbon.dataservices.core.odata.ODataApplyProcessor;
+import org.wso2.carbon.dataservices.core.odata.ODataEntry;
+import org.wso2.carbon.dataservices.core.odata.RDBMSDataHandler;
+import org.wso2.carbon.dataservices.core.odata.RDBMSODataApply;
+
+/**
+ * Aggregates the rows of an in-memory H2 database with $apply, through the RDBMSDataHandler and through the
+ * ODataApplyProcessor serving the requests.
+ */
+public class ODataApplyTest extends ODataTestCase {
+
+	private static final String SALES = "PUBLIC__ODATA_SALES";
+
+	private static final String SERVICE_ROOT = "/odataApplyTest";
+
+	private static final int MAX_LIMIT = 3;
+
+	private RDBMSDataHandler handler;
+
+	public ODataApplyTest() {
+		super("ODataApplyTest");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		List<String> sql = new ArrayList<String>();
+		/* four regions, one more than the max limit */
+		sql.add("CREATE TABLE ODATA_SALES (SALE_ID INT PRIMARY KEY, REGION VARCHAR(16), AMOUNT INT)");
+		int[] amounts = { 10, 20, 30, 5, 15, 100, 1, 2 };
+		String[] regions = { "east", "east", "east", "west", "west", "north", "south", "south" };
+		for (int i = 0; i < amounts.length; i++) {
+			sql.add("INSERT INTO ODATA_SALES VALUES (" + (i + 1) + ", '" + regions[i] + "', " + amounts[i] + ")");
+		}
+		this.createDatabase("odata-apply-test", sql);
+		this.handler = new RDBMSDataHandler(this.dataSource, "odataApplyTest",
+				"<dynamicOdataConfig maxLimit=\"" + MAX_LIMIT + "\">" +
+				"<tblname name=\"ODATA_SALES\" schema=\"PUBLIC\"/>" +
+				"</dynamicOdataConfig>");
+	}
+
+	public void testGroupByWithReservedWordAliases() throws Exception {
+		/* GROUP and ORDER are SQL keywords, the aliases are quoted in the generated query */
+		RDBMSODataApply apply = RDBMSODataApply.parse(
+				"groupby((REGION),aggregate(AMOUNT with sum as group,$count as order,AMOUNT with max as top))");
+		List<ODataEntry> entries = this.handler.readAggregatedTable(SALES, apply,
+				Collections.<FilterOption>emptyList(), Arrays.asList("group DESC"), MAX_LIMIT, 0);
+		assertEquals(3, entries.size());
+		assertGroup(entries.get(0), "north", "100", "1", "100");
+		assertGroup(entries.get(1), "east", "60", "3", "30");
+		assertGroup(entries.get(2), "west", "20", "2", "15");
+		entries = this.handler.readAggregatedTable(SALES, apply, Collections.<FilterOption>emptyList(),
+				Arrays.asList("group DESC"), MAX_LIMIT, 3);
+		assertEquals(1, entries.size());
+		assertGroup(entries.get(0), "south", "3", "2", "2");
+	}
+
+	public void testGroupsWithoutTopCappedAtMaxLimit() throws Exception {
+		RDBMSODataApply apply = RDBMSODataApply.parse("groupby((REGION),aggregate($count as total))");
+		List<ODataEntry> entries = this.handler.readAggregatedTable(SALES, apply,
+				Collections.<FilterOption>emptyList(), Collections.<String>emptyList(), -1, 0);
+		assertEquals(MAX_LIMIT, entries.size());
+		/* ordered by the grouping properties when $orderby is absent */
+		assertEquals("east", entries.get(0).getValue("REGION"));
+		assertEquals("north", entries.get(1).getValue("REGION"));
+		assertEquals("south", entries.get(2).getValue("REGION"));
+		entries = this.handler.readAggregatedTable(SALES, apply, Collections.<FilterOption>emptyList(),
+				Collections.<String>emptyList(), -1, MAX_LIMIT);
+		assertEquals(1, entries.size());
+		assertEquals("west", entries.get(0).getValue("REGION"));
+		assertEquals("2", entries.get(0).getValue("total"));
+	}
+
+	public void testDuplicateAlias() throws Exception {
+		assertBadRequest("groupby((REGION),aggregate(AMOUNT with sum as total,AMOUNT with max as total))");
+		assertBadRequest("groupby((REGION),aggregate($count as REGION))");
+	}
+
+	public void testFilterBeforeGroupBy() throws Exception {
+		Map<String, Object> result = process("filter(AMOUNT gt 5)/groupby((REGION),aggregate($count as count," +
+				"AMOUNT with sum as sum))", null);
+		assertEquals((String) result.get("body"), 200, result.get("status"));
+		JSONObject collection = new JSONObject((String) result.get("body"));
+		assertTrue(collection.getString("@odata.context").endsWith("$metadata#" + SALES + "(REGION,count,sum)"));
+		JSONArray value = collection.getJSONArray("value");
+		/* the sales of the south region are all filtered out before grouping */
+		assertEquals(3, value.length());
+		Map<String, JSONObject> groups = new HashMap<String, JSONObject>();
+		for (int i = 0; i < value.length(); i++) {
+			groups.put(value.getJSONObject(i).getString("REGION"), value.getJSONObject(i));
+		}
+		assertEquals(3, groups.get("east").getLong("count"));
+		assertEquals(60, groups.get("east").getLong("sum"));
+		assertEquals(1, groups.get("west").getLong("count"));
+		assertEquals(15, groups.get("west").getLong("sum"));
+		assertEquals(1, groups.get("north").getLong("count"));
+		assertEquals(100, groups.get("north").getLong("sum"));
+	}
+
+	public void testProcessorCapsGroupsWithoutTop() throws Exception {
+		Map<String, Object> result = process("groupby((REGION),aggregate(AMOUNT with min as min))",
+				"$orderby=" + encode("min desc"));
+		assertEquals((String) result.get("body"), 200, result.get("status"));
+		JSONArray value = new JSONObject((String) result.get("body")).getJSONArray("value");
+		assertEquals(MAX_LIMIT, value.length());
+		assertEquals("north", value.getJSONObject(0).getString("REGION"));
+		assertEquals(100, value.getJSONObject(0).getLong("min"));
+		assertEquals("east", value.getJSONObject(1).getString("REGION"));
+		assertEquals("west", value.getJSONObject(2).getString("REGION"));
+	}
+
+	public void testProcessorRejectsDuplicateAlias() throws Exception {
+		Map<String, Object> result = process("groupby((REGION),aggregate($count as total,AMOUNT with sum as total))",
+				null);
+		assertEquals(400, result.get("status"));
+		assertTrue((String) result.get("body"), ((String) result.get("body")).contains("total"));
+	}
+
+	private static void assertGroup(ODataEntry entry, String region, String sum, String count, String max) {
+		assertEquals(region, entry.getValue("REGION"));
+		assertEquals(sum, entry.getValue("group"));
+		assertEquals(count, entry.getValue("order"));
+		assertEquals(max, entry.getValue("top"));
+	}
+
+	private static void assertBadRequest(String apply) {
+		try {
+			RDBMSODataApply.parse(apply);
+			fail("Invalid $apply accepted: " + apply);
+		} catch (ODataApplicationException e) {
+			assertEquals(400, e.getStatusCode());
+		}
+	}
+
+	/**
+	 * Serves a GET of the sales entity set with $apply through the ODataApplyProcessor.
+	 *
+	 * @return The status and the body of the response
+	 */
+	private Map<String, Object> process(String apply, String otherOptions) throws Exception {
+		ODataAdapter adapter = new ODataAdapter(this.handler, "odataApplyTest", "odataApplyTest");
+		OData odata = OData4Impl.newInstance();
+		ServiceMetadata edm = odata.createServiceMetadata(adapter.getEdmProvider(), new ArrayList<EdmxReference>());
+		String path = "/odata" + SERVICE_ROOT + "/" + SALES;
+		String query = "$apply=" + encode(apply) + (otherOptions == null ? "" : "&" + otherOptions);
+		Map<String, Object> request = new HashMap<String, Object>();
+		request.put("getMethod", "GET");
+		request.put("getContextPath", "");
+		request.put("getServletPath", "/odata");
+		request.put("getRequestURI", path);
+		request.put("getQueryString", query);
+		request.put("getRequestURL", new StringBuffer("http://localhost:9763" + path));
+		final StringWriter body = new StringWriter();
+		final PrintWriter writer = new PrintWriter(body);
+		final Map<String, Object> result = new HashMap<String, Object>();
+		HttpServletResponse response = proxy(HttpServletResponse.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("getWriter".equals(method.getName())) {
+					return writer;
+				}
+				if ("setStatus".equals(method.getName())) {
+					result.put("status", args[0]);
+				}
+				return null;
+			}
+		});
+		ODataApplyProcessor processor = new ODataApplyProcessor(this.handler, odata, edm);
+		processor.process(proxy(HttpServletRequest.class, request), response, SERVICE_ROOT);
+		writer.flush();
+		result.put("body", body.toString());
+		return result;
+	}
+
+	/**
+	 * Percent-encodes a query option value, with the spaces as %20 as in the OData URLs.
+	 */
+	private static String encode(String value) throws Exception {
+		return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.odata;
+
+import org.wso2.carbon.dataservices.core.odata.ODataEntityConverter;
+import org.wso2.carbon.dataservices.core.odata.ODataEntry;
+
+/**
+ * Compares the throughput of the precomputed conversion of data entries with the per row resolution of the entity
+ * type, property types and entity id, on the fixture of {@link ODataEntityConverterTest}. It is not part of the
+ * test suites, since its figures depend on the machine, and is run with:
+ * <pre>
+ * java -cp &lt;test classpath&gt; org.wso2.carbon.dataservices.core.test.odata.ODataEntityConverterBenchmark [iterations]
+ * </pre>
+ */
+public class ODataEntityConverterBenchmark {
+
+	private static final int DEFAULT_ITERATIONS = 200;
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+		ODataEntityConverterTest fixture = new ODataEntityConverterTest();
+		fixture.setUp();
+		try {
+			ODataEntityConverter converter = fixture.createConverter();
+			for (int i = 0; i < iterations / 4; i++) { // warm up
+				convertPerRow(fixture);
+				convertPrecomputed(fixture, converter);
+			}
+			int rows = iterations * fixture.getEntries().size();
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				convertPerRow(fixture);
+			}
+			double perRow = rows / ((System.nanoTime() - start) / 1e9);
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				convertPrecomputed(fixture, converter);
+			}
+			double precomputed = rows / ((System.nanoTime() - start) / 1e9);
+			System.out.println("OData entities converted per second: per row resolution = " + (int) perRow +
+					", precomputed plan = " + (int) precomputed);
+		} finally {
+			fixture.tearDown();
+		}
+	}
+
+	private static void convertPerRow(ODataEntityConverterTest fixture) throws Exception {
+		for (ODataEntry entry : fixture.getEntries()) {
+			fixture.convertPerRow(entry);
+		}
+	}
+
+	private static void convertPrecomputed(ODataEntityConverterTest fixture, ODataEntityConverter converter)
+			throws Exception {
+		for (ODataEntry entry : fixture.getEntries()) {
+			converter.createEntity(entry, ODataEntityConverterTest.BASE_URL);
+		}
+	}
+
+}
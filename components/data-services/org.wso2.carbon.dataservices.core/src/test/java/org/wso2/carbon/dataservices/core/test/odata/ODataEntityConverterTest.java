@@ -0,0 +1,131 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.odata;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.Property;
+import org.apache.olingo.commons.api.data.ValueType;
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edmx.EdmxReference;
+import org.apache.olingo.server.core.OData4Impl;
+import org.wso2.carbon.dataservices.core.odata.DataColumn;
+import org.wso2.carbon.dataservices.core.odata.ODataAdapter;
+import org.wso2.carbon.dataservices.core.odata.ODataEntityConverter;
+import org.wso2.carbon.dataservices.core.odata.ODataEntry;
+import org.wso2.carbon.dataservices.core.odata.ODataUtils;
+import org.wso2.carbon.dataservices.core.odata.RDBMSDataHandler;
+
+/**
+ * Checks that the precomputed conversion of data entries gives the same entities as the per row resolution of the
+ * entity type, property types and entity id.
+ */
+public class ODataEntityConverterTest extends ODataTestCase {
+
+	private static final String NAMESPACE = "odataConverterTest";
+
+	private static final String TABLE = "PUBLIC__ODATA_PRODUCTS";
+
+	static final String BASE_URL = "http://localhost:9763/odata/odataConverterTest/default";
+
+	private static final int ROW_COUNT = 500;
+
+	private RDBMSDataHandler handler;
+
+	private Edm edm;
+
+	private List<ODataEntry> entries;
+
+	public ODataEntityConverterTest() {
+		super("ODataEntityConverterTest");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		List<String> sql = new ArrayList<String>();
+		sql.add("CREATE TABLE ODATA_PRODUCTS (PRODUCT_ID INT, CODE VARCHAR(16), NAME VARCHAR(64), " +
+				"PRICE DECIMAL(10,2), QUANTITY BIGINT, AVAILABLE BOOLEAN, PRIMARY KEY (PRODUCT_ID, CODE))");
+		for (int i = 1; i <= ROW_COUNT; i++) {
+			sql.add("INSERT INTO ODATA_PRODUCTS VALUES (" + i + ", 'C''" + i + "', 'product " + i +
+					"', " + i + ".25, " + (i * 1000L) + ", " + (i % 2 == 0) + ")");
+		}
+		this.createDatabase("odata-converter-test", sql);
+		this.handler = new RDBMSDataHandler(this.dataSource, NAMESPACE,
+				"<dynamicOdataConfig maxLimit=\"1000\"><tblname name=\"ODATA_PRODUCTS\" schema=\"PUBLIC\"/>" +
+				"</dynamicOdataConfig>");
+		ODataAdapter adapter = new ODataAdapter(this.handler, NAMESPACE, NAMESPACE);
+		this.edm = OData4Impl.newInstance().createServiceMetadata(adapter.getEdmProvider(),
+				new ArrayList<EdmxReference>()).getEdm();
+		this.entries = this.handler.readTable(TABLE, createUriInfo(false), null);
+		assertEquals(ROW_COUNT, this.entries.size());
+	}
+
+	List<ODataEntry> getEntries() {
+		return this.entries;
+	}
+
+	public void testSameEntitiesAsPerRowConversion() throws Exception {
+		ODataEntityConverter converter = createConverter();
+		for (ODataEntry entry : this.entries) {
+			Entity expected = convertPerRow(entry);
+			Entity actual = converter.createEntity(entry, BASE_URL);
+			assertEquals(expected.getId(), actual.getId());
+			assertEquals(expected.getType(), actual.getType());
+			assertEquals(expected.getETag(), actual.getETag());
+			assertEquals(expected.getProperties().size(), actual.getProperties().size());
+			for (Property property : expected.getProperties()) {
+				Property actualProperty = actual.getProperty(property.getName());
+				assertNotNull(property.getName(), actualProperty);
+				assertEquals(property.getType(), actualProperty.getType());
+				assertEquals(property.getValue(), actualProperty.getValue());
+			}
+		}
+	}
+
+	ODataEntityConverter createConverter() {
+		EdmEntityType entityType = this.edm.getEntityType(new FullQualifiedName(NAMESPACE, TABLE));
+		return new ODataEntityConverter(TABLE, NAMESPACE, this.handler.getTableMetadata().get(TABLE).values(),
+				entityType, false);
+	}
+
+	/**
+	 * Converts a data entry resolving the entity type, the property types and the entity id for the row.
+	 */
+	Entity convertPerRow(ODataEntry entry) throws Exception {
+		Entity entity = new Entity();
+		for (DataColumn column : this.handler.getTableMetadata().get(TABLE).values()) {
+			String columnName = column.getColumnName();
+			if (!entry.getNames().contains(columnName))
+				continue;
+			entity.addProperty(new Property(ODataEntityConverter.getPrimitiveTypeKind(column.getColumnType())
+					.getFullQualifiedName().getFullQualifiedNameAsString(), columnName, ValueType.PRIMITIVE,
+					ODataEntityConverter.convertValue(column.getColumnType(), entry.getValue(columnName), false)));
+		}
+		EdmEntityType entityType = this.edm.getEntityType(new FullQualifiedName(NAMESPACE, TABLE));
+		entity.setId(new URI(ODataUtils.buildLocation(BASE_URL, entity, entityType.getName(), entityType)));
+		entity.setETag(entry.getValue("ETag"));
+		entity.setType(new FullQualifiedName(NAMESPACE, TABLE).getFullQualifiedNameAsString());
+		return entity;
+	}
+
+}
@@ -0,0 +1,184 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.odata;
+
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.commons.api.edmx.EdmxReference;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.core.OData4Impl;
+import org.apache.olingo.server.core.uri.parser.Parser;
+import org.wso2.carbon.dataservices.core.odata.ODataAdapter;
+import org.wso2.carbon.dataservices.core.odata.ODataEntry;
+import org.wso2.carbon.dataservices.core.odata.ODataEntryIndex;
+import org.wso2.carbon.dataservices.core.odata.RDBMSDataHandler;
+
+/**
+ * Checks that the entries selected by the indexes of an ODataEntryIndex are the ones the database selects for the
+ * same $filter, and that the filters the indexes cannot answer are left to the data source.
+ */
+public class ODataEntryIndexTest extends ODataTestCase {
+
+	private static final String ITEMS = "PUBLIC__ODATA_ITEMS";
+
+	private RDBMSDataHandler handler;
+
+	private OData odata;
+
+	private Edm edm;
+
+	private ODataEntryIndex index;
+
+	public ODataEntryIndexTest() {
+		super("ODataEntryIndexTest");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		List<String> sql = new ArrayList<String>();
+		sql.add("CREATE TABLE ODATA_ITEMS (ITEM_ID INT PRIMARY KEY, NAME VARCHAR(32), " +
+				"PRICE DECIMAL(10,2), ACTIVE BOOLEAN, NOTE VARCHAR(32))");
+		/* several items share a price, every fifth item has no price and no name */
+		for (int i = 1; i <= 20; i++) {
+			String name = i % 5 == 0 ? "NULL" : "'item-" + (char) ('a' + i) + "'";
+			String price = i % 5 == 0 ? "NULL" : (i % 7) + ".50";
+			sql.add("INSERT INTO ODATA_ITEMS VALUES (" + i + ", " + name + ", " + price + ", " +
+					(i % 2 == 0) + ", 'note-" + i + "')");
+		}
+		this.createDatabase("odata-index-test", sql);
+		this.handler = new RDBMSDataHandler(this.dataSource, "odataIndexTest",
+				"<dynamicOdataConfig maxLimit=\"1000\"><tblname name=\"ODATA_ITEMS\" schema=\"PUBLIC\"/>" +
+				"</dynamicOdataConfig>");
+		ODataAdapter adapter = new ODataAdapter(this.handler, "odataIndexTest", "odataIndexTest");
+		this.odata = OData4Impl.newInstance();
+		this.edm = this.odata.createServiceMetadata(adapter.getEdmProvider(), new ArrayList<EdmxReference>()).getEdm();
+		List<ODataEntry> entries = this.handler.readTable(ITEMS, parse(null), null);
+		assertEquals(20, entries.size());
+		this.index = new ODataEntryIndex(entries, this.handler.getTableMetadata().get(ITEMS),
+				Arrays.asList("ITEM_ID", "NAME", "PRICE", "ACTIVE"));
+	}
+
+	public void testComparisonsSelectTheSameEntriesAsTheDatabase() throws Exception {
+		assertSameAsDatabase("PRICE eq 3.5", 2);
+		assertSameAsDatabase("PRICE gt 3.5", 7);
+		assertSameAsDatabase("PRICE ge 3.5", 9);
+		assertSameAsDatabase("PRICE lt 1", 2);
+		assertSameAsDatabase("PRICE le 1.5", 4);
+		assertSameAsDatabase("NAME eq 'item-c'", 1);
+		assertSameAsDatabase("NAME ge 'item-p'", 4);
+		assertSameAsDatabase("ACTIVE eq true", 10);
+		assertSameAsDatabase("ITEM_ID lt 4", 3);
+	}
+
+	public void testLiteralOnTheLeft() throws Exception {
+		/* the database is given the same comparisons with the column on the left */
+		assertSameAsDatabase("3.5 lt PRICE", "PRICE gt 3.5", 7);
+		assertSameAsDatabase("10 ge ITEM_ID", "ITEM_ID le 10", 10);
+		assertSameAsDatabase("'item-c' eq NAME", "NAME eq 'item-c'", 1);
+	}
+
+	public void testConjunctions() throws Exception {
+		assertSameAsDatabase("PRICE ge 2 and PRICE lt 5 and ACTIVE eq false", 4);
+		assertSameAsDatabase("ITEM_ID gt 5 and NAME lt 'item-m'", 5);
+		assertSameAsDatabase("PRICE eq 6.5 and ACTIVE eq true", 1);
+	}
+
+	public void testNumbersComparedByValue() throws Exception {
+		/* the database returns the prices with two decimals */
+		List<ODataEntry> entries = this.index.filter(parse("PRICE eq 3.50").getFilterOption().getExpression());
+		assertEquals(Arrays.asList(3, 17), getIds(entries));
+		assertEquals(getIds(entries), getIds(this.index.filter(parse("PRICE eq 3.500").getFilterOption()
+				.getExpression())));
+		assertTrue(this.index.filter(parse("PRICE eq 3.25").getFilterOption().getExpression()).isEmpty());
+	}
+
+	public void testNullValuesNeverMatch() throws Exception {
+		List<ODataEntry> entries = this.index.filter(parse("PRICE ge 0").getFilterOption().getExpression());
+		assertEquals(16, entries.size());
+		for (ODataEntry entry : entries) {
+			assertNotNull(entry.getValue("PRICE"));
+		}
+		assertNull(this.index.filter(parse("PRICE eq null").getFilterOption().getExpression()));
+	}
+
+	public void testFiltersLeftToTheDataSource() throws Exception {
+		/* operators without an index lookup, functions, disjunctions and columns without an index */
+		assertNull(this.index.filter(parse("PRICE ne 3.5").getFilterOption().getExpression()));
+		assertNull(this.index.filter(parse("PRICE eq 3.5 or PRICE eq 4.5").getFilterOption().getExpression()));
+		assertNull(this.index.filter(parse("contains(NAME,'item')").getFilterOption().getExpression()));
+		assertNull(this.index.filter(parse("NOTE eq 'note-1'").getFilterOption().getExpression()));
+		assertNull(this.index.filter(parse("PRICE gt 1 and NOTE eq 'note-1'").getFilterOption().getExpression()));
+		/* booleans have no order */
+		assertNull(this.index.filter(parse("ACTIVE gt false").getFilterOption().getExpression()));
+	}
+
+	public void testEntriesOfTheSnapshot() throws Exception {
+		assertEquals(20, this.index.getEntries().size());
+		try {
+			this.index.getEntries().clear();
+			fail("The entries of a snapshot must not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Checks that the index selects the entries that the database selects for a $filter.
+	 */
+	private void assertSameAsDatabase(String filter, int expectedCount) throws Exception {
+		assertSameAsDatabase(filter, filter, expectedCount);
+	}
+
+	/**
+	 * Checks that the index selects for a  the entries that the database selects for an equivalent .
+	 */
+	private void assertSameAsDatabase(String filter, String databaseFilter, int expectedCount) throws Exception {
+		List<Integer> expected = getIds(this.handler.readTable(ITEMS, parse(databaseFilter), null));
+		List<Integer> actual = getIds(this.index.filter(parse(filter).getFilterOption().getExpression()));
+		assertEquals(filter, expectedCount, expected.size());
+		assertEquals(filter, expected, actual);
+	}
+
+	/**
+	 * Parses the options of a request of the items, with the given $filter.
+	 */
+	private UriInfo parse(String filter) throws Exception {
+		String query = filter == null ? null : "$filter=" + URLEncoder.encode(filter, "UTF-8").replace("+", "%20");
+		return new Parser(this.edm, this.odata).parseUri(ITEMS, query, null);
+	}
+
+	/**
+	 * Returns the sorted ids of entries.
+	 */
+	private static List<Integer> getIds(List<ODataEntry> entries) {
+		assertNotNull(entries);
+		List<Integer> ids = new ArrayList<Integer>();
+		for (ODataEntry entry : entries) {
+			ids.add(Integer.valueOf(entry.getValue("ITEM_ID")));
+		}
+		Collections.sort(ids);
+		return ids;
+	}
+
+}
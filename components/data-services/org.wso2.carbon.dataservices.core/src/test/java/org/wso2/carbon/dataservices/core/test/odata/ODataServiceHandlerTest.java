@@ -0,0 +1,114 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.odata;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.wso2.carbon.dataservices.core.odata.ODataDataHandler;
+import org.wso2.carbon.dataservices.core.odata.ODataServiceHandler;
+import org.wso2.carbon.dataservices.core.odata.RDBMSDataHandler;
+
+/**
+ * Tests the rebuild of the Olingo handler of an OData service when the metadata of its data handler changes.
+ */
+public class ODataServiceHandlerTest extends ODataTestCase {
+
+	private RDBMSDataHandler handler;
+
+	private final AtomicLong version = new AtomicLong();
+
+	private final AtomicBoolean broken = new AtomicBoolean();
+
+	private final AtomicInteger metadataReads = new AtomicInteger();
+
+	public ODataServiceHandlerTest() {
+		super("ODataServiceHandlerTest");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		List<String> sql = new ArrayList<String>();
+		sql.add("CREATE TABLE ODATA_NOTES (NOTE_ID INT PRIMARY KEY, TEXT VARCHAR(64))");
+		this.createDatabase("odata-service-handler-test", sql);
+		this.handler = new RDBMSDataHandler(this.dataSource, "odataServiceHandlerTest",
+				"<dynamicOdataConfig maxLimit=\"1000\">" +
+				"<tblname name=\"ODATA_NOTES\" schema=\"PUBLIC\"/>" +
+				"</dynamicOdataConfig>");
+	}
+
+	public void testFailedRebuildIsNotRetriedByEveryRequest() throws Exception {
+		ODataServiceHandler serviceHandler = new ODataServiceHandler(createDataHandler(), "odataServiceHandlerTest",
+				"odataServiceHandlerTest", true, null);
+		Object built = getHandler(serviceHandler);
+		assertSame(built, getHandler(serviceHandler));
+		/* a refresh changes the metadata, which the handler then fails to be rebuilt from */
+		this.broken.set(true);
+		this.version.incrementAndGet();
+		int reads = this.metadataReads.get();
+		for (int i = 0; i < 10; i++) {
+			assertSame(built, getHandler(serviceHandler));
+		}
+		assertEquals(reads + 1, this.metadataReads.get());
+		/* the next version of the metadata is tried at once */
+		this.broken.set(false);
+		this.version.incrementAndGet();
+		Object rebuilt = getHandler(serviceHandler);
+		assertNotSame(built, rebuilt);
+		assertSame(rebuilt, getHandler(serviceHandler));
+	}
+
+	/**
+	 * Returns a data handler delegating to the handler of the test database, whose metadata version is set by the
+	 * test and whose table list cannot be read while it is broken.
+	 */
+	private ODataDataHandler createDataHandler() {
+		return proxy(ODataDataHandler.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if ("getMetadataVersion".equals(method.getName())) {
+					return version.get();
+				}
+				if ("getTableList".equals(method.getName())) {
+					metadataReads.incrementAndGet();
+					if (broken.get()) {
+						throw new IllegalStateException("Metadata is not readable");
+					}
+				}
+				try {
+					return method.invoke(handler, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		});
+	}
+
+	private static Object getHandler(ODataServiceHandler serviceHandler) throws Exception {
+		Method getHandler = ODataServiceHandler.class.getDeclaredMethod("getHandler");
+		getHandler.setAccessible(true);
+		return getHandler.invoke(serviceHandler);
+	}
+
+}
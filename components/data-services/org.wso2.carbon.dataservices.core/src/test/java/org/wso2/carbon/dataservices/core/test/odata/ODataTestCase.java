@@ -0,0 +1,171 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.odata;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.api.uri.UriInfoResource;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.queryoption.CountOption;
+import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.apache.olingo.server.api.uri.queryoption.SelectItem;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
+import org.h2.jdbcx.JdbcConnectionPool;
+
+/**
+ * Base of the OData tests, which run against an in-memory H2 database dropped after each test, and describe the
+ * OData query options of the requests with proxies of the Olingo interfaces.
+ */
+public abstract class ODataTestCase extends TestCase {
+
+	protected JdbcConnectionPool dataSource;
+
+	protected ODataTestCase(String name) {
+		super(name);
+	}
+
+	/**
+	 * Creates the in-memory database of the test, and runs the given statements on it.
+	 */
+	protected void createDatabase(String name, List<String> statements) throws Exception {
+		Class.forName("org.h2.Driver");
+		this.dataSource = JdbcConnectionPool.create("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+		this.executeUpdate(statements.toArray(new String[statements.size()]));
+	}
+
+	protected void executeUpdate(String... statements) throws SQLException {
+		Connection conn = this.dataSource.getConnection();
+		try {
+			Statement stmt = conn.createStatement();
+			try {
+				for (String statement : statements) {
+					stmt.executeUpdate(statement);
+				}
+			} finally {
+				stmt.close();
+			}
+		} finally {
+			conn.close();
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (this.dataSource != null) {
+			this.executeUpdate("DROP ALL OBJECTS");
+			this.dataSource.dispose();
+		}
+	}
+
+	/**
+	 * Creates the options of a request, keyed by the name of their UriInfo getter.
+	 */
+	protected static UriInfo createUriInfo(Map<String, Object> options) {
+		return proxy(UriInfo.class, options);
+	}
+
+	/**
+	 * Creates the options of a request without query options, other than $count=true if requested.
+	 */
+	protected static UriInfo createUriInfo(boolean count) {
+		Map<String, Object> options = new HashMap<String, Object>();
+		if (count) {
+			options.put("getCountOption", option(CountOption.class, Boolean.TRUE));
+		}
+		return createUriInfo(options);
+	}
+
+	/**
+	 * Creates a query option returning the given value.
+	 */
+	protected static <T> T option(Class<T> optionClass, Object value) {
+		return proxy(optionClass, Collections.singletonMap("getValue", value));
+	}
+
+	/**
+	 * Creates an $expand option of the navigation to the given table, with the given nested $expand.
+	 */
+	protected static ExpandOption expand(String table, ExpandOption nested) {
+		Map<String, Object> item = new HashMap<String, Object>();
+		item.put("getResourcePath", resourcePath(table));
+		item.put("getExpandOption", nested);
+		Map<String, Object> expand = new HashMap<String, Object>();
+		expand.put("getExpandItems", Arrays.asList(proxy(ExpandItem.class, item)));
+		return proxy(ExpandOption.class, expand);
+	}
+
+	/**
+	 * Creates a $select option of the given properties.
+	 */
+	protected static SelectOption select(String... properties) {
+		List<SelectItem> items = new ArrayList<SelectItem>();
+		for (String property : properties) {
+			Map<String, Object> item = new HashMap<String, Object>();
+			item.put("isStar", Boolean.FALSE);
+			item.put("getResourcePath", resourcePath(property));
+			items.add(proxy(SelectItem.class, item));
+		}
+		Map<String, Object> select = new HashMap<String, Object>();
+		select.put("getSelectItems", items);
+		return proxy(SelectOption.class, select);
+	}
+
+	/**
+	 * Creates the resource path of a property or navigation.
+	 */
+	protected static UriInfoResource resourcePath(String segment) {
+		Map<String, Object> part = new HashMap<String, Object>();
+		part.put("getSegmentValue", segment);
+		Map<String, Object> path = new HashMap<String, Object>();
+		path.put("getUriResourceParts", Arrays.asList(proxy(UriResource.class, part)));
+		return proxy(UriInfoResource.class, path);
+	}
+
+	/**
+	 * Creates an implementation of the given interface returning the given values, keyed by method name.
+	 */
+	protected static <T> T proxy(Class<T> type, final Map<String, ?> values) {
+		return proxy(type, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return values.get(method.getName());
+			}
+		});
+	}
+
+	protected static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(ODataTestCase.class.getClassLoader(), new Class<?>[] { type },
+				handler));
+	}
+
+}
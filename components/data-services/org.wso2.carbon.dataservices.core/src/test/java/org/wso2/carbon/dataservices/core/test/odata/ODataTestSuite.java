@@ -0,0 +1,40 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.odata;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class ODataTestSuite extends TestCase {
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite(
+				"Test for org.wso2.carbon.dataservices.core.test.odata");
+		//$JUnit-BEGIN$
+		suite.addTestSuite(RDBMSDataHandlerConcurrencyTest.class);
+		suite.addTestSuite(ODataEntityConverterTest.class);
+		suite.addTestSuite(RDBMSDataHandlerTest.class);
+		suite.addTestSuite(ODataApplyTest.class);
+		suite.addTestSuite(ODataEntryIndexTest.class);
+		suite.addTestSuite(ODataServiceHandlerTest.class);
+		//$JUnit-END$
+		return suite;
+	}
+
+}
@@ -0,0 +1,223 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.odata;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.wso2.carbon.dataservices.core.odata.ODataEntry;
+import org.wso2.carbon.dataservices.core.odata.RDBMSDataHandler;
+
+/**
+ * Runs concurrent reads of two tables through a single RDBMSDataHandler, checking that each request gets the rows
+ * and the count of its own table, that the throughput does not collapse when the number of threads grows, and that
+ * each request reads with a single version of the metadata while it is being refreshed.
+ */
+public class RDBMSDataHandlerConcurrencyTest extends ODataTestCase {
+
+	private static final String ITEMS = "PUBLIC__ODATA_ITEMS";
+
+	private static final String ORDERS = "PUBLIC__ODATA_ORDERS";
+
+	private static final int ITEM_COUNT = 120;
+
+	private static final int ORDER_COUNT = 45;
+
+	private static final int OPERATIONS = 600;
+
+	private static final int READERS = 8;
+
+	private static final int REFRESHES = 20;
+
+	private RDBMSDataHandler handler;
+
+	public RDBMSDataHandlerConcurrencyTest() {
+		super("RDBMSDataHandlerConcurrencyTest");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		List<String> sql = new ArrayList<String>();
+		sql.add("CREATE TABLE ODATA_ITEMS (ITEM_ID INT PRIMARY KEY, ITEM_NAME VARCHAR(64))");
+		sql.add("CREATE TABLE ODATA_ORDERS (ORDER_ID INT PRIMARY KEY, QUANTITY INT, NOTE VARCHAR(64))");
+		for (int i = 1; i <= ITEM_COUNT; i++) {
+			sql.add("INSERT INTO ODATA_ITEMS VALUES (" + i + ", 'item-" + i + "')");
+		}
+		for (int i = 1; i <= ORDER_COUNT; i++) {
+			sql.add("INSERT INTO ODATA_ORDERS VALUES (" + i + ", " + (i * 2) + ", 'order-" + i + "')");
+		}
+		this.createDatabase("odata-concurrency-test", sql);
+		this.dataSource.setMaxConnections(32);
+		this.handler = new RDBMSDataHandler(this.dataSource, "odataConcurrencyTest",
+				"<dynamicOdataConfig maxLimit=\"1000\">" +
+				"<tblname name=\"ODATA_ITEMS\" schema=\"PUBLIC\"/>" +
+				"<tblname name=\"ODATA_ORDERS\" schema=\"PUBLIC\"/>" +
+				"</dynamicOdataConfig>");
+	}
+
+	public void testConcurrentReadsAreIsolated() throws Exception {
+		assertEquals(OPERATIONS, runReads(READERS));
+	}
+
+	public void testThroughputScalesWithThreads() throws Exception {
+		runReads(4); // warm up
+		long start = System.nanoTime();
+		runReads(1);
+		double singleThreaded = OPERATIONS / ((System.nanoTime() - start) / 1e9);
+		start = System.nanoTime();
+		runReads(READERS);
+		double multiThreaded = OPERATIONS / ((System.nanoTime() - start) / 1e9);
+		System.out.println("OData reads per second: 1 thread = " + (int) singleThreaded + ", " + READERS +
+				" threads = " + (int) multiThreaded);
+		assertTrue("Throughput with " + READERS + " threads (" + multiThreaded + "/s) collapsed compared to " +
+				"1 thread (" + singleThreaded + "/s)", multiThreaded >= singleThreaded * 0.5);
+	}
+
+	public void testReadsDuringMetadataRefresh() throws Exception {
+		this.executeUpdate("ALTER TABLE ODATA_ITEMS ADD COLUMN ITEM_NOTE VARCHAR(64) DEFAULT 'note'");
+		assertFalse(this.handler.getTableMetadata().get(ITEMS).containsKey("ITEM_NOTE"));
+		long version = this.handler.getMetadataVersion();
+		/* the refresh is normally run by the refresh executor, only when the metadata cache is enabled */
+		final Method refresh = RDBMSDataHandler.class.getDeclaredMethod("refreshMetaData");
+		refresh.setAccessible(true);
+		final AtomicBoolean refreshing = new AtomicBoolean(true);
+		final CountDownLatch readersStarted = new CountDownLatch(READERS);
+		ExecutorService executor = Executors.newFixedThreadPool(READERS + 1);
+		try {
+			List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < READERS; t++) {
+				readers.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						int reads = 0;
+						while (refreshing.get() || reads < 10) {
+							checkItemsWithSingleMetadata();
+							checkTable(ORDERS, ORDER_COUNT, "NOTE", "ORDER_ID");
+							if (reads++ == 0) {
+								readersStarted.countDown();
+							}
+						}
+						return reads;
+					}
+				}));
+			}
+			Future<Object> refresher = executor.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					try {
+						readersStarted.await(1, TimeUnit.MINUTES);
+						for (int i = 0; i < REFRESHES; i++) {
+							refresh.invoke(handler);
+						}
+						return null;
+					} finally {
+						refreshing.set(false);
+					}
+				}
+			});
+			refresher.get(2, TimeUnit.MINUTES);
+			for (Future<Integer> reader : readers) {
+				assertTrue(reader.get(2, TimeUnit.MINUTES) >= 10);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(version + REFRESHES, this.handler.getMetadataVersion());
+		assertTrue(this.handler.getTableMetadata().get(ITEMS).containsKey("ITEM_NOTE"));
+		for (ODataEntry entry : this.handler.readTable(ITEMS, createUriInfo(false), null)) {
+			assertEquals("note", entry.getValue("ITEM_NOTE"));
+		}
+	}
+
+	/**
+	 * Reads the items, whose ITEM_NOTE column is only known to the refreshed metadata, and checks that all the
+	 * entries of the response were read with the same metadata.
+	 */
+	private void checkItemsWithSingleMetadata() throws Exception {
+		List<ODataEntry> entries = this.handler.readTable(ITEMS, createUriInfo(false), null);
+		assertEquals(ITEMS, ITEM_COUNT, entries.size());
+		boolean withNote = entries.get(0).getNames().contains("ITEM_NOTE");
+		for (ODataEntry entry : entries) {
+			assertEquals("Entries of one response read with different metadata", withNote,
+					entry.getNames().contains("ITEM_NOTE"));
+			assertTrue(ITEMS + " entry mixed up with another table",
+					entry.getValue("ITEM_NAME").endsWith("-" + entry.getValue("ITEM_ID")));
+		}
+	}
+
+	/**
+	 * Reads alternately the two tables with the given number of threads, each read followed by the count of the
+	 * same table, and checks every result.
+	 *
+	 * @return the number of verified operations
+	 */
+	private int runReads(int threads) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < threads; t++) {
+				final int offset = t;
+				final int operations = OPERATIONS / threads + (t < OPERATIONS % threads ? 1 : 0);
+				results.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						for (int i = 0; i < operations; i++) {
+							if ((i + offset) % 2 == 0) {
+								checkTable(ITEMS, ITEM_COUNT, "ITEM_NAME", "ITEM_ID");
+							} else {
+								checkTable(ORDERS, ORDER_COUNT, "NOTE", "ORDER_ID");
+							}
+						}
+						return operations;
+					}
+				}));
+			}
+			int verified = 0;
+			for (Future<Integer> result : results) {
+				verified += result.get(2, TimeUnit.MINUTES);
+			}
+			return verified;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void checkTable(String table, int expectedCount, String column, String keyColumn) throws Exception {
+		RDBMSDataHandler.TablePage page = this.handler.readTablePage(table, createUriInfo(true), null);
+		List<ODataEntry> entries = page.getEntries();
+		assertEquals(table, expectedCount, entries.size());
+		for (ODataEntry entry : entries) {
+			assertNotNull(table + " entry without " + column, entry.getValue(column));
+			assertTrue(table + " entry mixed up with another table",
+					entry.getValue(column).endsWith("-" + entry.getValue(keyColumn)));
+		}
+		if (page.getTotal() != null) {
+			assertEquals(table, expectedCount, page.getTotal().intValue());
+		}
+		assertEquals(table, expectedCount, this.handler.countRecords(createUriInfo(true), table));
+	}
+
+}
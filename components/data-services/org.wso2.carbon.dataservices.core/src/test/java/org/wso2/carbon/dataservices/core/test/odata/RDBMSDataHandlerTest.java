@@ -0,0 +1,662 @@
+/*
+ *  Copyright (c) 2005-2010, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.carbon.dataservices.core.test.odata;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.olingo.commons.api.data.Property;
+import org.apache.olingo.commons.api.data.ValueType;
+import org.apache.olingo.commons.api.edmx.EdmxReference;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.uri.queryoption.CountOption;
+import org.apache.olingo.server.api.uri.queryoption.SkipOption;
+import org.apache.olingo.server.api.uri.queryoption.SkipTokenOption;
+import org.apache.olingo.server.api.uri.queryoption.TopOption;
+import org.apache.olingo.server.core.OData4Impl;
+import org.apache.olingo.server.core.ServiceDispatcher;
+import org.wso2.carbon.dataservices.core.odata.ODataAdapter;
+import org.wso2.carbon.dataservices.core.odata.ODataConstants;
+import org.wso2.carbon.dataservices.core.odata.ODataEntry;
+import org.wso2.carbon.dataservices.core.odata.ODataServiceFault;
+import org.wso2.carbon.dataservices.core.odata.ODataUtils;
+import org.wso2.carbon.dataservices.core.odata.RDBMSDataHandler;
+
+/**
+ * Reads and writes the entities of an in-memory H2 database through a RDBMSDataHandler, checking the entities
+ * returned for the OData query options.
+ */
+public class RDBMSDataHandlerTest extends ODataTestCase {
+
+	private static final String CARBON_HOME = "carbon.home";
+
+	private static final String LINES = "PUBLIC__ODATA_LINES";
+
+	private static final String NOTES = "PUBLIC__ODATA_NOTES";
+
+	private static final String DOCS = "PUBLIC__ODATA_DOCS";
+
+	private static final String CUSTOMERS = "PUBLIC__ODATA_CUSTOMERS";
+
+	private static final String ORDER_TABLE = "PUBLIC__ODATA_ORDERS";
+
+	private static final String EVENTS = "PUBLIC__ODATA_EVENTS";
+
+	private static final int ORDERS = 4;
+
+	private static final int LINES_PER_ORDER = 3;
+
+	private static final int NOTE_COUNT = 7;
+
+	private static final int PAGE_SIZE = 5;
+
+	private static final int CHANGESET_SIZE = 50;
+
+	private RDBMSDataHandler handler;
+
+	public RDBMSDataHandlerTest() {
+		super("RDBMSDataHandlerTest");
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		List<String> sql = new ArrayList<String>();
+		/* the orders 1, 2 and 4 are placed by the customer 1, the order 3 by the customer 2 */
+		sql.add("CREATE TABLE ODATA_CUSTOMERS (CUSTOMER_ID INT PRIMARY KEY, NAME VARCHAR(64))");
+		sql.add("CREATE TABLE ODATA_ORDERS (ORDER_ID INT PRIMARY KEY, CUSTOMER_ID INT, " +
+				"FOREIGN KEY (CUSTOMER_ID) REFERENCES ODATA_CUSTOMERS (CUSTOMER_ID))");
+		/* several lines share the value of each column of the composite key, so the pages split them */
+		sql.add("CREATE TABLE ODATA_LINES (ORDER_ID INT, LINE_NO INT, PRODUCT VARCHAR(64), " +
+				"PRIMARY KEY (ORDER_ID, LINE_NO), FOREIGN KEY (ORDER_ID) REFERENCES ODATA_ORDERS (ORDER_ID))");
+		for (int customer = 1; customer <= 3; customer++) {
+			sql.add("INSERT INTO ODATA_CUSTOMERS VALUES (" + customer + ", 'customer-" + customer + "')");
+		}
+		for (int order = 1; order <= ORDERS; order++) {
+			sql.add("INSERT INTO ODATA_ORDERS VALUES (" + order + ", " + (order == 3 ? 2 : 1) + ")");
+		}
+		sql.add("CREATE TABLE ODATA_NOTES (NOTE_ID INT PRIMARY KEY, TEXT VARCHAR(64))");
+		sql.add("CREATE TABLE ODATA_DOCS (DOC_ID INT PRIMARY KEY, TITLE VARCHAR(64), " +
+				"AUTHOR VARCHAR(64), BODY CLOB)");
+		sql.add("INSERT INTO ODATA_DOCS VALUES (1, 'title-1', 'author-1', 'body-1')");
+		sql.add("INSERT INTO ODATA_DOCS VALUES (2, 'title-2', 'author-2', 'body-2')");
+		for (int order = 1; order <= ORDERS; order++) {
+			for (int line = 1; line <= LINES_PER_ORDER; line++) {
+				sql.add("INSERT INTO ODATA_LINES VALUES (" + order + ", " + line + ", 'product-" +
+						order + "-" + line + "')");
+			}
+		}
+		for (int i = 1; i <= NOTE_COUNT; i++) {
+			sql.add("INSERT INTO ODATA_NOTES VALUES (" + i + ", 'note-" + i + "')");
+		}
+		this.createDatabase("odata-handler-test", sql);
+		this.handler = new RDBMSDataHandler(this.dataSource, "odataHandlerTest",
+				"<dynamicOdataConfig maxLimit=\"1000\">" +
+				"<tblname name=\"ODATA_LINES\" schema=\"PUBLIC\" pageSize=\"" + PAGE_SIZE + "\"/>" +
+				"<tblname name=\"ODATA_NOTES\" schema=\"PUBLIC\"/>" +
+				"<tblname name=\"ODATA_DOCS\" schema=\"PUBLIC\"/>" +
+				"<tblname name=\"ODATA_CUSTOMERS\" schema=\"PUBLIC\"/>" +
+				"<tblname name=\"ODATA_ORDERS\" schema=\"PUBLIC\"/>" +
+				"</dynamicOdataConfig>");
+	}
+
+	public void testKeysetPagesSplittingDuplicateKeyValues() throws Exception {
+		/* the pages are read in the order of the key columns, as given by the metadata */
+		List<String> keys = this.handler.getPrimaryKeys().get(LINES);
+		assertEquals(2, keys.size());
+		List<List<Integer>> read = new ArrayList<List<Integer>>();
+		String skipToken = null;
+		int pages = 0;
+		do {
+			Map<String, Object> options = new HashMap<String, Object>();
+			if (skipToken != null) {
+				options.put("getSkipTokenOption", option(SkipTokenOption.class, skipToken));
+			}
+			RDBMSDataHandler.TablePage page = this.handler.readTablePage(LINES, createUriInfo(options), null);
+			List<ODataEntry> entries = page.getEntries();
+			assertTrue(entries.size() <= PAGE_SIZE);
+			for (ODataEntry entry : entries) {
+				read.add(Arrays.asList(Integer.valueOf(entry.getValue(keys.get(0))),
+						Integer.valueOf(entry.getValue(keys.get(1)))));
+				assertEquals("product-" + entry.getValue("ORDER_ID") + "-" + entry.getValue("LINE_NO"),
+						entry.getValue("PRODUCT"));
+			}
+			skipToken = page.getNextSkipToken();
+			pages++;
+		} while (skipToken != null);
+		assertEquals(3, pages);
+		assertEquals(ORDERS * LINES_PER_ORDER, read.size());
+		/* every line is read once and in key order, although the pages end between rows sharing the first key */
+		for (int i = 1; i < read.size(); i++) {
+			List<Integer> previous = read.get(i - 1);
+			List<Integer> current = read.get(i);
+			assertTrue(previous + " read before " + current, previous.get(0) < current.get(0) ||
+					(previous.get(0).equals(current.get(0)) && previous.get(1) < current.get(1)));
+		}
+	}
+
+	public void testInvalidPageSize() throws Exception {
+		try {
+			new RDBMSDataHandler(this.dataSource, "odataPageSizeTest",
+					"<dynamicOdataConfig maxLimit=\"1000\">" +
+					"<tblname name=\"ODATA_NOTES\" schema=\"PUBLIC\"/>" +
+					"<tblname name=\"ODATA_LINES\" schema=\"PUBLIC\" pageSize=\"ten\"/>" +
+					"</dynamicOdataConfig>");
+			fail("A page size which is not a number must be rejected");
+		} catch (ODataServiceFault e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(LINES));
+		}
+	}
+
+	public void testInvalidSkipTokenWithKeysetPaging() throws Exception {
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put("getSkipTokenOption", option(SkipTokenOption.class,
+				ODataUtils.encodeSkipToken(Arrays.asList("1"))));
+		try {
+			this.handler.readTable(LINES, createUriInfo(options), null);
+			fail("A skip token without all the key values must be rejected");
+		} catch (ODataApplicationException e) {
+			assertEquals(400, e.getStatusCode());
+		}
+	}
+
+	public void testSkipTokenIgnoredWithoutPageSize() throws Exception {
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put("getSkipTokenOption", option(SkipTokenOption.class, "not-a-keyset-token"));
+		RDBMSDataHandler.TablePage page = this.handler.readTablePage(NOTES, createUriInfo(options), null);
+		List<ODataEntry> entries = page.getEntries();
+		assertEquals(NOTE_COUNT, entries.size());
+		assertNull(page.getNextSkipToken());
+		/* the page is still selected by $skip */
+		options.put("getSkipOption", option(SkipOption.class, 5));
+		entries = this.handler.readTable(NOTES, createUriInfo(options), null);
+		assertEquals(NOTE_COUNT - 5, entries.size());
+		assertEquals("note-6", entries.get(0).getValue("TEXT"));
+	}
+
+	public void testSelectReadsOnlySelectedColumns() throws Exception {
+		Map<String, String> eTags = new HashMap<String, String>();
+		for (ODataEntry entry : this.handler.readTable(DOCS, createUriInfo(new HashMap<String, Object>()), null)) {
+			assertEquals("body-" + entry.getValue("DOC_ID"), entry.getValue("BODY"));
+			eTags.put(entry.getValue("DOC_ID"), entry.getValue("ETag"));
+		}
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put("getSelectOption", select("TITLE"));
+		List<ODataEntry> entries = this.handler.readTable(DOCS, createUriInfo(options), null);
+		assertEquals(2, entries.size());
+		Map<String, String> projectionETags = new HashMap<String, String>();
+		for (ODataEntry entry : entries) {
+			/* the key identifies the entity, the other columns read for the ETag are left out */
+			assertEquals(new HashSet<String>(Arrays.asList("DOC_ID", "TITLE", "ETag")), entry.getNames());
+			assertEquals("title-" + entry.getValue("DOC_ID"), entry.getValue("TITLE"));
+			assertNotNull(entry.getValue("ETag"));
+			/* the large object is not read for the ETag of a projection, which doesn't match the entity's one */
+			assertFalse(eTags.get(entry.getValue("DOC_ID")).equals(entry.getValue("ETag")));
+			projectionETags.put(entry.getValue("DOC_ID"), entry.getValue("ETag"));
+		}
+		options.put("getSelectOption", select("AUTHOR"));
+		for (ODataEntry entry : this.handler.readTable(DOCS, createUriInfo(options), null)) {
+			assertEquals(projectionETags.get(entry.getValue("DOC_ID")), entry.getValue("ETag"));
+		}
+	}
+
+	public void testLargeObjectChangeChangesETag() throws Exception {
+		Map<String, String> eTags = new HashMap<String, String>();
+		for (ODataEntry entry : this.handler.readTable(DOCS, createUriInfo(new HashMap<String, Object>()), null)) {
+			eTags.put(entry.getValue("DOC_ID"), entry.getValue("ETag"));
+		}
+		this.executeUpdate("UPDATE ODATA_DOCS SET BODY = 'body-1-changed' WHERE DOC_ID = 1");
+		for (ODataEntry entry : this.handler.readTable(DOCS, createUriInfo(new HashMap<String, Object>()), null)) {
+			if ("1".equals(entry.getValue("DOC_ID"))) {
+				assertFalse(eTags.get("1").equals(entry.getValue("ETag")));
+			} else {
+				assertEquals(eTags.get(entry.getValue("DOC_ID")), entry.getValue("ETag"));
+			}
+		}
+	}
+
+	public void testCountOfPagedCollection() throws Exception {
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put("getCountOption", option(CountOption.class, Boolean.TRUE));
+		options.put("getTopOption", option(TopOption.class, 3));
+		options.put("getSkipOption", option(SkipOption.class, 2));
+		RDBMSDataHandler.TablePage page = this.handler.readTablePage(NOTES, createUriInfo(options), null);
+		List<ODataEntry> entries = page.getEntries();
+		assertEquals(3, entries.size());
+		for (int i = 0; i < entries.size(); i++) {
+			assertEquals("note-" + (i + 3), entries.get(i).getValue("TEXT"));
+		}
+		/* the total of the collection, not of the page, read along with the page where the database can */
+		if (page.getTotal() != null) {
+			assertEquals(NOTE_COUNT, page.getTotal().intValue());
+		}
+		assertEquals(NOTE_COUNT, this.handler.countRecords(createUriInfo(options), NOTES));
+		/* a page after the last entity does not tell the total */
+		options.put("getSkipOption", option(SkipOption.class, NOTE_COUNT + 3));
+		page = this.handler.readTablePage(NOTES, createUriInfo(options), null);
+		assertTrue(page.getEntries().isEmpty());
+		assertNull(page.getTotal());
+		assertEquals(NOTE_COUNT, this.handler.countRecords(createUriInfo(options), NOTES));
+	}
+
+	public void testInterleavedPagesOfSameTable() throws Exception {
+		Map<String, Object> first = new HashMap<String, Object>();
+		first.put("getCountOption", option(CountOption.class, Boolean.TRUE));
+		Map<String, Object> beyondEnd = new HashMap<String, Object>(first);
+		beyondEnd.put("getTopOption", option(TopOption.class, 2));
+		beyondEnd.put("getSkipOption", option(SkipOption.class, ORDERS * LINES_PER_ORDER));
+		/* two requests on the same table and thread, e.g. in a batch, keep their own totals and skip tokens */
+		RDBMSDataHandler.TablePage firstPage = this.handler.readTablePage(LINES, createUriInfo(first), null);
+		RDBMSDataHandler.TablePage emptyPage = this.handler.readTablePage(LINES, createUriInfo(beyondEnd), null);
+		assertTrue(emptyPage.getEntries().isEmpty());
+		assertNull(emptyPage.getNextSkipToken());
+		assertNull(emptyPage.getTotal());
+		assertEquals(PAGE_SIZE, firstPage.getEntries().size());
+		assertNotNull(firstPage.getNextSkipToken());
+		if (firstPage.getTotal() != null) {
+			assertEquals(ORDERS * LINES_PER_ORDER, firstPage.getTotal().intValue());
+		}
+		Map<String, Object> next = new HashMap<String, Object>();
+		next.put("getSkipTokenOption", option(SkipTokenOption.class, firstPage.getNextSkipToken()));
+		List<ODataEntry> entries = this.handler.readTable(LINES, createUriInfo(next), null);
+		assertEquals(PAGE_SIZE, entries.size());
+	}
+
+	public void testCountOfNavigationCollection() throws Exception {
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put("getCountOption", option(CountOption.class, Boolean.TRUE));
+		List<Property> customer = Arrays.asList(new Property(null, "CUSTOMER_ID", ValueType.PRIMITIVE, "1"));
+		assertEquals(3, this.handler.readTable(ORDER_TABLE, createUriInfo(options), customer).size());
+		/* the orders of the customer, not all the orders */
+		assertEquals(3, this.handler.countRecords(createUriInfo(options), ORDER_TABLE, customer));
+		assertEquals(ORDERS, this.handler.countRecords(createUriInfo(options), ORDER_TABLE));
+		ODataAdapter adapter = new ODataAdapter(this.handler, "odataHandlerTest", "odataHandlerTest");
+		OData odata = OData4Impl.newInstance();
+		ServiceMetadata edm = odata.createServiceMetadata(adapter.getEdmProvider(), new ArrayList<EdmxReference>());
+		adapter.init(odata, edm);
+		ODataResponse response = execute(odata, edm, adapter, HttpMethod.GET,
+				"/" + CUSTOMERS + "(2)/" + ORDER_TABLE + "?$count=true", null, null);
+		assertEquals(200, response.getStatusCode());
+		String content = IOUtils.toString(response.getContent(), "UTF-8");
+		assertTrue(content, content.contains("\"@odata.count\":1"));
+	}
+
+	public void testCachedCountOfUnfilteredCollection() throws Exception {
+		RDBMSDataHandler cachingHandler = new RDBMSDataHandler(this.dataSource, "odataCountCacheTest",
+				"<dynamicOdataConfig maxLimit=\"1000\" countCacheTTL=\"600\">" +
+				"<tblname name=\"ODATA_NOTES\" schema=\"PUBLIC\"/>" +
+				"</dynamicOdataConfig>");
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put("getCountOption", option(CountOption.class, Boolean.TRUE));
+		assertEquals(NOTE_COUNT, cachingHandler.countRecords(createUriInfo(options), NOTES));
+		this.executeUpdate("INSERT INTO ODATA_NOTES VALUES (100, 'note-100')");
+		/* the rows written outside of the handler are only counted once the cached count expires */
+		assertEquals(NOTE_COUNT, cachingHandler.countRecords(createUriInfo(options), NOTES));
+		assertEquals(NOTE_COUNT + 1, this.handler.countRecords(createUriInfo(options), NOTES));
+	}
+
+	public void testPersistedMetadataSnapshot() throws Exception {
+		String carbonHome = System.getProperty(CARBON_HOME);
+		File snapshotDir = new File("target" + File.separator + "carbonHome" + File.separator + "repository" +
+				File.separator + "data", "odata-metadata");
+		/* the snapshots of the previous runs, written by refreshes once their database was dropped, are not reused */
+		final String configId = "odataSnapshotTest" + System.currentTimeMillis();
+		String config = "<dynamicOdataConfig maxLimit=\"1000\" metadataCache=\"true\">" +
+				"<tblname name=\"ODATA_NOTES\" schema=\"PUBLIC\"/>" +
+				"</dynamicOdataConfig>";
+		try {
+			/* without a Carbon home the snapshot is not persisted anywhere */
+			System.clearProperty(CARBON_HOME);
+			assertNotNull(new RDBMSDataHandler(this.dataSource, "odataNoHomeTest", config).getTableMetadata()
+					.get(NOTES));
+			System.setProperty(CARBON_HOME, "target" + File.separator + "carbonHome");
+			new RDBMSDataHandler(this.dataSource, configId, config);
+			File[] snapshots = snapshotDir.listFiles(new FilenameFilter() {
+				@Override
+				public boolean accept(File dir, String name) {
+					return name.startsWith(configId + "_") && name.endsWith(".ser");
+				}
+			});
+			assertNotNull(snapshots);
+			assertEquals(1, snapshots.length);
+			assertNotNull(new RDBMSDataHandler(this.dataSource, configId, config).getTableMetadata()
+					.get(NOTES));
+			/* a tampered snapshot is rejected before any object of another class is created from it */
+			ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(snapshots[0]));
+			try {
+				out.writeObject(new DeserializationProbe());
+			} finally {
+				out.close();
+			}
+			DeserializationProbe.deserialized = false;
+			RDBMSDataHandler handler = new RDBMSDataHandler(this.dataSource, configId, config);
+			assertFalse(DeserializationProbe.deserialized);
+			assertNotNull(handler.getTableMetadata().get(NOTES));
+			snapshots[0].delete();
+		} finally {
+			if (carbonHome == null) {
+				System.clearProperty(CARBON_HOME);
+			} else {
+				System.setProperty(CARBON_HOME, carbonHome);
+			}
+		}
+		String[] leftOver = new File(System.getProperty("java.io.tmpdir"), "odata-metadata").list();
+		if (leftOver != null) {
+			for (String name : leftOver) {
+				assertFalse(name, name.startsWith("odataNoHomeTest_"));
+			}
+		}
+	}
+
+	public void testNestedExpand() throws Exception {
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put("getExpandOption", expand(ORDER_TABLE, expand(LINES, null)));
+		List<ODataEntry> customers = this.handler.readTable(CUSTOMERS, createUriInfo(options), null);
+		assertEquals(3, customers.size());
+		Map<String, List<String>> expectedOrders = new HashMap<String, List<String>>();
+		expectedOrders.put("1", Arrays.asList("1", "2", "4"));
+		expectedOrders.put("2", Arrays.asList("3"));
+		expectedOrders.put("3", new ArrayList<String>());
+		for (ODataEntry customer : customers) {
+			String customerId = customer.getValue("CUSTOMER_ID");
+			assertEquals("customer-" + customerId, customer.getValue("NAME"));
+			List<String> orderIds = new ArrayList<String>();
+			for (ODataEntry order : customer.getNavigationEntries(ORDER_TABLE)) {
+				orderIds.add(order.getValue("ORDER_ID"));
+				assertEquals(customerId, order.getValue("CUSTOMER_ID"));
+				List<ODataEntry> lines = order.getNavigationEntries(LINES);
+				assertEquals(LINES_PER_ORDER, lines.size());
+				for (ODataEntry line : lines) {
+					assertEquals(order.getValue("ORDER_ID"), line.getValue("ORDER_ID"));
+					assertEquals("product-" + line.getValue("ORDER_ID") + "-" + line.getValue("LINE_NO"),
+							line.getValue("PRODUCT"));
+				}
+			}
+			assertEquals(expectedOrders.get(customerId), orderIds);
+		}
+	}
+
+	public void testChangesetReusesWriteStatements() throws Exception {
+		final Map<String, Integer> prepared = new HashMap<String, Integer>();
+		RDBMSDataHandler countingHandler = new RDBMSDataHandler(countPreparedStatements(prepared),
+				"odataChangesetTest", "<dynamicOdataConfig maxLimit=\"1000\">" +
+				"<tblname name=\"ODATA_NOTES\" schema=\"PUBLIC\"/>" +
+				"</dynamicOdataConfig>");
+		prepared.clear();
+		countingHandler.openTransaction();
+		for (int i = 1; i <= CHANGESET_SIZE; i++) {
+			ODataEntry note = new ODataEntry();
+			note.addValue("NOTE_ID", Integer.toString(100 + i));
+			note.addValue("TEXT", "new-note-" + i);
+			assertNotNull(countingHandler.insertEntityToTable(NOTES, note).getValue(ODataConstants.E_TAG));
+		}
+		for (int i = 1; i <= NOTE_COUNT; i++) {
+			ODataEntry note = new ODataEntry();
+			note.addValue("NOTE_ID", Integer.toString(i));
+			note.addValue("TEXT", "changed-note-" + i);
+			assertTrue(countingHandler.updateEntityInTable(NOTES, note));
+		}
+		ODataEntry key = new ODataEntry();
+		key.addValue("NOTE_ID", "1");
+		assertTrue(countingHandler.deleteEntityInTable(NOTES, key));
+		countingHandler.commitTransaction();
+		/* one statement is prepared for each kind of operation of the changeset */
+		assertEquals(3, prepared.size());
+		for (Map.Entry<String, Integer> statement : prepared.entrySet()) {
+			assertEquals(statement.getKey(), Integer.valueOf(1), statement.getValue());
+		}
+		List<ODataEntry> entries = this.handler.readTable(NOTES, createUriInfo(new HashMap<String, Object>()), null);
+		assertEquals(NOTE_COUNT - 1 + CHANGESET_SIZE, entries.size());
+		for (ODataEntry entry : entries) {
+			int id = Integer.parseInt(entry.getValue("NOTE_ID"));
+			assertEquals(id > 100 ? "new-note-" + (id - 100) : "changed-note-" + id, entry.getValue("TEXT"));
+		}
+	}
+
+	public void testRolledBackChangeset() throws Exception {
+		this.handler.openTransaction();
+		for (int i = 1; i <= CHANGESET_SIZE; i++) {
+			ODataEntry note = new ODataEntry();
+			note.addValue("NOTE_ID", Integer.toString(100 + i));
+			note.addValue("TEXT", "new-note-" + i);
+			this.handler.insertEntityToTable(NOTES, note);
+		}
+		this.handler.rollbackTransaction();
+		List<ODataEntry> entries = this.handler.readTable(NOTES, createUriInfo(new HashMap<String, Object>()), null);
+		assertEquals(NOTE_COUNT, entries.size());
+		/* the statements of the rolled back changeset are not reused by the next one */
+		this.handler.openTransaction();
+		ODataEntry note = new ODataEntry();
+		note.addValue("NOTE_ID", "100");
+		note.addValue("TEXT", "new-note");
+		this.handler.insertEntityToTable(NOTES, note);
+		this.handler.commitTransaction();
+		assertEquals(NOTE_COUNT + 1, this.handler.readTable(NOTES, createUriInfo(new HashMap<String, Object>()),
+				null).size());
+	}
+
+	public void testIfMatchWithStaleETag() throws Exception {
+		ODataAdapter adapter = new ODataAdapter(this.handler, "odataHandlerTest", "odataHandlerTest");
+		OData odata = OData4Impl.newInstance();
+		ServiceMetadata edm = odata.createServiceMetadata(adapter.getEdmProvider(), new ArrayList<EdmxReference>());
+		/* as registered to the Olingo handler by ODataServiceHandler */
+		adapter.init(odata, edm);
+		String note = "/" + NOTES + "(1)";
+		ODataResponse read = execute(odata, edm, adapter, HttpMethod.GET, note, null, null);
+		assertEquals(200, read.getStatusCode());
+		String eTag = getETag(read);
+		assertNotNull(eTag);
+		this.executeUpdate("UPDATE ODATA_NOTES SET TEXT = 'concurrent-note' WHERE NOTE_ID = 1");
+		ODataResponse stale = execute(odata, edm, adapter, HttpMethod.PATCH, note, eTag,
+				"{\"TEXT\":\"stale-note\"}");
+		assertEquals(412, stale.getStatusCode());
+		assertEquals("concurrent-note", readNote(1));
+		/* the update is made with the ETag of the current entity */
+		eTag = getETag(execute(odata, edm, adapter, HttpMethod.GET, note, null, null));
+		assertNotNull(eTag);
+		ODataResponse updated = execute(odata, edm, adapter, HttpMethod.PATCH, note, eTag,
+				"{\"TEXT\":\"updated-note\"}");
+		assertTrue(String.valueOf(updated.getStatusCode()), updated.getStatusCode() < 300);
+		assertEquals("updated-note", readNote(1));
+	}
+
+	public void testConcurrentTimestampChange() throws Exception {
+		this.executeUpdate("CREATE TABLE ODATA_EVENTS (EVENT_ID INT PRIMARY KEY, NAME VARCHAR(64), HAPPENED TIMESTAMP)",
+				"INSERT INTO ODATA_EVENTS VALUES (1, 'event-1', '2015-06-01 10:00:00')");
+		final RDBMSDataHandler eventHandler = new RDBMSDataHandler(this.dataSource, "odataEventTest",
+				"<dynamicOdataConfig maxLimit=\"1000\">" +
+				"<tblname name=\"ODATA_EVENTS\" schema=\"PUBLIC\"/>" +
+				"</dynamicOdataConfig>");
+		ODataAdapter adapter = new ODataAdapter(eventHandler, "odataEventTest", "odataEventTest");
+		OData odata = OData4Impl.newInstance();
+		ServiceMetadata edm = odata.createServiceMetadata(adapter.getEdmProvider(), new ArrayList<EdmxReference>());
+		adapter.init(odata, edm);
+		String event = "/" + EVENTS + "(1)";
+		String eTag = getETag(execute(odata, edm, adapter, HttpMethod.GET, event, null, null));
+		assertNotNull(eTag);
+		/* a change of the timestamp alone makes the E-Tag stale */
+		this.executeUpdate("UPDATE ODATA_EVENTS SET HAPPENED = '2015-06-01 10:00:01' WHERE EVENT_ID = 1");
+		assertEquals(412, execute(odata, edm, adapter, HttpMethod.PATCH, event, eTag,
+				"{\"NAME\":\"stale-event\"}").getStatusCode());
+		/* once the E-Tag has been checked in a transaction, a concurrent change waits until the update is made */
+		eventHandler.openTransaction();
+		ODataEntry key = new ODataEntry();
+		key.addValue("EVENT_ID", "1");
+		ODataEntry checked = eventHandler.readTableWithKeys(EVENTS, key, null).get(0);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Integer> concurrentChange = executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					Connection connection = dataSource.getConnection();
+					try {
+						connection.createStatement().execute("SET LOCK_TIMEOUT 60000");
+						return connection.createStatement().executeUpdate(
+								"UPDATE ODATA_EVENTS SET HAPPENED = '2015-06-01 10:00:02' WHERE EVENT_ID = 1");
+					} finally {
+						connection.close();
+					}
+				}
+			});
+			try {
+				concurrentChange.get(500, TimeUnit.MILLISECONDS);
+				fail("The entity was modified between the E-Tag check and the update");
+			} catch (TimeoutException expected) {
+				// the concurrent change is waiting for the lock taken by the read
+			}
+			ODataEntry changes = new ODataEntry();
+			changes.addValue("EVENT_ID", "1");
+			changes.addValue("NAME", "updated-event");
+			assertTrue(eventHandler.updateEntityInTableTransactional(EVENTS, checked, changes));
+			eventHandler.commitTransaction();
+			assertEquals(1, concurrentChange.get(1, TimeUnit.MINUTES).intValue());
+		} finally {
+			executor.shutdownNow();
+		}
+		ODataEntry current = eventHandler.readTableWithKeys(EVENTS, key, null).get(0);
+		assertEquals("updated-event", current.getValue("NAME"));
+		assertFalse(checked.getValue("ETag").equals(current.getValue("ETag")));
+	}
+
+	/**
+	 * A serializable class which is not part of a metadata snapshot, telling whether it has been deserialized.
+	 */
+	private static class DeserializationProbe implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private static volatile boolean deserialized;
+
+		private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+			in.defaultReadObject();
+			deserialized = true;
+		}
+	}
+
+	/**
+	 * Executes an OData request through the given adapter, as the OData servlet does.
+	 */
+	private static ODataResponse execute(OData odata, ServiceMetadata edm, ODataAdapter adapter, HttpMethod method,
+			String path, String ifMatch, String body) throws Exception {
+		ODataRequest request = new ODataRequest();
+		request.setMethod(method);
+		request.setProtocol("HTTP/1.1");
+		request.setRawBaseUri("http://localhost/odata");
+		int query = path.indexOf('?');
+		request.setRawODataPath(query < 0 ? path : path.substring(0, query));
+		request.setRawRequestUri("http://localhost/odata" + path);
+		request.setRawQueryPath(query < 0 ? "" : path.substring(query + 1));
+		request.addHeader(HttpHeader.ACCEPT, "application/json");
+		if (ifMatch != null) {
+			request.addHeader(HttpHeader.IF_MATCH, ifMatch);
+		}
+		if (body != null) {
+			request.addHeader(HttpHeader.CONTENT_TYPE, "application/json");
+			request.setBody(new ByteArrayInputStream(body.getBytes("UTF-8")));
+		}
+		ODataResponse response = new ODataResponse();
+		new ServiceDispatcher(odata, edm, adapter, null).execute(request, response);
+		return response;
+	}
+
+	/**
+	 * Returns the ETag of the entity of a JSON response.
+	 */
+	private static String getETag(ODataResponse response) throws Exception {
+		Matcher matcher = Pattern.compile("\"@odata.etag\":\"([^\"]+)\"").matcher(
+				IOUtils.toString(response.getContent(), "UTF-8"));
+		return matcher.find() ? matcher.group(1) : null;
+	}
+
+	private String readNote(int id) throws Exception {
+		ODataEntry key = new ODataEntry();
+		key.addValue("NOTE_ID", Integer.toString(id));
+		return this.handler.readTableWithKeys(NOTES, key, null).get(0).getValue("TEXT");
+	}
+
+	/**
+	 * Returns a data source of the connections of the test pool, which counts the statements prepared by SQL.
+	 */
+	private DataSource countPreparedStatements(final Map<String, Integer> prepared) {
+		final DataSource target = this.dataSource;
+		return proxy(DataSource.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				Object result = invokeTarget(target, method, args);
+				if (!"getConnection".equals(method.getName())) {
+					return result;
+				}
+				final Connection connection = (Connection) result;
+				return proxy(Connection.class, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if ("prepareStatement".equals(method.getName())) {
+							String sql = (String) args[0];
+							synchronized (prepared) {
+								Integer count = prepared.get(sql);
+								prepared.put(sql, count == null ? 1 : count + 1);
+							}
+						}
+						return invokeTarget(connection, method, args);
+					}
+				});
+			}
+		});
+	}
+
+	private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+}
@@ -18,20 +18,36 @@
  */
 package org.wso2.carbon.dataservices.task;
 
+import java.util.HashMap;
+
 import org.apache.axis2.description.AxisService;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.dataservices.common.DBConstants;
+import org.wso2.carbon.dataservices.core.DataServiceFault;
+import org.wso2.carbon.dataservices.core.DataServiceProcessor;
+import org.wso2.carbon.dataservices.core.engine.DataService;
+import org.wso2.carbon.dataservices.core.engine.ParamValue;
 import org.wso2.carbon.ntask.core.TaskInfo;
 import org.wso2.carbon.ntask.solutions.webservice.WebServiceCallTask;
 
 /**
  * This class represents the data services scheduled tasks functionality.
+ * The operation is invoked with an HTTP call to the service endpoint by default. It is invoked within the server,
+ * through the data service request dispatching, if the in-process invocation is enabled with the
+ * DATA_SERVICE_IN_PROCESS_INVOCATION task property or the dss.task.in.process.invocation system property,
+ * unless the service is secured, since the call must then go through the security handlers.
  */
 public class DSTask extends WebServiceCallTask {
 
 	private final Log log = LogFactory.getLog(DSTask.class);
 	
 	private boolean serviceInit = false;
+
+	/* whether the target data service is invoked in-process */
+	private boolean inProcess;
+
+	private int tenantId;
 	
 	public DSTask() {
 	}
@@ -59,6 +75,12 @@ public class DSTask extends WebServiceCallTask {
     	if (axisService == null || !axisService.isActive()) {
     		return false;
     	}
+    	if (this.isInProcessInvocation(axisService)) {
+    		this.tenantId = tid;
+    		this.inProcess = true;
+    		this.serviceInit = true;
+    		return true;
+    	}
     	String httpEPR = DSTaskUtils.extractHTTPEPR(axisService);
     	if (httpEPR == null) {
     		throw new RuntimeException("No HTTP endpoint found for service: " +
@@ -77,6 +99,36 @@ public class DSTask extends WebServiceCallTask {
 		return this.isServiceInit();
 	}
     
+	private boolean isInProcessInvocation(AxisService axisService) {
+		String inProcess = this.getProperties().get(DSTaskConstants.IN_PROCESS_INVOCATION);
+		if (inProcess == null) {
+			inProcess = System.getProperty(DSTaskConstants.DSS_TASK_IN_PROCESS_INVOCATION, "false");
+		}
+		return Boolean.parseBoolean(inProcess) && !axisService.isEngaged(DBConstants.SECURITY_MODULE_NAME);
+	}
+
+	private void executeInProcess() {
+		String serviceName = this.getProperties().get(DSTaskConstants.DATA_SERVICE_NAME);
+		String opName = this.getProperties().get(DSTaskConstants.DATA_SERVICE_OPERATION_NAME);
+		/* the service is looked up on each run, since it may have been redeployed */
+		AxisService axisService = DSTaskUtils.lookupAxisService(this.tenantId, serviceName);
+		DataService dataService = null;
+		if (axisService != null && axisService.isActive()) {
+			dataService = (DataService) axisService.getParameterValue(DBConstants.DATA_SERVICE_OBJECT);
+		}
+		if (dataService == null) {
+			log.info("Target service '" + serviceName + "' is not active.");
+			return;
+		}
+		try {
+			/* the scheduled operations do not have parameters */
+			DataServiceProcessor.dispatch(dataService, opName, new HashMap<String, ParamValue>());
+		} catch (DataServiceFault e) {
+			log.error("Error in executing the scheduled operation '" + opName + "' of service '" +
+					serviceName + "': " + e.getMessage(), e);
+		}
+	}
+    
 	@Override
 	public void init() {
 		this.checkServiceInit();
@@ -85,7 +137,11 @@ public class DSTask extends WebServiceCallTask {
 	@Override
 	public void execute() {
 		if (this.checkServiceInit()) {
-			super.execute();
+			if (this.inProcess) {
+				this.executeInProcess();
+			} else {
+				super.execute();
+			}
 		} else {
 			log.info("Target service '" + this.getProperties().get(
 					DSTaskConstants.DATA_SERVICE_NAME) + "' is not active.");
@@ -26,6 +26,12 @@ public class DSTaskConstants {
     public static final String DATA_SERVICE_OBJECT = "org.wso2.ws.dataservice.dataservice.obj";
     public static final String DATA_SERVICE_TASK_TYPE = "DATA_SERVICE_TASK";
     public static final String TASK_NAME = "DATA_SERVICE_TASK_NAME";
+    /* whether a data service task calls the operation within the server, or through its HTTP endpoint */
+    public static final String IN_PROCESS_INVOCATION = "DATA_SERVICE_IN_PROCESS_INVOCATION";
+    public static final String DSS_TASK_IN_PROCESS_INVOCATION = "dss.task.in.process.invocation";
+    /* the number of workers of a data task for its parallel invocations */
+    public static final String DATA_TASK_WORKER_COUNT = "DATA_TASK_WORKER_COUNT";
+    public static final String DSS_TASK_WORKER_COUNT = "dss.task.worker.count";
     public static final String AXIS2_SERVICE_TYPE = "serviceType";
     public static final String DB_SERVICE_TYPE = "data_service";
     public static final String DBS_FILE_EXTENSION = "dbs";
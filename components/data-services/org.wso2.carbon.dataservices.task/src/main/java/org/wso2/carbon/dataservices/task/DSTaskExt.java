@@ -18,6 +18,8 @@
  */
 package org.wso2.carbon.dataservices.task;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.ntask.core.AbstractTask;
 
@@ -26,6 +28,8 @@ import org.wso2.carbon.ntask.core.AbstractTask;
  */
 public class DSTaskExt extends AbstractTask {
 
+	private static final Log log = LogFactory.getLog(DSTaskExt.class);
+
 	private DataTask taskInstance;
 	
 	private DataTaskContext dataTaskContext;
@@ -54,6 +58,10 @@ public class DSTaskExt extends AbstractTask {
 	@Override
 	public void execute() {
 		this.getTaskInstance().execute(this.getDataTaskContext());
+		if (log.isDebugEnabled()) {
+			log.debug("Data Task '" + this.getProperties().get(DSTaskConstants.TASK_NAME) +
+					"' executed, records: " + this.getDataTaskContext().getStatistics());
+		}
 	}
 
 }
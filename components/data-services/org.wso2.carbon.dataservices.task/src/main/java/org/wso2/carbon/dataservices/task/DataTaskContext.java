@@ -21,27 +21,50 @@ package org.wso2.carbon.dataservices.task;
 import org.apache.axiom.om.OMElement;
 import org.apache.axis2.description.AxisService;
 import org.apache.axis2.engine.AxisConfiguration;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.dataservices.common.DBConstants;
 import org.wso2.carbon.dataservices.core.DBUtils;
 import org.wso2.carbon.dataservices.core.DataServiceFault;
+import org.wso2.carbon.dataservices.core.DataServiceProcessor;
 import org.wso2.carbon.dataservices.core.DataServiceUser;
 import org.wso2.carbon.dataservices.core.engine.DataService;
 import org.wso2.carbon.dataservices.core.engine.ParamValue;
 import org.wso2.carbon.dataservices.core.tools.DSTools;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class represents a context class used in data tasks.
  */
 public class DataTaskContext {
 	
+	/* the idle workers of the pool are released after this time */
+	private static final long WORKER_KEEP_ALIVE_SECONDS = 60;
+
 	private AxisConfiguration axisConfig;
 
+	private int tenantId;
+
     private Map<String, String> dataTaskProperties;
+
+	private final DataTaskStatistics statistics = new DataTaskStatistics();
+
+	private ThreadPoolExecutor workerPool;
+
+	private int workerCount;
 			
 	public DataTaskContext(int tid) {
+		this.tenantId = tid;
 		this.axisConfig = DSTaskUtils.lookupAxisConfig(tid);
+		this.workerCount = getWorkerCount(null);
 	}
 
 	private DataService getDataService(String serviceName) {
@@ -102,6 +125,195 @@ public class DataTaskContext {
 		DSTools.invokeOperation(dataService, operationName, batchParams);
 	}
 	
+	/**
+	 * Invokes a data service operation for a list of records, in batches of the given size which
+	 * are each executed as a batch request, i.e. in a single transaction, if the operation supports
+	 * batch requests, or else with an invocation per record.
+	 * @param serviceName The name of the data service
+	 * @param operationName The data service operation name
+	 * @param records The parameters of the records
+	 * @param batchSize The maximum number of records of a batch
+	 * @throws DataServiceFault If an error occurs in the service invocation, the following batches
+	 * are then not executed
+	 */
+	public void invokeOperationInBatches(String serviceName, String operationName,
+			List<Map<String, ParamValue>> records, int batchSize) throws DataServiceFault {
+		DataService dataService = this.getDataService(serviceName);
+		if (dataService == null) {
+			throw new DataServiceFault("The service '" + serviceName + "' does not exist");
+		}
+		this.statistics.recordSubmitted(records.size());
+		List<List<Map<String, ParamValue>>> batches = partition(records, batchSize);
+		for (int i = 0; i < batches.size(); i++) {
+			try {
+				this.invokeBatch(dataService, operationName, batches.get(i));
+			} catch (DataServiceFault e) {
+				/* the remaining batches are not executed */
+				for (int j = i + 1; j < batches.size(); j++) {
+					this.statistics.recordBatch(batches.get(j).size(), true);
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Invokes a data service operation for a list of records, in batches of the given size which are
+	 * executed in parallel by the worker pool of this task, see
+	 * {@link #invokeOperationInBatches(String, String, List, int)}. The number of workers is set with
+	 * the task property {@value DSTaskConstants#DATA_TASK_WORKER_COUNT}, or else the system property
+	 * {@value DSTaskConstants#DSS_TASK_WORKER_COUNT}, and defaults to the number of processors.
+	 * The records of each batch must therefore be independent of the ones of the other batches.
+	 * @param serviceName The name of the data service
+	 * @param operationName The data service operation name
+	 * @param records The parameters of the records
+	 * @param batchSize The maximum number of records of a batch
+	 * @throws DataServiceFault If an error occurs in the service invocation, after all the batches
+	 * have been executed; the failed batches are not rolled back by the successful ones
+	 */
+	public void invokeOperationInParallel(String serviceName, String operationName,
+			List<Map<String, ParamValue>> records, int batchSize) throws DataServiceFault {
+		final DataService dataService = this.getDataService(serviceName);
+		if (dataService == null) {
+			throw new DataServiceFault("The service '" + serviceName + "' does not exist");
+		}
+		this.statistics.recordSubmitted(records.size());
+		final String opName = operationName;
+		final DataServiceUser user = DataService.getCurrentUser();
+		List<Future<Object>> results = new ArrayList<Future<Object>>();
+		for (final List<Map<String, ParamValue>> batch : partition(records, batchSize)) {
+			results.add(this.getWorkerPool().submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					/* the workers run within the tenant and with the user of the task */
+					PrivilegedCarbonContext.startTenantFlow();
+					try {
+						PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(
+								DataTaskContext.this.tenantId, true);
+						DataService.setCurrentUser(user);
+						DataTaskContext.this.invokeBatch(dataService, opName, batch);
+						return null;
+					} finally {
+						DataService.setCurrentUser(null);
+						PrivilegedCarbonContext.endTenantFlow();
+					}
+				}
+			}));
+		}
+		int failedBatches = 0;
+		Throwable firstError = null;
+		for (Future<Object> result : results) {
+			try {
+				result.get();
+			} catch (ExecutionException e) {
+				failedBatches++;
+				if (firstError == null) {
+					firstError = e.getCause();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new DataServiceFault(e, "Interrupted while waiting for the batches of operation '" +
+						operationName + "'");
+			}
+		}
+		if (firstError != null) {
+			throw new DataServiceFault(firstError, failedBatches + " of " + results.size() +
+					" batches of operation '" + operationName + "' failed: " + firstError.getMessage());
+		}
+	}
+
+	private void invokeBatch(DataService dataService, String operationName,
+			List<Map<String, ParamValue>> batch) throws DataServiceFault {
+		boolean failed = true;
+		try {
+			if (dataService.isBatchRequestsEnabled() && dataService.getOperation(
+					operationName + DBConstants.BATCH_OPERATON_NAME_SUFFIX) != null) {
+				DSTools.invokeOperation(dataService, operationName, batch);
+			} else {
+				/* the results are not used, and they are discarded */
+				for (Map<String, ParamValue> params : batch) {
+					DataServiceProcessor.dispatch(dataService, operationName, params);
+				}
+			}
+			failed = false;
+		} finally {
+			this.statistics.recordBatch(batch.size(), failed);
+		}
+	}
+
+	static List<List<Map<String, ParamValue>>> partition(List<Map<String, ParamValue>> records,
+			int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+		}
+		List<List<Map<String, ParamValue>>> batches = new ArrayList<List<Map<String, ParamValue>>>();
+		for (int i = 0; i < records.size(); i += batchSize) {
+			batches.add(records.subList(i, Math.min(records.size(), i + batchSize)));
+		}
+		return batches;
+	}
+
+	/**
+	 * Returns the number of workers of a task, set with the task property
+	 * {@value DSTaskConstants#DATA_TASK_WORKER_COUNT}, or else the system property
+	 * {@value DSTaskConstants#DSS_TASK_WORKER_COUNT}, or else the number of processors.
+	 * @param taskProperties The properties of the task, may be null
+	 * @return The number of workers
+	 * @throws IllegalArgumentException If the number of workers is not a positive integer
+	 */
+	static int getWorkerCount(Map<String, String> taskProperties) {
+		String workersProp = taskProperties != null ?
+				taskProperties.get(DSTaskConstants.DATA_TASK_WORKER_COUNT) : null;
+		String name = DSTaskConstants.DATA_TASK_WORKER_COUNT;
+		if (workersProp == null) {
+			workersProp = System.getProperty(DSTaskConstants.DSS_TASK_WORKER_COUNT);
+			name = DSTaskConstants.DSS_TASK_WORKER_COUNT;
+		}
+		if (workersProp == null) {
+			return Runtime.getRuntime().availableProcessors();
+		}
+		int workers;
+		try {
+			workers = Integer.parseInt(workersProp.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number of workers " + name + ": '" +
+					workersProp + "'", e);
+		}
+		if (workers < 1) {
+			throw new IllegalArgumentException("Invalid number of workers " + name + ": " + workers +
+					", it must be at least 1");
+		}
+		return workers;
+	}
+
+	private synchronized ThreadPoolExecutor getWorkerPool() {
+		if (this.workerPool == null) {
+			final String poolName = "DataTask-" + (this.dataTaskProperties != null ?
+					this.dataTaskProperties.get(DSTaskConstants.TASK_NAME) : null) + "-worker-";
+			this.workerPool = new ThreadPoolExecutor(this.workerCount, this.workerCount,
+					WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, poolName + count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			/* the workers are released when the task is idle */
+			this.workerPool.allowCoreThreadTimeOut(true);
+		}
+		return this.workerPool;
+	}
+
+	/**
+	 * Returns the throughput and backlog statistics of the records processed by this task.
+	 */
+	public DataTaskStatistics getStatistics() {
+		return statistics;
+	}
+	
 	/**
 	 * Accesses a data services resource.
 	 * @param serviceName The name of the data service
@@ -139,7 +351,13 @@ public class DataTaskContext {
         return dataTaskProperties;
     }
 
+    /**
+     * Sets the properties of the task.
+     * @param dataTaskProperties The properties
+     * @throws IllegalArgumentException If the number of workers set in the properties is invalid
+     */
     public void setDataTaskProperties(Map<String, String> dataTaskProperties) {
+        this.workerCount = getWorkerCount(dataTaskProperties);
         this.dataTaskProperties = dataTaskProperties;
     }
 }
@@ -0,0 +1,109 @@
+/*
+ *  Copyright (c) 2005-2012, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.task;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and backlog statistics of the records processed by a data task, with the bulk
+ * invocations of {@link DataTaskContext}. The backlog is the number of records submitted which
+ * have not been processed yet, and the throughput is measured from the first record submitted
+ * after the last reset.
+ */
+public class DataTaskStatistics {
+
+	private final AtomicLong submittedCount = new AtomicLong();
+
+	private final AtomicLong processedCount = new AtomicLong();
+
+	private final AtomicLong failedCount = new AtomicLong();
+
+	private final AtomicLong batchCount = new AtomicLong();
+
+	private volatile long startTime = -1;
+
+	public void recordSubmitted(int records) {
+		if (this.startTime < 0) {
+			this.startTime = System.nanoTime();
+		}
+		this.submittedCount.addAndGet(records);
+	}
+
+	/**
+	 * Records a batch of records which has been processed.
+	 * @param records The number of records of the batch
+	 * @param failed Whether the batch failed
+	 */
+	public void recordBatch(int records, boolean failed) {
+		this.batchCount.incrementAndGet();
+		if (failed) {
+			this.failedCount.addAndGet(records);
+		} else {
+			this.processedCount.addAndGet(records);
+		}
+	}
+
+	public long getSubmittedCount() {
+		return submittedCount.get();
+	}
+
+	public long getProcessedCount() {
+		return processedCount.get();
+	}
+
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+
+	public long getBacklog() {
+		return this.getSubmittedCount() - this.getProcessedCount() - this.getFailedCount();
+	}
+
+	/**
+	 * Returns the number of records processed per second.
+	 */
+	public double getThroughput() {
+		long start = this.startTime;
+		if (start < 0) {
+			return 0;
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		return seconds > 0 ? this.getProcessedCount() / seconds : 0;
+	}
+
+	public void reset() {
+		this.startTime = -1;
+		this.submittedCount.set(0);
+		this.processedCount.set(0);
+		this.failedCount.set(0);
+		this.batchCount.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "submitted=" + this.getSubmittedCount() + " processed=" + this.getProcessedCount() +
+				" failed=" + this.getFailedCount() + " backlog=" + this.getBacklog() + " batches=" +
+				this.getBatchCount() + " throughput=" + (long) this.getThroughput() + "/s";
+	}
+
+}
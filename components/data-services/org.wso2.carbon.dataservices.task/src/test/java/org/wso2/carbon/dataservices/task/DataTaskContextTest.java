@@ -0,0 +1,139 @@
+/*
+ *  Copyright (c) 2005-2012, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.wso2.carbon.dataservices.core.engine.ParamValue;
+
+/**
+ * Checks the partitioning of the records of the bulk invocations of a DataTaskContext into batches,
+ * and the validation of the number of workers of a task.
+ */
+public class DataTaskContextTest extends TestCase {
+
+	public DataTaskContextTest() {
+		super("DataTaskContextTest");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		System.clearProperty(DSTaskConstants.DSS_TASK_WORKER_COUNT);
+	}
+
+	public void testPartition() {
+		List<Map<String, ParamValue>> records = createRecords(10);
+		List<List<Map<String, ParamValue>>> batches = DataTaskContext.partition(records, 4);
+		assertEquals(3, batches.size());
+		assertEquals(4, batches.get(0).size());
+		assertEquals(4, batches.get(1).size());
+		assertEquals(2, batches.get(2).size());
+		/* the records keep their order */
+		List<Map<String, ParamValue>> joined = new ArrayList<Map<String, ParamValue>>();
+		for (List<Map<String, ParamValue>> batch : batches) {
+			joined.addAll(batch);
+		}
+		assertEquals(records, joined);
+	}
+
+	public void testPartitionExactBatches() {
+		List<List<Map<String, ParamValue>>> batches = DataTaskContext.partition(createRecords(9), 3);
+		assertEquals(3, batches.size());
+		for (List<Map<String, ParamValue>> batch : batches) {
+			assertEquals(3, batch.size());
+		}
+		batches = DataTaskContext.partition(createRecords(3), 1);
+		assertEquals(3, batches.size());
+		assertEquals(1, batches.get(2).size());
+	}
+
+	public void testPartitionBatchLargerThanRecords() {
+		List<List<Map<String, ParamValue>>> batches = DataTaskContext.partition(createRecords(5), 100);
+		assertEquals(1, batches.size());
+		assertEquals(5, batches.get(0).size());
+	}
+
+	public void testPartitionNoRecords() {
+		assertTrue(DataTaskContext.partition(Collections.<Map<String, ParamValue>>emptyList(), 10).isEmpty());
+	}
+
+	public void testPartitionInvalidBatchSize() {
+		for (int batchSize : new int[] { 0, -1 }) {
+			try {
+				DataTaskContext.partition(createRecords(5), batchSize);
+				fail("Invalid batch size accepted: " + batchSize);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	public void testWorkerCount() {
+		assertEquals(Runtime.getRuntime().availableProcessors(), DataTaskContext.getWorkerCount(null));
+		assertEquals(Runtime.getRuntime().availableProcessors(), DataTaskContext.getWorkerCount(
+				new HashMap<String, String>()));
+		assertEquals(3, DataTaskContext.getWorkerCount(createProperties(" 3 ")));
+		System.setProperty(DSTaskConstants.DSS_TASK_WORKER_COUNT, "5");
+		assertEquals(5, DataTaskContext.getWorkerCount(null));
+		/* the task property takes precedence over the system property */
+		assertEquals(2, DataTaskContext.getWorkerCount(createProperties("2")));
+	}
+
+	public void testInvalidWorkerCount() {
+		for (String workers : new String[] { "", "many", "2.5", "0", "-4" }) {
+			try {
+				DataTaskContext.getWorkerCount(createProperties(workers));
+				fail("Invalid number of workers accepted: '" + workers + "'");
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains(DSTaskConstants.DATA_TASK_WORKER_COUNT));
+			}
+		}
+		System.setProperty(DSTaskConstants.DSS_TASK_WORKER_COUNT, "none");
+		try {
+			DataTaskContext.getWorkerCount(null);
+			fail("Invalid number of workers accepted");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(DSTaskConstants.DSS_TASK_WORKER_COUNT));
+		}
+	}
+
+	private static Map<String, String> createProperties(String workers) {
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put(DSTaskConstants.TASK_NAME, "testTask");
+		properties.put(DSTaskConstants.DATA_TASK_WORKER_COUNT, workers);
+		return properties;
+	}
+
+	private static List<Map<String, ParamValue>> createRecords(int count) {
+		List<Map<String, ParamValue>> records = new ArrayList<Map<String, ParamValue>>();
+		for (int i = 0; i < count; i++) {
+			Map<String, ParamValue> record = new HashMap<String, ParamValue>();
+			record.put("id", new ParamValue(String.valueOf(i)));
+			records.add(record);
+		}
+		return records;
+	}
+
+}
@@ -0,0 +1,111 @@
+/*
+ *  Copyright (c) 2005-2012, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.wso2.carbon.dataservices.task;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the record counts, the backlog and the throughput of DataTaskStatistics.
+ */
+public class DataTaskStatisticsTest extends TestCase {
+
+	public DataTaskStatisticsTest() {
+		super("DataTaskStatisticsTest");
+	}
+
+	public void testNoRecords() {
+		DataTaskStatistics statistics = new DataTaskStatistics();
+		assertEquals(0, statistics.getSubmittedCount());
+		assertEquals(0, statistics.getBacklog());
+		assertEquals(0, statistics.getBatchCount());
+		assertEquals(0.0, statistics.getThroughput(), 0);
+	}
+
+	public void testBacklog() {
+		DataTaskStatistics statistics = new DataTaskStatistics();
+		statistics.recordSubmitted(10);
+		assertEquals(10, statistics.getBacklog());
+		statistics.recordBatch(4, false);
+		statistics.recordBatch(4, true);
+		assertEquals(10, statistics.getSubmittedCount());
+		assertEquals(4, statistics.getProcessedCount());
+		assertEquals(4, statistics.getFailedCount());
+		assertEquals(2, statistics.getBatchCount());
+		assertEquals(2, statistics.getBacklog());
+		statistics.recordBatch(2, false);
+		assertEquals(0, statistics.getBacklog());
+		statistics.recordSubmitted(5);
+		assertEquals(15, statistics.getSubmittedCount());
+		assertEquals(5, statistics.getBacklog());
+	}
+
+	public void testThroughput() throws Exception {
+		DataTaskStatistics statistics = new DataTaskStatistics();
+		statistics.recordSubmitted(100);
+		statistics.recordBatch(100, false);
+		Thread.sleep(20);
+		double throughput = statistics.getThroughput();
+		assertTrue(String.valueOf(throughput), throughput > 0 && throughput <= 100 / 0.02);
+		/* the failed records are not part of the throughput */
+		DataTaskStatistics failed = new DataTaskStatistics();
+		failed.recordSubmitted(100);
+		failed.recordBatch(100, true);
+		assertEquals(0.0, failed.getThroughput(), 0);
+	}
+
+	public void testReset() {
+		DataTaskStatistics statistics = new DataTaskStatistics();
+		statistics.recordSubmitted(3);
+		statistics.recordBatch(2, false);
+		statistics.recordBatch(1, true);
+		statistics.reset();
+		assertEquals(0, statistics.getSubmittedCount());
+		assertEquals(0, statistics.getProcessedCount());
+		assertEquals(0, statistics.getFailedCount());
+		assertEquals(0, statistics.getBatchCount());
+		assertEquals(0.0, statistics.getThroughput(), 0);
+		assertTrue(statistics.toString(), statistics.toString().contains("submitted=0"));
+	}
+
+	public void testConcurrentBatches() throws Exception {
+		final DataTaskStatistics statistics = new DataTaskStatistics();
+		statistics.recordSubmitted(8 * 1000);
+		Thread[] workers = new Thread[8];
+		for (int i = 0; i < workers.length; i++) {
+			final boolean failed = i % 4 == 0;
+			workers[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 1000; j++) {
+						statistics.recordBatch(1, failed);
+					}
+				}
+			};
+			workers[i].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		assertEquals(6000, statistics.getProcessedCount());
+		assertEquals(2000, statistics.getFailedCount());
+		assertEquals(8000, statistics.getBatchCount());
+		assertEquals(0, statistics.getBacklog());
+	}
+
+}
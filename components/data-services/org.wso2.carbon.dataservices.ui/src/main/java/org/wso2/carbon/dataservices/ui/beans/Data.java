@@ -509,6 +509,8 @@ public class Data extends DataServiceConfigurationElement{
                         odataTableSchema = new ODataTableSchemaConfig();
                         odataTableSchema.setTableName(tblname);
                         odataTableSchema.setSchemaName(schemaname);
+                        odataTableSchema.setPageSize(
+                                dynamicUserConfig.getAttributeValue(new QName(DBConstants.RDBMS.ODATA_PAGE_SIZE)));
                         Iterator<OMElement> dynamicODataColumnsConfigs = dynamicUserConfig.getChildrenWithName(new QName("column"));
                         ODataColumnsConfig columnsConf = new ODataColumnsConfig();
                         List<ODataColumnsConfig> columnsList = new ArrayList<ODataColumnsConfig>();
@@ -526,6 +528,16 @@ public class Data extends DataServiceConfigurationElement{
                     }
                     String maxLimit = propertyEle.getAttributeValue(new QName("maxLimit"));
                     dynamicODataTableConfiguration.setMaxLimit(maxLimit);
+                    dynamicODataTableConfiguration.setCountMode(
+                            propertyEle.getAttributeValue(new QName(DBConstants.RDBMS.ODATA_COUNT_MODE)));
+                    dynamicODataTableConfiguration.setCountCacheTTL(
+                            propertyEle.getAttributeValue(new QName(DBConstants.RDBMS.ODATA_COUNT_CACHE_TTL)));
+                    dynamicODataTableConfiguration.setMetadataCache(
+                            propertyEle.getAttributeValue(new QName(DBConstants.RDBMS.ODATA_METADATA_CACHE)));
+                    dynamicODataTableConfiguration.setPageSize(
+                            propertyEle.getAttributeValue(new QName(DBConstants.RDBMS.ODATA_PAGE_SIZE)));
+                    dynamicODataTableConfiguration.setTransactionIsolation(
+                            propertyEle.getAttributeValue(new QName(DBConstants.RDBMS.ODATA_TRANSACTION_ISOLATION)));
                     dynamicODataTableConfiguration.setTables(dynamicTableList);
                     property.setValue(dynamicODataTableConfiguration);
                 } else {
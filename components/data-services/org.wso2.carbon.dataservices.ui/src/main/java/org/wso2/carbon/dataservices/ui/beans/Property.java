@@ -18,6 +18,7 @@ package org.wso2.carbon.dataservices.ui.beans;
 import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMFactory;
+import org.wso2.carbon.dataservices.common.DBConstants;
 import org.wso2.carbon.dataservices.common.conf.DynamicAuthConfiguration;
 import org.wso2.carbon.dataservices.common.conf.DynamicODataConfig;
 import org.wso2.carbon.dataservices.common.conf.ODataColumnsConfig;
@@ -126,6 +127,30 @@ public class Property extends DataServiceConfigurationElement{
                 if(maxLimit != null) {
                 	propEl.addAttribute("maxLimit", maxLimit, null);
                 }
+                if (dynamicODataConfiguration.getCountMode() != null) {
+                    propEl.addAttribute(DBConstants.RDBMS.ODATA_COUNT_MODE, dynamicODataConfiguration.getCountMode(),
+                                        null);
+                }
+                if (dynamicODataConfiguration.getCountCacheTTL() != null) {
+                    propEl.addAttribute(DBConstants.RDBMS.ODATA_COUNT_CACHE_TTL,
+                                        dynamicODataConfiguration.getCountCacheTTL(), null);
+                }
+                if (dynamicODataConfiguration.getMetadataCache() != null) {
+                    propEl.addAttribute(DBConstants.RDBMS.ODATA_METADATA_CACHE,
+                                        dynamicODataConfiguration.getMetadataCache(), null);
+                }
+                if (dynamicODataConfiguration.getMetadataRefreshInterval() != null) {
+                    propEl.addAttribute(DBConstants.RDBMS.ODATA_METADATA_REFRESH_INTERVAL,
+                                        dynamicODataConfiguration.getMetadataRefreshInterval(), null);
+                }
+                if (dynamicODataConfiguration.getPageSize() != null) {
+                    propEl.addAttribute(DBConstants.RDBMS.ODATA_PAGE_SIZE,
+                                        dynamicODataConfiguration.getPageSize(), null);
+                }
+                if (dynamicODataConfiguration.getTransactionIsolation() != null) {
+                    propEl.addAttribute(DBConstants.RDBMS.ODATA_TRANSACTION_ISOLATION,
+                                        dynamicODataConfiguration.getTransactionIsolation(), null);
+                }
                 if (dynamicTableEntries != null) {
                     for (ODataTableSchemaConfig table : dynamicTableEntries) {
                         if(table.getTableName() != null && table.getSchemaName() != null) {
@@ -134,6 +159,9 @@ public class Property extends DataServiceConfigurationElement{
 	                        String schemaName = table.getSchemaName();
 	                        dynamicUserEntryEle.addAttribute("schema", schemaName, null);
 	                        dynamicUserEntryEle.addAttribute("name", tblname, null);
+	                        if (table.getPageSize() != null) {
+	                            dynamicUserEntryEle.addAttribute(DBConstants.RDBMS.ODATA_PAGE_SIZE, table.getPageSize(), null);
+	                        }
 	                        
 	                        if(table.getColumns() != null) {
 	                        	List<ODataColumnsConfig> columns = table.getColumns();